@@ -0,0 +1,176 @@
+package com.michaldrozd.frauddetection.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.michaldrozd.frauddetection.ai.FraudModelScorer;
+import com.michaldrozd.frauddetection.blocklist.Blocklist;
+import com.michaldrozd.frauddetection.cache.UserIdentityCache;
+import com.michaldrozd.frauddetection.cache.VerdictCache;
+import com.michaldrozd.frauddetection.concurrency.LookupExecutor;
+import com.michaldrozd.frauddetection.concurrency.RepositoryBulkhead;
+import com.michaldrozd.frauddetection.domain.CreditCard;
+import com.michaldrozd.frauddetection.domain.Device;
+import com.michaldrozd.frauddetection.domain.Transaction;
+import com.michaldrozd.frauddetection.dto.UserIdentity;
+import com.michaldrozd.frauddetection.location.LocationVelocityEngine;
+import com.michaldrozd.frauddetection.metrics.FraudCheckMetrics;
+import com.michaldrozd.frauddetection.repositories.TransactionRepository;
+import com.michaldrozd.frauddetection.repositories.UserRepository;
+import com.michaldrozd.frauddetection.rollup.TransactionRollups;
+import com.michaldrozd.frauddetection.rules.FraudRule;
+import com.michaldrozd.frauddetection.rules.ImpossibleTravelRule;
+import com.michaldrozd.frauddetection.rules.LocationRule;
+import com.michaldrozd.frauddetection.rules.ModelRule;
+import com.michaldrozd.frauddetection.rules.MultipleDevicesOrCreditCardsRule;
+import com.michaldrozd.frauddetection.rules.RulePipeline;
+import com.michaldrozd.frauddetection.rules.TransactionAmountRule;
+import com.michaldrozd.frauddetection.rules.TransactionCountRule;
+import com.michaldrozd.frauddetection.services.FraudDetectionService;
+import com.michaldrozd.frauddetection.window.UserWindowStore;
+import com.michaldrozd.frauddetection.window.WindowQueryMode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import smile.classification.LogisticRegression;
+
+/**
+ * Synthetic data and in-memory stubs shared by the benchmarks, so the suite runs without Neo4j.
+ */
+final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Generates a user's window of transactions within the last hour, all on one device and card and within a few
+     * kilometres of Bratislava, so no rule fires and every rule is evaluated.
+     */
+    static List<Transaction> transactions(int size, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        LocalDateTime now = LocalDateTime.now();
+        Device device = new Device();
+        device.setId(1L);
+        CreditCard creditCard = new CreditCard();
+        creditCard.setId(1L);
+
+        List<Transaction> transactions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Device located = new Device();
+            located.setId(device.getId());
+            located.setLatitude(48.14 + random.nextDouble(-0.01, 0.01));
+            located.setLongitude(17.10 + random.nextDouble(-0.01, 0.01));
+
+            Transaction transaction = new Transaction();
+            transaction.setTransactionId("t-" + i);
+            transaction.setAmount(random.nextDouble(1, 500));
+            transaction.setTransactionDate(now.minusSeconds(random.nextInt(3600)));
+            transaction.setDevice(located);
+            transaction.setCreditCard(creditCard);
+            transactions.add(transaction);
+        }
+        return transactions;
+    }
+
+    /**
+     * A repository answering every window query with the given transactions; any other call fails.
+     */
+    static TransactionRepository repository(Function<Long, List<Transaction>> transactionsByUser) {
+        return (TransactionRepository) Proxy.newProxyInstance(
+            TransactionRepository.class.getClassLoader(),
+            new Class<?>[]{TransactionRepository.class},
+            (proxy, method, args) -> {
+                if (method.getName().equals("findTransactionsByUserWithinTimeWindow")) {
+                    return transactionsByUser.apply((Long) args[0]);
+                }
+                if (method.getDeclaringClass() == Object.class) {
+                    return method.getName().equals("toString") ? "InMemoryTransactionRepository" : method.invoke(proxy, args);
+                }
+                throw new UnsupportedOperationException(method.getName() + " is not stubbed");
+            });
+    }
+
+    /**
+     * A user repository in which every user exists, answering after the given simulated round trip.
+     */
+    static UserRepository userRepository(long latencyMicros) {
+        return (UserRepository) Proxy.newProxyInstance(
+            UserRepository.class.getClassLoader(),
+            new Class<?>[]{UserRepository.class},
+            (proxy, method, args) -> {
+                if (method.getName().equals("findUserIdentity")) {
+                    simulateRoundTrip(latencyMicros);
+                    return Optional.of(new UserIdentity((Long) args[0], "user-" + args[0], "User " + args[0]));
+                }
+                if (method.getDeclaringClass() == Object.class) {
+                    return method.getName().equals("toString") ? "InMemoryUserRepository" : method.invoke(proxy, args);
+                }
+                throw new UnsupportedOperationException(method.getName() + " is not stubbed");
+            });
+    }
+
+    /**
+     * Blocks the calling thread for a simulated Neo4j round trip.
+     */
+    static void simulateRoundTrip(long latencyMicros) {
+        if (latencyMicros > 0) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+        }
+    }
+
+    /**
+     * A fraud detection service over the given repositories, with the in-memory window store and the user and verdict
+     * caches disabled, so every check reaches the repositories. The concurrent lookups run on virtual threads with
+     * {@code virtualThreads}, as they do when requests are served on virtual threads.
+     */
+    static FraudDetectionService fraudDetectionService(TransactionRepository transactionRepository, UserRepository userRepository,
+                                                       FraudModelScorer scorer, boolean concurrentLookups, boolean virtualThreads) {
+        RepositoryBulkhead repositoryBulkhead = new RepositoryBulkhead(1024, 10_000, new SimpleMeterRegistry());
+        return new FraudDetectionService(
+            transactionRepository,
+            new UserIdentityCache(userRepository, repositoryBulkhead, new SimpleMeterRegistry(), 0, 0),
+            new UserWindowStore(false, 1440, 60, 512),
+            WindowQueryMode.ENTITIES,
+            new TransactionRollups(transactionRepository, false, ""),
+            rulePipeline(new LocationVelocityEngine(true, 900, 100), scorer),
+            repositoryBulkhead,
+            new LookupExecutor(virtualThreads, concurrentLookups, 256),
+            new FraudCheckMetrics(new SimpleMeterRegistry()),
+            new Blocklist(false, "unused.bin", 1, "", new SimpleMeterRegistry()),
+            new VerdictCache(false, 0, 0, new SimpleMeterRegistry())
+        );
+    }
+
+    /**
+     * A pipeline of the built-in rules in their default order, without a rule set file or adaptive ordering.
+     */
+    static RulePipeline rulePipeline(LocationVelocityEngine locationVelocityEngine, FraudModelScorer scorer) {
+        List<FraudRule> rules = List.of(new TransactionCountRule(), new TransactionAmountRule(), new MultipleDevicesOrCreditCardsRule(),
+            new LocationRule(locationVelocityEngine), new ImpossibleTravelRule(locationVelocityEngine), new ModelRule(scorer));
+        return new RulePipeline(rules, new FraudCheckMetrics(new SimpleMeterRegistry()), new ObjectMapper(), "unused.json", false);
+    }
+
+    /**
+     * A scorer with a model trained on synthetic windows; {@code null} model (scoring disabled) if {@code withModel} is false.
+     */
+    static FraudModelScorer scorer(boolean withModel) {
+        FraudModelScorer scorer = new FraudModelScorer(withModel, "benchmark-model.ser", "", 0.5, 0, 0, 0.3, false, new SimpleMeterRegistry());
+        if (withModel) {
+            SplittableRandom random = new SplittableRandom(7);
+            double[][] x = new double[2_000][];
+            int[] y = new int[x.length];
+            for (int i = 0; i < x.length; i++) {
+                int count = random.nextInt(20);
+                x[i] = new double[]{count, count * 12.5, 1, 1, count, 60};
+                y[i] = count >= 10 ? 1 : 0;
+            }
+            scorer.swapModel(LogisticRegression.fit(x, y));
+        }
+        return scorer;
+    }
+}
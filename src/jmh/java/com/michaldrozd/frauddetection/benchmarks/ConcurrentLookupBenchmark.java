@@ -0,0 +1,69 @@
+package com.michaldrozd.frauddetection.benchmarks;
+
+import com.michaldrozd.frauddetection.domain.Transaction;
+import com.michaldrozd.frauddetection.dto.FraudCheckThresholds;
+import com.michaldrozd.frauddetection.dto.FraudVerdict;
+import com.michaldrozd.frauddetection.services.FraudDetectionService;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the single-user fraud check ({@code checkUser}) when both Neo4j round trips, the user lookup and the
+ * window query, take a simulated latency.
+ * <p>
+ * The benchmark threads stand in for the request threads of the web tier: with {@code concurrentLookups=false} every
+ * check makes its round trips one after the other, as the endpoint used to, with {@code true} the user lookup runs
+ * alongside the window query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Threads(32)
+@Fork(1)
+public class ConcurrentLookupBenchmark {
+
+    @Param({"1000"})
+    private long latencyMicros;
+
+    @Param({"false", "true"})
+    private boolean concurrentLookups;
+
+    private FraudDetectionService fraudDetectionService;
+    private FraudCheckThresholds thresholds;
+
+    @Setup
+    public void setUp() {
+        List<Transaction> transactions = BenchmarkData.transactions(100, 42);
+        fraudDetectionService = BenchmarkData.fraudDetectionService(
+            BenchmarkData.repository(userId -> {
+                BenchmarkData.simulateRoundTrip(latencyMicros);
+                return transactions;
+            }),
+            BenchmarkData.userRepository(latencyMicros),
+            BenchmarkData.scorer(false),
+            concurrentLookups,
+            false
+        );
+        thresholds = new FraudCheckThresholds(Integer.MAX_VALUE, 60, Double.MAX_VALUE, 500);
+    }
+
+    @Benchmark
+    public Optional<FraudVerdict> checkUser() {
+        return fraudDetectionService.checkUser(1L, thresholds);
+    }
+}
@@ -0,0 +1,70 @@
+package com.michaldrozd.frauddetection.benchmarks;
+
+import com.michaldrozd.frauddetection.domain.Transaction;
+import com.michaldrozd.frauddetection.domain.User;
+import com.michaldrozd.frauddetection.dto.FraudCheckThresholds;
+import com.michaldrozd.frauddetection.dto.FraudVerdict;
+import com.michaldrozd.frauddetection.services.FraudDetectionService;
+import com.michaldrozd.frauddetection.window.WindowAggregate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The fraud check over synthetic windows, with the repository stubbed in memory.
+ * <p>
+ * {@code isFraudulent} includes aggregating the loaded transactions, {@code evaluate} only runs the rules over an
+ * already aggregated window, as the in-memory window store and score-on-ingest do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FraudCheckBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int windowSize;
+
+    @Param({"false", "true"})
+    private boolean withModel;
+
+    private FraudDetectionService fraudDetectionService;
+    private User user;
+    private WindowAggregate window;
+    private FraudCheckThresholds thresholds;
+
+    @Setup
+    public void setUp() {
+        List<Transaction> transactions = BenchmarkData.transactions(windowSize, 42);
+        fraudDetectionService = BenchmarkData.fraudDetectionService(
+            BenchmarkData.repository(userId -> transactions), BenchmarkData.userRepository(0), BenchmarkData.scorer(withModel), false, false);
+        user = new User();
+        user.setId(1L);
+        window = WindowAggregate.fromTransactions(transactions);
+        // High enough for no rule to fire, so that every rule is evaluated
+        thresholds = new FraudCheckThresholds(Integer.MAX_VALUE, 60, Double.MAX_VALUE, 500);
+    }
+
+    @Benchmark
+    public boolean isFraudulent() {
+        return fraudDetectionService.isFraudulent(user, thresholds.getTransactionsThreshold(), thresholds.getTimeWindowInMinutes(),
+            thresholds.getAmountThreshold(), thresholds.getDistanceThresholdInKm());
+    }
+
+    @Benchmark
+    public FraudVerdict evaluate() {
+        return fraudDetectionService.evaluate(user.getId(), window, thresholds);
+    }
+}
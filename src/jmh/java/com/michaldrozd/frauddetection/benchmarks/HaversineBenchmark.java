@@ -0,0 +1,52 @@
+package com.michaldrozd.frauddetection.benchmarks;
+
+import com.michaldrozd.frauddetection.location.LocationVelocityEngine;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the Haversine distance between random points.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HaversineBenchmark {
+
+    private static final int POINTS = 1024;
+
+    private final double[] latitudes = new double[POINTS];
+    private final double[] longitudes = new double[POINTS];
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < POINTS; i++) {
+            latitudes[i] = random.nextDouble(-80, 80);
+            longitudes[i] = random.nextDouble(-180, 180);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS - 1)
+    public double calculateDistance() {
+        double sum = 0;
+        for (int i = 1; i < POINTS; i++) {
+            sum += LocationVelocityEngine.calculateDistance(latitudes[i - 1], longitudes[i - 1], latitudes[i], longitudes[i]);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,61 @@
+package com.michaldrozd.frauddetection.benchmarks;
+
+import com.michaldrozd.frauddetection.location.LocationTrack;
+import com.michaldrozd.frauddetection.location.LocationVelocityEngine;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The location rules (the distance sweep behind {@code isLocationBasedFraud}, and impossible travel) over synthetic
+ * tracks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocationBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int trackSize;
+
+    private LocationVelocityEngine engine;
+    private LocationTrack track;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        long[] times = new long[trackSize];
+        double[] trackLatitudes = new double[trackSize];
+        double[] trackLongitudes = new double[trackSize];
+        for (int i = 0; i < trackSize; i++) {
+            times[i] = random.nextLong(3_600_000);
+            trackLatitudes[i] = 48.14 + random.nextDouble(-0.01, 0.01);
+            trackLongitudes[i] = 17.10 + random.nextDouble(-0.01, 0.01);
+        }
+        track = LocationTrack.of(times, trackLatitudes, trackLongitudes);
+        engine = new LocationVelocityEngine(true, 900, 100);
+    }
+
+    @Benchmark
+    public boolean exceedsDistance() {
+        return engine.exceedsDistance(track, 3_600_000, 500);
+    }
+
+    @Benchmark
+    public boolean isImpossibleTravel() {
+        return engine.isImpossibleTravel(track);
+    }
+}
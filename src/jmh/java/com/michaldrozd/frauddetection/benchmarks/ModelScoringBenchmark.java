@@ -0,0 +1,44 @@
+package com.michaldrozd.frauddetection.benchmarks;
+
+import com.michaldrozd.frauddetection.ai.FraudFeatures;
+import com.michaldrozd.frauddetection.ai.FraudModelScorer;
+import com.michaldrozd.frauddetection.window.WindowAggregate;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scoring an aggregated window with the fraud model.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelScoringBenchmark {
+
+    private FraudModelScorer scorer;
+    private WindowAggregate window;
+    private final double[] features = new double[FraudFeatures.SIZE];
+    private final double[] posteriori = new double[2];
+
+    @Setup
+    public void setUp() {
+        scorer = BenchmarkData.scorer(true);
+        window = WindowAggregate.fromTransactions(BenchmarkData.transactions(100, 42));
+    }
+
+    @Benchmark
+    public double score() {
+        return scorer.score(window, 60, features, posteriori);
+    }
+}
@@ -0,0 +1,95 @@
+package com.michaldrozd.frauddetection.benchmarks;
+
+import com.michaldrozd.frauddetection.domain.Transaction;
+import com.michaldrozd.frauddetection.dto.FraudCheckThresholds;
+import com.michaldrozd.frauddetection.services.FraudDetectionService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the single-user fraud check ({@code checkUser}) with {@value #REQUESTS_IN_FLIGHT} checks in flight at
+ * once, each waiting for simulated Neo4j round trips, served on request threads as the web tier serves them.
+ * <p>
+ * With {@code threads=platform} the checks queue for a pool of {@value #PLATFORM_REQUEST_THREADS} platform threads,
+ * Tomcat's default maximum, and their lookups run on a fixed pool; with {@code threads=virtual} every check and every
+ * lookup gets a virtual thread of its own, as with {@code spring.threads.virtual.enabled=true}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class RequestThreadsBenchmark {
+
+    private static final int REQUESTS_IN_FLIGHT = 2_000;
+    private static final int PLATFORM_REQUEST_THREADS = 200;
+
+    @Param({"1000"})
+    private long latencyMicros;
+
+    @Param({"platform", "virtual"})
+    private String threads;
+
+    private FraudDetectionService fraudDetectionService;
+    private FraudCheckThresholds thresholds;
+    private ExecutorService requestExecutor;
+
+    @Setup
+    public void setUp() {
+        boolean virtualThreads = threads.equals("virtual");
+        List<Transaction> transactions = BenchmarkData.transactions(100, 42);
+        fraudDetectionService = BenchmarkData.fraudDetectionService(
+            BenchmarkData.repository(userId -> {
+                BenchmarkData.simulateRoundTrip(latencyMicros);
+                return transactions;
+            }),
+            BenchmarkData.userRepository(latencyMicros),
+            BenchmarkData.scorer(false),
+            true,
+            virtualThreads
+        );
+        thresholds = new FraudCheckThresholds(Integer.MAX_VALUE, 60, Double.MAX_VALUE, 500);
+        requestExecutor = virtualThreads
+            ? Executors.newVirtualThreadPerTaskExecutor()
+            : Executors.newFixedThreadPool(PLATFORM_REQUEST_THREADS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        requestExecutor.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS_IN_FLIGHT)
+    public int checkUsers() throws Exception {
+        List<Future<?>> checks = new ArrayList<>(REQUESTS_IN_FLIGHT);
+        for (long userId = 0; userId < REQUESTS_IN_FLIGHT; userId++) {
+            long id = userId;
+            checks.add(requestExecutor.submit(() -> fraudDetectionService.checkUser(id, thresholds)));
+        }
+        int completed = 0;
+        for (Future<?> check : checks) {
+            check.get();
+            completed++;
+        }
+        return completed;
+    }
+}
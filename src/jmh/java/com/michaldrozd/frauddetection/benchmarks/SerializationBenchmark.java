@@ -0,0 +1,62 @@
+package com.michaldrozd.frauddetection.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.michaldrozd.frauddetection.dto.BatchFraudCheckResult;
+import com.michaldrozd.frauddetection.dto.FraudReason;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * JSON serialization of the fraud check responses, with an object mapper configured the way Spring MVC configures it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"100", "10000"})
+    private int batchSize;
+
+    private ObjectMapper objectMapper;
+    private Map<String, Boolean> singleResponse;
+    private List<BatchFraudCheckResult> batchResponse;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        singleResponse = Map.of("isFraudulent", true);
+        batchResponse = new ArrayList<>(batchSize);
+        for (long userId = 0; userId < batchSize; userId++) {
+            boolean fraudulent = userId % 10 == 0;
+            batchResponse.add(new BatchFraudCheckResult(userId, true, fraudulent, fraudulent ? FraudReason.TRANSACTION_COUNT : null));
+        }
+    }
+
+    @Benchmark
+    public byte[] singleCheck() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(singleResponse);
+    }
+
+    @Benchmark
+    public byte[] batchCheck() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(batchResponse);
+    }
+}
@@ -0,0 +1,83 @@
+package com.michaldrozd.frauddetection.ai;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+
+/**
+ * Fixed-capacity matrix of feature rows stored in one flat primitive buffer, either on the heap or off-heap.
+ * <p>
+ * Unlike {@code double[][]}, there is no array object per row, and an off-heap matrix does not count against the
+ * heap at all.
+ */
+public class FeatureMatrix {
+
+    private final int columns;
+    private final int capacity;
+    private final double[] heap;
+    private final DoubleBuffer offHeap;
+    private int rows;
+
+    public FeatureMatrix(int capacity, int columns, boolean offHeap) {
+        this.columns = columns;
+        this.capacity = capacity;
+        long size = (long) capacity * columns;
+        if (size > Integer.MAX_VALUE / (offHeap ? Double.BYTES : 1)) {
+            throw new IllegalArgumentException("Feature matrix of " + capacity + " x " + columns + " is too large");
+        }
+        this.heap = offHeap ? null : new double[(int) size];
+        this.offHeap = offHeap ? ByteBuffer.allocateDirect((int) size * Double.BYTES).order(ByteOrder.nativeOrder()).asDoubleBuffer() : null;
+    }
+
+    /**
+     * Appends a row, or overwrites the row at {@code index} if it is below the current number of rows.
+     */
+    public void set(int index, double[] row) {
+        int offset = index * columns;
+        if (heap != null) {
+            System.arraycopy(row, 0, heap, offset, columns);
+        } else {
+            offHeap.put(offset, row, 0, columns);
+        }
+        rows = Math.max(rows, index + 1);
+    }
+
+    /**
+     * Copies the row at {@code index} into the given buffer.
+     */
+    public void get(int index, double[] row) {
+        int offset = index * columns;
+        if (heap != null) {
+            System.arraycopy(heap, offset, row, 0, columns);
+        } else {
+            offHeap.get(offset, row, 0, columns);
+        }
+    }
+
+    /**
+     * Materializes the rows as {@code double[][]}, as required by the batch fit.
+     */
+    public double[][] toArray() {
+        double[][] array = new double[rows][columns];
+        for (int i = 0; i < rows; i++) {
+            get(i, array[i]);
+        }
+        return array;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public boolean isFull() {
+        return rows == capacity;
+    }
+}
@@ -0,0 +1,44 @@
+package com.michaldrozd.frauddetection.ai;
+
+import com.michaldrozd.frauddetection.window.WindowAggregate;
+
+/**
+ * Feature vector of the fraud model, built from a user's aggregated window.
+ * <p>
+ * The training data must contain the {@link #FEATURE_COLUMNS} and the {@link #LABEL_COLUMN}, computed the same way for
+ * labelled historical windows.
+ */
+public final class FraudFeatures {
+
+    public static final String LABEL_COLUMN = "is_fraud";
+
+    public static final String[] FEATURE_COLUMNS = {
+        "transaction_count",
+        "total_amount",
+        "distinct_devices",
+        "distinct_credit_cards",
+        "location_count",
+        "time_window_minutes"
+    };
+
+    public static final int SIZE = FEATURE_COLUMNS.length;
+
+    private FraudFeatures() {
+    }
+
+    /**
+     * Writes the features of the window into the given buffer, without allocating.
+     *
+     * @param window              The aggregated window of the User's recent transactions.
+     * @param timeWindowInMinutes The length of the window in minutes.
+     * @param features            The buffer of at least {@link #SIZE} elements to fill.
+     */
+    public static void fill(WindowAggregate window, int timeWindowInMinutes, double[] features) {
+        features[0] = window.getTransactionCount();
+        features[1] = window.getTotalAmount();
+        features[2] = window.getDistinctDevices();
+        features[3] = window.getDistinctCreditCards();
+        features[4] = window.getLocationCount();
+        features[5] = timeWindowInMinutes;
+    }
+}
@@ -0,0 +1,113 @@
+package com.michaldrozd.frauddetection.ai;
+
+import com.michaldrozd.frauddetection.ai.FraudModelTrainer.TrainingResult;
+import jakarta.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import smile.classification.LogisticRegression;
+
+/**
+ * Periodically retrains the fraud model in the background and hot-swaps it into the {@link FraudModelScorer}.
+ * <p>
+ * Training runs on a dedicated single-thread executor, never on the scheduler or a request thread, and at most one
+ * training runs at a time. Every run reads a fresh snapshot of the labelled training data, fits a model on its train
+ * split and evaluates both the new and the current model on the same held-out test split, which neither was trained on
+ * as the rows are split by a hash of their line in every run. The new model only replaces
+ * the current one if it reaches the minimum accuracy and is at least as accurate as the current model.
+ */
+@Slf4j
+@Service
+public class FraudModelRetrainingService {
+
+    private final FraudModelScorer fraudModelScorer;
+    private final boolean enabled;
+    private final double minAccuracy;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final ExecutorService trainingExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "fraud-model-training");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    public FraudModelRetrainingService(FraudModelScorer fraudModelScorer,
+                                       @Value("${fraud-detection.model.retraining.enabled:false}") boolean enabled,
+                                       @Value("${fraud-detection.model.retraining.min-accuracy:0.8}") double minAccuracy) {
+        this.fraudModelScorer = fraudModelScorer;
+        this.enabled = enabled;
+        this.minAccuracy = minAccuracy;
+    }
+
+    @Scheduled(initialDelayString = "${fraud-detection.model.retraining.interval-ms:3600000}",
+               fixedDelayString = "${fraud-detection.model.retraining.interval-ms:3600000}")
+    public void scheduleRetraining() {
+        if (enabled && !fraudModelScorer.getTrainingDataPath().isBlank()) {
+            triggerRetraining();
+        }
+    }
+
+    /**
+     * Starts a retraining run in the background, unless one is running already.
+     *
+     * @return true if a run was started; false if one is still running.
+     */
+    public boolean triggerRetraining() {
+        if (!running.compareAndSet(false, true)) {
+            log.info("Fraud model retraining is still running, skipping this run");
+            return false;
+        }
+        try {
+            trainingExecutor.execute(() -> {
+                try {
+                    retrain();
+                } finally {
+                    running.set(false);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            running.set(false);
+            return false;
+        }
+    }
+
+    void retrain() {
+        String trainingDataPath = fraudModelScorer.getTrainingDataPath();
+        try {
+            long start = System.nanoTime();
+            TrainingResult result = FraudModelTrainer.train(trainingDataPath, TrainingColumnSpec.fraudFeatures(), fraudModelScorer.getTrainingOptions());
+            LogisticRegression current = fraudModelScorer.getModel();
+            double currentAccuracy = current != null
+                ? FraudModelTrainer.accuracy(current, result.getTestFeatures(), result.getTestLabels(), result.getTestRows())
+                : Double.NEGATIVE_INFINITY;
+            log.info("Retrained fraud model in {} ms, held-out accuracy {} (current model {})",
+                (System.nanoTime() - start) / 1_000_000, result.getAccuracy(), currentAccuracy);
+
+            if (result.getAccuracy() < minAccuracy) {
+                log.warn("Retrained fraud model is below the minimum accuracy of {}, keeping the current model", minAccuracy);
+                return;
+            }
+            if (result.getAccuracy() < currentAccuracy) {
+                log.warn("Retrained fraud model is less accurate than the current model, keeping the current model");
+                return;
+            }
+
+            fraudModelScorer.swapModel(result.getModel());
+            FraudModelTrainer.saveModel(result.getModel(), fraudModelScorer.getModelPath());
+            log.info("Swapped in the retrained fraud model");
+        } catch (Exception e) {
+            log.error("Failed to retrain the fraud model from {}, keeping the current model", trainingDataPath, e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        trainingExecutor.shutdownNow();
+    }
+}
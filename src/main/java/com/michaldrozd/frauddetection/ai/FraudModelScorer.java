@@ -0,0 +1,163 @@
+package com.michaldrozd.frauddetection.ai;
+
+import com.michaldrozd.frauddetection.ai.TrainingDataLoader.TrainingOptions;
+import com.michaldrozd.frauddetection.window.WindowAggregate;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import smile.classification.LogisticRegression;
+
+/**
+ * Scores aggregated windows with the trained fraud model.
+ * <p>
+ * The model is loaded at startup from a serialized artifact. Only if the artifact does not exist yet and training data
+ * is configured, the model is trained with {@link FraudModelTrainer} and the artifact is written for the next start.
+ * Without a model, {@link #isAvailable()} is false and the fraud check simply skips the model stage.
+ * <p>
+ * Callers pass in the feature and posterior buffers, so the hot path can reuse those of its evaluation instead of
+ * allocating them per score.
+ */
+@Slf4j
+@Component
+public class FraudModelScorer {
+
+    private final boolean enabled;
+    private final Path modelPath;
+    private final String trainingDataPath;
+    private final double threshold;
+    private final TrainingOptions trainingOptions;
+    private final Timer loadTimer;
+    private final Timer scoreTimer;
+
+    private volatile LogisticRegression model;
+
+    public FraudModelScorer(@Value("${fraud-detection.model.enabled:true}") boolean enabled,
+                            @Value("${fraud-detection.model.path:fraud-model.ser}") String modelPath,
+                            @Value("${fraud-detection.model.training-data:}") String trainingDataPath,
+                            @Value("${fraud-detection.model.threshold:0.5}") double threshold,
+                            @Value("${fraud-detection.model.training.max-train-rows:1000000}") int maxTrainRows,
+                            @Value("${fraud-detection.model.training.max-test-rows:300000}") int maxTestRows,
+                            @Value("${fraud-detection.model.training.test-fraction:0.3}") double testFraction,
+                            @Value("${fraud-detection.model.training.off-heap:false}") boolean offHeap,
+                            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.modelPath = Path.of(modelPath);
+        this.trainingDataPath = trainingDataPath;
+        this.threshold = threshold;
+        this.trainingOptions = new TrainingOptions(maxTrainRows, maxTestRows, testFraction, offHeap);
+        this.loadTimer = Timer.builder("fraud.model.load")
+                              .description("Time to load (or train) the fraud model at startup")
+                              .register(meterRegistry);
+        this.scoreTimer = Timer.builder("fraud.model.score")
+                               .description("Time to score a window with the fraud model")
+                               .publishPercentiles(0.5, 0.99)
+                               .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void loadModel() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            if (Files.exists(modelPath)) {
+                model = FraudModelTrainer.loadModel(modelPath);
+                log.info("Loaded fraud model from {}", modelPath);
+            } else if (!trainingDataPath.isBlank()) {
+                model = FraudModelTrainer.train(trainingDataPath, TrainingColumnSpec.fraudFeatures(), trainingOptions).getModel();
+                FraudModelTrainer.saveModel(model, modelPath);
+                log.info("Trained fraud model from {} and saved it to {}", trainingDataPath, modelPath);
+            } else {
+                log.warn("No fraud model at {} and no training data configured, model scoring is disabled", modelPath);
+            }
+        } catch (Exception e) {
+            log.error("Failed to load the fraud model, model scoring is disabled", e);
+        } finally {
+            loadTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public boolean isAvailable() {
+        return model != null;
+    }
+
+    /**
+     * @return The model currently used for scoring, or {@code null} if there is none.
+     */
+    public LogisticRegression getModel() {
+        return model;
+    }
+
+    /**
+     * Atomically replaces the model used for scoring.
+     * <p>
+     * The model is published through a volatile field and every score reads it exactly once, so in-flight scoring
+     * never blocks and always completes with either the old or the new, fully trained model.
+     *
+     * @param newModel The fully trained model to score with from now on.
+     */
+    public void swapModel(LogisticRegression newModel) {
+        model = newModel;
+    }
+
+    public Path getModelPath() {
+        return modelPath;
+    }
+
+    public String getTrainingDataPath() {
+        return trainingDataPath;
+    }
+
+    public TrainingOptions getTrainingOptions() {
+        return trainingOptions;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Scores the window with the current model, in freshly allocated buffers.
+     *
+     * @see #score(WindowAggregate, int, double[], double[])
+     */
+    public double score(WindowAggregate window, int timeWindowInMinutes) {
+        return score(window, timeWindowInMinutes, new double[FraudFeatures.SIZE], new double[2]);
+    }
+
+    /**
+     * Scores the window with the current model.
+     *
+     * @param window              The aggregated window of the User's recent transactions.
+     * @param timeWindowInMinutes The length of the window in minutes.
+     * @param features            The buffer of at least {@link FraudFeatures#SIZE} elements to fill with the features.
+     * @param posteriori          The buffer of 2 elements to fill with the posterior probabilities.
+     *
+     * @return The probability that the window is fraudulent, or {@code NaN} if there is no model.
+     */
+    public double score(WindowAggregate window, int timeWindowInMinutes, double[] features, double[] posteriori) {
+        LogisticRegression current = model;
+        if (current == null) {
+            return Double.NaN;
+        }
+        long start = System.nanoTime();
+        FraudFeatures.fill(window, timeWindowInMinutes, features);
+        current.predict(features, posteriori);
+        scoreTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return posteriori[1];
+    }
+
+    /**
+     * @return true if the window scores at or above the configured threshold; false if it does not or there is no model.
+     */
+    public boolean isFraudulent(WindowAggregate window, int timeWindowInMinutes, double[] features, double[] posteriori) {
+        return score(window, timeWindowInMinutes, features, posteriori) >= threshold;
+    }
+}
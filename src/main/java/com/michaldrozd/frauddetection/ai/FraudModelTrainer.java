@@ -1,56 +1,121 @@
 package com.michaldrozd.frauddetection.ai;
 
-import java.net.URISyntaxException;
-import org.apache.commons.csv.CSVFormat;
+import com.michaldrozd.frauddetection.ai.TrainingDataLoader.TrainingData;
+import com.michaldrozd.frauddetection.ai.TrainingDataLoader.TrainingOptions;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import smile.classification.LogisticRegression;
-import smile.data.DataFrame;
-import smile.io.Read;
-import smile.math.MathEx;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.nio.file.Paths;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
 /**
  * A class that trains a model for fraud detection.
  * TODO: in progress!
  */
 public class FraudModelTrainer {
-    public static LogisticRegression trainModel(String dataPath) throws IOException, URISyntaxException {
-        DataFrame data = Read.csv(Paths.get(dataPath).toString(), CSVFormat.DEFAULT.withDelimiter(',').withFirstRecordAsHeader());
-        // TODO: add column spec!
 
-        int[] labels = data.column("is_fraud").toIntArray();
-        double[][] features = data.drop("is_fraud").toArray();
+    public static final TrainingOptions DEFAULT_OPTIONS = new TrainingOptions(1_000_000, 300_000, 0.3, false);
 
-        int n = features.length;
-        int[] indices = MathEx.permutate(n);
-        int trainSize = (int) (0.7 * n);
-
-        double[][] trainFeatures = new double[trainSize][];
-        int[] trainLabels = new int[trainSize];
-        double[][] testFeatures = new double[n - trainSize][];
-        int[] testLabels = new int[n - trainSize];
+    public static LogisticRegression trainModel(String dataPath) throws IOException {
+        return train(dataPath, TrainingColumnSpec.fraudFeatures(), DEFAULT_OPTIONS).getModel();
+    }
 
-        for (int i = 0; i < trainSize; i++) {
-            trainFeatures[i] = features[indices[i]];
-            trainLabels[i] = labels[indices[i]];
+    /**
+     * Trains a model on a 70/30 train/test split of the data and evaluates it on the held-out test split.
+     * <p>
+     * The data is streamed by the {@link TrainingDataLoader}: the split is assigned per row by a hash of its line in a
+     * single pass, and both splits are bounded reservoir samples held in flat feature matrices, so the file may be
+     * larger than the heap. As the split does not change between runs, the test split of a later run never contains
+     * rows an earlier model was trained on, and both can be compared on it.
+     *
+     * @param dataPath   The path of the labelled training data (CSV).
+     * @param columnSpec The feature and label columns to read.
+     * @param options    The sample sizes, test fraction and storage of the loaded data.
+     *
+     * @return The trained model along with its held-out test split and accuracy.
+     */
+    public static TrainingResult train(String dataPath, TrainingColumnSpec columnSpec, TrainingOptions options) throws IOException {
+        // Only the reservoir sampling is seeded, the split is the same in every run
+        TrainingData data = new TrainingDataLoader(columnSpec, options).load(Path.of(dataPath), System.nanoTime());
+        if (data.getTrainRows() == 0 || data.getTestRows() == 0) {
+            throw new IOException("Not enough training data in " + dataPath + ": " + data.getTotalRows() + " rows");
         }
 
-        for (int i = trainSize; i < n; i++) {
-            testFeatures[i - trainSize] = features[indices[i]];
-            testLabels[i - trainSize] = labels[indices[i]];
-        }
+        LogisticRegression model = LogisticRegression.fit(data.getTrain().toArray(), data.sampledTrainLabels());
+
+        return new TrainingResult(model, data.getTest(), data.getTestLabels(), data.getTestRows(),
+            accuracy(model, data.getTest(), data.getTestLabels(), data.getTestRows()));
+    }
 
-        LogisticRegression model = LogisticRegression.fit(trainFeatures, trainLabels);
+    /**
+     * Computes the accuracy of a model on a labelled test set, reading the rows through a single reused buffer.
+     *
+     * @param model        The model to evaluate.
+     * @param testFeatures The features of the test set.
+     * @param testLabels   The labels of the test set.
+     * @param testRows     The number of test rows.
+     *
+     * @return The share of correctly predicted labels, between 0 and 1.
+     */
+    public static double accuracy(LogisticRegression model, FeatureMatrix testFeatures, int[] testLabels, int testRows) {
+        double[] row = new double[testFeatures.getColumns()];
+        int correct = 0;
+        for (int i = 0; i < testRows; i++) {
+            testFeatures.get(i, row);
+            if (model.predict(row) == testLabels[i]) {
+                correct++;
+            }
+        }
+        return testRows == 0 ? 0 : (double) correct / testRows;
+    }
 
-        int[] predictions = new int[testLabels.length];
-        for (int i = 0; i < testLabels.length; i++) {
-            predictions[i] = model.predict(testFeatures[i]);
+    /**
+     * Writes the trained model to a serialized artifact, so that it does not have to be retrained on every start.
+     *
+     * @param model     The trained model.
+     * @param modelPath The path of the artifact to write.
+     */
+    public static void saveModel(LogisticRegression model, Path modelPath) throws IOException {
+        // Write next to the artifact and move it in place, so that a crash never leaves a truncated artifact behind
+        Path temporaryPath = modelPath.resolveSibling(modelPath.getFileName() + ".tmp");
+        try (ObjectOutputStream output = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath)))) {
+            output.writeObject(model);
         }
+        Files.move(temporaryPath, modelPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
 
-//        double accuracy = MathEx.accuracy(testLabels, predictions);
-//        System.out.printf("Model accuracy: %.2f%%\n", 100.0 * accuracy);
+    /**
+     * Reads a model written by {@link #saveModel(LogisticRegression, Path)}.
+     *
+     * @param modelPath The path of the artifact to read.
+     *
+     * @return The trained model.
+     */
+    public static LogisticRegression loadModel(Path modelPath) throws IOException {
+        try (ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(modelPath)))) {
+            return (LogisticRegression) input.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Model artifact " + modelPath + " is not compatible with this version", e);
+        }
+    }
 
-        return model;
+    /**
+     * A trained model along with the held-out split it was evaluated on.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class TrainingResult {
+        private final LogisticRegression model;
+        private final FeatureMatrix testFeatures;
+        private final int[] testLabels;
+        private final int testRows;
+        private final double accuracy;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,34 @@
+package com.michaldrozd.frauddetection.ai;
+
+import java.util.Arrays;
+import lombok.Getter;
+
+/**
+ * Declares which columns of the training data are read as features (in which order) and which one is the label.
+ * <p>
+ * Columns not named here are skipped while parsing, so the training file may carry any number of extra columns.
+ */
+@Getter
+public class TrainingColumnSpec {
+
+    private final String[] featureColumns;
+    private final String labelColumn;
+    private final byte delimiter;
+
+    public TrainingColumnSpec(String[] featureColumns, String labelColumn, char delimiter) {
+        this.featureColumns = Arrays.copyOf(featureColumns, featureColumns.length);
+        this.labelColumn = labelColumn;
+        this.delimiter = (byte) delimiter;
+    }
+
+    /**
+     * @return The spec of the fraud model: the {@link FraudFeatures} columns and the {@code is_fraud} label, comma separated.
+     */
+    public static TrainingColumnSpec fraudFeatures() {
+        return new TrainingColumnSpec(FraudFeatures.FEATURE_COLUMNS, FraudFeatures.LABEL_COLUMN, ',');
+    }
+
+    public int getFeatureCount() {
+        return featureColumns.length;
+    }
+}
@@ -0,0 +1,326 @@
+package com.michaldrozd.frauddetection.ai;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Streams labelled training data from a CSV file into bounded, flat feature matrices in a single pass.
+ * <p>
+ * The file is memory-mapped in chunks cut at line boundaries and parsed byte by byte, so it never has to fit in the
+ * heap. Every row is assigned to the test split by a hash of its line, so a row stays in the same split across loads
+ * however the file grows or is reordered, and a model trained on an earlier load is never evaluated on rows it was
+ * trained on. Both splits are reservoir samples of bounded size: memory depends on the configured sample sizes, not on
+ * the size of the file.
+ * <p>
+ * Fields are plain (unquoted) numbers; the columns are declared by a {@link TrainingColumnSpec}. Rows with a blank or
+ * malformed value in a declared column are skipped and counted.
+ */
+@Slf4j
+public class TrainingDataLoader {
+
+    private static final int CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private final TrainingColumnSpec columnSpec;
+    private final TrainingOptions options;
+
+    public TrainingDataLoader(TrainingColumnSpec columnSpec, TrainingOptions options) {
+        this.columnSpec = columnSpec;
+        this.options = options;
+    }
+
+    /**
+     * Loads the training data.
+     *
+     * @param dataPath The path of the CSV file, with a header line naming the columns.
+     * @param seed     The seed of the reservoir sampling; the train/test assignment does not depend on it.
+     *
+     * @return The sampled train and test splits.
+     */
+    public TrainingData load(Path dataPath, long seed) throws IOException {
+        int featureCount = columnSpec.getFeatureCount();
+        TrainingData data = new TrainingData(
+            new FeatureMatrix(options.getMaxTrainRows(), featureCount, options.isOffHeap()), new int[options.getMaxTrainRows()],
+            new FeatureMatrix(options.getMaxTestRows(), featureCount, options.isOffHeap()), new int[options.getMaxTestRows()]
+        );
+        RowSink sink = new RowSink(data, seed, options.getTestFraction());
+
+        try (FileChannel channel = FileChannel.open(dataPath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            LineParser parser = null;
+            while (position < size) {
+                long length = Math.min(CHUNK_SIZE, size - position);
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int end = (int) length;
+                if (position + length < size) {
+                    // Only parse up to the last complete line, the rest is mapped again with the next chunk
+                    while (end > 0 && chunk.get(end - 1) != '\n') {
+                        end--;
+                    }
+                    if (end == 0) {
+                        throw new IOException("Line longer than " + CHUNK_SIZE + " bytes at offset " + position + " of " + dataPath);
+                    }
+                }
+
+                int lineStart = 0;
+                for (int i = 0; i <= end; i++) {
+                    if (i == end || chunk.get(i) == '\n') {
+                        int lineEnd = i > lineStart && chunk.get(i - 1) == '\r' ? i - 1 : i;
+                        if (lineEnd > lineStart) {
+                            if (parser == null) {
+                                parser = new LineParser(header(chunk, lineStart, lineEnd));
+                            } else {
+                                if (parser.parse(chunk, lineStart, lineEnd)) {
+                                    sink.accept(parser.row, parser.label, hash(chunk, lineStart, lineEnd));
+                                } else {
+                                    data.skippedRows++;
+                                }
+                            }
+                        }
+                        lineStart = i + 1;
+                    }
+                }
+                position += end;
+            }
+        }
+        if (data.skippedRows > 0) {
+            log.warn("Skipped {} rows of {} with a blank or malformed value", data.skippedRows, dataPath);
+        }
+        return data;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the bytes of a line.
+     */
+    private static long hash(MappedByteBuffer chunk, int start, int end) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ (chunk.get(i) & 0xff)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private String[] header(MappedByteBuffer chunk, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        chunk.get(start, bytes);
+        String[] columns = new String(bytes, StandardCharsets.UTF_8).split(String.valueOf((char) columnSpec.getDelimiter()), -1);
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = columns[i].trim().replace("\"", "");
+        }
+        return columns;
+    }
+
+    /**
+     * Parses data lines into a reusable row buffer, picking only the declared columns.
+     */
+    private class LineParser {
+        // For every column of the file: the index in the feature row, LABEL, or SKIP
+        private static final int LABEL = -1;
+        private static final int SKIP = -2;
+
+        private final int[] targets;
+        private final double[] row = new double[columnSpec.getFeatureCount()];
+        private int label;
+
+        LineParser(String[] header) throws IOException {
+            targets = new int[header.length];
+            Arrays.fill(targets, SKIP);
+            for (int feature = 0; feature < columnSpec.getFeatureCount(); feature++) {
+                targets[indexOf(header, columnSpec.getFeatureColumns()[feature])] = feature;
+            }
+            targets[indexOf(header, columnSpec.getLabelColumn())] = LABEL;
+        }
+
+        /**
+         * @return false if a declared column holds a blank or malformed value.
+         */
+        boolean parse(MappedByteBuffer chunk, int start, int end) throws IOException {
+            int column = 0;
+            int fieldStart = start;
+            for (int i = start; i <= end; i++) {
+                if (i == end || chunk.get(i) == columnSpec.getDelimiter()) {
+                    if (column < targets.length && targets[column] != SKIP) {
+                        double value;
+                        try {
+                            value = parseDouble(chunk, fieldStart, i);
+                        } catch (NumberFormatException e) {
+                            return false;
+                        }
+                        if (targets[column] == LABEL) {
+                            label = (int) value;
+                        } else {
+                            row[targets[column]] = value;
+                        }
+                    }
+                    column++;
+                    fieldStart = i + 1;
+                }
+            }
+            if (column < targets.length) {
+                throw new IOException("Expected " + targets.length + " columns, found " + column);
+            }
+            return true;
+        }
+
+        private static int indexOf(String[] header, String column) throws IOException {
+            for (int i = 0; i < header.length; i++) {
+                if (header[i].equals(column)) {
+                    return i;
+                }
+            }
+            throw new IOException("Column " + column + " not found in training data header " + Arrays.toString(header));
+        }
+    }
+
+    /**
+     * Parses plain decimals ({@code -12.345}) without allocating, and falls back to {@link Double#parseDouble(String)}
+     * for anything else (exponents, NaN, quoted values).
+     *
+     * @throws NumberFormatException If the field is blank or not a number.
+     */
+    static double parseDouble(MappedByteBuffer chunk, int start, int end) {
+        int i = start;
+        while (i < end && chunk.get(i) == ' ') {
+            i++;
+        }
+        boolean negative = i < end && chunk.get(i) == '-';
+        if (negative || (i < end && chunk.get(i) == '+')) {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        boolean simple = i < end;
+        for (; i < end; i++) {
+            byte b = chunk.get(i);
+            if (b >= '0' && b <= '9' && digits < 18) {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (fraction) {
+                    scale++;
+                }
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else if (b == ' ') {
+                break;
+            } else {
+                simple = false;
+                break;
+            }
+        }
+        if (simple && digits > 0) {
+            double value = scale == 0 ? mantissa : mantissa / Math.pow(10, scale);
+            return negative ? -value : value;
+        }
+
+        byte[] bytes = new byte[end - start];
+        chunk.get(start, bytes);
+        return Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII).trim().replace("\"", ""));
+    }
+
+    /**
+     * Assigns rows to the train or test split and keeps a uniform reservoir sample of each.
+     */
+    private static class RowSink {
+        private final TrainingData data;
+        private final SplittableRandom random;
+        private final long testThreshold;
+        private long trainSeen;
+        private long testSeen;
+
+        RowSink(TrainingData data, long seed, double testFraction) {
+            this.data = data;
+            this.random = new SplittableRandom(seed);
+            this.testThreshold = (long) (testFraction * (1L << 53));
+        }
+
+        void accept(double[] row, int label, long lineHash) {
+            data.totalRows++;
+            if ((mix(lineHash) >>> 11) < testThreshold) {
+                testSeen++;
+                data.testRows = reservoir(data.test, data.testLabels, testSeen, row, label);
+            } else {
+                trainSeen++;
+                data.trainRows = reservoir(data.train, data.trainLabels, trainSeen, row, label);
+            }
+        }
+
+        private int reservoir(FeatureMatrix matrix, int[] labels, long seen, double[] row, int label) {
+            if (!matrix.isFull()) {
+                int index = matrix.getRows();
+                matrix.set(index, row);
+                labels[index] = label;
+            } else {
+                long slot = random.nextLong(seen);
+                if (slot < matrix.getCapacity()) {
+                    matrix.set((int) slot, row);
+                    labels[(int) slot] = label;
+                }
+            }
+            return matrix.getRows();
+        }
+
+        // SplitMix64 finalizer
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            return z ^ (z >>> 31);
+        }
+    }
+
+    /**
+     * Options of the training data loader.
+     */
+    @Getter
+    public static class TrainingOptions {
+        private final int maxTrainRows;
+        private final int maxTestRows;
+        private final double testFraction;
+        private final boolean offHeap;
+
+        public TrainingOptions(int maxTrainRows, int maxTestRows, double testFraction, boolean offHeap) {
+            this.maxTrainRows = maxTrainRows;
+            this.maxTestRows = maxTestRows;
+            this.testFraction = testFraction;
+            this.offHeap = offHeap;
+        }
+    }
+
+    /**
+     * The sampled train and test splits of the training data.
+     */
+    @Getter
+    public static class TrainingData {
+        private final FeatureMatrix train;
+        private final int[] trainLabels;
+        private final FeatureMatrix test;
+        private final int[] testLabels;
+        private int trainRows;
+        private int testRows;
+        private long totalRows;
+        private long skippedRows;
+
+        TrainingData(FeatureMatrix train, int[] trainLabels, FeatureMatrix test, int[] testLabels) {
+            this.train = train;
+            this.trainLabels = trainLabels;
+            this.test = test;
+            this.testLabels = testLabels;
+        }
+
+        /**
+         * @return The labels of the sampled train rows, trimmed to their number.
+         */
+        public int[] sampledTrainLabels() {
+            return Arrays.copyOf(trainLabels, trainRows);
+        }
+    }
+}
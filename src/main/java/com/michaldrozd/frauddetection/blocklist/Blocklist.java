@@ -0,0 +1,290 @@
+package com.michaldrozd.frauddetection.blocklist;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Locale;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Blocklist of Devices, Credit Cards and Merchants known to be compromised.
+ * <p>
+ * Identifiers are kept as 64-bit hashes of their kind and value in an {@link OffHeapHashSet}, so millions of them cost
+ * no heap and no garbage collection, and most lookups of identifiers that are not blocked end in its Bloom filter. A
+ * false positive needs two identifiers with the same 64-bit hash, which is unlikely even for hundreds of millions of
+ * them. The hash is SipHash-2-4 keyed with {@code fraud-detection.blocklist.secret}, so card numbers cannot be
+ * recovered from the file by hashing every possible number without the secret; changing the secret requires
+ * blocking the identifiers again.
+ * <p>
+ * At startup the file at {@code fraud-detection.blocklist.path} is mapped, which takes milliseconds regardless of its
+ * size. Updates are applied in memory and written back to the file by {@link #save()}.
+ */
+@Slf4j
+@Component
+public class Blocklist {
+
+    private final boolean enabled;
+    private final Path path;
+    private final int expectedEntries;
+    private final String secret;
+    private long key0;
+    private long key1;
+    private final Counter[] hitCounters;
+    private volatile OffHeapHashSet entries;
+
+    public Blocklist(@Value("${fraud-detection.blocklist.enabled:false}") boolean enabled,
+                     @Value("${fraud-detection.blocklist.path:blocklist.bin}") String path,
+                     @Value("${fraud-detection.blocklist.expected-entries:1000000}") int expectedEntries,
+                     @Value("${fraud-detection.blocklist.secret:}") String secret,
+                     MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.path = Paths.get(path);
+        this.expectedEntries = expectedEntries;
+        this.secret = secret;
+        BlocklistType[] types = BlocklistType.values();
+        this.hitCounters = new Counter[types.length];
+        for (BlocklistType type : types) {
+            hitCounters[type.ordinal()] = Counter.builder("fraud.blocklist.hits")
+                                                 .description("Lookups of blocked identifiers")
+                                                 .tag("type", type.name().toLowerCase(Locale.ROOT))
+                                                 .register(meterRegistry);
+        }
+        Gauge.builder("fraud.blocklist.size", this, Blocklist::size).description("Blocked identifiers").register(meterRegistry);
+    }
+
+    @PostConstruct
+    void load() {
+        if (!enabled) {
+            return;
+        }
+        if (secret.isBlank()) {
+            throw new IllegalStateException("The blocklist needs fraud-detection.blocklist.secret");
+        }
+        ByteBuffer key = ByteBuffer.wrap(sha256(secret)).order(ByteOrder.LITTLE_ENDIAN);
+        key0 = key.getLong();
+        key1 = key.getLong();
+        long start = System.nanoTime();
+        if (Files.exists(path)) {
+            try {
+                entries = OffHeapHashSet.map(path);
+                log.info("Mapped {} blocked identifiers from {} in {} ms", entries.size(), path, (System.nanoTime() - start) / 1_000_000);
+                return;
+            } catch (IOException | IllegalArgumentException e) {
+                log.error("Failed to load the blocklist from {}, starting with an empty one", path, e);
+            }
+        }
+        entries = OffHeapHashSet.allocate(expectedEntries);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Checks an identifier against the blocklist.
+     *
+     * @param type       The kind of the identifier.
+     * @param identifier The identifier, or {@code null}.
+     *
+     * @return true if the identifier is blocked.
+     */
+    public boolean isBlocked(BlocklistType type, String identifier) {
+        OffHeapHashSet current = entries;
+        if (current == null || identifier == null || !current.contains(hash(type, identifier))) {
+            return false;
+        }
+        hitCounters[type.ordinal()].increment();
+        return true;
+    }
+
+    /**
+     * Checks the identifiers of a transaction against the blocklist. Every identifier is optional.
+     *
+     * @return The kind of the first blocked identifier, or {@code null} if none is blocked.
+     */
+    public BlocklistType findBlocked(String deviceId, String creditCardNumber, String merchantId) {
+        if (entries == null) {
+            return null;
+        }
+        if (isBlocked(BlocklistType.DEVICE, deviceId)) {
+            return BlocklistType.DEVICE;
+        }
+        if (isBlocked(BlocklistType.CREDIT_CARD, creditCardNumber)) {
+            return BlocklistType.CREDIT_CARD;
+        }
+        if (isBlocked(BlocklistType.MERCHANT, merchantId)) {
+            return BlocklistType.MERCHANT;
+        }
+        return null;
+    }
+
+    /**
+     * Checks the Devices and Credit Cards of a window against the blocklist.
+     *
+     * @param deviceIds         The {@code deviceId}s of the Devices.
+     * @param creditCardNumbers The numbers of the Credit Cards.
+     *
+     * @return The kind of the first blocked identifier, or {@code null} if none is blocked.
+     */
+    public BlocklistType findBlocked(String[] deviceIds, String[] creditCardNumbers) {
+        if (entries == null) {
+            return null;
+        }
+        for (String deviceId : deviceIds) {
+            if (isBlocked(BlocklistType.DEVICE, deviceId)) {
+                return BlocklistType.DEVICE;
+            }
+        }
+        for (String creditCardNumber : creditCardNumbers) {
+            if (isBlocked(BlocklistType.CREDIT_CARD, creditCardNumber)) {
+                return BlocklistType.CREDIT_CARD;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Blocks identifiers of one kind.
+     *
+     * @return The number of identifiers that were not blocked yet.
+     */
+    public synchronized int add(BlocklistType type, Collection<String> identifiers) {
+        checkEnabled();
+        int added = 0;
+        for (String identifier : identifiers) {
+            if (entries.isFull()) {
+                grow();
+            }
+            if (entries.add(hash(type, identifier))) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Unblocks identifiers of one kind.
+     *
+     * @return The number of identifiers that were blocked.
+     */
+    public synchronized int remove(BlocklistType type, Collection<String> identifiers) {
+        checkEnabled();
+        int removed = 0;
+        for (String identifier : identifiers) {
+            if (entries.remove(hash(type, identifier))) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Writes the blocklist to its file, replacing the file atomically.
+     */
+    public synchronized void save() throws IOException {
+        checkEnabled();
+        Path directory = path.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            entries.save(temporary);
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        log.info("Saved {} blocked identifiers to {}", entries.size(), path);
+    }
+
+    public int size() {
+        OffHeapHashSet current = entries;
+        return current != null ? current.size() : 0;
+    }
+
+    public long sizeInBytes() {
+        OffHeapHashSet current = entries;
+        return current != null ? current.sizeInBytes() : 0;
+    }
+
+    private void grow() {
+        // Lookups keep using the current set until the copy is complete
+        OffHeapHashSet grown = OffHeapHashSet.allocate(Math.max(expectedEntries, entries.size() * 2));
+        entries.copyTo(grown);
+        entries = grown;
+    }
+
+    private void checkEnabled() {
+        if (entries == null) {
+            throw new IllegalStateException("The blocklist is disabled");
+        }
+    }
+
+    /**
+     * Keyed SipHash-2-4 of the kind and the UTF-8 bytes of an identifier.
+     */
+    long hash(BlocklistType type, String identifier) {
+        byte[] value = identifier.getBytes(StandardCharsets.UTF_8);
+        byte[] message = new byte[value.length + 1];
+        message[0] = (byte) type.ordinal();
+        System.arraycopy(value, 0, message, 1, value.length);
+        return sipHash24(key0, key1, message);
+    }
+
+    static long sipHash24(long key0, long key1, byte[] message) {
+        long[] v = {key0 ^ 0x736f6d6570736575L, key1 ^ 0x646f72616e646f6dL, key0 ^ 0x6c7967656e657261L, key1 ^ 0x7465646279746573L};
+        ByteBuffer in = ByteBuffer.wrap(message).order(ByteOrder.LITTLE_ENDIAN);
+        while (in.remaining() >= Long.BYTES) {
+            compress(v, in.getLong());
+        }
+        long last = (long) message.length << 56;
+        for (int i = 0; in.hasRemaining(); i++) {
+            last |= (in.get() & 0xffL) << (8 * i);
+        }
+        compress(v, last);
+        v[2] ^= 0xff;
+        for (int round = 0; round < 4; round++) {
+            sipRound(v);
+        }
+        return v[0] ^ v[1] ^ v[2] ^ v[3];
+    }
+
+    private static void compress(long[] v, long word) {
+        v[3] ^= word;
+        sipRound(v);
+        sipRound(v);
+        v[0] ^= word;
+    }
+
+    private static void sipRound(long[] v) {
+        v[0] += v[1];
+        v[1] = Long.rotateLeft(v[1], 13) ^ v[0];
+        v[0] = Long.rotateLeft(v[0], 32);
+        v[2] += v[3];
+        v[3] = Long.rotateLeft(v[3], 16) ^ v[2];
+        v[0] += v[3];
+        v[3] = Long.rotateLeft(v[3], 21) ^ v[0];
+        v[2] += v[1];
+        v[1] = Long.rotateLeft(v[1], 17) ^ v[2];
+        v[2] = Long.rotateLeft(v[2], 32);
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
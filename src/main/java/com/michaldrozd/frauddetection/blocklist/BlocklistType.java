@@ -0,0 +1,19 @@
+package com.michaldrozd.frauddetection.blocklist;
+
+/**
+ * The kinds of identifiers on the blocklist.
+ */
+public enum BlocklistType {
+    /**
+     * {@code Device.deviceId}.
+     */
+    DEVICE,
+    /**
+     * {@code CreditCard.number}.
+     */
+    CREDIT_CARD,
+    /**
+     * {@code Merchant.merchantId}.
+     */
+    MERCHANT
+}
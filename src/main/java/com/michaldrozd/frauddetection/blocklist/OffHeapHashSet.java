@@ -0,0 +1,265 @@
+package com.michaldrozd.frauddetection.blocklist;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Set of 64-bit hashes in a single off-heap buffer: an open-addressing table behind a Bloom filter.
+ * <p>
+ * The buffer is also the file format, so a saved set is loaded by mapping its file, without reading or rehashing it:
+ * <pre>
+ * header (32 bytes): magic, table capacity, Bloom filter words, hash functions, size, used slots
+ * table:             capacity longs, linear probing, 0 = empty, 1 = removed
+ * Bloom filter:      words longs
+ * </pre>
+ * Lookups are lock-free and see every write that completed before them; writes must be serialized by the owner. The
+ * table does not grow: the owner copies it into a bigger one when {@link #isFull()}. Removed hashes leave tombstones in
+ * the table and their bits in the Bloom filter until the set is copied.
+ */
+class OffHeapHashSet {
+
+    private static final long MAGIC = 0x4644424c4f434b31L;
+    private static final int HEADER_BYTES = 32;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int BLOOM_WORDS_OFFSET = 12;
+    private static final int HASH_FUNCTIONS_OFFSET = 16;
+    private static final int SIZE_OFFSET = 20;
+    private static final int USED_OFFSET = 24;
+
+    private static final long EMPTY = 0;
+    private static final long REMOVED = 1;
+    private static final int HASH_FUNCTIONS = 7;
+    private static final int BLOOM_BITS_PER_ENTRY = 10;
+
+    // Aligned long access to a direct buffer, with acquire/release semantics for the lock-free lookups
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private final int bloomWords;
+    private final int hashFunctions;
+    private final int bloomOffset;
+    private int size;
+    private int used;
+
+    private OffHeapHashSet(ByteBuffer buffer) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.capacity() < HEADER_BYTES || buffer.getLong(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a blocklist file");
+        }
+        this.capacity = buffer.getInt(CAPACITY_OFFSET);
+        this.bloomWords = buffer.getInt(BLOOM_WORDS_OFFSET);
+        this.hashFunctions = buffer.getInt(HASH_FUNCTIONS_OFFSET);
+        this.size = buffer.getInt(SIZE_OFFSET);
+        this.used = buffer.getInt(USED_OFFSET);
+        this.bloomOffset = HEADER_BYTES + capacity * Long.BYTES;
+        if (Integer.bitCount(capacity) != 1 || Integer.bitCount(bloomWords) != 1
+            || buffer.capacity() != bloomOffset + bloomWords * Long.BYTES) {
+            throw new IllegalArgumentException("Corrupt blocklist file");
+        }
+    }
+
+    /**
+     * Allocates an empty set for the given number of hashes, outside of the heap.
+     */
+    static OffHeapHashSet allocate(int expectedSize) {
+        int capacity = powerOfTwoAtLeast((long) Math.max(expectedSize, 16) * 2);
+        int bloomWords = powerOfTwoAtLeast((long) Math.max(expectedSize, 16) * BLOOM_BITS_PER_ENTRY / Long.SIZE);
+        long bytes = HEADER_BYTES + ((long) capacity + bloomWords) * Long.BYTES;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A blocklist of " + expectedSize + " entries does not fit into one buffer");
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(0, MAGIC);
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        buffer.putInt(BLOOM_WORDS_OFFSET, bloomWords);
+        buffer.putInt(HASH_FUNCTIONS_OFFSET, HASH_FUNCTIONS);
+        return new OffHeapHashSet(buffer);
+    }
+
+    /**
+     * Maps a set saved by {@link #save(Path)}. The mapping is private (copy-on-write): changes to the set are not
+     * written to the file, but the file must be writable.
+     */
+    static OffHeapHashSet map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Blocklist file " + path + " is too large");
+            }
+            return new OffHeapHashSet(channel.map(FileChannel.MapMode.PRIVATE, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes the set to a file that {@link #map(Path)} can load.
+     */
+    void save(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer content = buffer.duplicate().clear();
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+            channel.force(true);
+        }
+    }
+
+    boolean contains(long hash) {
+        long key = key(hash);
+        if (!mightContain(key)) {
+            return false;
+        }
+        int mask = capacity - 1;
+        for (int slot = (int) key & mask; ; slot = (slot + 1) & mask) {
+            long stored = (long) LONGS.getAcquire(buffer, slotOffset(slot));
+            if (stored == key) {
+                return true;
+            }
+            if (stored == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Adds a hash. The set must not be {@link #isFull() full}.
+     *
+     * @return true if the hash was not in the set.
+     */
+    boolean add(long hash) {
+        return addKey(key(hash));
+    }
+
+    private boolean addKey(long key) {
+        int mask = capacity - 1;
+        int free = -1;
+        int slot = (int) key & mask;
+        for (long stored; (stored = (long) LONGS.getAcquire(buffer, slotOffset(slot))) != EMPTY; slot = (slot + 1) & mask) {
+            if (stored == key) {
+                return false;
+            }
+            if (stored == REMOVED && free < 0) {
+                free = slot;
+            }
+        }
+        // The Bloom filter must cover the hash before lookups can find it in the table
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = bloomBit(key, i);
+            int offset = bloomOffset + (int) (bit >>> 6) * Long.BYTES;
+            LONGS.setRelease(buffer, offset, (long) LONGS.getAcquire(buffer, offset) | (1L << bit));
+        }
+        if (free < 0) {
+            free = slot;
+            used++;
+        }
+        LONGS.setRelease(buffer, slotOffset(free), key);
+        size++;
+        writeCounts();
+        return true;
+    }
+
+    /**
+     * Removes a hash.
+     *
+     * @return true if the hash was in the set.
+     */
+    boolean remove(long hash) {
+        long key = key(hash);
+        int mask = capacity - 1;
+        for (int slot = (int) key & mask; ; slot = (slot + 1) & mask) {
+            long stored = (long) LONGS.getAcquire(buffer, slotOffset(slot));
+            if (stored == EMPTY) {
+                return false;
+            }
+            if (stored == key) {
+                LONGS.setRelease(buffer, slotOffset(slot), REMOVED);
+                size--;
+                writeCounts();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Whether the table is half full, counting removed slots, and the set must be copied before adding to it.
+     */
+    boolean isFull() {
+        return (used + 1) * 2L > capacity;
+    }
+
+    /**
+     * Adds every hash of this set to another one, leaving out the removed slots.
+     */
+    void copyTo(OffHeapHashSet target) {
+        for (int slot = 0; slot < capacity; slot++) {
+            long stored = (long) LONGS.getAcquire(buffer, slotOffset(slot));
+            if (stored != EMPTY && stored != REMOVED) {
+                target.addKey(stored);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Size of the set in bytes, off the heap.
+     */
+    long sizeInBytes() {
+        return buffer.capacity();
+    }
+
+    private boolean mightContain(long key) {
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = bloomBit(key, i);
+            long word = (long) LONGS.getAcquire(buffer, bloomOffset + (int) (bit >>> 6) * Long.BYTES);
+            if ((word & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Double hashing: the i-th bit is h1 + i * h2, with h2 odd so the bits differ for every i
+    private long bloomBit(long key, int i) {
+        long h2 = mix(key) | 1;
+        return (key + i * h2) & ((long) bloomWords * Long.SIZE - 1);
+    }
+
+    private void writeCounts() {
+        buffer.putInt(SIZE_OFFSET, size);
+        buffer.putInt(USED_OFFSET, used);
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_BYTES + slot * Long.BYTES;
+    }
+
+    // Hashes are spread over the table by their low bits; 0 and 1 mark empty and removed slots
+    private static long key(long hash) {
+        long key = mix(hash);
+        return key == EMPTY || key == REMOVED ? key + 2 : key;
+    }
+
+    private static int powerOfTwoAtLeast(long value) {
+        long power = Long.highestOneBit(Math.max(2, value - 1)) << 1;
+        if (power > 1 << 30) {
+            throw new IllegalArgumentException("A blocklist of this size does not fit into one buffer");
+        }
+        return (int) power;
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
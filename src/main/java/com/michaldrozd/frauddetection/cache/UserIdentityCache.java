@@ -0,0 +1,106 @@
+package com.michaldrozd.frauddetection.cache;
+
+import com.michaldrozd.frauddetection.concurrency.RepositoryBulkhead;
+import com.michaldrozd.frauddetection.dto.UserIdentity;
+import com.michaldrozd.frauddetection.repositories.UserRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cache of the identities of existing users, for the existence check of the fraud checks.
+ * <p>
+ * Misses are answered by {@link UserRepository#findUserIdentity(Long)} through the {@link RepositoryBulkhead}, which
+ * loads neither the User entity nor any of its relationships. Users that do not exist are not cached, so a user
+ * created by the ingestion is found right away. Users are never deleted by the application, so an entry only goes
+ * stale if the user is deleted in the graph directly, for at most {@code fraud-detection.user-cache.ttl-ms}.
+ * <p>
+ * Hits and misses are exposed as the {@code fraud.user-cache.requests} counter, tagged by {@code result}.
+ */
+@Component
+public class UserIdentityCache {
+
+    private final UserRepository userRepository;
+    private final RepositoryBulkhead repositoryBulkhead;
+    private final TtlCache<Long, UserIdentity> identities;
+
+    public UserIdentityCache(UserRepository userRepository,
+                             RepositoryBulkhead repositoryBulkhead,
+                             MeterRegistry meterRegistry,
+                             @Value("${fraud-detection.user-cache.ttl-ms:60000}") long ttlMillis,
+                             @Value("${fraud-detection.user-cache.max-size:100000}") int maxSize) {
+        this.userRepository = userRepository;
+        this.repositoryBulkhead = repositoryBulkhead;
+        this.identities = new TtlCache<>(ttlMillis, maxSize);
+
+        FunctionCounter.builder("fraud.user-cache.requests", identities, TtlCache::getHits)
+                       .description("User identity lookups answered by the cache")
+                       .tag("result", "hit")
+                       .register(meterRegistry);
+        FunctionCounter.builder("fraud.user-cache.requests", identities, TtlCache::getMisses)
+                       .description("User identity lookups answered by the repository")
+                       .tag("result", "miss")
+                       .register(meterRegistry);
+        Gauge.builder("fraud.user-cache.size", identities, TtlCache::size).description("Cached user identities").register(meterRegistry);
+    }
+
+    /**
+     * Finds the identity of a user, from the cache or the repository.
+     *
+     * @return The identity, or an empty optional if the user does not exist.
+     */
+    public Optional<UserIdentity> find(Long userId) {
+        return Optional.ofNullable(identities.get(userId, id -> repositoryBulkhead.call(() -> userRepository.findUserIdentity(id)).orElse(null)));
+    }
+
+    /**
+     * Finds the identities of many users, from the cache, and with a single repository call for those it misses.
+     *
+     * @return The identities by User ID, without the users that do not exist.
+     */
+    public Map<Long, UserIdentity> findAll(Collection<Long> userIds) {
+        Map<Long, UserIdentity> found = new HashMap<>();
+        List<Long> misses = new ArrayList<>();
+        for (Long userId : userIds) {
+            UserIdentity identity = identities.getIfPresent(userId);
+            if (identity != null) {
+                found.put(userId, identity);
+            } else {
+                misses.add(userId);
+            }
+        }
+        if (!misses.isEmpty()) {
+            for (UserIdentity identity : repositoryBulkhead.call(() -> userRepository.findUserIdentities(misses))) {
+                identities.put(identity.getUserId(), identity);
+                found.put(identity.getUserId(), identity);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return The cached identity of a user, or an empty optional if it is not cached.
+     */
+    public Optional<UserIdentity> getIfPresent(Long userId) {
+        return Optional.ofNullable(identities.getIfPresent(userId));
+    }
+
+    /**
+     * Caches the identity of a user loaded by another path, e.g. the reactive repository.
+     */
+    public void put(UserIdentity identity) {
+        identities.put(identity.getUserId(), identity);
+    }
+
+    public void invalidate(Long userId) {
+        identities.invalidate(userId);
+    }
+}
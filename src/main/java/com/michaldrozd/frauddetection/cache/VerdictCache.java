@@ -0,0 +1,251 @@
+package com.michaldrozd.frauddetection.cache;
+
+import com.michaldrozd.frauddetection.concurrency.LookupExecutor;
+import com.michaldrozd.frauddetection.dto.FraudCheckThresholds;
+import com.michaldrozd.frauddetection.dto.FraudVerdict;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Single-flight coalescing and a short-lived cache of fraud check verdicts, keyed by user and thresholds.
+ * <p>
+ * A check arriving while an identical one is in flight waits for its verdict instead of querying and evaluating the
+ * window again, and a verdict is reused for {@code fraud-detection.verdict-cache.ttl-ms} afterwards. Every user has a
+ * generation, bumped by {@link #invalidate(Long)} when a new transaction of the user is written; verdicts and flights
+ * remember the generation they started at and are only reused while it is current, so no verdict computed before a
+ * transaction was written is handed out after it. Generations are kept in a fixed number of stripes, so users sharing
+ * a stripe invalidate each other's verdicts, which costs a recomputation but never a stale verdict.
+ * <p>
+ * Checks answered from the cache or by a coalesced flight are counted as {@code fraud.verdict-cache.requests}, tagged
+ * by {@code result}.
+ */
+@Component
+public class VerdictCache {
+
+    private static final int GENERATION_STRIPES = 1 << 14;
+
+    private final boolean enabled;
+    private final TtlCache<CheckKey, CachedVerdict> verdicts;
+    private final ConcurrentMap<CheckKey, Flight> flights = new ConcurrentHashMap<>();
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    private final Counter hitCounter;
+    private final Counter coalescedCounter;
+    private final Counter missCounter;
+    private final Counter invalidationCounter;
+
+    public VerdictCache(@Value("${fraud-detection.verdict-cache.enabled:true}") boolean enabled,
+                        @Value("${fraud-detection.verdict-cache.ttl-ms:500}") long ttlMillis,
+                        @Value("${fraud-detection.verdict-cache.max-size:100000}") int maxSize,
+                        MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        // Without a TTL, identical checks are still coalesced, but no verdict outlives its flight
+        this.verdicts = new TtlCache<>(ttlMillis, ttlMillis > 0 ? maxSize : 0);
+
+        this.hitCounter = requestCounter("hit", "Fraud checks answered by a cached verdict", meterRegistry);
+        this.coalescedCounter = requestCounter("coalesced", "Fraud checks answered by an identical check in flight", meterRegistry);
+        this.missCounter = requestCounter("miss", "Fraud checks evaluated", meterRegistry);
+        this.invalidationCounter = Counter.builder("fraud.verdict-cache.invalidations")
+                                          .description("Users whose verdicts were invalidated by a new transaction")
+                                          .register(meterRegistry);
+    }
+
+    private static Counter requestCounter(String result, String description, MeterRegistry meterRegistry) {
+        return Counter.builder("fraud.verdict-cache.requests").description(description).tag("result", result).register(meterRegistry);
+    }
+
+    /**
+     * Answers a check from the cache, from an identical check in flight, or else by running it.
+     *
+     * @param userId     The ID of the User to check.
+     * @param thresholds The thresholds of the check.
+     * @param check      Runs the check, answering an empty optional if the user does not exist.
+     *
+     * @return The verdict of the check.
+     */
+    public Optional<FraudVerdict> check(Long userId, FraudCheckThresholds thresholds, Supplier<Optional<FraudVerdict>> check) {
+        if (!enabled) {
+            return check.get();
+        }
+        CheckKey key = new CheckKey(userId, thresholds);
+        long generation = generations.get(stripe(userId));
+        CachedVerdict cached = verdicts.getIfPresent(key);
+        if (cached != null && cached.generation == generation) {
+            hitCounter.increment();
+            return cached.verdict;
+        }
+
+        Flight flight = new Flight(generation);
+        Flight current = flights.putIfAbsent(key, flight);
+        while (current != null) {
+            if (current.generation == generation) {
+                coalescedCounter.increment();
+                return LookupExecutor.join(current.verdict);
+            }
+            // The flight in progress started before a newer transaction was written, so this check cannot share it
+            if (flights.replace(key, current, flight)) {
+                break;
+            }
+            current = flights.putIfAbsent(key, flight);
+        }
+
+        missCounter.increment();
+        try {
+            Optional<FraudVerdict> verdict = check.get();
+            verdicts.put(key, new CachedVerdict(verdict, generation));
+            flight.verdict.complete(verdict);
+            return verdict;
+        } catch (RuntimeException e) {
+            flight.verdict.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    /**
+     * Answers many checks from the cache, or else by running the remaining ones at once.
+     * <p>
+     * Verdicts of the checks run are cached as those of {@link #check(Long, FraudCheckThresholds, Supplier)}, under
+     * the generation their user had before they ran. The checks are not coalesced with identical ones in flight.
+     *
+     * @param thresholdsByUser The thresholds of the check of every User.
+     * @param check            Runs the checks of the given users, answering no verdict for users that do not exist.
+     *
+     * @return The verdicts by User ID, without the users that do not exist.
+     */
+    public Map<Long, FraudVerdict> checkAll(Map<Long, FraudCheckThresholds> thresholdsByUser,
+                                            Function<Map<Long, FraudCheckThresholds>, Map<Long, FraudVerdict>> check) {
+        if (!enabled) {
+            return check.apply(thresholdsByUser);
+        }
+        Map<Long, FraudVerdict> answered = new HashMap<>();
+        Map<Long, FraudCheckThresholds> misses = new LinkedHashMap<>();
+        Map<Long, Long> missGenerations = new HashMap<>();
+        thresholdsByUser.forEach((userId, thresholds) -> {
+            long generation = generations.get(stripe(userId));
+            CachedVerdict cached = verdicts.getIfPresent(new CheckKey(userId, thresholds));
+            if (cached != null && cached.generation == generation) {
+                hitCounter.increment();
+                cached.verdict.ifPresent(verdict -> answered.put(userId, verdict));
+            } else {
+                misses.put(userId, thresholds);
+                missGenerations.put(userId, generation);
+            }
+        });
+        if (misses.isEmpty()) {
+            return answered;
+        }
+
+        missCounter.increment(misses.size());
+        Map<Long, FraudVerdict> checked = check.apply(misses);
+        misses.forEach((userId, thresholds) -> {
+            FraudVerdict verdict = checked.get(userId);
+            verdicts.put(new CheckKey(userId, thresholds), new CachedVerdict(Optional.ofNullable(verdict), missGenerations.get(userId)));
+            if (verdict != null) {
+                answered.put(userId, verdict);
+            }
+        });
+        return answered;
+    }
+
+    /**
+     * Invalidates the cached verdicts and the flights in progress of a user, after a new transaction of the user was
+     * written.
+     */
+    public void invalidate(Long userId) {
+        if (enabled && userId != null) {
+            generations.incrementAndGet(stripe(userId));
+            invalidationCounter.increment();
+        }
+    }
+
+    /**
+     * Invalidates the cached verdicts and the flights in progress of all users, after the blocklist changed.
+     */
+    public void invalidateAll() {
+        if (enabled) {
+            for (int i = 0; i < generations.length(); i++) {
+                generations.incrementAndGet(i);
+            }
+            invalidationCounter.increment();
+        }
+    }
+
+    public int size() {
+        return verdicts.size();
+    }
+
+    private static int stripe(long userId) {
+        long z = userId;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return (int) (z ^ (z >>> 31)) & (GENERATION_STRIPES - 1);
+    }
+
+    private static final class CheckKey {
+        private final long userId;
+        private final int transactionsThreshold;
+        private final int timeWindowInMinutes;
+        private final double amountThreshold;
+        private final int distanceThresholdInKm;
+
+        CheckKey(long userId, FraudCheckThresholds thresholds) {
+            this.userId = userId;
+            this.transactionsThreshold = thresholds.getTransactionsThreshold();
+            this.timeWindowInMinutes = thresholds.getTimeWindowInMinutes();
+            this.amountThreshold = thresholds.getAmountThreshold();
+            this.distanceThresholdInKm = thresholds.getDistanceThresholdInKm();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CheckKey other
+                && userId == other.userId
+                && transactionsThreshold == other.transactionsThreshold
+                && timeWindowInMinutes == other.timeWindowInMinutes
+                && Double.compare(amountThreshold, other.amountThreshold) == 0
+                && distanceThresholdInKm == other.distanceThresholdInKm;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = Long.hashCode(userId);
+            hash = 31 * hash + transactionsThreshold;
+            hash = 31 * hash + timeWindowInMinutes;
+            hash = 31 * hash + Double.hashCode(amountThreshold);
+            return 31 * hash + distanceThresholdInKm;
+        }
+    }
+
+    private static final class CachedVerdict {
+        private final Optional<FraudVerdict> verdict;
+        private final long generation;
+
+        CachedVerdict(Optional<FraudVerdict> verdict, long generation) {
+            this.verdict = verdict;
+            this.generation = generation;
+        }
+    }
+
+    private static final class Flight {
+        private final CompletableFuture<Optional<FraudVerdict>> verdict = new CompletableFuture<>();
+        private final long generation;
+
+        Flight(long generation) {
+            this.generation = generation;
+        }
+    }
+}
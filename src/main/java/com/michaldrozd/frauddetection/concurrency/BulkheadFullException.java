@@ -0,0 +1,13 @@
+package com.michaldrozd.frauddetection.concurrency;
+
+/**
+ * Thrown when a {@link RepositoryBulkhead} has no permit available within its acquire timeout.
+ */
+public class BulkheadFullException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public BulkheadFullException(String message) {
+        super(message);
+    }
+}
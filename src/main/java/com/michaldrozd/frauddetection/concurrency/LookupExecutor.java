@@ -0,0 +1,81 @@
+package com.michaldrozd.frauddetection.concurrency;
+
+import jakarta.annotation.PreDestroy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs independent blocking lookups of a request concurrently with the request thread.
+ * <p>
+ * Lookups run on a new virtual thread each when requests are served on virtual threads
+ * ({@code spring.threads.virtual.enabled}), and on a fixed pool of daemon threads otherwise. With concurrent lookups
+ * disabled, {@link #supply(Supplier)} runs the lookup right away on the calling thread, which makes the request perform
+ * its round trips one after the other again.
+ */
+@Slf4j
+@Component
+public class LookupExecutor {
+
+    private final ExecutorService executor;
+
+    public LookupExecutor(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                          @Value("${fraud-detection.web.concurrent-lookups:true}") boolean concurrentLookups,
+                          @Value("${fraud-detection.web.lookup-threads:64}") int lookupThreads) {
+        if (!concurrentLookups) {
+            this.executor = null;
+        } else if (virtualThreads) {
+            this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("fraud-lookup-", 0).factory());
+        } else {
+            AtomicInteger threadNumber = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(lookupThreads, runnable -> {
+                Thread thread = new Thread(runnable, "fraud-lookup-" + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Starts a lookup.
+     *
+     * @return The future result of the lookup, already completed if concurrent lookups are disabled.
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> lookup) {
+        if (executor == null) {
+            try {
+                return CompletableFuture.completedFuture(lookup.get());
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return CompletableFuture.supplyAsync(lookup, executor);
+    }
+
+    /**
+     * Waits for a lookup, rethrowing its failure as it was thrown.
+     */
+    public static <T> T join(CompletableFuture<T> lookup) {
+        try {
+            return lookup.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
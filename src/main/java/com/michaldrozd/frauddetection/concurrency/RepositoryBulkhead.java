@@ -0,0 +1,69 @@
+package com.michaldrozd.frauddetection.concurrency;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Caps the number of repository calls in flight on the request path.
+ * <p>
+ * Every call holds a Neo4j session, and so a connection of the driver's pool, until it returns. With requests served
+ * on virtual threads nothing else limits how many calls are made at once, so the bulkhead keeps them below the pool
+ * size: a call waits up to the acquire timeout for a permit and then fails fast with a {@link BulkheadFullException}
+ * instead of queueing inside the driver.
+ */
+@Component
+public class RepositoryBulkhead {
+
+    private final Semaphore permits;
+    private final int maxConcurrentCalls;
+    private final long acquireTimeoutMillis;
+    private final Counter rejectedCounter;
+
+    public RepositoryBulkhead(@Value("${fraud-detection.bulkhead.max-concurrent-calls:64}") int maxConcurrentCalls,
+                              @Value("${fraud-detection.bulkhead.acquire-timeout-ms:1000}") long acquireTimeoutMillis,
+                              MeterRegistry meterRegistry) {
+        this.permits = new Semaphore(maxConcurrentCalls);
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.rejectedCounter = Counter.builder("fraud.bulkhead.rejected")
+                                      .description("Repository calls rejected because the bulkhead was full")
+                                      .register(meterRegistry);
+        Gauge.builder("fraud.bulkhead.in-flight", permits, semaphore -> maxConcurrentCalls - semaphore.availablePermits())
+             .description("Repository calls in flight")
+             .register(meterRegistry);
+    }
+
+    /**
+     * Runs a repository call once a permit is available.
+     *
+     * @param call The repository call.
+     *
+     * @return The result of the call.
+     *
+     * @throws BulkheadFullException if no permit became available within the acquire timeout.
+     */
+    public <T> T call(Supplier<T> call) {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BulkheadFullException("Interrupted while waiting for a repository permit");
+        }
+        if (!acquired) {
+            rejectedCounter.increment();
+            throw new BulkheadFullException("All " + maxConcurrentCalls + " repository permits are in use");
+        }
+        try {
+            return call.get();
+        } finally {
+            permits.release();
+        }
+    }
+}
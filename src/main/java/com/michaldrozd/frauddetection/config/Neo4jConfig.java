@@ -1,13 +1,19 @@
 package com.michaldrozd.frauddetection.config;
 
 import org.neo4j.driver.Driver;
+import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
 import org.springframework.data.neo4j.config.AbstractNeo4jConfig;
+import org.springframework.data.neo4j.repository.ReactiveNeo4jRepository;
 import org.springframework.data.neo4j.repository.config.EnableNeo4jRepositories;
+import org.springframework.data.neo4j.repository.config.EnableReactiveNeo4jRepositories;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
 @Configuration
-@EnableNeo4jRepositories(basePackages = "com.michaldrozd.frauddetection.repositories")
+@EnableNeo4jRepositories(basePackages = "com.michaldrozd.frauddetection.repositories",
+                         excludeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = ReactiveNeo4jRepository.class))
+@EnableReactiveNeo4jRepositories(basePackages = "com.michaldrozd.frauddetection.repositories.reactive")
 @EnableTransactionManagement
 public class Neo4jConfig {
 }
\ No newline at end of file
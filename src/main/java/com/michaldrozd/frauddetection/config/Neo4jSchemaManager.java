@@ -0,0 +1,187 @@
+package com.michaldrozd.frauddetection.config;
+
+import com.michaldrozd.frauddetection.repositories.HotQueries;
+import com.michaldrozd.frauddetection.repositories.HotQueries.HotQuery;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.summary.Plan;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * Versioned, idempotent Neo4j schema bootstrap.
+ * <p>
+ * The applied schema version is kept in a {@code SchemaVersion} node, and only newer {@link SchemaMigration}s are
+ * applied on startup. All statements use {@code IF NOT EXISTS}, so restarts and re-applied migrations are no-ops.
+ * <p>
+ * The schema is applied by an {@link ApplicationRunner}, and startup waits until the indexes are populated (logging
+ * their progress). Runners run once the application is live and before it accepts traffic, so meanwhile the liveness
+ * probe ({@code /actuator/health/liveness}) is up and the readiness probe ({@code /actuator/health/readiness}) keeps
+ * the load balancer from sending traffic while the hot queries still run full label scans. Finally, every one of
+ * {@link HotQueries} is checked with {@code EXPLAIN} to use the indexes.
+ */
+@Slf4j
+@Component
+public class Neo4jSchemaManager implements ApplicationRunner {
+
+    private static final String SCHEMA_NAME = "fraud-detection";
+
+    static final List<SchemaMigration> MIGRATIONS = List.of(
+        new SchemaMigration(1, "Uniqueness constraints on User.id and Transaction.id",
+            "CREATE CONSTRAINT user_id_unique IF NOT EXISTS FOR (u:User) REQUIRE u.id IS UNIQUE",
+            "CREATE CONSTRAINT transaction_id_unique IF NOT EXISTS FOR (t:Transaction) REQUIRE t.id IS UNIQUE"),
+        new SchemaMigration(2, "Range indexes for the window queries, business id lookups and product categories",
+            "CREATE RANGE INDEX transaction_date IF NOT EXISTS FOR (t:Transaction) ON (t.transactionDate)",
+            "CREATE RANGE INDEX transaction_transaction_id IF NOT EXISTS FOR (t:Transaction) ON (t.transactionId)",
+            "CREATE RANGE INDEX device_device_id IF NOT EXISTS FOR (d:Device) ON (d.deviceId)",
+            "CREATE RANGE INDEX credit_card_number IF NOT EXISTS FOR (c:CreditCard) ON (c.number)",
+            "CREATE RANGE INDEX merchant_merchant_id IF NOT EXISTS FOR (m:Merchant) ON (m.merchantId)",
+            "CREATE RANGE INDEX product_category IF NOT EXISTS FOR (p:Product) ON (p.category)"),
+        new SchemaMigration(3, "Range index for replaying ingested transactions after restoring a snapshot",
+            "CREATE RANGE INDEX transaction_ingested_at IF NOT EXISTS FOR (t:Transaction) ON (t.ingestedAt)"),
+        new SchemaMigration(4, "Range indexes for the minute and hour rollups of the transactions",
+            "CREATE RANGE INDEX user_rollup_bucket IF NOT EXISTS FOR (r:UserRollup) ON (r.userId, r.resolution, r.bucketStart)",
+            "CREATE RANGE INDEX user_rollup_time IF NOT EXISTS FOR (r:UserRollup) ON (r.resolution, r.bucketStart)",
+            "CREATE RANGE INDEX global_rollup_bucket IF NOT EXISTS FOR (r:GlobalRollup) ON (r.resolution, r.bucketStart, r.stripe)"),
+        // Concurrent ingestion batches MERGE the same nodes, which only a uniqueness constraint keeps from being
+        // created twice; a constraint cannot be created next to an index on the same property
+        new SchemaMigration(5, "Uniqueness constraints on the business ids MERGEd by the ingestion",
+            "DROP INDEX transaction_transaction_id IF EXISTS",
+            "CREATE CONSTRAINT transaction_transaction_id_unique IF NOT EXISTS FOR (t:Transaction) REQUIRE t.transactionId IS UNIQUE",
+            "DROP INDEX device_device_id IF EXISTS",
+            "CREATE CONSTRAINT device_device_id_unique IF NOT EXISTS FOR (d:Device) REQUIRE d.deviceId IS UNIQUE",
+            "DROP INDEX credit_card_number IF EXISTS",
+            "CREATE CONSTRAINT credit_card_number_unique IF NOT EXISTS FOR (c:CreditCard) REQUIRE c.number IS UNIQUE",
+            "DROP INDEX merchant_merchant_id IF EXISTS",
+            "CREATE CONSTRAINT merchant_merchant_id_unique IF NOT EXISTS FOR (m:Merchant) REQUIRE m.merchantId IS UNIQUE"),
+        new SchemaMigration(6, "Uniqueness constraints on the rollup buckets MERGEd by the ingestion",
+            "DROP INDEX user_rollup_bucket IF EXISTS",
+            "CREATE CONSTRAINT user_rollup_bucket_unique IF NOT EXISTS FOR (r:UserRollup) REQUIRE (r.userId, r.resolution, r.bucketStart) IS UNIQUE",
+            "DROP INDEX global_rollup_bucket IF EXISTS",
+            "CREATE CONSTRAINT global_rollup_bucket_unique IF NOT EXISTS FOR (r:GlobalRollup) REQUIRE (r.resolution, r.bucketStart, r.stripe) IS UNIQUE"),
+        // Transactions are replayed by the stamp of the batch that created them, which writing them again keeps
+        new SchemaMigration(7, "Range index for replaying created transactions after restoring a snapshot",
+            "DROP INDEX transaction_ingested_at IF EXISTS",
+            "CREATE RANGE INDEX transaction_first_ingested_at IF NOT EXISTS FOR (t:Transaction) ON (t.firstIngestedAt)")
+    );
+
+    private final Driver neo4jDriver;
+    private final boolean enabled;
+    private final long indexTimeoutMillis;
+    private final long progressIntervalMillis;
+
+    public Neo4jSchemaManager(Driver neo4jDriver,
+                              @Value("${fraud-detection.schema.enabled:true}") boolean enabled,
+                              @Value("${fraud-detection.schema.index-timeout-seconds:600}") long indexTimeoutSeconds,
+                              @Value("${fraud-detection.schema.progress-interval-seconds:5}") long progressIntervalSeconds) {
+        this.neo4jDriver = neo4jDriver;
+        this.enabled = enabled;
+        this.indexTimeoutMillis = TimeUnit.SECONDS.toMillis(indexTimeoutSeconds);
+        this.progressIntervalMillis = TimeUnit.SECONDS.toMillis(progressIntervalSeconds);
+    }
+
+    /**
+     * Applies pending migrations, waits for the indexes to come online and verifies the query plans.
+     * <p>
+     * Spring Boot publishes the liveness state as correct before calling the runners, and only changes the readiness
+     * state to accepting traffic after all of them have returned. A failing migration fails the startup.
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            log.info("Schema management is disabled");
+            return;
+        }
+        try (Session session = neo4jDriver.session()) {
+            migrate(session);
+            awaitIndexes(session);
+            verifyQueryPlans(session);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the indexes to populate", e);
+        }
+    }
+
+    private void migrate(Session session) {
+        int current = session.run("OPTIONAL MATCH (v:SchemaVersion {name: $name}) RETURN coalesce(v.version, 0) AS version",
+                                 Map.of("name", SCHEMA_NAME))
+                             .single().get("version").asInt();
+        for (SchemaMigration migration : MIGRATIONS) {
+            if (migration.getVersion() <= current) {
+                continue;
+            }
+            for (String statement : migration.getStatements()) {
+                session.run(statement).consume();
+            }
+            session.run("MERGE (v:SchemaVersion {name: $name}) SET v.version = $version, v.appliedAt = datetime()",
+                       Map.of("name", SCHEMA_NAME, "version", migration.getVersion())).consume();
+            log.info("Applied schema migration {}: {}", migration.getVersion(), migration.getDescription());
+        }
+        log.info("Schema is at version {}", Math.max(current, MIGRATIONS.get(MIGRATIONS.size() - 1).getVersion()));
+    }
+
+    /**
+     * Waits until every index is online, reporting the population progress of those that are not.
+     */
+    private void awaitIndexes(Session session) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + indexTimeoutMillis;
+        while (true) {
+            List<Record> pending = session.run("SHOW INDEXES YIELD name, state, populationPercent WHERE state <> 'ONLINE' RETURN name, state, populationPercent")
+                                          .list();
+            List<Record> failed = pending.stream().filter(index -> index.get("state").asString().equals("FAILED")).toList();
+            failed.forEach(index -> log.error("Index {} failed to populate", index.get("name").asString()));
+            pending = pending.stream().filter(index -> !failed.contains(index)).toList();
+            if (pending.isEmpty()) {
+                log.info("All indexes are online");
+                return;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                log.warn("Indexes still populating after {} s, accepting traffic anyway: {}", indexTimeoutMillis / 1000, describe(pending));
+                return;
+            }
+            log.info("Waiting for indexes to populate: {}", describe(pending));
+            Thread.sleep(progressIntervalMillis);
+        }
+    }
+
+    private static String describe(List<Record> indexes) {
+        return indexes.stream()
+                      .map(index -> String.format("%s %.1f%%", index.get("name").asString(), index.get("populationPercent").asDouble()))
+                      .collect(Collectors.joining(", "));
+    }
+
+    /**
+     * Explains every hot query and warns about those the planner does not answer from the expected indexes.
+     */
+    private void verifyQueryPlans(Session session) {
+        for (HotQuery probe : HotQueries.all()) {
+            Plan plan = session.run("EXPLAIN " + probe.getQuery(), probe.getParameters()).consume().plan();
+            List<String> operators = new ArrayList<>();
+            collectOperators(plan, operators);
+            boolean usesIndex = operators.stream()
+                                         .anyMatch(operator -> operator.contains("Index") && probe.getExpectedIndexes().stream().anyMatch(operator::contains));
+            if (usesIndex) {
+                log.info("Query {} uses an index: {}", probe.getName(), operators);
+            } else {
+                log.warn("Query {} does not use any of the indexes {}: {}", probe.getName(), probe.getExpectedIndexes(), operators);
+            }
+        }
+    }
+
+    private static void collectOperators(Plan plan, List<String> operators) {
+        org.neo4j.driver.Value details = plan.arguments().get("Details");
+        operators.add(plan.operatorType() + (details != null ? " " + details.asString() : ""));
+        for (Plan child : plan.children()) {
+            collectOperators(child, operators);
+        }
+    }
+}
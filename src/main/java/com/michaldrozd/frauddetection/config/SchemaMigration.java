@@ -0,0 +1,24 @@
+package com.michaldrozd.frauddetection.config;
+
+import java.util.List;
+import lombok.Getter;
+
+/**
+ * A versioned step of the Neo4j schema.
+ * <p>
+ * Every statement must be idempotent ({@code IF NOT EXISTS}), so that a migration can safely be applied again, e.g.
+ * after a crash between creating the schema and recording the version.
+ */
+@Getter
+public class SchemaMigration {
+
+    private final int version;
+    private final String description;
+    private final List<String> statements;
+
+    public SchemaMigration(int version, String description, String... statements) {
+        this.version = version;
+        this.description = description;
+        this.statements = List.of(statements);
+    }
+}
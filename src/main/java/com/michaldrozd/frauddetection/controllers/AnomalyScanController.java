@@ -0,0 +1,79 @@
+package com.michaldrozd.frauddetection.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.michaldrozd.frauddetection.dto.SuspiciousUser;
+import com.michaldrozd.frauddetection.services.AnomalyScanService;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Anomaly scan API.
+ */
+@RestController
+@RequestMapping("/users/anomalies")
+public class AnomalyScanController {
+
+    private static final byte[] NEW_LINE = {'\n'};
+
+    private final AnomalyScanService anomalyScanService;
+    private final ObjectMapper objectMapper;
+
+    public AnomalyScanController(AnomalyScanService anomalyScanService, ObjectMapper objectMapper) {
+        this.anomalyScanService = anomalyScanService;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Streams the users with an unusually high number of transactions within a time range as NDJSON.
+     * <p>
+     * Every suspicious user is a {@code {"userId":..,"transactionCount":..}} line. After every page of scanned users
+     * a {@code {"cursor":..,"complete":..}} line follows; an interrupted scan is resumed by passing the last received
+     * cursor.
+     *
+     * @param startDateTime start of the time range
+     * @param endDateTime   end of the time range
+     * @param threshold     minimum number of transactions
+     * @param cursor        cursor to resume after, optional
+     *
+     * @return the NDJSON stream
+     */
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<?> scan(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDateTime,
+                                  @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDateTime,
+                                  @RequestParam int threshold,
+                                  @RequestParam(required = false) Long cursor) {
+        if (endDateTime.isBefore(startDateTime)) {
+            return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON).body(Map.of("error", "endDateTime must not be before startDateTime"));
+        }
+
+        StreamingResponseBody body = outputStream -> anomalyScanService.scan(startDateTime, endDateTime, threshold, cursor, page -> {
+            try {
+                for (SuspiciousUser user : page.getUsers()) {
+                    outputStream.write(objectMapper.writeValueAsBytes(user));
+                    outputStream.write(NEW_LINE);
+                }
+                Map<String, Object> cursorLine = new HashMap<>();
+                cursorLine.put("cursor", page.getCursor());
+                cursorLine.put("complete", page.isComplete());
+                outputStream.write(objectMapper.writeValueAsBytes(cursorLine));
+                outputStream.write(NEW_LINE);
+                outputStream.flush();
+            } catch (IOException e) {
+                // The client went away, stop scanning
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+}
@@ -0,0 +1,69 @@
+package com.michaldrozd.frauddetection.controllers;
+
+import com.michaldrozd.frauddetection.dto.BatchFraudCheckRequest;
+import com.michaldrozd.frauddetection.dto.BatchFraudCheckResult;
+import com.michaldrozd.frauddetection.dto.FraudVerdict;
+import com.michaldrozd.frauddetection.services.FraudDetectionService;
+import java.util.List;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Batch check fraud API.
+ */
+@RestController
+@RequestMapping("/users/fraud-check")
+public class BatchFraudDetectionController {
+
+    private final FraudDetectionService fraudDetectionService;
+    private final int maxBatchSize;
+
+    public BatchFraudDetectionController(FraudDetectionService fraudDetectionService,
+                                         @Value("${fraud-detection.batch.max-size:50000}") int maxBatchSize) {
+        this.fraudDetectionService = fraudDetectionService;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Checks many users for fraud in one request.
+     * <p>
+     * Users are checked with the shared thresholds unless the request carries thresholds for the specific user.
+     *
+     * @param request user ids with shared and optional per-user thresholds
+     *
+     * @return response entity with a verdict per requested user, in request order
+     */
+    @PostMapping
+    public ResponseEntity<?> checkFraud(@RequestBody BatchFraudCheckRequest request) {
+        List<Long> userIds = request.getUserIds();
+        if (userIds == null || userIds.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "userIds must not be empty"));
+        }
+        if (userIds.size() > maxBatchSize) {
+            return ResponseEntity.badRequest().body(Map.of("error", "At most " + maxBatchSize + " users can be checked at once"));
+        }
+        if (request.getThresholds() == null && (request.getUserThresholds() == null || !request.getUserThresholds().keySet().containsAll(userIds))) {
+            return ResponseEntity.badRequest().body(Map.of("error", "thresholds are required for users without own thresholds"));
+        }
+
+        Map<Long, FraudVerdict> verdicts = fraudDetectionService.checkBatch(userIds, request.getThresholds(), request.getUserThresholds());
+
+        List<BatchFraudCheckResult> results = userIds.stream()
+                                                     .distinct()
+                                                     .map(userId -> toResult(userId, verdicts.get(userId)))
+                                                     .toList();
+        return ResponseEntity.ok().body(results);
+    }
+
+    private static BatchFraudCheckResult toResult(Long userId, FraudVerdict verdict) {
+        if (verdict == null) {
+            return new BatchFraudCheckResult(userId, false, false, null);
+        }
+        return new BatchFraudCheckResult(userId, true, verdict.isFraudulent(), verdict.getReason());
+    }
+}
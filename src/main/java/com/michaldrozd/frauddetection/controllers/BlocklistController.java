@@ -0,0 +1,111 @@
+package com.michaldrozd.frauddetection.controllers;
+
+import com.michaldrozd.frauddetection.blocklist.Blocklist;
+import com.michaldrozd.frauddetection.blocklist.BlocklistType;
+import com.michaldrozd.frauddetection.cache.VerdictCache;
+import com.michaldrozd.frauddetection.dto.BlocklistUpdate;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Blocklist administration API.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/admin/blocklist")
+public class BlocklistController {
+
+    private final Blocklist blocklist;
+    private final VerdictCache verdictCache;
+
+    public BlocklistController(Blocklist blocklist, VerdictCache verdictCache) {
+        this.blocklist = blocklist;
+        this.verdictCache = verdictCache;
+    }
+
+    /**
+     * Gets the size of the blocklist.
+     *
+     * @return response entity with the number of blocked identifiers and the off-heap bytes they take
+     */
+    @GetMapping
+    public ResponseEntity<?> getBlocklist() {
+        if (!blocklist.isEnabled()) {
+            return disabled();
+        }
+        return ResponseEntity.ok(Map.of("size", blocklist.size(), "sizeInBytes", blocklist.sizeInBytes()));
+    }
+
+    /**
+     * Blocks identifiers. They are in effect right away, as the cached verdicts are invalidated, and kept across
+     * restarts once the blocklist is saved.
+     *
+     * @param update identifiers to block
+     *
+     * @return response entity with the number of newly blocked identifiers
+     */
+    @PostMapping
+    public ResponseEntity<?> block(@RequestBody BlocklistUpdate update) {
+        if (!blocklist.isEnabled()) {
+            return disabled();
+        }
+        int added = blocklist.add(BlocklistType.DEVICE, orEmpty(update.getDeviceIds()))
+                    + blocklist.add(BlocklistType.CREDIT_CARD, orEmpty(update.getCreditCardNumbers()))
+                    + blocklist.add(BlocklistType.MERCHANT, orEmpty(update.getMerchantIds()));
+        verdictCache.invalidateAll();
+        return ResponseEntity.ok(Map.of("added", added, "size", blocklist.size()));
+    }
+
+    /**
+     * Unblocks identifiers.
+     *
+     * @param update identifiers to unblock
+     *
+     * @return response entity with the number of unblocked identifiers
+     */
+    @PostMapping("/remove")
+    public ResponseEntity<?> unblock(@RequestBody BlocklistUpdate update) {
+        if (!blocklist.isEnabled()) {
+            return disabled();
+        }
+        int removed = blocklist.remove(BlocklistType.DEVICE, orEmpty(update.getDeviceIds()))
+                      + blocklist.remove(BlocklistType.CREDIT_CARD, orEmpty(update.getCreditCardNumbers()))
+                      + blocklist.remove(BlocklistType.MERCHANT, orEmpty(update.getMerchantIds()));
+        verdictCache.invalidateAll();
+        return ResponseEntity.ok(Map.of("removed", removed, "size", blocklist.size()));
+    }
+
+    /**
+     * Writes the blocklist to its file, from which it is loaded at startup.
+     */
+    @PostMapping("/save")
+    public ResponseEntity<?> save() {
+        if (!blocklist.isEnabled()) {
+            return disabled();
+        }
+        try {
+            blocklist.save();
+        } catch (IOException e) {
+            log.error("Failed to save the blocklist", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("error", "failed to save the blocklist"));
+        }
+        return ResponseEntity.ok(Map.of("size", blocklist.size()));
+    }
+
+    private static List<String> orEmpty(List<String> identifiers) {
+        return identifiers != null ? identifiers : List.of();
+    }
+
+    private static ResponseEntity<?> disabled() {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "the blocklist is disabled"));
+    }
+}
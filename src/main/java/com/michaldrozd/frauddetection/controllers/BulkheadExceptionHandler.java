@@ -0,0 +1,23 @@
+package com.michaldrozd.frauddetection.controllers;
+
+import com.michaldrozd.frauddetection.concurrency.BulkheadFullException;
+import java.util.Map;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * Answers requests rejected by the repository bulkhead with 503, so that clients back off instead of piling up.
+ */
+@RestControllerAdvice
+public class BulkheadExceptionHandler {
+
+    @ExceptionHandler(BulkheadFullException.class)
+    public ResponseEntity<?> handleBulkheadFull(BulkheadFullException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                             .header(HttpHeaders.RETRY_AFTER, "1")
+                             .body(Map.of("error", e.getMessage()));
+    }
+}
@@ -1,13 +1,17 @@
 package com.michaldrozd.frauddetection.controllers;
 
-import com.michaldrozd.frauddetection.domain.User;
-import com.michaldrozd.frauddetection.repositories.UserRepository;
+import com.michaldrozd.frauddetection.dto.FraudCheckRequest;
+import com.michaldrozd.frauddetection.dto.FraudCheckThresholds;
+import com.michaldrozd.frauddetection.dto.FraudVerdict;
+import com.michaldrozd.frauddetection.rules.RulePipeline;
 import com.michaldrozd.frauddetection.services.FraudDetectionService;
 import java.util.Map;
 import java.util.Optional;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -20,39 +24,69 @@ import org.springframework.web.bind.annotation.RestController;
 public class FraudDetectionController {
 
     private final FraudDetectionService fraudDetectionService;
-    private final UserRepository userRepository;
+    private final RulePipeline rulePipeline;
 
-    public FraudDetectionController(FraudDetectionService fraudDetectionService, UserRepository userRepository) {
+    public FraudDetectionController(FraudDetectionService fraudDetectionService, RulePipeline rulePipeline) {
         this.fraudDetectionService = fraudDetectionService;
-        this.userRepository = userRepository;
+        this.rulePipeline = rulePipeline;
     }
 
     /**
      * Checks if a user is fraudulent.
+     * <p>
+     * The thresholds are those of the tenant in the rule set, unless all four of them are passed as parameters.
      *
      * @param userId                user id
-     * @param transactionsThreshold number of transactions threshold
-     * @param timeWindowInMinutes   time window in minutes
-     * @param amountThreshold       amount threshold
-     * @param distanceThresholdInKm distance threshold in km
+     * @param tenantId              optional tenant whose thresholds to check with, the rule set defaults if absent
+     * @param transactionsThreshold optional number of transactions threshold
+     * @param timeWindowInMinutes   optional time window in minutes
+     * @param amountThreshold       optional amount threshold
+     * @param distanceThresholdInKm optional distance threshold in km
      *
      * @return response entity with isFraudulent flag
      */
     @GetMapping
     public ResponseEntity<?> checkFraud(@PathVariable Long userId,
-                                        @RequestParam int transactionsThreshold,
-                                        @RequestParam int timeWindowInMinutes,
-                                        @RequestParam double amountThreshold,
-                                        @RequestParam int distanceThresholdInKm) {
-        Optional<User> userOptional = userRepository.findById(userId);
-        if (userOptional.isEmpty()) {
-            return ResponseEntity.notFound().build();
+                                        @RequestParam(required = false) String tenantId,
+                                        @RequestParam(required = false) Integer transactionsThreshold,
+                                        @RequestParam(required = false) Integer timeWindowInMinutes,
+                                        @RequestParam(required = false) Double amountThreshold,
+                                        @RequestParam(required = false) Integer distanceThresholdInKm) {
+        FraudCheckThresholds thresholds = null;
+        if (transactionsThreshold != null && timeWindowInMinutes != null && amountThreshold != null && distanceThresholdInKm != null) {
+            thresholds = new FraudCheckThresholds(transactionsThreshold, timeWindowInMinutes, amountThreshold, distanceThresholdInKm);
         }
+        return check(userId, tenantId, thresholds, null, null, null);
+    }
+
+    /**
+     * Checks if a user is fraudulent for a transaction about to be made with the given Device, Credit Card and
+     * Merchant, each of them optional and checked against the blocklist.
+     *
+     * @param userId  user id
+     * @param request thresholds or tenant, and the identifiers of the transaction
+     *
+     * @return response entity with isFraudulent flag
+     */
+    @PostMapping
+    public ResponseEntity<?> checkTransaction(@PathVariable Long userId, @RequestBody FraudCheckRequest request) {
+        return check(userId, request.getTenantId(), request.getThresholds(), request.getDeviceId(), request.getCreditCardNumber(), request.getMerchantId());
+    }
 
-        User user = userOptional.get();
-        boolean isFraudulent = fraudDetectionService.isFraudulent(user, transactionsThreshold, timeWindowInMinutes, amountThreshold, distanceThresholdInKm);
+    private ResponseEntity<?> check(Long userId, String tenantId, FraudCheckThresholds thresholds, String deviceId, String creditCardNumber, String merchantId) {
+        if (thresholds == null) {
+            thresholds = rulePipeline.thresholdsFor(tenantId);
+            if (thresholds == null) {
+                return ResponseEntity.badRequest().body(Map.of("error", "no thresholds configured for the tenant, pass all four thresholds"));
+            }
+        }
+        Optional<FraudVerdict> verdict = fraudDetectionService.checkUser(userId, thresholds, deviceId, creditCardNumber, merchantId);
+        if (verdict.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        boolean isFraudulent = verdict.get().isFraudulent();
 
         // TODO: return some more meaningful response
         return ResponseEntity.ok().body(Map.of("isFraudulent", isFraudulent));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,68 @@
+package com.michaldrozd.frauddetection.controllers;
+
+import com.michaldrozd.frauddetection.dto.FraudRingSummary;
+import com.michaldrozd.frauddetection.ring.FraudRingDetector;
+import java.util.Map;
+import java.util.Optional;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Fraud ring API.
+ */
+@RestController
+public class FraudRingController {
+
+    private final FraudRingDetector fraudRingDetector;
+
+    public FraudRingController(FraudRingDetector fraudRingDetector) {
+        this.fraudRingDetector = fraudRingDetector;
+    }
+
+    /**
+     * Gets the fraud ring of a user.
+     *
+     * @param userId user id
+     *
+     * @return response entity with the ring; 404 if the user is unknown, 503 if the rings are not built yet
+     */
+    @GetMapping("/users/{userId}/fraud-ring")
+    public ResponseEntity<?> getFraudRing(@PathVariable Long userId) {
+        if (!fraudRingDetector.isReady()) {
+            return notReady();
+        }
+        Optional<FraudRingSummary> ring = fraudRingDetector.findRing(userId);
+        return ring.<ResponseEntity<?>>map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Gets the highest scored fraud rings.
+     *
+     * @param minUsers minimum number of users of a ring
+     * @param limit    maximum number of rings
+     *
+     * @return response entity with the rings by descending score; 503 if the rings are not built yet
+     */
+    @GetMapping("/fraud-rings")
+    public ResponseEntity<?> getTopFraudRings(@RequestParam(defaultValue = "2") int minUsers,
+                                              @RequestParam(defaultValue = "20") int limit) {
+        if (limit < 1) {
+            return ResponseEntity.badRequest().body(Map.of("error", "limit must be positive"));
+        }
+        if (!fraudRingDetector.isReady()) {
+            return notReady();
+        }
+        return ResponseEntity.ok(fraudRingDetector.findTopRings(minUsers, limit));
+    }
+
+    private static ResponseEntity<?> notReady() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                             .header(HttpHeaders.RETRY_AFTER, "60")
+                             .body(Map.of("error", "fraud rings are not built yet"));
+    }
+}
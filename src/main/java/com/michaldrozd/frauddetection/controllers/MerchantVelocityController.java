@@ -0,0 +1,65 @@
+package com.michaldrozd.frauddetection.controllers;
+
+import com.michaldrozd.frauddetection.dto.MerchantVelocity;
+import com.michaldrozd.frauddetection.merchant.MerchantVelocityEngine;
+import java.util.Map;
+import java.util.Optional;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Merchant velocity API.
+ */
+@RestController
+@RequestMapping("/merchants")
+public class MerchantVelocityController {
+
+    private final MerchantVelocityEngine merchantVelocityEngine;
+
+    public MerchantVelocityController(MerchantVelocityEngine merchantVelocityEngine) {
+        this.merchantVelocityEngine = merchantVelocityEngine;
+    }
+
+    /**
+     * Gets the activity of a merchant within the sliding window.
+     *
+     * @param merchantId merchant id
+     *
+     * @return response entity with the merchant's velocity; 404 if the merchant has no transactions within the window
+     */
+    @GetMapping("/{merchantId}/velocity")
+    public ResponseEntity<?> getVelocity(@PathVariable String merchantId) {
+        if (!merchantVelocityEngine.isEnabled()) {
+            return disabled();
+        }
+        Optional<MerchantVelocity> velocity = merchantVelocityEngine.find(merchantId);
+        return velocity.<ResponseEntity<?>>map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Gets the latest merchant alerts.
+     *
+     * @param limit maximum number of alerts
+     *
+     * @return response entity with the alerts, newest first
+     */
+    @GetMapping("/alerts")
+    public ResponseEntity<?> getAlerts(@RequestParam(defaultValue = "100") int limit) {
+        if (limit < 1) {
+            return ResponseEntity.badRequest().body(Map.of("error", "limit must be positive"));
+        }
+        if (!merchantVelocityEngine.isEnabled()) {
+            return disabled();
+        }
+        return ResponseEntity.ok(merchantVelocityEngine.findRecentAlerts(limit));
+    }
+
+    private static ResponseEntity<?> disabled() {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "the merchant velocity engine is disabled"));
+    }
+}
@@ -0,0 +1,64 @@
+package com.michaldrozd.frauddetection.controllers;
+
+import com.michaldrozd.frauddetection.dto.FraudCheckThresholds;
+import com.michaldrozd.frauddetection.rules.RulePipeline;
+import com.michaldrozd.frauddetection.services.ReactiveFraudDetectionService;
+import java.util.Map;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive check fraud API, mirroring {@link FraudDetectionController}.
+ */
+@RestController
+@RequestMapping("/reactive/users/{userId}/fraud-check")
+public class ReactiveFraudDetectionController {
+
+    private final ReactiveFraudDetectionService reactiveFraudDetectionService;
+    private final RulePipeline rulePipeline;
+
+    public ReactiveFraudDetectionController(ReactiveFraudDetectionService reactiveFraudDetectionService, RulePipeline rulePipeline) {
+        this.reactiveFraudDetectionService = reactiveFraudDetectionService;
+        this.rulePipeline = rulePipeline;
+    }
+
+    /**
+     * Checks if a user is fraudulent, streaming the user's window and stopping at the first rule that trips.
+     * <p>
+     * The thresholds are those of the tenant in the rule set, unless all four of them are passed as parameters.
+     *
+     * @param userId                user id
+     * @param tenantId              optional tenant whose thresholds to check with, the rule set defaults if absent
+     * @param transactionsThreshold optional number of transactions threshold
+     * @param timeWindowInMinutes   optional time window in minutes
+     * @param amountThreshold       optional amount threshold
+     * @param distanceThresholdInKm optional distance threshold in km
+     *
+     * @return response entity with isFraudulent flag
+     */
+    @GetMapping
+    public Mono<ResponseEntity<?>> checkFraud(@PathVariable Long userId,
+                                              @RequestParam(required = false) String tenantId,
+                                              @RequestParam(required = false) Integer transactionsThreshold,
+                                              @RequestParam(required = false) Integer timeWindowInMinutes,
+                                              @RequestParam(required = false) Double amountThreshold,
+                                              @RequestParam(required = false) Integer distanceThresholdInKm) {
+        FraudCheckThresholds thresholds;
+        if (transactionsThreshold != null && timeWindowInMinutes != null && amountThreshold != null && distanceThresholdInKm != null) {
+            thresholds = new FraudCheckThresholds(transactionsThreshold, timeWindowInMinutes, amountThreshold, distanceThresholdInKm);
+        } else {
+            thresholds = rulePipeline.thresholdsFor(tenantId);
+            if (thresholds == null) {
+                return Mono.just(ResponseEntity.badRequest().body(Map.of("error", "no thresholds configured for the tenant, pass all four thresholds")));
+            }
+        }
+        return reactiveFraudDetectionService.checkUser(userId, thresholds)
+                                            .<ResponseEntity<?>>map(verdict -> ResponseEntity.ok().body(Map.of("isFraudulent", verdict.isFraudulent())))
+                                            .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,52 @@
+package com.michaldrozd.frauddetection.controllers;
+
+import com.michaldrozd.frauddetection.rules.RulePipeline;
+import java.io.IOException;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Fraud rule administration API.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/admin/rules")
+public class RuleController {
+
+    private final RulePipeline rulePipeline;
+
+    public RuleController(RulePipeline rulePipeline) {
+        this.rulePipeline = rulePipeline;
+    }
+
+    /**
+     * Gets the rules in effect.
+     *
+     * @return response entity with the rules in the order they are evaluated, with their cost and hit rate
+     */
+    @GetMapping
+    public ResponseEntity<?> getRules() {
+        return ResponseEntity.ok(Map.of("rules", rulePipeline.getStatus()));
+    }
+
+    /**
+     * Reloads the rule set file. The previous rule set stays in effect if the file is invalid.
+     *
+     * @return response entity with the rules now in effect
+     */
+    @PostMapping("/reload")
+    public ResponseEntity<?> reload() {
+        try {
+            rulePipeline.reload();
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Failed to reload the rule set", e);
+            return ResponseEntity.badRequest().body(Map.of("error", "invalid rule set: " + e.getMessage()));
+        }
+        return ResponseEntity.ok(Map.of("rules", rulePipeline.getStatus()));
+    }
+}
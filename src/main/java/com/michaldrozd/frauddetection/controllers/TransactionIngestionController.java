@@ -0,0 +1,62 @@
+package com.michaldrozd.frauddetection.controllers;
+
+import com.michaldrozd.frauddetection.dto.TransactionEvent;
+import com.michaldrozd.frauddetection.ingestion.TransactionIngestionService;
+import java.util.List;
+import java.util.Map;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Transaction ingestion API.
+ */
+@RestController
+@RequestMapping("/transactions")
+public class TransactionIngestionController {
+
+    private final TransactionIngestionService transactionIngestionService;
+
+    public TransactionIngestionController(TransactionIngestionService transactionIngestionService) {
+        this.transactionIngestionService = transactionIngestionService;
+    }
+
+    /**
+     * Accepts transactions for asynchronous writing.
+     * <p>
+     * Transactions are accepted in order until the ingestion buffer is full. If not all of them fit, the response is
+     * 503 with a Retry-After header, and the client should resubmit the transactions from index {@code accepted} on.
+     *
+     * @param transactions transactions to ingest
+     *
+     * @return response entity with the number of accepted transactions
+     */
+    @PostMapping
+    public ResponseEntity<?> ingest(@RequestBody List<TransactionEvent> transactions) {
+        for (TransactionEvent transaction : transactions) {
+            String error = TransactionIngestionService.validationError(transaction);
+            if (error != null) {
+                return ResponseEntity.badRequest().body(Map.of("error", error));
+            }
+        }
+
+        int accepted = 0;
+        for (TransactionEvent transaction : transactions) {
+            if (!transactionIngestionService.submit(transaction)) {
+                break;
+            }
+            accepted++;
+        }
+
+        if (accepted < transactions.size()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                                 .header(HttpHeaders.RETRY_AFTER, "1")
+                                 .body(Map.of("accepted", accepted, "rejected", transactions.size() - accepted));
+        }
+        return ResponseEntity.accepted().body(Map.of("accepted", accepted, "rejected", 0));
+    }
+}
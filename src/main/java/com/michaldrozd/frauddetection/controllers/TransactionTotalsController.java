@@ -0,0 +1,48 @@
+package com.michaldrozd.frauddetection.controllers;
+
+import com.michaldrozd.frauddetection.dto.RollupTotals;
+import com.michaldrozd.frauddetection.rollup.TransactionRollups;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Transaction totals API, answered from the rollups.
+ */
+@RestController
+@RequestMapping("/transactions/totals")
+public class TransactionTotalsController {
+
+    private final TransactionRollups transactionRollups;
+
+    public TransactionTotalsController(TransactionRollups transactionRollups) {
+        this.transactionRollups = transactionRollups;
+    }
+
+    /**
+     * Gets the totals of all transactions within a time range.
+     *
+     * @param startDateTime start of the time range
+     * @param endDateTime   end of the time range, inclusive
+     *
+     * @return response entity with the transaction count, amount sum and distinct devices and credit cards; 404 if
+     * the rollups do not cover the time range
+     */
+    @GetMapping
+    public ResponseEntity<?> getTotals(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDateTime,
+                                       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDateTime) {
+        if (endDateTime.isBefore(startDateTime)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "endDateTime must not be before startDateTime"));
+        }
+        Optional<RollupTotals> totals = transactionRollups.sumAll(startDateTime, endDateTime);
+        return totals.<ResponseEntity<?>>map(ResponseEntity::ok)
+                     .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "the rollups do not cover the time range")));
+    }
+}
@@ -0,0 +1,39 @@
+package com.michaldrozd.frauddetection.controllers;
+
+import com.michaldrozd.frauddetection.streaming.SseVerdictBroadcaster;
+import com.michaldrozd.frauddetection.streaming.StreamingFraudScorer;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Verdict stream API.
+ */
+@RestController
+@RequestMapping("/verdicts/stream")
+public class VerdictStreamController {
+
+    private final SseVerdictBroadcaster sseVerdictBroadcaster;
+    private final StreamingFraudScorer streamingFraudScorer;
+
+    public VerdictStreamController(SseVerdictBroadcaster sseVerdictBroadcaster, StreamingFraudScorer streamingFraudScorer) {
+        this.sseVerdictBroadcaster = sseVerdictBroadcaster;
+        this.streamingFraudScorer = streamingFraudScorer;
+    }
+
+    /**
+     * Streams the verdicts of ingested transactions as Server-Sent Events.
+     *
+     * @return the event stream, or 404 if score-on-ingest is disabled
+     */
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> stream() {
+        if (!streamingFraudScorer.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(sseVerdictBroadcaster.subscribe());
+    }
+}
@@ -0,0 +1,19 @@
+package com.michaldrozd.frauddetection.dto;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * One page of the anomaly scan: the suspicious users among a page of users, and the cursor to resume after it.
+ */
+@Getter
+@AllArgsConstructor
+public class AnomalyScanPage {
+    private final List<SuspiciousUser> users;
+    /**
+     * The last User ID of the page, to be passed as the cursor to resume the scan after this page.
+     */
+    private final Long cursor;
+    private final boolean complete;
+}
@@ -0,0 +1,19 @@
+package com.michaldrozd.frauddetection.dto;
+
+import java.util.List;
+import java.util.Map;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Request body of the batch fraud check.
+ * <p>
+ * Every user is checked with {@link #thresholds} unless {@link #userThresholds} contains an entry for the user.
+ */
+@Getter
+@Setter
+public class BatchFraudCheckRequest {
+    private List<Long> userIds;
+    private FraudCheckThresholds thresholds;
+    private Map<Long, FraudCheckThresholds> userThresholds;
+}
@@ -0,0 +1,18 @@
+package com.michaldrozd.frauddetection.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Per-user entry of the batch fraud check response.
+ */
+@Getter
+@AllArgsConstructor
+public class BatchFraudCheckResult {
+    private final Long userId;
+    private final boolean found;
+    @JsonProperty("isFraudulent")
+    private final boolean fraudulent;
+    private final FraudReason reason;
+}
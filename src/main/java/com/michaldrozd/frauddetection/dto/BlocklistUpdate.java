@@ -0,0 +1,16 @@
+package com.michaldrozd.frauddetection.dto;
+
+import java.util.List;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Request body of a blocklist update: the identifiers to add or remove, by kind. Every list is optional.
+ */
+@Getter
+@Setter
+public class BlocklistUpdate {
+    private List<String> deviceIds;
+    private List<String> creditCardNumbers;
+    private List<String> merchantIds;
+}
@@ -0,0 +1,21 @@
+package com.michaldrozd.frauddetection.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Request body of the fraud check of a transaction about to be made.
+ * <p>
+ * The user is checked with {@link #thresholds} if given, and with those of {@link #tenantId} in the rule set otherwise.
+ * The Device, Credit Card and Merchant of the transaction are optional and checked against the blocklist; they are
+ * taken in the body so that card numbers never end up in URLs and access logs.
+ */
+@Getter
+@Setter
+public class FraudCheckRequest {
+    private String tenantId;
+    private FraudCheckThresholds thresholds;
+    private String deviceId;
+    private String creditCardNumber;
+    private String merchantId;
+}
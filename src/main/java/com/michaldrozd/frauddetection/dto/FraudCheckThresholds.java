@@ -0,0 +1,20 @@
+package com.michaldrozd.frauddetection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Thresholds of a single fraud check, the same ones accepted by the {@code /users/{userId}/fraud-check} endpoint.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class FraudCheckThresholds {
+    private int transactionsThreshold;
+    private int timeWindowInMinutes;
+    private double amountThreshold;
+    private int distanceThresholdInKm;
+}
@@ -0,0 +1,14 @@
+package com.michaldrozd.frauddetection.dto;
+
+/**
+ * The fraud rule that decided a verdict.
+ */
+public enum FraudReason {
+    TRANSACTION_COUNT,
+    TRANSACTION_AMOUNT,
+    MULTIPLE_DEVICES_OR_CREDIT_CARDS,
+    LOCATION,
+    IMPOSSIBLE_TRAVEL,
+    MODEL,
+    BLOCKLISTED
+}
@@ -0,0 +1,25 @@
+package com.michaldrozd.frauddetection.dto;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A fraud ring: users connected through shared Devices or Credit Cards, with its activity and score.
+ */
+@Getter
+@AllArgsConstructor
+public class FraudRingSummary {
+    private final long ringId;
+    private final int userCount;
+    private final int deviceCount;
+    private final int creditCardCount;
+    private final long transactionCount;
+    private final double totalAmount;
+    private final double transactionsPerHour;
+    private final double score;
+    /**
+     * The IDs of the ring's users, at most the first {@code fraud-detection.fraud-rings.max-listed-users}.
+     */
+    private final List<Long> userIds;
+}
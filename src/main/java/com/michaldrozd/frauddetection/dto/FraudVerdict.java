@@ -0,0 +1,36 @@
+package com.michaldrozd.frauddetection.dto;
+
+import lombok.Getter;
+
+/**
+ * Result of a fraud check: whether the user is potentially fraudulent and which rule decided it.
+ */
+@Getter
+public class FraudVerdict {
+
+    private static final FraudVerdict NOT_FRAUDULENT = new FraudVerdict(false, null);
+    // Verdicts are immutable, so there is one per reason and checks do not allocate them
+    private static final FraudVerdict[] FRAUDULENT = new FraudVerdict[FraudReason.values().length];
+
+    static {
+        for (FraudReason reason : FraudReason.values()) {
+            FRAUDULENT[reason.ordinal()] = new FraudVerdict(true, reason);
+        }
+    }
+
+    private final boolean fraudulent;
+    private final FraudReason reason;
+
+    private FraudVerdict(boolean fraudulent, FraudReason reason) {
+        this.fraudulent = fraudulent;
+        this.reason = reason;
+    }
+
+    public static FraudVerdict fraudulent(FraudReason reason) {
+        return FRAUDULENT[reason.ordinal()];
+    }
+
+    public static FraudVerdict notFraudulent() {
+        return NOT_FRAUDULENT;
+    }
+}
@@ -0,0 +1,21 @@
+package com.michaldrozd.frauddetection.dto;
+
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A merchant whose sliding window has reached an alert threshold, e.g. a burst of distinct cards of card testing.
+ */
+@Getter
+@AllArgsConstructor
+public class MerchantAlert {
+    private final String merchantId;
+    private final MerchantAlertReason reason;
+    private final double value;
+    private final double threshold;
+    /**
+     * The date of the transaction that reached the threshold.
+     */
+    private final LocalDateTime transactionDate;
+}
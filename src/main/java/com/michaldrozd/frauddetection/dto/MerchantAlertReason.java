@@ -0,0 +1,10 @@
+package com.michaldrozd.frauddetection.dto;
+
+/**
+ * The merchant velocity threshold that raised an alert.
+ */
+public enum MerchantAlertReason {
+    TRANSACTION_COUNT,
+    TRANSACTION_AMOUNT,
+    DISTINCT_CREDIT_CARDS
+}
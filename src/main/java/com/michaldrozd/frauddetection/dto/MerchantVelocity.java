@@ -0,0 +1,24 @@
+package com.michaldrozd.frauddetection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Activity of a merchant within the sliding window of the merchant velocity engine.
+ * <p>
+ * Counts and amounts are exact; distinct counts are HyperLogLog estimates and amount percentiles are read from a
+ * logarithmic histogram, both approximate.
+ */
+@Getter
+@AllArgsConstructor
+public class MerchantVelocity {
+    private final String merchantId;
+    private final long transactionCount;
+    private final double totalAmount;
+    private final double transactionsPerMinute;
+    private final long distinctCreditCards;
+    private final long distinctUsers;
+    private final double amountP50;
+    private final double amountP95;
+    private final double amountP99;
+}
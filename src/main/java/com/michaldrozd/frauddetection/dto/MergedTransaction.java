@@ -0,0 +1,17 @@
+package com.michaldrozd.frauddetection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Graph identities of a transaction written by the batched ingestion, and whether the batch created it or only updated
+ * an existing one.
+ */
+@Getter
+@AllArgsConstructor
+public class MergedTransaction {
+    private final String transactionId;
+    private final Long deviceId;
+    private final Long creditCardId;
+    private final boolean created;
+}
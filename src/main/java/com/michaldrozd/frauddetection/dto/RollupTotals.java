@@ -0,0 +1,18 @@
+package com.michaldrozd.frauddetection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Transactions in some time range, combined from the rollups.
+ * <p>
+ * Counts and amounts are exact; distinct counts are HyperLogLog estimates.
+ */
+@Getter
+@AllArgsConstructor
+public class RollupTotals {
+    private final long transactionCount;
+    private final double totalAmount;
+    private final long distinctDevices;
+    private final long distinctCreditCards;
+}
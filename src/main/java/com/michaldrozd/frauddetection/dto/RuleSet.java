@@ -0,0 +1,20 @@
+package com.michaldrozd.frauddetection.dto;
+
+import java.util.List;
+import java.util.Map;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Contents of the rule set file: which rules are evaluated, and the thresholds of the checks of every tenant.
+ * <p>
+ * Every field is optional. Without {@code rules}, every registered rule is evaluated; tenants without an own entry
+ * in {@code tenants} are checked with {@code defaultThresholds}.
+ */
+@Getter
+@Setter
+public class RuleSet {
+    private List<String> rules;
+    private FraudCheckThresholds defaultThresholds;
+    private Map<String, FraudCheckThresholds> tenants;
+}
@@ -0,0 +1,17 @@
+package com.michaldrozd.frauddetection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A rule of the evaluation chain, in the order it is evaluated, with the cost and hit rate the order is based on.
+ */
+@Getter
+@AllArgsConstructor
+public class RuleStatus {
+    private String name;
+    private FraudReason reason;
+    private long evaluations;
+    private double hitRate;
+    private double costNanos;
+}
@@ -0,0 +1,14 @@
+package com.michaldrozd.frauddetection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A user found by the anomaly scan, with its number of transactions in the scanned range.
+ */
+@Getter
+@AllArgsConstructor
+public class SuspiciousUser {
+    private final Long userId;
+    private final long transactionCount;
+}
@@ -0,0 +1,42 @@
+package com.michaldrozd.frauddetection.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.michaldrozd.frauddetection.domain.types.TransactionStatus;
+import com.michaldrozd.frauddetection.ingestion.IngestionReceipt;
+import java.time.LocalDateTime;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A transaction as accepted by the ingestion API.
+ * <p>
+ * Related nodes are referenced by their business identifiers: the User by {@code id}, the Device by {@code deviceId},
+ * the Credit Card by its number and the Merchant by {@code merchantId}. Device, Credit Card and Merchant are optional.
+ */
+@Getter
+@Setter
+public class TransactionEvent {
+    private String transactionId;
+    private Long userId;
+    private Double amount;
+    private String currency;
+    private LocalDateTime transactionDate;
+    private TransactionStatus transactionStatus;
+    private String deviceId;
+    private Double latitude;
+    private Double longitude;
+    private String creditCardNumber;
+    private String merchantId;
+
+    /**
+     * {@link System#nanoTime()} at which the transaction was accepted, for measuring end-to-end latency.
+     */
+    @JsonIgnore
+    private long receivedNanos;
+
+    /**
+     * Acknowledged once the transaction is written or dropped, or {@code null} if the submitter does not wait for it.
+     */
+    @JsonIgnore
+    private IngestionReceipt receipt;
+}
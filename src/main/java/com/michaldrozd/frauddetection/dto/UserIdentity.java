@@ -0,0 +1,15 @@
+package com.michaldrozd.frauddetection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Flat projection of a User with just its identity, without any of its relationships.
+ */
+@Getter
+@AllArgsConstructor
+public class UserIdentity {
+    private final Long userId;
+    private final String username;
+    private final String name;
+}
@@ -0,0 +1,15 @@
+package com.michaldrozd.frauddetection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The Devices and Credit Cards linked to a User, by their graph IDs.
+ */
+@Getter
+@AllArgsConstructor
+public class UserLinks {
+    private final Long userId;
+    private final long[] deviceIds;
+    private final long[] creditCardIds;
+}
@@ -0,0 +1,15 @@
+package com.michaldrozd.frauddetection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Number and total amount of a User's transactions in some time range.
+ */
+@Getter
+@AllArgsConstructor
+public class UserTransactionTotals {
+    private final Long userId;
+    private final long transactionCount;
+    private final double totalAmount;
+}
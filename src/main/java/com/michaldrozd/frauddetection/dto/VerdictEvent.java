@@ -0,0 +1,24 @@
+package com.michaldrozd.frauddetection.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Verdict of a transaction scored on ingest, as published on the verdict stream.
+ */
+@Getter
+@AllArgsConstructor
+public class VerdictEvent {
+    private final String transactionId;
+    private final Long userId;
+    private final boolean fraudulent;
+    private final FraudReason reason;
+    /**
+     * Whether the user's in-memory state covered the whole window; false while the state is younger than the window.
+     */
+    private final boolean completeWindow;
+    /**
+     * Time from accepting the transaction to publishing its verdict.
+     */
+    private final long latencyMicros;
+}
@@ -0,0 +1,23 @@
+package com.michaldrozd.frauddetection.dto;
+
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Flat projection of a windowed transaction with just the fields the fraud rules need.
+ */
+@Getter
+@AllArgsConstructor
+public class WindowTransaction {
+    private final Long userId;
+    private final String transactionId;
+    private final Double amount;
+    private final LocalDateTime transactionDate;
+    private final Long deviceId;
+    private final Double latitude;
+    private final Double longitude;
+    private final Long creditCardId;
+    private final String deviceIdentifier;
+    private final String creditCardNumber;
+}
@@ -0,0 +1,19 @@
+package com.michaldrozd.frauddetection.dto;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * One page of windowed transactions, and the cursor to continue after it.
+ */
+@Getter
+@AllArgsConstructor
+public class WindowTransactionPage {
+    private final List<WindowTransaction> transactions;
+    /**
+     * The highest graph identity of a Transaction in the page, to be passed as the cursor to load the next page.
+     */
+    private final Long cursor;
+    private final boolean complete;
+}
@@ -0,0 +1,179 @@
+package com.michaldrozd.frauddetection.ingestion;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.michaldrozd.frauddetection.dto.TransactionEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Feeds the ingestion pipeline from NDJSON files dropped into an inbox directory, one transaction per line.
+ * <p>
+ * The inbox is polled by a thread of its own, which waits whenever the ingestion buffer is full, so a large file is
+ * read at the pace the writers can sustain without holding up the scheduled jobs. A file is moved to the
+ * {@code processed} subdirectory once the writers acknowledged every transaction in it as written, or to the
+ * {@code failed} subdirectory if some were dropped after failed writes. Until then it stays in the inbox and is
+ * consumed again after a restart; as writes are idempotent, transactions written already are not counted twice, and
+ * neither are those of a failed file dropped back into the inbox.
+ */
+@Slf4j
+@Component
+public class IngestionFileConsumer {
+
+    private static final long SUBMIT_TIMEOUT_MS = 1000;
+
+    private final TransactionIngestionService transactionIngestionService;
+    private final ObjectMapper objectMapper;
+    private final String inboxDirectory;
+    private final long pollMillis;
+    private Thread poller;
+
+    public IngestionFileConsumer(TransactionIngestionService transactionIngestionService,
+                                 ObjectMapper objectMapper,
+                                 @Value("${fraud-detection.ingestion.inbox-dir:}") String inboxDirectory,
+                                 @Value("${fraud-detection.ingestion.inbox-poll-ms:1000}") long pollMillis) {
+        this.transactionIngestionService = transactionIngestionService;
+        this.objectMapper = objectMapper;
+        this.inboxDirectory = inboxDirectory;
+        this.pollMillis = pollMillis;
+    }
+
+    @PostConstruct
+    void start() {
+        if (inboxDirectory.isBlank()) {
+            return;
+        }
+        poller = new Thread(this::pollLoop, "fraud-ingestion-inbox");
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    private void pollLoop() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                pollInbox();
+                Thread.sleep(pollMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Consumes the files in the inbox, returning once every one of them is written, or dropped.
+     */
+    void pollInbox() throws InterruptedException {
+        Path inbox = Path.of(inboxDirectory);
+        if (!Files.isDirectory(inbox)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(inbox, "*.ndjson")) {
+            for (Path file : files) {
+                long dropped = consume(file);
+                if (dropped > 0) {
+                    log.error("Dropped {} transactions of {} after failed writes, moving it to failed", dropped, file);
+                }
+                Path target = Files.createDirectories(inbox.resolve(dropped > 0 ? "failed" : "processed"));
+                Files.move(file, target.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            log.error("Failed to consume ingestion inbox {}", inbox, e);
+        }
+    }
+
+    /**
+     * @return The number of accepted transactions the writers dropped.
+     */
+    private long consume(Path file) throws IOException, InterruptedException {
+        FileReceipt receipt = new FileReceipt();
+        long invalid = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                TransactionEvent transaction;
+                try {
+                    transaction = objectMapper.readValue(line, TransactionEvent.class);
+                } catch (IOException e) {
+                    invalid++;
+                    continue;
+                }
+                String error = TransactionIngestionService.validationError(transaction);
+                if (error != null) {
+                    log.warn("Skipping invalid transaction in {}: {}", file, error);
+                    invalid++;
+                    continue;
+                }
+                // Counted before it is submitted, as a writer may acknowledge it right away
+                receipt.submitted();
+                transaction.setReceipt(receipt);
+                while (!transactionIngestionService.submit(transaction, SUBMIT_TIMEOUT_MS)) {
+                    log.debug("Ingestion buffer full, waiting to continue with {}", file);
+                }
+            }
+        }
+        long accepted = receipt.getSubmitted();
+        long dropped = receipt.await();
+        log.info("Consumed {}: {} transactions accepted, {} written, {} invalid", file, accepted, accepted - dropped, invalid);
+        return dropped;
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        // A file still being consumed stays in the inbox
+        if (poller != null) {
+            poller.interrupt();
+            poller.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    /**
+     * Counts the acknowledgements of the transactions of one file.
+     */
+    private static final class FileReceipt implements IngestionReceipt {
+
+        private long submitted;
+        private long acknowledged;
+        private long dropped;
+
+        synchronized void submitted() {
+            submitted++;
+        }
+
+        synchronized long getSubmitted() {
+            return submitted;
+        }
+
+        @Override
+        public synchronized void acknowledge(boolean written) {
+            acknowledged++;
+            if (!written) {
+                dropped++;
+            }
+            notifyAll();
+        }
+
+        /**
+         * Waits for every submitted transaction to be acknowledged.
+         *
+         * @return The number of transactions dropped.
+         */
+        synchronized long await() throws InterruptedException {
+            while (acknowledged < submitted) {
+                wait();
+            }
+            return dropped;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.michaldrozd.frauddetection.ingestion;
+
+/**
+ * Learns from the ingestion writers what became of a submitted transaction, once its batch is done.
+ */
+public interface IngestionReceipt {
+
+    /**
+     * @param written true if the transaction was written to Neo4j; false if its batch was dropped after failed writes.
+     */
+    void acknowledge(boolean written);
+}
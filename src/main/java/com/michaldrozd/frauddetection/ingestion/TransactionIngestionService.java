@@ -0,0 +1,328 @@
+package com.michaldrozd.frauddetection.ingestion;
+
+import com.michaldrozd.frauddetection.cache.VerdictCache;
+import com.michaldrozd.frauddetection.domain.CreditCard;
+import com.michaldrozd.frauddetection.domain.Device;
+import com.michaldrozd.frauddetection.domain.Transaction;
+import com.michaldrozd.frauddetection.dto.MergedTransaction;
+import com.michaldrozd.frauddetection.dto.TransactionEvent;
+import com.michaldrozd.frauddetection.merchant.MerchantVelocityEngine;
+import com.michaldrozd.frauddetection.repositories.TransactionRepository;
+import com.michaldrozd.frauddetection.ring.FraudRingDetector;
+import com.michaldrozd.frauddetection.rollup.TransactionRollups;
+import com.michaldrozd.frauddetection.snapshot.StateSnapshotter;
+import com.michaldrozd.frauddetection.streaming.StreamingFraudScorer;
+import com.michaldrozd.frauddetection.window.UserWindowStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Service;
+
+/**
+ * Asynchronous transaction ingestion.
+ * <p>
+ * Accepted transactions are buffered in a bounded ring and written to Neo4j by dedicated writer threads in batches,
+ * one UNWIND query per batch, which also updates the {@link TransactionRollups} when they are enabled. When the ring
+ * is full, {@link #submit(TransactionEvent)} rejects the transaction immediately and
+ * {@link #submit(TransactionEvent, long)} waits, which is how backpressure reaches the REST clients and the file
+ * consumer. Written transactions are also recorded into the in-memory {@link UserWindowStore}, and
+ * scored right away by the {@link StreamingFraudScorer} when score-on-ingest is enabled, and added to the fraud rings
+ * of the {@link FraudRingDetector}, and to the windows of their merchants in the {@link MerchantVelocityEngine}; the
+ * verdicts of their users cached by the {@link VerdictCache} are invalidated. Every batch is stamped by the
+ * {@link StateSnapshotter}, so that snapshots of the in-memory state know which batches they contain. The
+ * {@link IngestionReceipt} of a transaction, if any, is acknowledged once its batch is written or dropped.
+ * <p>
+ * Throughput of every stage is exposed as {@code fraud.ingestion.*} counters.
+ */
+@Slf4j
+@Service
+public class TransactionIngestionService {
+
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+
+    private final TransactionRepository transactionRepository;
+    private final UserWindowStore userWindowStore;
+    private final StreamingFraudScorer streamingFraudScorer;
+    private final FraudRingDetector fraudRingDetector;
+    private final StateSnapshotter stateSnapshotter;
+    private final VerdictCache verdictCache;
+    private final MerchantVelocityEngine merchantVelocityEngine;
+    private final TransactionRollups transactionRollups;
+    private final BlockingQueue<TransactionEvent> buffer;
+    private final int batchSize;
+    private final long lingerMillis;
+    private final int writerThreads;
+    private final List<Thread> writers = new ArrayList<>();
+    private volatile boolean running;
+
+    private final Counter acceptedCounter;
+    private final Counter rejectedCounter;
+    private final Counter writtenCounter;
+    private final Counter failedCounter;
+    private final Timer batchTimer;
+
+    public TransactionIngestionService(TransactionRepository transactionRepository,
+                                       UserWindowStore userWindowStore,
+                                       StreamingFraudScorer streamingFraudScorer,
+                                       FraudRingDetector fraudRingDetector,
+                                       StateSnapshotter stateSnapshotter,
+                                       VerdictCache verdictCache,
+                                       MerchantVelocityEngine merchantVelocityEngine,
+                                       TransactionRollups transactionRollups,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${fraud-detection.ingestion.buffer-size:65536}") int bufferSize,
+                                       @Value("${fraud-detection.ingestion.batch-size:2000}") int batchSize,
+                                       @Value("${fraud-detection.ingestion.linger-ms:20}") long lingerMillis,
+                                       @Value("${fraud-detection.ingestion.writer-threads:2}") int writerThreads) {
+        this.transactionRepository = transactionRepository;
+        this.userWindowStore = userWindowStore;
+        this.streamingFraudScorer = streamingFraudScorer;
+        this.fraudRingDetector = fraudRingDetector;
+        this.stateSnapshotter = stateSnapshotter;
+        this.verdictCache = verdictCache;
+        this.merchantVelocityEngine = merchantVelocityEngine;
+        this.transactionRollups = transactionRollups;
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.batchSize = batchSize;
+        this.lingerMillis = lingerMillis;
+        this.writerThreads = writerThreads;
+
+        this.acceptedCounter = Counter.builder("fraud.ingestion.accepted").description("Transactions accepted into the buffer").register(meterRegistry);
+        this.rejectedCounter = Counter.builder("fraud.ingestion.rejected").description("Transactions rejected because the buffer was full").register(meterRegistry);
+        this.writtenCounter = Counter.builder("fraud.ingestion.written").description("Transactions written to Neo4j").register(meterRegistry);
+        this.failedCounter = Counter.builder("fraud.ingestion.failed").description("Transactions dropped after failed writes").register(meterRegistry);
+        this.batchTimer = Timer.builder("fraud.ingestion.batch").description("Time to write one batch to Neo4j").register(meterRegistry);
+        Gauge.builder("fraud.ingestion.buffered", buffer, BlockingQueue::size).description("Transactions waiting in the buffer").register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        running = true;
+        for (int i = 0; i < writerThreads; i++) {
+            Thread writer = new Thread(this::writeLoop, "fraud-ingestion-writer-" + i);
+            writer.setDaemon(true);
+            writer.start();
+            writers.add(writer);
+        }
+    }
+
+    /**
+     * Accepts a transaction without waiting.
+     *
+     * @return true if the transaction was buffered; false if the buffer is full and the caller should back off.
+     */
+    public boolean submit(TransactionEvent transaction) {
+        transaction.setReceivedNanos(System.nanoTime());
+        if (buffer.offer(transaction)) {
+            acceptedCounter.increment();
+            return true;
+        }
+        rejectedCounter.increment();
+        return false;
+    }
+
+    /**
+     * Accepts a transaction, waiting up to the given time for space in the buffer.
+     *
+     * @return true if the transaction was buffered; false if the buffer stayed full.
+     */
+    public boolean submit(TransactionEvent transaction, long timeoutMillis) throws InterruptedException {
+        transaction.setReceivedNanos(System.nanoTime());
+        if (buffer.offer(transaction, timeoutMillis, TimeUnit.MILLISECONDS)) {
+            acceptedCounter.increment();
+            return true;
+        }
+        rejectedCounter.increment();
+        return false;
+    }
+
+    /**
+     * Validates an ingested transaction before it is accepted.
+     *
+     * @return The reason the transaction is invalid, or {@code null} if it is valid.
+     */
+    public static String validationError(TransactionEvent transaction) {
+        if (transaction == null) {
+            return "transaction must not be null";
+        }
+        if (transaction.getTransactionId() == null || transaction.getTransactionId().isBlank()) {
+            return "transactionId is required";
+        }
+        if (transaction.getUserId() == null) {
+            return "userId is required for transaction " + transaction.getTransactionId();
+        }
+        if (transaction.getTransactionDate() == null) {
+            return "transactionDate is required for transaction " + transaction.getTransactionId();
+        }
+        return null;
+    }
+
+    public int getBuffered() {
+        return buffer.size();
+    }
+
+    public int getRemainingCapacity() {
+        return buffer.remainingCapacity();
+    }
+
+    private void writeLoop() {
+        List<TransactionEvent> batch = new ArrayList<>(batchSize);
+        while (running || !buffer.isEmpty()) {
+            try {
+                TransactionEvent first = buffer.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // Give a partial batch a moment to fill up before writing it
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+                while (batch.size() < batchSize) {
+                    buffer.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    TransactionEvent next = buffer.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Unexpected error in ingestion writer", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<TransactionEvent> batch) {
+        // Writing in user order makes concurrent writers lock shared users in the same order
+        batch.sort(Comparator.comparing(TransactionEvent::getUserId, Comparator.nullsFirst(Comparator.naturalOrder())));
+        for (int attempt = 1; attempt <= MAX_WRITE_ATTEMPTS; attempt++) {
+            long start = System.nanoTime();
+            long ingestedAt = stateSnapshotter.beginBatch();
+            try {
+                List<MergedTransaction> merged = transactionRepository.mergeTransactions(batch, ingestedAt, transactionRollups.isEnabled());
+                batchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                writtenCounter.increment(batch.size());
+                acknowledge(batch, true);
+                recordWritten(batch, merged);
+                return;
+            } catch (TransientDataAccessException e) {
+                log.warn("Transient failure writing {} transactions (attempt {}/{})", batch.size(), attempt, MAX_WRITE_ATTEMPTS, e);
+            } catch (RuntimeException e) {
+                log.error("Failed to write {} transactions, dropping them", batch.size(), e);
+                break;
+            } finally {
+                stateSnapshotter.endBatch();
+            }
+        }
+        failedCounter.increment(batch.size());
+        acknowledge(batch, false);
+    }
+
+    /**
+     * Tells the submitters waiting for the transactions of a batch what became of them, once per transaction: a
+     * batch failing after it was written is not reported as dropped.
+     */
+    private static void acknowledge(List<TransactionEvent> batch, boolean written) {
+        for (TransactionEvent event : batch) {
+            IngestionReceipt receipt = event.getReceipt();
+            if (receipt != null) {
+                event.setReceipt(null);
+                receipt.acknowledge(written);
+            }
+        }
+    }
+
+    /**
+     * Records the written transactions into the in-memory state.
+     * <p>
+     * Only transactions created by the batch are recorded, once each: a retried, replayed or repeated transaction only
+     * updated the existing one, which the in-memory state already counts. Transactions without a Device are left out of
+     * the user windows, and so are not scored on ingest, as the windows loaded from the graph do not contain them.
+     */
+    private void recordWritten(List<TransactionEvent> batch, List<MergedTransaction> merged) {
+        Map<String, MergedTransaction> mergedById = merged.stream()
+                                                          .collect(Collectors.toMap(MergedTransaction::getTransactionId, Function.identity(), (first, second) -> first));
+        Set<String> recorded = new HashSet<>();
+        for (TransactionEvent event : batch) {
+            verdictCache.invalidate(event.getUserId());
+            MergedTransaction mergedTransaction = mergedById.get(event.getTransactionId());
+            if (mergedTransaction == null || !mergedTransaction.isCreated() || !recorded.add(event.getTransactionId())) {
+                continue;
+            }
+            merchantVelocityEngine.record(event);
+            fraudRingDetector.recordTransaction(event.getUserId(), mergedTransaction.getDeviceId(), mergedTransaction.getCreditCardId(), event.getAmount());
+            // Windows loaded from the graph only contain transactions conducted with a Device
+            if (!userWindowStore.isEnabled() || mergedTransaction.getDeviceId() == null) {
+                continue;
+            }
+            Transaction transaction = toTransaction(event, mergedTransaction);
+            if (streamingFraudScorer.isEnabled()) {
+                streamingFraudScorer.score(event, transaction);
+            } else {
+                userWindowStore.record(event.getUserId(), transaction);
+            }
+        }
+    }
+
+    /**
+     * Converts an ingested transaction to the entity shape the in-memory stores consume, with the graph identities of
+     * its Device and Credit Card.
+     */
+    static Transaction toTransaction(TransactionEvent event, MergedTransaction merged) {
+        Transaction transaction = new Transaction();
+        transaction.setTransactionId(event.getTransactionId());
+        transaction.setAmount(event.getAmount());
+        transaction.setCurrency(event.getCurrency());
+        transaction.setTransactionDate(event.getTransactionDate());
+        transaction.setTransactionStatus(event.getTransactionStatus());
+        if (merged != null && merged.getDeviceId() != null) {
+            Device device = new Device();
+            device.setId(merged.getDeviceId());
+            device.setDeviceId(event.getDeviceId());
+            device.setLatitude(event.getLatitude());
+            device.setLongitude(event.getLongitude());
+            transaction.setDevice(device);
+        }
+        if (merged != null && merged.getCreditCardId() != null) {
+            CreditCard creditCard = new CreditCard();
+            creditCard.setId(merged.getCreditCardId());
+            creditCard.setNumber(event.getCreditCardNumber());
+            transaction.setCreditCard(creditCard);
+        }
+        return transaction;
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        // Let the writers drain what is buffered already
+        running = false;
+        for (Thread writer : writers) {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.michaldrozd.frauddetection.location;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Transaction locations of a user ordered by time, with the coordinates pre-converted to radians.
+ * <p>
+ * Built once per check, so that the location rules never sort, box or call {@link Math#toRadians(double)} and
+ * {@link Math#cos(double)} more than once per point.
+ */
+public class LocationTrack {
+
+    // Index bits of the packed (time offset, index) sort keys, leaving 41 bits (~69 years) for the time offset
+    private static final int INDEX_BITS = 22;
+    private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+
+    final int size;
+    final long[] times;
+    final double[] latitudes;
+    final double[] longitudes;
+    final double[] cosLatitudes;
+
+    private LocationTrack(int size) {
+        this.size = size;
+        this.times = new long[size];
+        this.latitudes = new double[size];
+        this.longitudes = new double[size];
+        this.cosLatitudes = new double[size];
+    }
+
+    /**
+     * Builds the track from parallel arrays of epoch milliseconds and coordinates in decimal degrees, in any order.
+     *
+     * @param times      The transaction times in epoch milliseconds.
+     * @param latitudes  The latitudes in decimal degrees.
+     * @param longitudes The longitudes in decimal degrees.
+     *
+     * @return The time-ordered track.
+     */
+    public static LocationTrack of(long[] times, double[] latitudes, double[] longitudes) {
+        int size = times.length;
+        LocationTrack track = new LocationTrack(size);
+        int[] order = sortedOrder(times);
+        for (int k = 0; k < size; k++) {
+            int i = order != null ? order[k] : k;
+            double latitude = Math.toRadians(latitudes[i]);
+            track.times[k] = times[i];
+            track.latitudes[k] = latitude;
+            track.longitudes[k] = Math.toRadians(longitudes[i]);
+            track.cosLatitudes[k] = Math.cos(latitude);
+        }
+        return track;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The permutation sorting {@code times}, or {@code null} if they are sorted already.
+     */
+    private static int[] sortedOrder(long[] times) {
+        int size = times.length;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        boolean sorted = true;
+        for (int i = 0; i < size; i++) {
+            if (i > 0 && times[i] < times[i - 1]) {
+                sorted = false;
+            }
+            min = Math.min(min, times[i]);
+            max = Math.max(max, times[i]);
+        }
+        if (sorted) {
+            return null;
+        }
+
+        int[] order = new int[size];
+        if (size <= INDEX_MASK + 1 && max - min < (1L << (63 - INDEX_BITS))) {
+            // Sort (time offset, index) pairs packed into primitive longs
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = ((times[i] - min) << INDEX_BITS) | i;
+            }
+            Arrays.sort(keys);
+            for (int i = 0; i < size; i++) {
+                order[i] = (int) (keys[i] & INDEX_MASK);
+            }
+            return order;
+        }
+
+        Integer[] boxed = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            boxed[i] = i;
+        }
+        Arrays.sort(boxed, Comparator.comparingLong(i -> times[i]));
+        for (int i = 0; i < size; i++) {
+            order[i] = boxed[i];
+        }
+        return order;
+    }
+}
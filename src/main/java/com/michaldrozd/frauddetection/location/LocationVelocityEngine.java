@@ -0,0 +1,202 @@
+package com.michaldrozd.frauddetection.location;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Location rules over a user's {@link LocationTrack}.
+ * <p>
+ * Both rules run in a single time-ordered sweep instead of comparing every pair of transactions:
+ * <ul>
+ *     <li>The distance rule keeps the transactions inside the time window as a deque, together with sliding minimum
+ *     and maximum coordinates. A transaction is only compared with the deque when the bounding box of the deque can
+ *     possibly be far enough away, and each comparison first tries a latitude-only accept before the exact Haversine,
+ *     which is evaluated in haversine space without {@code sqrt}/{@code atan2}.</li>
+ *     <li>The impossible-travel rule only has to look at consecutive transactions: if every consecutive hop is
+ *     travelable, so is every pair of transactions.</li>
+ * </ul>
+ */
+@Component
+public class LocationVelocityEngine {
+
+    static final double EARTH_RADIUS_IN_KM = 6371;
+
+    private final boolean impossibleTravelEnabled;
+    private final double maxSpeedInKmh;
+    private final double minTravelDistanceInKm;
+
+    public LocationVelocityEngine(@Value("${fraud-detection.location.impossible-travel.enabled:false}") boolean impossibleTravelEnabled,
+                                  @Value("${fraud-detection.location.impossible-travel.max-speed-kmh:900}") double maxSpeedInKmh,
+                                  @Value("${fraud-detection.location.impossible-travel.min-distance-km:100}") double minTravelDistanceInKm) {
+        this.impossibleTravelEnabled = impossibleTravelEnabled;
+        this.maxSpeedInKmh = maxSpeedInKmh;
+        this.minTravelDistanceInKm = minTravelDistanceInKm;
+    }
+
+    public boolean isImpossibleTravelEnabled() {
+        return impossibleTravelEnabled;
+    }
+
+    /**
+     * Checks whether any two transactions within {@code timeWindowInMillis} of each other are at least
+     * {@code distanceThresholdInKm} apart.
+     *
+     * @param track                 The user's time-ordered transaction locations.
+     * @param timeWindowInMillis    The maximum time between two transactions to compare them.
+     * @param distanceThresholdInKm The distance at or above which two transactions are suspicious.
+     *
+     * @return true if such a pair of transactions exists; false otherwise.
+     */
+    public boolean exceedsDistance(LocationTrack track, long timeWindowInMillis, double distanceThresholdInKm) {
+        int size = track.size;
+        if (size < 2 || distanceThresholdInKm > Math.PI * EARTH_RADIUS_IN_KM) {
+            return false;
+        }
+        long[] times = track.times;
+        double[] latitudes = track.latitudes;
+        double[] longitudes = track.longitudes;
+        double[] cosLatitudes = track.cosLatitudes;
+        double haversineThreshold = haversine(distanceThresholdInKm / EARTH_RADIUS_IN_KM);
+        double latitudeThreshold = distanceThresholdInKm / EARTH_RADIUS_IN_KM;
+
+        // Monotonic deques of indices over the window [left, j) for the sliding bounding box
+        SlidingExtreme minLatitude = new SlidingExtreme(size, latitudes, true);
+        SlidingExtreme maxLatitude = new SlidingExtreme(size, latitudes, false);
+        SlidingExtreme minLongitude = new SlidingExtreme(size, longitudes, true);
+        SlidingExtreme maxLongitude = new SlidingExtreme(size, longitudes, false);
+
+        int left = 0;
+        for (int j = 0; j < size; j++) {
+            while (times[j] - times[left] > timeWindowInMillis) {
+                left++;
+            }
+            if (left < j) {
+                minLatitude.evictBefore(left);
+                maxLatitude.evictBefore(left);
+                minLongitude.evictBefore(left);
+                maxLongitude.evictBefore(left);
+
+                double latitudeMin = latitudes[minLatitude.peek()];
+                double latitudeMax = latitudes[maxLatitude.peek()];
+                double longitudeMin = longitudes[minLongitude.peek()];
+                double longitudeMax = longitudes[maxLongitude.peek()];
+
+                // Upper bound of the haversine between j and any point of the bounding box
+                double maxLatitudeDistance = Math.max(Math.abs(latitudes[j] - latitudeMin), Math.abs(latitudes[j] - latitudeMax));
+                double maxLongitudeDistance = Math.min(Math.PI, Math.max(Math.abs(longitudes[j] - longitudeMin), Math.abs(longitudes[j] - longitudeMax)));
+                double maxCosLatitude = latitudeMin <= 0 && latitudeMax >= 0 ? 1 : Math.cos(Math.min(Math.abs(latitudeMin), Math.abs(latitudeMax)));
+                double bound = haversine(maxLatitudeDistance) + cosLatitudes[j] * maxCosLatitude * haversine(maxLongitudeDistance);
+
+                if (bound >= haversineThreshold) {
+                    for (int i = left; i < j; i++) {
+                        double latitudeDistance = latitudes[j] - latitudes[i];
+                        // Great-circle distance is never shorter than the latitude difference
+                        if (Math.abs(latitudeDistance) >= latitudeThreshold) {
+                            return true;
+                        }
+                        double h = haversine(latitudeDistance) + cosLatitudes[i] * cosLatitudes[j] * haversine(longitudes[j] - longitudes[i]);
+                        if (h >= haversineThreshold) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            minLatitude.push(j);
+            maxLatitude.push(j);
+            minLongitude.push(j);
+            maxLongitude.push(j);
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether any two consecutive transactions are further apart than the user could have travelled at the
+     * configured maximum speed. Hops shorter than the configured minimum distance are ignored as location noise.
+     *
+     * @param track The user's time-ordered transaction locations.
+     *
+     * @return true if the track contains an impossible hop; false otherwise.
+     */
+    public boolean isImpossibleTravel(LocationTrack track) {
+        long[] times = track.times;
+        double[] latitudes = track.latitudes;
+        double[] longitudes = track.longitudes;
+        double[] cosLatitudes = track.cosLatitudes;
+        for (int i = 1; i < track.size; i++) {
+            double distance = distance(latitudes[i - 1], longitudes[i - 1], cosLatitudes[i - 1], latitudes[i], longitudes[i], cosLatitudes[i]);
+            if (distance < minTravelDistanceInKm) {
+                continue;
+            }
+            double hours = (times[i] - times[i - 1]) / 3_600_000.0;
+            if (distance > maxSpeedInKmh * hours) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Calculates the distance between two geographical coordinates (latitude and longitude) using the Haversine formula.
+     * <p>
+     * This method takes two sets of coordinates (latitude1, longitude1) and (latitude2, longitude2) as input parameters.
+     * It calculates the distance between these coordinates on the Earth's surface in kilometers, using the Haversine formula.
+     *
+     * @param latitude1  The latitude of the first coordinate in decimal degrees.
+     * @param longitude1 The longitude of the first coordinate in decimal degrees.
+     * @param latitude2  The latitude of the second coordinate in decimal degrees.
+     * @param longitude2 The longitude of the second coordinate in decimal degrees.
+     *
+     * @return The distance between the two coordinates in kilometers.
+     */
+    public static double calculateDistance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double latitude1InRadians = Math.toRadians(latitude1);
+        double latitude2InRadians = Math.toRadians(latitude2);
+        return distance(latitude1InRadians, Math.toRadians(longitude1), Math.cos(latitude1InRadians),
+            latitude2InRadians, Math.toRadians(longitude2), Math.cos(latitude2InRadians));
+    }
+
+    private static double distance(double latitude1, double longitude1, double cosLatitude1, double latitude2, double longitude2, double cosLatitude2) {
+        double a = haversine(latitude2 - latitude1) + cosLatitude1 * cosLatitude2 * haversine(longitude2 - longitude1);
+        return 2 * EARTH_RADIUS_IN_KM * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    private static double haversine(double angle) {
+        double sin = Math.sin(angle / 2);
+        return sin * sin;
+    }
+
+    /**
+     * Sliding-window minimum or maximum over a prefix of an array, as a monotonic deque of indices.
+     */
+    private static final class SlidingExtreme {
+        private final int[] indices;
+        private final double[] values;
+        private final boolean minimum;
+        private int head;
+        private int tail;
+
+        SlidingExtreme(int capacity, double[] values, boolean minimum) {
+            this.indices = new int[capacity];
+            this.values = values;
+            this.minimum = minimum;
+        }
+
+        void push(int index) {
+            double value = values[index];
+            while (tail > head && (minimum ? values[indices[tail - 1]] >= value : values[indices[tail - 1]] <= value)) {
+                tail--;
+            }
+            indices[tail++] = index;
+        }
+
+        void evictBefore(int left) {
+            while (indices[head] < left) {
+                head++;
+            }
+        }
+
+        int peek() {
+            return indices[head];
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.michaldrozd.frauddetection.merchant;
+
+import com.michaldrozd.frauddetection.dto.MerchantAlert;
+import com.michaldrozd.frauddetection.dto.MerchantAlertReason;
+import com.michaldrozd.frauddetection.dto.MerchantVelocity;
+import com.michaldrozd.frauddetection.dto.TransactionEvent;
+import com.michaldrozd.frauddetection.sketch.HyperLogLog;
+import com.michaldrozd.frauddetection.window.WindowAggregate;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Merchant-side velocity of the ingested transactions, for card testing and bust-out detection.
+ * <p>
+ * Every merchant with transactions within the sliding window of {@code fraud-detection.merchant-velocity.window-seconds}
+ * has a {@link MerchantWindow} of fixed size: with the defaults of 4 buckets and sketches of precision 7 (about 9%
+ * standard error), about 2 KB. The windows are only fed by the ingestion, so no query reads from the graph, and
+ * merchants without transactions within the window are evicted, so memory follows the number of active merchants.
+ * Beyond {@code fraud-detection.merchant-velocity.max-merchants}, transactions of new merchants are not tracked.
+ * <p>
+ * A merchant reaching an alert threshold within the window raises a {@link MerchantAlert}, at most once per bucket and
+ * threshold; alerts are logged, counted as {@code fraud.merchant-velocity.alerts} and the latest ones are kept.
+ */
+@Slf4j
+@Component
+public class MerchantVelocityEngine {
+
+    private final boolean enabled;
+    private final long bucketMillis;
+    private final int buckets;
+    private final int precision;
+    private final int maxMerchants;
+    private final long maxTransactions;
+    private final double maxAmount;
+    private final long maxDistinctCreditCards;
+    private final int maxRecentAlerts;
+
+    private final Map<String, MerchantWindow> merchants = new ConcurrentHashMap<>();
+    private final Deque<MerchantAlert> recentAlerts = new ArrayDeque<>();
+
+    private final Map<MerchantAlertReason, Counter> alertCounters = new EnumMap<>(MerchantAlertReason.class);
+    private final Counter untrackedCounter;
+
+    public MerchantVelocityEngine(@Value("${fraud-detection.merchant-velocity.enabled:false}") boolean enabled,
+                                  @Value("${fraud-detection.merchant-velocity.window-seconds:600}") long windowSeconds,
+                                  @Value("${fraud-detection.merchant-velocity.buckets:4}") int buckets,
+                                  @Value("${fraud-detection.merchant-velocity.hll-precision:7}") int precision,
+                                  @Value("${fraud-detection.merchant-velocity.max-merchants:500000}") int maxMerchants,
+                                  @Value("${fraud-detection.merchant-velocity.alert.transactions:0}") long maxTransactions,
+                                  @Value("${fraud-detection.merchant-velocity.alert.amount:0}") double maxAmount,
+                                  @Value("${fraud-detection.merchant-velocity.alert.distinct-credit-cards:0}") long maxDistinctCreditCards,
+                                  @Value("${fraud-detection.merchant-velocity.max-recent-alerts:1000}") int maxRecentAlerts,
+                                  MeterRegistry meterRegistry) {
+        if (precision < 4 || precision > 16) {
+            throw new IllegalArgumentException("fraud-detection.merchant-velocity.hll-precision must be between 4 and 16");
+        }
+        this.enabled = enabled;
+        this.bucketMillis = Math.max(1, windowSeconds * 1000 / buckets);
+        this.buckets = buckets;
+        this.precision = precision;
+        this.maxMerchants = maxMerchants;
+        this.maxTransactions = maxTransactions;
+        this.maxAmount = maxAmount;
+        this.maxDistinctCreditCards = maxDistinctCreditCards;
+        this.maxRecentAlerts = maxRecentAlerts;
+
+        for (MerchantAlertReason reason : MerchantAlertReason.values()) {
+            alertCounters.put(reason, Counter.builder("fraud.merchant-velocity.alerts")
+                                             .description("Merchants reaching an alert threshold")
+                                             .tag("reason", reason.name())
+                                             .register(meterRegistry));
+        }
+        this.untrackedCounter = Counter.builder("fraud.merchant-velocity.untracked")
+                                       .description("Transactions of new merchants not tracked because the maximum number of merchants was reached")
+                                       .register(meterRegistry);
+        Gauge.builder("fraud.merchant-velocity.merchants", merchants, Map::size).description("Merchants tracked").register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records an ingested transaction in its merchant's window, and raises the alerts it causes.
+     */
+    public void record(TransactionEvent event) {
+        if (!enabled || event.getMerchantId() == null || event.getTransactionDate() == null) {
+            return;
+        }
+        long time = WindowAggregate.toEpochMillis(event.getTransactionDate());
+        double amount = event.getAmount() != null ? event.getAmount() : 0;
+        long creditCardHash = event.getCreditCardNumber() != null ? HyperLogLog.hash(event.getCreditCardNumber()) : 0;
+        long userHash = event.getUserId() != null ? HyperLogLog.mix(event.getUserId() ^ 0x9e3779b97f4a7c15L) : 0;
+        List<MerchantAlert> alerts;
+        do {
+            MerchantWindow window = merchants.get(event.getMerchantId());
+            if (window == null) {
+                if (merchants.size() >= maxMerchants) {
+                    untrackedCounter.increment();
+                    return;
+                }
+                window = merchants.computeIfAbsent(event.getMerchantId(), merchantId -> new MerchantWindow(merchantId, bucketMillis, buckets, precision));
+            }
+            // A window evicted meanwhile is replaced on the next attempt
+            alerts = window.record(event.getTransactionDate(), time, amount, creditCardHash, userHash, maxTransactions, maxAmount, maxDistinctCreditCards);
+        } while (alerts == null);
+
+        for (MerchantAlert alert : alerts) {
+            log.warn("Merchant {} has reached the {} alert threshold of {} with {} within the window.",
+                alert.getMerchantId(), alert.getReason(), alert.getThreshold(), alert.getValue());
+            alertCounters.get(alert.getReason()).increment();
+            synchronized (recentAlerts) {
+                if (recentAlerts.size() >= maxRecentAlerts) {
+                    recentAlerts.removeFirst();
+                }
+                recentAlerts.addLast(alert);
+            }
+        }
+    }
+
+    /**
+     * @return The merchant's activity within the window ending now, or an empty optional if the merchant has no
+     * transactions within it.
+     */
+    public Optional<MerchantVelocity> find(String merchantId) {
+        MerchantWindow window = merchants.get(merchantId);
+        if (window == null) {
+            return Optional.empty();
+        }
+        MerchantVelocity velocity = window.summarize(System.currentTimeMillis());
+        return velocity.getTransactionCount() > 0 ? Optional.of(velocity) : Optional.empty();
+    }
+
+    /**
+     * @return The latest alerts, newest first.
+     */
+    public List<MerchantAlert> findRecentAlerts(int limit) {
+        List<MerchantAlert> alerts = new ArrayList<>(Math.min(limit, maxRecentAlerts));
+        synchronized (recentAlerts) {
+            Iterator<MerchantAlert> newestFirst = recentAlerts.descendingIterator();
+            while (newestFirst.hasNext() && alerts.size() < limit) {
+                alerts.add(newestFirst.next());
+            }
+        }
+        return alerts;
+    }
+
+    public int size() {
+        return merchants.size();
+    }
+
+    @Scheduled(fixedDelayString = "${fraud-detection.merchant-velocity.eviction-interval-ms:60000}")
+    public void evictIdleMerchants() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        merchants.entrySet().removeIf(entry -> entry.getValue().evictIfIdle(now));
+    }
+}
@@ -0,0 +1,217 @@
+package com.michaldrozd.frauddetection.merchant;
+
+import com.michaldrozd.frauddetection.dto.MerchantAlert;
+import com.michaldrozd.frauddetection.dto.MerchantAlertReason;
+import com.michaldrozd.frauddetection.dto.MerchantVelocity;
+import com.michaldrozd.frauddetection.sketch.HyperLogLog;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sliding window of one merchant's transactions, in a ring of fixed-length buckets of fixed size.
+ * <p>
+ * Every bucket holds the count and total amount of its transactions, a HyperLogLog sketch of their Credit Cards and
+ * one of their Users, and a histogram of their amounts with two bins per doubling from {@value #MIN_AMOUNT} on. The
+ * window is the bucket of the latest transaction and the ones before it; a transaction older than the window is
+ * dropped, and one in a newer bucket reuses the slot of the oldest.
+ * <p>
+ * Recording, summarizing and evicting lock the window, so the transactions of one merchant are recorded one at a time
+ * while the windows of different merchants are updated concurrently.
+ */
+class MerchantWindow {
+
+    static final int AMOUNT_BINS = 48;
+    static final double MIN_AMOUNT = 0.1;
+    private static final double SQRT_2 = Math.sqrt(2);
+    private static final MerchantAlertReason[] REASONS = MerchantAlertReason.values();
+
+    private final String merchantId;
+    private final long bucketMillis;
+    private final int buckets;
+    private final int precision;
+    private final int sketchSize;
+
+    private final long[] epochs;
+    private final long[] counts;
+    private final double[] amounts;
+    // Two sketches per bucket: Credit Cards at 2 * bucket, Users at 2 * bucket + 1
+    private final byte[] registers;
+    private final int[] histograms;
+    private final long[] lastAlertEpochs = new long[REASONS.length];
+    private long latestEpoch = Long.MIN_VALUE;
+    private boolean evicted;
+
+    MerchantWindow(String merchantId, long bucketMillis, int buckets, int precision) {
+        this.merchantId = merchantId;
+        this.bucketMillis = bucketMillis;
+        this.buckets = buckets;
+        this.precision = precision;
+        this.sketchSize = 1 << precision;
+        this.epochs = new long[buckets];
+        this.counts = new long[buckets];
+        this.amounts = new double[buckets];
+        this.registers = new byte[buckets * 2 * sketchSize];
+        this.histograms = new int[buckets * AMOUNT_BINS];
+        Arrays.fill(epochs, Long.MIN_VALUE);
+        Arrays.fill(lastAlertEpochs, Long.MIN_VALUE);
+    }
+
+    /**
+     * Records a transaction, and checks the window against the alert thresholds; a threshold of 0 is not checked.
+     * Every threshold raises at most one alert per bucket.
+     *
+     * @param creditCardHash The hash of the transaction's Credit Card, or 0 if it has none.
+     * @param userHash       The hash of the transaction's User, or 0 if it has none.
+     *
+     * @return The alerts raised, or {@code null} if the window was evicted and the transaction not recorded.
+     */
+    synchronized List<MerchantAlert> record(LocalDateTime transactionDate, long time, double amount, long creditCardHash, long userHash,
+                                            long maxTransactions, double maxAmount, long maxDistinctCreditCards) {
+        if (evicted) {
+            return null;
+        }
+        long epoch = Math.floorDiv(time, bucketMillis);
+        if (latestEpoch != Long.MIN_VALUE && epoch <= latestEpoch - buckets) {
+            return List.of();
+        }
+        int bucket = (int) Math.floorMod(epoch, (long) buckets);
+        if (epochs[bucket] != epoch) {
+            epochs[bucket] = epoch;
+            counts[bucket] = 0;
+            amounts[bucket] = 0;
+            Arrays.fill(registers, bucket * 2 * sketchSize, (bucket * 2 + 2) * sketchSize, (byte) 0);
+            Arrays.fill(histograms, bucket * AMOUNT_BINS, (bucket + 1) * AMOUNT_BINS, 0);
+        }
+        latestEpoch = Math.max(latestEpoch, epoch);
+
+        counts[bucket]++;
+        amounts[bucket] += amount;
+        histograms[bucket * AMOUNT_BINS + amountBin(amount)]++;
+        if (creditCardHash != 0) {
+            HyperLogLog.add(registers, bucket * 2 * sketchSize, precision, creditCardHash);
+        }
+        if (userHash != 0) {
+            HyperLogLog.add(registers, (bucket * 2 + 1) * sketchSize, precision, userHash);
+        }
+        return checkAlerts(transactionDate, maxTransactions, maxAmount, maxDistinctCreditCards);
+    }
+
+    private List<MerchantAlert> checkAlerts(LocalDateTime transactionDate, long maxTransactions, double maxAmount, long maxDistinctCreditCards) {
+        long count = 0;
+        double amount = 0;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            if (inWindow(bucket, latestEpoch)) {
+                count += counts[bucket];
+                amount += amounts[bucket];
+            }
+        }
+        List<MerchantAlert> alerts = null;
+        if (maxTransactions > 0 && count >= maxTransactions) {
+            alerts = alert(alerts, MerchantAlertReason.TRANSACTION_COUNT, count, maxTransactions, transactionDate);
+        }
+        if (maxAmount > 0 && amount >= maxAmount) {
+            alerts = alert(alerts, MerchantAlertReason.TRANSACTION_AMOUNT, amount, maxAmount, transactionDate);
+        }
+        // There cannot be more distinct cards than transactions, which saves estimating them below the threshold
+        if (maxDistinctCreditCards > 0 && count >= maxDistinctCreditCards
+            && lastAlertEpochs[MerchantAlertReason.DISTINCT_CREDIT_CARDS.ordinal()] != latestEpoch) {
+            long distinctCreditCards = estimate(0, latestEpoch);
+            if (distinctCreditCards >= maxDistinctCreditCards) {
+                alerts = alert(alerts, MerchantAlertReason.DISTINCT_CREDIT_CARDS, distinctCreditCards, maxDistinctCreditCards, transactionDate);
+            }
+        }
+        return alerts != null ? alerts : List.of();
+    }
+
+    private List<MerchantAlert> alert(List<MerchantAlert> alerts, MerchantAlertReason reason, double value, double threshold, LocalDateTime transactionDate) {
+        if (lastAlertEpochs[reason.ordinal()] == latestEpoch) {
+            return alerts;
+        }
+        lastAlertEpochs[reason.ordinal()] = latestEpoch;
+        List<MerchantAlert> raised = alerts != null ? alerts : new ArrayList<>(REASONS.length);
+        raised.add(new MerchantAlert(merchantId, reason, value, threshold, transactionDate));
+        return raised;
+    }
+
+    /**
+     * Summarizes the window ending with the bucket of {@code now}.
+     */
+    synchronized MerchantVelocity summarize(long now) {
+        long epoch = Math.floorDiv(now, bucketMillis);
+        long count = 0;
+        double amount = 0;
+        int[] histogram = new int[AMOUNT_BINS];
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            if (inWindow(bucket, epoch)) {
+                count += counts[bucket];
+                amount += amounts[bucket];
+                for (int bin = 0; bin < AMOUNT_BINS; bin++) {
+                    histogram[bin] += histograms[bucket * AMOUNT_BINS + bin];
+                }
+            }
+        }
+        // The current bucket is only partly over
+        double minutes = ((buckets - 1) * bucketMillis + (now - epoch * bucketMillis)) / 60_000.0;
+        return new MerchantVelocity(merchantId, count, amount, minutes > 0 ? count / minutes : 0, estimate(0, epoch), estimate(1, epoch),
+            percentile(histogram, count, 0.5), percentile(histogram, count, 0.95), percentile(histogram, count, 0.99));
+    }
+
+    private long estimate(int sketch, long epoch) {
+        int[] offsets = new int[buckets];
+        int sketches = 0;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            if (inWindow(bucket, epoch)) {
+                offsets[sketches++] = (bucket * 2 + sketch) * sketchSize;
+            }
+        }
+        return sketches == 0 ? 0 : HyperLogLog.estimateUnion(registers, offsets, sketches, precision);
+    }
+
+    private boolean inWindow(int bucket, long epoch) {
+        return epochs[bucket] <= epoch && epochs[bucket] > epoch - buckets;
+    }
+
+    /**
+     * Evicts the window if it has no transactions within the window ending at {@code now}; it takes no transactions
+     * afterwards.
+     *
+     * @return Whether the window was evicted.
+     */
+    synchronized boolean evictIfIdle(long now) {
+        evicted = latestEpoch <= Math.floorDiv(now, bucketMillis) - buckets;
+        return evicted;
+    }
+
+    /**
+     * @return The histogram bin of an amount: bin 0 below {@link #MIN_AMOUNT}, then two bins per doubling.
+     */
+    static int amountBin(double amount) {
+        double scaled = amount / MIN_AMOUNT;
+        if (!(scaled >= 1)) {
+            return 0;
+        }
+        int exponent = Math.getExponent(scaled);
+        int half = scaled >= Math.scalb(SQRT_2, exponent) ? 1 : 0;
+        return Math.min(1 + 2 * exponent + half, AMOUNT_BINS - 1);
+    }
+
+    /**
+     * @return The amount at the quantile, as the geometric middle of the bin it falls into.
+     */
+    static double percentile(int[] histogram, long count, double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int bin = 0; bin < histogram.length; bin++) {
+            seen += histogram[bin];
+            if (seen >= rank) {
+                return bin == 0 ? MIN_AMOUNT / 2 : MIN_AMOUNT * Math.pow(2, (bin - 0.5) / 2);
+            }
+        }
+        return MIN_AMOUNT * Math.pow(2, (histogram.length - 1.5) / 2);
+    }
+}
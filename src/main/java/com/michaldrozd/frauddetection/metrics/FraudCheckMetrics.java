@@ -0,0 +1,141 @@
+package com.michaldrozd.frauddetection.metrics;
+
+import com.michaldrozd.frauddetection.dto.FraudReason;
+import com.michaldrozd.frauddetection.dto.FraudVerdict;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.springframework.stereotype.Component;
+
+/**
+ * Timers of every stage and every rule of the fraud check.
+ * <ul>
+ *     <li>{@code fraud.check.stage}: the user lookup, the in-memory window and the window query, tagged by {@code stage}.</li>
+ *     <li>{@code fraud.check.rule}: every evaluated rule, tagged by {@code rule} and whether it {@code tripped}.</li>
+ *     <li>{@code fraud.check.verdict}: the evaluation of all rules, tagged by the rule that {@code decided} the verdict
+ *     ({@code none} if it is not fraudulent).</li>
+ *     <li>{@code fraud.check}: a single-user check end to end, including the lookups, tagged the same way.</li>
+ * </ul>
+ * All timers publish percentile histograms (for Prometheus) and p50/p95/p99. They are registered up front and looked
+ * up by ordinal, and durations are passed in as {@link System#nanoTime()} differences, so recording allocates nothing.
+ */
+@Component
+public class FraudCheckMetrics {
+
+    /**
+     * The stages of a fraud check before its rules are evaluated.
+     */
+    public enum Stage {
+        USER_LOOKUP,
+        WINDOW_STORE,
+        WINDOW_QUERY
+    }
+
+    private static final FraudReason[] RULES = FraudReason.values();
+    // Index of the "none" tag in the timers by deciding rule
+    private static final int NOT_DECIDED = RULES.length;
+
+    private final Timer[] stageTimers;
+    // Two per rule: not tripped, tripped
+    private final Timer[] ruleTimers;
+    private final Timer[] verdictTimers;
+    private final Timer[] checkTimers;
+
+    public FraudCheckMetrics(MeterRegistry meterRegistry) {
+        Stage[] stages = Stage.values();
+        stageTimers = new Timer[stages.length];
+        for (Stage stage : stages) {
+            stageTimers[stage.ordinal()] = Timer.builder("fraud.check.stage")
+                                                .description("Time of a stage of the fraud check")
+                                                .tag("stage", tagValue(stage))
+                                                .publishPercentiles(0.5, 0.95, 0.99)
+                                                .publishPercentileHistogram()
+                                                .minimumExpectedValue(Duration.ofNanos(100))
+                                                .maximumExpectedValue(Duration.ofSeconds(10))
+                                                .register(meterRegistry);
+        }
+
+        ruleTimers = new Timer[RULES.length * 2];
+        for (FraudReason rule : RULES) {
+            for (int tripped = 0; tripped < 2; tripped++) {
+                ruleTimers[rule.ordinal() * 2 + tripped] = Timer.builder("fraud.check.rule")
+                                                                .description("Time to evaluate a fraud rule")
+                                                                .tag("rule", tagValue(rule))
+                                                                .tag("tripped", String.valueOf(tripped == 1))
+                                                                .publishPercentiles(0.5, 0.95, 0.99)
+                                                                .publishPercentileHistogram()
+                                                                .minimumExpectedValue(Duration.ofNanos(10))
+                                                                .maximumExpectedValue(Duration.ofMillis(100))
+                                                                .register(meterRegistry);
+            }
+        }
+
+        verdictTimers = new Timer[RULES.length + 1];
+        checkTimers = new Timer[RULES.length + 1];
+        for (int decided = 0; decided <= RULES.length; decided++) {
+            String decidedBy = decided == NOT_DECIDED ? "none" : tagValue(RULES[decided]);
+            verdictTimers[decided] = Timer.builder("fraud.check.verdict")
+                                          .description("Time to evaluate all fraud rules of a window, by the rule that decided the verdict")
+                                          .tag("decided", decidedBy)
+                                          .publishPercentiles(0.5, 0.95, 0.99)
+                                          .publishPercentileHistogram()
+                                          .minimumExpectedValue(Duration.ofNanos(100))
+                                          .maximumExpectedValue(Duration.ofSeconds(1))
+                                          .register(meterRegistry);
+            checkTimers[decided] = Timer.builder("fraud.check")
+                                        .description("Time of a single-user fraud check end to end, by the rule that decided the verdict")
+                                        .tag("decided", decidedBy)
+                                        .publishPercentiles(0.5, 0.95, 0.99)
+                                        .publishPercentileHistogram()
+                                        .minimumExpectedValue(Duration.ofNanos(1_000))
+                                        .maximumExpectedValue(Duration.ofSeconds(10))
+                                        .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Records a stage that started at {@code startNanos}.
+     *
+     * @return The current {@link System#nanoTime()}, the start of the next stage.
+     */
+    public long recordStage(Stage stage, long startNanos) {
+        long now = System.nanoTime();
+        stageTimers[stage.ordinal()].record(now - startNanos, TimeUnit.NANOSECONDS);
+        return now;
+    }
+
+    /**
+     * Records a rule evaluated since {@code startNanos}.
+     *
+     * @return The current {@link System#nanoTime()}, the start of the next rule.
+     */
+    public long recordRule(FraudReason rule, boolean tripped, long startNanos) {
+        long now = System.nanoTime();
+        ruleTimers[rule.ordinal() * 2 + (tripped ? 1 : 0)].record(now - startNanos, TimeUnit.NANOSECONDS);
+        return now;
+    }
+
+    /**
+     * Records the evaluation of all rules, started at {@code startNanos}, that came to the given verdict.
+     */
+    public void recordVerdict(FraudVerdict verdict, long startNanos) {
+        verdictTimers[decided(verdict)].record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records a single-user check, started at {@code startNanos}, that came to the given verdict.
+     */
+    public void recordCheck(FraudVerdict verdict, long startNanos) {
+        checkTimers[decided(verdict)].record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static int decided(FraudVerdict verdict) {
+        return verdict.getReason() != null ? verdict.getReason().ordinal() : NOT_DECIDED;
+    }
+
+    private static String tagValue(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+}
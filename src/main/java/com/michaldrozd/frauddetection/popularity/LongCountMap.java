@@ -0,0 +1,100 @@
+package com.michaldrozd.frauddetection.popularity;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing map from {@code long} keys to {@code long} counts, without boxing.
+ * <p>
+ * Not thread-safe; the owner synchronizes access.
+ */
+class LongCountMap {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private long[] counts;
+    private int size;
+
+    LongCountMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        keys = new long[capacity];
+        counts = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Adds {@code delta} to the count of the key.
+     *
+     * @return The new count.
+     */
+    long add(long key, long delta) {
+        int slot = find(key);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            counts[slot] = delta;
+            if (++size * 2 > keys.length) {
+                resize();
+            }
+            return delta;
+        }
+        counts[slot] += delta;
+        return counts[slot];
+    }
+
+    long get(long key) {
+        int slot = find(key);
+        return keys[slot] == EMPTY ? 0 : counts[slot];
+    }
+
+    boolean containsKey(long key) {
+        return keys[find(key)] != EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void forEach(Entry consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                consumer.accept(keys[i], counts[i]);
+            }
+        }
+    }
+
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int slot = (int) mix(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        long[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        counts = new long[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    @FunctionalInterface
+    interface Entry {
+        void accept(long key, long count);
+    }
+}
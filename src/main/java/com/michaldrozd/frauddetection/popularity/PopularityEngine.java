@@ -0,0 +1,166 @@
+package com.michaldrozd.frauddetection.popularity;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Streaming product view counters: how many users viewed each product, and how many users viewed each pair of
+ * products (frequently viewed together).
+ * <p>
+ * Views and co-views are kept in primitive {@link LongCountMap}s, and the most popular products are selected with a
+ * bounded min-heap instead of sorting all products. Callers record each user's first view of a product only, as the
+ * {@code VIEWED} relationship counts every user once per product.
+ * <p>
+ * Co-view counts are approximate: a new view is paired with the user's {@code maxCoViewFanout} most recent products
+ * only, not with every product the user viewed before. This keeps the per-user history, and the co-views a single user
+ * adds, bounded; pairs of products viewed far apart in a long history are undercounted.
+ */
+public class PopularityEngine {
+
+    private final int maxCoViewFanout;
+    private final LongCountMap views = new LongCountMap(1024);
+    private final Map<Long, LongCountMap> coViews = new HashMap<>();
+    // The most recent products viewed by every user
+    private final Map<Long, RecentViews> recentViewsByUser = new HashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public PopularityEngine(int maxCoViewFanout) {
+        this.maxCoViewFanout = maxCoViewFanout;
+    }
+
+    /**
+     * Records that a user viewed a product for the first time.
+     *
+     * @return The number of users that viewed the product, or {@code 0} if it is among the user's most recent views
+     *     already.
+     */
+    public long recordView(long userId, long productId) {
+        lock.writeLock().lock();
+        try {
+            RecentViews recentViews = recentViewsByUser.computeIfAbsent(userId, id -> new RecentViews(maxCoViewFanout));
+            if (recentViews.contains(productId)) {
+                return 0;
+            }
+            if (recentViews.size > 0) {
+                LongCountMap pairs = coViews.computeIfAbsent(productId, id -> new LongCountMap(16));
+                for (int i = 0; i < recentViews.size; i++) {
+                    long other = recentViews.products[i];
+                    pairs.add(other, 1);
+                    coViews.computeIfAbsent(other, id -> new LongCountMap(16)).add(productId, 1);
+                }
+            }
+            recentViews.add(productId);
+            return views.add(productId, 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long getViews(long productId) {
+        lock.readLock().lock();
+        try {
+            return views.get(productId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Selects the most viewed products with at least {@code minViews} views.
+     *
+     * @param minViews The minimum number of views.
+     * @param limit    The maximum number of products.
+     *
+     * @return The product IDs, most viewed first.
+     */
+    public long[] topProducts(long minViews, int limit) {
+        lock.readLock().lock();
+        try {
+            return top(views, minViews, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Selects the products viewed by at least {@code minSharedViews} of the users that viewed the given product.
+     *
+     * @return The product IDs, most shared views first.
+     */
+    public long[] viewedTogether(long productId, long minSharedViews, int limit) {
+        lock.readLock().lock();
+        try {
+            LongCountMap pairs = coViews.get(productId);
+            return pairs == null ? new long[0] : top(pairs, minSharedViews, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * A ring of at most {@code capacity} product IDs, grown on demand, replacing the oldest once full.
+     */
+    private static final class RecentViews {
+
+        private final int capacity;
+        private long[] products;
+        private int size;
+        private int next;
+
+        private RecentViews(int capacity) {
+            this.capacity = capacity;
+            this.products = new long[Math.min(4, capacity)];
+        }
+
+        private boolean contains(long productId) {
+            for (int i = 0; i < size; i++) {
+                if (products[i] == productId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void add(long productId) {
+            if (capacity == 0) {
+                return;
+            }
+            if (size < capacity) {
+                if (size == products.length) {
+                    products = Arrays.copyOf(products, Math.min(products.length * 2, capacity));
+                }
+                products[size++] = productId;
+                return;
+            }
+            products[next] = productId;
+            next = (next + 1) % capacity;
+        }
+    }
+
+    private static long[] top(LongCountMap counts, long minCount, int limit) {
+        // Min-heap of [count, id] holding the best candidates seen so far
+        PriorityQueue<long[]> heap = new PriorityQueue<>(Math.min(limit, counts.size()) + 1,
+            (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(b[1], a[1]));
+        counts.forEach((id, count) -> {
+            if (count < minCount) {
+                return;
+            }
+            if (heap.size() < limit) {
+                heap.add(new long[]{count, id});
+            } else if (count > heap.peek()[0]) {
+                heap.poll();
+                heap.add(new long[]{count, id});
+            }
+        });
+        long[] ids = new long[heap.size()];
+        for (int i = ids.length - 1; i >= 0; i--) {
+            ids[i] = heap.poll()[1];
+        }
+        return ids;
+    }
+}
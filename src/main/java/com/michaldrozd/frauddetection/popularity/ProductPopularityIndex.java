@@ -0,0 +1,152 @@
+package com.michaldrozd.frauddetection.popularity;
+
+import com.michaldrozd.frauddetection.repositories.UserRepository;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Product popularity and frequently-viewed-together counts maintained in memory by a {@link PopularityEngine},
+ * instead of aggregating every {@code VIEWED} relationship of the graph per call.
+ * <p>
+ * The counters are built from the graph in pages of users in the background after startup, and kept up to date by
+ * {@link #recordView(Long, Long)} with every new {@code VIEWED} relationship. Until they are built, callers fall back
+ * to the repository queries.
+ * <p>
+ * Frequently-viewed-together counts are approximate: every view is paired with at most
+ * {@code fraud-detection.popularity.max-co-view-fanout} of the user's most recent products (see
+ * {@link PopularityEngine}). View counts match the graph, except that a view racing with the build of its user's page
+ * may be missed.
+ */
+@Slf4j
+@Component
+public class ProductPopularityIndex {
+
+    private final UserRepository userRepository;
+    private final boolean enabled;
+    private final int pageSize;
+    private final int topK;
+    private final PopularityEngine engine;
+    private volatile boolean ready;
+    private volatile boolean failed;
+    // The last user whose views the build has read from the graph
+    private volatile long loadedThroughUserId = Long.MIN_VALUE;
+
+    // Views arriving while the counters are being built, applied once they are complete
+    private final List<long[]> pendingViews = new ArrayList<>();
+
+    public ProductPopularityIndex(UserRepository userRepository,
+                                  @Value("${fraud-detection.popularity.enabled:false}") boolean enabled,
+                                  @Value("${fraud-detection.popularity.page-size:10000}") int pageSize,
+                                  @Value("${fraud-detection.popularity.top-k:1000}") int topK,
+                                  @Value("${fraud-detection.popularity.max-co-view-fanout:100}") int maxCoViewFanout) {
+        this.userRepository = userRepository;
+        this.enabled = enabled;
+        this.pageSize = pageSize;
+        this.topK = topK;
+        this.engine = new PopularityEngine(maxCoViewFanout);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        if (!enabled) {
+            return;
+        }
+        Thread builder = new Thread(this::load, "product-popularity-index-builder");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    private void load() {
+        long start = System.currentTimeMillis();
+        try {
+            Long afterUserId = null;
+            Map<Long, long[]> page;
+            do {
+                page = userRepository.findViewedProductIdsPage(afterUserId, pageSize);
+                for (Map.Entry<Long, long[]> user : page.entrySet()) {
+                    for (long productId : user.getValue()) {
+                        engine.recordView(user.getKey(), productId);
+                    }
+                    afterUserId = user.getKey();
+                }
+                if (afterUserId != null) {
+                    loadedThroughUserId = afterUserId;
+                }
+            } while (page.size() == pageSize);
+            loadedThroughUserId = Long.MAX_VALUE;
+            synchronized (pendingViews) {
+                pendingViews.forEach(view -> engine.recordView(view[0], view[1]));
+                pendingViews.clear();
+                ready = true;
+            }
+            log.info("Built product popularity counters in {} ms", System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            synchronized (pendingViews) {
+                pendingViews.clear();
+                failed = true;
+            }
+            log.error("Failed to build the product popularity counters, popular products are queried from the graph", e);
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return The maximum number of products any lookup returns.
+     */
+    public int getTopK() {
+        return topK;
+    }
+
+    /**
+     * Records a user's first view of a product, after its {@code VIEWED} relationship was created.
+     * <p>
+     * While the counters are being built, only views of users the build has already read are kept for later; the
+     * build reads the relationships of the others itself.
+     *
+     * @return The number of users that viewed the product if the counters are built, {@code 0} otherwise.
+     */
+    public long recordView(Long userId, Long productId) {
+        if (!enabled || failed) {
+            return 0;
+        }
+        if (ready) {
+            return engine.recordView(userId, productId);
+        }
+        synchronized (pendingViews) {
+            if (ready) {
+                return engine.recordView(userId, productId);
+            }
+            if (!failed && userId <= loadedThroughUserId) {
+                pendingViews.add(new long[]{userId, productId});
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * @return The IDs of the {@code limit} (at most {@code top-k}) most viewed products with at least
+     *     {@code popularityThreshold} views, most viewed first, or an empty optional if the counters are not built (yet).
+     */
+    public Optional<long[]> findPopularProductIds(int popularityThreshold, int limit) {
+        return ready ? Optional.of(engine.topProducts(popularityThreshold, Math.min(limit, topK))) : Optional.empty();
+    }
+
+    /**
+     * @return The IDs of the {@code limit} (at most {@code top-k}) products viewed by most of the users that viewed the
+     *     given product, by at least {@code threshold} of them, most shared views first, or an empty optional if the
+     *     counters are not built (yet).
+     */
+    public Optional<long[]> findViewedTogetherProductIds(Long productId, int threshold, int limit) {
+        return ready ? Optional.of(engine.viewedTogether(productId, threshold, Math.min(limit, topK))) : Optional.empty();
+    }
+}
@@ -0,0 +1,118 @@
+package com.michaldrozd.frauddetection.repositories;
+
+import java.lang.reflect.Method;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import lombok.Getter;
+import org.springframework.data.neo4j.repository.query.Query;
+
+/**
+ * The hot queries of the repositories and the indexes ({@code Label(property)}) the planner is expected to answer them
+ * from, for the schema bootstrap to verify with {@code EXPLAIN}.
+ * <p>
+ * The queries are the very constants and {@link Query} annotations the repositories run, so a changed query is
+ * verified as it is. A query expected to use several indexes, such as the ingestion's MERGE, is listed once per index.
+ */
+public final class HotQueries {
+
+    private HotQueries() {
+    }
+
+    /**
+     * @return The hot queries, with parameters of the types they are run with.
+     */
+    public static List<HotQuery> all() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Map<String, Object>> buckets = List.of(Map.of("resolution", "HOUR", "from", now, "to", now));
+        List<Map<String, Object>> edges = List.of(Map.of("from", now, "to", now));
+        List<Map<String, Object>> rows = List.of(Map.of("transactionId", "", "userId", 0L, "deviceId", "", "creditCardNumber", "", "merchantId", ""));
+        String mergeTransactions = TransactionRepositoryCustomImpl.MERGE_TRANSACTIONS_QUERY;
+        Map<String, Object> mergeParameters = Map.of("rows", rows, "ingestedAt", 0L);
+        return List.of(
+            new HotQuery("findTransactionsByUserWithinTimeWindow",
+                annotatedQuery(TransactionRepository.class, "findTransactionsByUserWithinTimeWindow"),
+                Map.of("userId", 0L, "dateTimeThreshold", now),
+                "Transaction(transactionDate)", "User(id)"),
+            new HotQuery("findUsersWithAnomalies",
+                annotatedQuery(UserRepository.class, "findUsersWithAnomalies"),
+                Map.of("startDateTime", now, "endDateTime", now, "threshold", 1),
+                "Transaction(transactionDate)"),
+            new HotQuery("findProductsByCategory",
+                annotatedQuery(ProductRepository.class, "findProductsByCategory"),
+                Map.of("category", ""),
+                "Product(category)"),
+            new HotQuery("user identity",
+                UserRepositoryCustomImpl.USER_IDENTITY_QUERY,
+                Map.of("userId", 0L),
+                "User(id)"),
+            new HotQuery("user identities",
+                UserRepositoryCustomImpl.USER_IDENTITIES_QUERY,
+                Map.of("userIds", List.of(0L)),
+                "User(id)"),
+            new HotQuery("batch window transactions",
+                TransactionRepositoryCustomImpl.WINDOW_TRANSACTIONS_BY_USERS_QUERY,
+                Map.of("userIds", List.of(0L), "dateTimeThreshold", now),
+                "User(id)", "Transaction(transactionDate)"),
+            new HotQuery("window aggregate",
+                TransactionRepositoryCustomImpl.AGGREGATE_BY_USER_QUERY,
+                Map.of("userId", 0L, "dateTimeThreshold", now),
+                "User(id)", "Transaction(transactionDate)"),
+            new HotQuery("anomaly transaction counts",
+                UserRepositoryCustomImpl.COUNT_TRANSACTIONS_BY_USERS_QUERY,
+                Map.of("userIds", List.of(0L), "startDateTime", now, "endDateTime", now, "endInclusive", true),
+                "User(id)", "Transaction(transactionDate)"),
+            new HotQuery("user window rollups",
+                TransactionRepositoryCustomImpl.SUM_USER_ROLLUPS_QUERY,
+                Map.of("userId", 0L, "buckets", buckets, "edges", edges),
+                "UserRollup(userId, resolution, bucketStart)"),
+            new HotQuery("anomaly rollups",
+                TransactionRepositoryCustomImpl.COUNT_USER_ROLLUPS_AT_LEAST_QUERY,
+                Map.of("buckets", buckets, "edges", edges, "threshold", 1),
+                "UserRollup(resolution, bucketStart)"),
+            new HotQuery("global rollups",
+                TransactionRepositoryCustomImpl.SUM_GLOBAL_ROLLUPS_QUERY,
+                Map.of("buckets", buckets, "edges", edges),
+                "GlobalRollup(resolution, bucketStart, stripe)"),
+            new HotQuery("replay after snapshot",
+                TransactionRepositoryCustomImpl.WINDOW_TRANSACTIONS_INGESTED_AFTER_QUERY,
+                Map.of("ingestedAfter", 0L, "afterId", -1L, "limit", 1),
+                "Transaction(firstIngestedAt)"),
+            new HotQuery("merge Transaction by transactionId", mergeTransactions, mergeParameters, "Transaction(transactionId)"),
+            new HotQuery("merge Device by deviceId", mergeTransactions, mergeParameters, "Device(deviceId)"),
+            new HotQuery("merge CreditCard by number", mergeTransactions, mergeParameters, "CreditCard(number)"),
+            new HotQuery("merge Merchant by merchantId", mergeTransactions, mergeParameters, "Merchant(merchantId)")
+        );
+    }
+
+    private static String annotatedQuery(Class<?> repository, String methodName) {
+        Method method = Arrays.stream(repository.getMethods())
+                              .filter(candidate -> candidate.getName().equals(methodName))
+                              .findFirst()
+                              .orElseThrow(() -> new IllegalStateException(repository.getSimpleName() + " has no method " + methodName));
+        Query query = method.getAnnotation(Query.class);
+        if (query == null) {
+            throw new IllegalStateException(repository.getSimpleName() + "." + methodName + " has no @Query");
+        }
+        return query.value();
+    }
+
+    /**
+     * A hot query and the indexes the planner is expected to use for it, any one of which will do.
+     */
+    @Getter
+    public static class HotQuery {
+        private final String name;
+        private final String query;
+        private final Map<String, Object> parameters;
+        private final List<String> expectedIndexes;
+
+        HotQuery(String name, String query, Map<String, Object> parameters, String... expectedIndexes) {
+            this.name = name;
+            this.query = query;
+            this.parameters = parameters;
+            this.expectedIndexes = List.of(expectedIndexes);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.michaldrozd.frauddetection.repositories;
 
 import com.michaldrozd.frauddetection.domain.Product;
+import java.util.Collection;
 import java.util.List;
 import org.springframework.data.neo4j.repository.Neo4jRepository;
 import org.springframework.data.neo4j.repository.query.Query;
@@ -45,4 +46,30 @@ public interface ProductRepository extends Neo4jRepository<Product, Long> {
     @Query("MATCH (p:Product)<-[:VIEWED]-(u:User) WITH p, count(u) as views WHERE views >= $popularityThreshold RETURN p ORDER BY views DESC")
     List<Product> findPopularProducts(@Param("popularityThreshold") int popularityThreshold);
 
+    /**
+     * Finds the {@code limit} products most frequently viewed together with the given product, with at least
+     * {@code threshold} shared views.
+     *
+     * @return The Products, most shared views first.
+     */
+    @Query("MATCH (p:Product)<-[:VIEWED]-(u:User)-[:VIEWED]->(otherProduct:Product) WHERE p.id = $productId AND id(otherProduct) <> id(p) WITH otherProduct, count(u) AS sharedViews WHERE sharedViews >= $threshold RETURN otherProduct ORDER BY sharedViews DESC LIMIT $limit")
+    List<Product> findTopFrequentlyViewedTogetherProducts(@Param("productId") Long productId, @Param("threshold") int threshold, @Param("limit") int limit);
+
+    /**
+     * Finds the {@code limit} most viewed products with at least {@code popularityThreshold} views.
+     *
+     * @return The Products, most viewed first.
+     */
+    @Query("MATCH (p:Product)<-[:VIEWED]-(u:User) WITH p, count(u) as views WHERE views >= $popularityThreshold RETURN p ORDER BY views DESC LIMIT $limit")
+    List<Product> findTopPopularProducts(@Param("popularityThreshold") int popularityThreshold, @Param("limit") int limit);
+
+    /**
+     * Finds and returns the Product objects with the given IDs.
+     *
+     * @param productIds The IDs of the Products to retrieve.
+     * @return A list of the Product objects that exist, in no particular order.
+     */
+    @Query("MATCH (p:Product) WHERE p.id IN $productIds RETURN p")
+    List<Product> findProductsByIds(@Param("productIds") Collection<Long> productIds);
+
 }
\ No newline at end of file
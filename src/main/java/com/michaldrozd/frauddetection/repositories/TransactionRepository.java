@@ -7,7 +7,7 @@ import org.springframework.data.neo4j.repository.Neo4jRepository;
 import org.springframework.data.neo4j.repository.query.Query;
 import org.springframework.data.repository.query.Param;
 
-public interface TransactionRepository extends Neo4jRepository<Transaction, Long> {
+public interface TransactionRepository extends Neo4jRepository<Transaction, Long>, TransactionRepositoryCustom {
 
     /**
      * Finds and returns a list of Transaction objects performed by a specific User within a given time window.
@@ -15,13 +15,14 @@ public interface TransactionRepository extends Neo4jRepository<Transaction, Long
      * The method takes two parameters: the User's ID and a minimum LocalDateTime threshold. It queries the graph
      * database to retrieve all Transaction nodes connected to the User node via a PERFORMED_BY relationship, and
      * connected to a Device node via a CONDUCTED_WITH relationship. The query filters the transactions based on the
-     * minimum transaction date provided.
+     * minimum transaction date provided. The Credit Card USED for the transaction is returned as well, if any; the
+     * relationships are returned along with the nodes so that the Device and Credit Card get mapped onto the Transaction.
      *
      * @param userId            The ID of the User for which to retrieve the transactions.
      * @param dateTimeThreshold The minimum LocalDateTime threshold for filtering transactions.
      *
-     * @return A list of Transaction objects performed by the User within the specified time window, including the associated Device information.
+     * @return A list of Transaction objects performed by the User within the specified time window, including the associated Device and Credit Card information.
      */
-    @Query("MATCH (t:Transaction)-[:PERFORMED_BY]->(u:User), (t)-[:CONDUCTED_WITH]->(d:Device) WHERE u.id = $userId AND t.transactionDate >= $dateTimeThreshold RETURN t, d")
+    @Query("MATCH (t:Transaction)-[:PERFORMED_BY]->(u:User), (t)-[cw:CONDUCTED_WITH]->(d:Device) WHERE u.id = $userId AND t.transactionDate >= $dateTimeThreshold OPTIONAL MATCH (t)-[used:USED]->(c:CreditCard) RETURN t, collect(cw), collect(d), collect(used), collect(c)")
     List<Transaction> findTransactionsByUserWithinTimeWindow(@Param("userId") Long userId, @Param("dateTimeThreshold") LocalDateTime dateTimeThreshold);
 }
\ No newline at end of file
@@ -0,0 +1,138 @@
+package com.michaldrozd.frauddetection.repositories;
+
+import com.michaldrozd.frauddetection.dto.MergedTransaction;
+import com.michaldrozd.frauddetection.dto.RollupTotals;
+import com.michaldrozd.frauddetection.dto.TransactionEvent;
+import com.michaldrozd.frauddetection.dto.UserTransactionTotals;
+import com.michaldrozd.frauddetection.dto.WindowTransaction;
+import com.michaldrozd.frauddetection.dto.WindowTransactionPage;
+import com.michaldrozd.frauddetection.rollup.RollupPlan;
+import com.michaldrozd.frauddetection.window.WindowAggregate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Transaction queries that return flat projections instead of entity graphs, implemented with the Neo4jClient.
+ */
+public interface TransactionRepositoryCustom {
+
+    /**
+     * Finds the windowed transactions of many users in a single round trip.
+     * <p>
+     * The method takes two parameters: the Users' IDs and a minimum LocalDateTime threshold. It unwinds the IDs in one
+     * query and, for every existing User, returns the Transactions connected to it via a PERFORMED_BY relationship and
+     * to a Device via a CONDUCTED_WITH relationship, along with the Credit Card USED, if any.
+     *
+     * @param userIds           The IDs of the Users for which to retrieve the transactions.
+     * @param dateTimeThreshold The minimum LocalDateTime threshold for filtering transactions.
+     *
+     * @return The windowed transactions grouped by User ID. Existing Users without transactions map to an empty list,
+     * Users that do not exist are absent.
+     */
+    Map<Long, List<WindowTransaction>> findWindowTransactionsByUsers(Collection<Long> userIds, LocalDateTime dateTimeThreshold);
+
+    /**
+     * Aggregates the transactions performed by a specific User within a given time window on the server.
+     * <p>
+     * Same transactions as {@link TransactionRepository#findTransactionsByUserWithinTimeWindow(Long, LocalDateTime)},
+     * but instead of the entity graphs, the query returns the transaction count, the amount sum, the number of distinct
+     * Devices and Credit Cards, and the device coordinates with the transaction time - one row for the whole window.
+     *
+     * @param userId            The ID of the User for which to aggregate the transactions.
+     * @param dateTimeThreshold The minimum LocalDateTime threshold for filtering transactions.
+     *
+     * @return The aggregate of the User's transactions within the specified time window.
+     */
+    WindowAggregate aggregateTransactionsByUserWithinTimeWindow(Long userId, LocalDateTime dateTimeThreshold);
+
+    /**
+     * Writes a batch of ingested transactions in a single round trip.
+     * <p>
+     * The method unwinds the batch in one query and MERGEs every Transaction with its User, Device, Credit Card and
+     * Merchant, along with the PERFORMED_BY, CONDUCTED_WITH, USED, PROCESSED_BY, USED_BY and BELONGS_TO relationships.
+     * Writing the same transaction twice only updates its properties, and the result tells which transactions were
+     * created by this batch; a transaction occurring twice in the batch is written as it first occurs. Every
+     * Transaction the batch creates is stamped with {@code ingestedAt} as its {@code firstIngestedAt}, which orders
+     * the batches for replaying them into the in-memory state; writing it again keeps the stamp.
+     * <p>
+     * With {@code rollUp}, the same query adds every transaction it created to the minute and hour {@code UserRollup}
+     * of its User and {@code GlobalRollup} nodes: the transaction count and the amount sum, the exact Device IDs,
+     * Credit Card numbers and locations for the User, and HyperLogLog sketches of the Devices and Credit Cards for all
+     * Users. Writing the same transaction again does not change them.
+     *
+     * @param transactions The transactions to write.
+     * @param ingestedAt   The stamp of the batch.
+     * @param rollUp       Whether to add the transactions to the rollups.
+     *
+     * @return The graph identities of the Device and Credit Card of every written transaction, and whether it was
+     * created.
+     */
+    List<MergedTransaction> mergeTransactions(List<TransactionEvent> transactions, long ingestedAt, boolean rollUp);
+
+    /**
+     * Loads a page of the transactions first ingested after the given stamp, ordered by their graph identity, for
+     * replaying them into the in-memory state. Transactions written again after the stamp are not loaded, and neither
+     * are those without a Device, which the windows do not contain.
+     *
+     * @param ingestedAfter The {@code firstIngestedAt} stamp after which to load the transactions.
+     * @param afterId       The cursor of the previous page, or {@code null} for the first page.
+     * @param limit         The maximum number of transactions in the page.
+     *
+     * @return The page of transactions, with the User ID of every transaction.
+     */
+    WindowTransactionPage findWindowTransactionsIngestedAfter(long ingestedAfter, Long afterId, int limit);
+
+    /**
+     * Sums up the transactions of every User since the given time, in a single aggregation.
+     *
+     * @param dateTimeThreshold The minimum LocalDateTime threshold for filtering transactions.
+     *
+     * @return The totals of every User with transactions since {@code dateTimeThreshold}.
+     */
+    List<UserTransactionTotals> sumTransactionsByUserSince(LocalDateTime dateTimeThreshold);
+
+    /**
+     * Aggregates the transactions of a User within a time range from the rollups, in a single round trip.
+     * <p>
+     * The buckets of the plan are read from the User's {@code UserRollup} nodes and only the transactions of the
+     * partial minutes at the ends of the range are read from the graph, so the number of records read does not grow
+     * with the number of transactions in the range.
+     *
+     * @param userId The ID of the User.
+     * @param plan   The buckets and raw transactions making up the time range.
+     *
+     * @return The aggregate of the User's transactions within the time range, with exact distinct counts and the
+     * locations.
+     */
+    WindowAggregate aggregateUserRollups(Long userId, RollupPlan plan);
+
+    /**
+     * Sums up the transactions of all Users within a time range from the {@code GlobalRollup} nodes, as
+     * {@link #aggregateUserRollups(Long, RollupPlan)} does for one User, estimating the distinct Devices and Credit
+     * Cards from their sketches.
+     */
+    RollupTotals sumGlobalRollups(RollupPlan plan);
+
+    /**
+     * Counts the transactions of the given users within a time range from the rollups.
+     *
+     * @param userIds The IDs of the Users.
+     * @param plan    The buckets and raw transactions making up the time range.
+     *
+     * @return The number of transactions by User ID; users without transactions in the range are absent.
+     */
+    Map<Long, Long> countUserRollups(Collection<Long> userIds, RollupPlan plan);
+
+    /**
+     * Counts the transactions of every User within a time range from the rollups, keeping those with at least
+     * {@code threshold} transactions.
+     *
+     * @param plan      The buckets and raw transactions making up the time range.
+     * @param threshold The minimum number of transactions.
+     *
+     * @return The number of transactions by User ID.
+     */
+    Map<Long, Long> countUserRollupsAtLeast(RollupPlan plan, int threshold);
+}
@@ -0,0 +1,558 @@
+package com.michaldrozd.frauddetection.repositories;
+
+import com.michaldrozd.frauddetection.dto.MergedTransaction;
+import com.michaldrozd.frauddetection.dto.RollupTotals;
+import com.michaldrozd.frauddetection.dto.TransactionEvent;
+import com.michaldrozd.frauddetection.dto.UserTransactionTotals;
+import com.michaldrozd.frauddetection.dto.WindowTransaction;
+import com.michaldrozd.frauddetection.dto.WindowTransactionPage;
+import com.michaldrozd.frauddetection.rollup.RollupPlan;
+import com.michaldrozd.frauddetection.rollup.RollupPlan.Resolution;
+import com.michaldrozd.frauddetection.sketch.HyperLogLog;
+import com.michaldrozd.frauddetection.window.WindowAggregate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.types.TypeSystem;
+import org.springframework.data.neo4j.core.Neo4jClient;
+
+class TransactionRepositoryCustomImpl implements TransactionRepositoryCustom {
+
+    static final String WINDOW_TRANSACTIONS_BY_USERS_QUERY = """
+        UNWIND $userIds AS userId
+        MATCH (u:User) WHERE u.id = userId
+        OPTIONAL MATCH (t:Transaction)-[:PERFORMED_BY]->(u), (t)-[:CONDUCTED_WITH]->(d:Device) WHERE t.transactionDate >= $dateTimeThreshold
+        OPTIONAL MATCH (t)-[:USED]->(c:CreditCard)
+        RETURN userId, t.transactionId AS transactionId, t.amount AS amount, t.transactionDate AS transactionDate,
+               id(d) AS deviceId, d.latitude AS latitude, d.longitude AS longitude, id(c) AS creditCardId,
+               d.deviceId AS deviceIdentifier, c.number AS creditCardNumber
+        """;
+
+    static final String AGGREGATE_BY_USER_QUERY = """
+        MATCH (t:Transaction)-[:PERFORMED_BY]->(u:User), (t)-[:CONDUCTED_WITH]->(d:Device)
+        WHERE u.id = $userId AND t.transactionDate >= $dateTimeThreshold
+        OPTIONAL MATCH (t)-[:USED]->(c:CreditCard)
+        RETURN count(t) AS transactionCount, sum(t.amount) AS totalAmount,
+               count(DISTINCT d) AS distinctDevices, count(DISTINCT c) AS distinctCreditCards,
+               collect(DISTINCT d.deviceId) AS deviceIdentifiers, collect(DISTINCT c.number) AS creditCardNumbers,
+               collect(CASE WHEN d.latitude IS NOT NULL AND d.longitude IS NOT NULL
+                            THEN [t.transactionDate, d.latitude, d.longitude] END) AS locations
+        """;
+
+    private static final String MERGE_TRANSACTIONS = """
+        UNWIND $rows AS row
+        MERGE (u:User {id: row.userId})
+        MERGE (t:Transaction {transactionId: row.transactionId})
+        ON CREATE SET t.firstIngestedAt = $ingestedAt
+        WITH row, u, t, coalesce(t.firstIngestedAt = $ingestedAt, false) AS created
+        SET t.amount = row.amount, t.currency = row.currency,
+            t.transactionDate = row.transactionDate, t.transactionStatus = row.transactionStatus
+        MERGE (t)-[:PERFORMED_BY]->(u)
+        FOREACH (_ IN CASE WHEN row.deviceId IS NULL THEN [] ELSE [1] END |
+            MERGE (d:Device {deviceId: row.deviceId})
+            SET d.latitude = coalesce(row.latitude, d.latitude), d.longitude = coalesce(row.longitude, d.longitude)
+            MERGE (t)-[:CONDUCTED_WITH]->(d)
+            MERGE (d)-[:USED_BY]->(u))
+        FOREACH (_ IN CASE WHEN row.creditCardNumber IS NULL THEN [] ELSE [1] END |
+            MERGE (c:CreditCard {number: row.creditCardNumber})
+            MERGE (t)-[:USED]->(c)
+            MERGE (c)-[:BELONGS_TO]->(u))
+        FOREACH (_ IN CASE WHEN row.merchantId IS NULL THEN [] ELSE [1] END |
+            MERGE (m:Merchant {merchantId: row.merchantId})
+            MERGE (t)-[:PROCESSED_BY]->(m))
+        WITH row, t, created
+        OPTIONAL MATCH (t)-[:CONDUCTED_WITH]->(d:Device)
+        OPTIONAL MATCH (t)-[:USED]->(c:CreditCard)
+        """;
+
+    static final String MERGE_TRANSACTIONS_QUERY = MERGE_TRANSACTIONS + """
+        RETURN row.transactionId AS transactionId, id(d) AS deviceId, id(c) AS creditCardId, created
+        """;
+
+    /**
+     * Precision of the Device and Credit Card sketches of the global rollups, stored with them, so changing it requires
+     * rebuilding the rollups.
+     */
+    private static final int ROLLUP_SKETCH_PRECISION = 7;
+    private static final List<Integer> EMPTY_ROLLUP_SKETCH = Collections.nCopies(1 << ROLLUP_SKETCH_PRECISION, 0);
+
+    /**
+     * Concurrent batches mostly update the same current minute and hour, so the global rollups are spread over
+     * stripes by the stamp of the batch, which are summed up when reading them.
+     */
+    private static final int GLOBAL_ROLLUP_STRIPES = 8;
+
+    // Sketch registers only ever grow: every [register, rank] pair raises its register to the rank
+    private static final String SKETCH_UPDATE = """
+        reduce(sketch = coalesce(%1$s, $emptySketch), update IN %2$s |
+                    CASE WHEN update[1] > sketch[update[0]] THEN sketch[..update[0]] + update[1] + sketch[update[0] + 1..] ELSE sketch END)""";
+
+    // Identifier sets only ever grow by the identifiers they do not contain yet
+    private static final String SET_UPDATE = """
+        reduce(ids = coalesce(%1$s, []), value IN %2$s | CASE WHEN value IN ids THEN ids ELSE ids + value END)""";
+
+    /**
+     * Writes the batch as {@link #MERGE_TRANSACTIONS_QUERY} does, and adds the transactions it created to the minute
+     * and hour rollups. Transactions that existed already are left out, which the uniqueness constraint on
+     * {@code Transaction.transactionId} keeps exact under concurrent batches: a batch creating the same transaction
+     * waits for the other one to commit, and then finds it. Rows repeating a {@code transactionId} all see it as
+     * created, so the created transactions are grouped by {@code transactionId} first and every one is rolled up once.
+     * <p>
+     * A {@code UserRollup} counts all its transactions for the scans, and for the windows separately those conducted
+     * with a Device, as only those are in a window: their count and amount, the exact sets of their Device IDs and
+     * Credit Card numbers and the time and coordinates of every one with a located Device. A {@code GlobalRollup}
+     * keeps HyperLogLog sketches of the Devices and Credit Cards.
+     */
+    static final String MERGE_TRANSACTIONS_AND_ROLLUPS_QUERY = MERGE_TRANSACTIONS + """
+        WITH collect({transactionId: row.transactionId, deviceId: id(d), creditCardId: id(c), created: created,
+                      userId: row.userId, amount: row.amount, transactionDate: row.transactionDate, minute: row.minute, hour: row.hour,
+                      device: d.deviceId, creditCard: c.number, latitude: d.latitude, longitude: d.longitude,
+                      deviceSketch: row.deviceSketch, creditCardSketch: row.creditCardSketch}) AS merged
+        CALL {
+            WITH merged
+            UNWIND merged AS row
+            WITH row WHERE row.created
+            WITH row.transactionId AS transactionId, head(collect(row)) AS row
+            RETURN collect(row) AS created
+        }
+        CALL {
+            WITH created
+            UNWIND created AS row
+            UNWIND [['MINUTE', row.minute], ['HOUR', row.hour]] AS bucket
+            WITH row.userId AS userId, bucket[0] AS resolution, bucket[1] AS bucketStart,
+                 count(*) AS transactionCount, sum(coalesce(row.amount, 0.0)) AS totalAmount,
+                 count(row.deviceId) AS windowTransactionCount,
+                 sum(CASE WHEN row.deviceId IS NULL THEN 0.0 ELSE coalesce(row.amount, 0.0) END) AS windowAmount,
+                 collect(DISTINCT row.device) AS devices,
+                 collect(DISTINCT CASE WHEN row.deviceId IS NOT NULL THEN row.creditCard END) AS creditCards,
+                 collect(CASE WHEN row.latitude IS NOT NULL AND row.longitude IS NOT NULL
+                              THEN [row.transactionDate, row.latitude, row.longitude] END) AS locations
+            MERGE (r:UserRollup {userId: userId, resolution: resolution, bucketStart: bucketStart})
+            SET r.transactionCount = coalesce(r.transactionCount, 0) + transactionCount,
+                r.totalAmount = coalesce(r.totalAmount, 0.0) + totalAmount,
+                r.windowTransactionCount = coalesce(r.windowTransactionCount, 0) + windowTransactionCount,
+                r.windowAmount = coalesce(r.windowAmount, 0.0) + windowAmount,
+                r.deviceIds = %1$s,
+                r.creditCardNumbers = %2$s,
+                r.locationTimes = coalesce(r.locationTimes, []) + [location IN locations | location[0]],
+                r.latitudes = coalesce(r.latitudes, []) + [location IN locations | location[1]],
+                r.longitudes = coalesce(r.longitudes, []) + [location IN locations | location[2]]
+        }
+        CALL {
+            WITH created
+            UNWIND created AS row
+            UNWIND [['MINUTE', row.minute], ['HOUR', row.hour]] AS bucket
+            WITH bucket[0] AS resolution, bucket[1] AS bucketStart,
+                 count(*) AS transactionCount, sum(coalesce(row.amount, 0.0)) AS totalAmount,
+                 collect(row.deviceSketch) AS devices, collect(row.creditCardSketch) AS creditCards
+            MERGE (r:GlobalRollup {resolution: resolution, bucketStart: bucketStart, stripe: $stripe})
+            SET r.transactionCount = coalesce(r.transactionCount, 0) + transactionCount,
+                r.totalAmount = coalesce(r.totalAmount, 0.0) + totalAmount,
+                r.devices = %3$s,
+                r.creditCards = %4$s
+        }
+        UNWIND merged AS row
+        RETURN row.transactionId AS transactionId, row.deviceId AS deviceId, row.creditCardId AS creditCardId, row.created AS created
+        """.formatted(SET_UPDATE.formatted("r.deviceIds", "devices"), SET_UPDATE.formatted("r.creditCardNumbers", "creditCards"),
+                         SKETCH_UPDATE.formatted("r.devices", "devices"), SKETCH_UPDATE.formatted("r.creditCards", "creditCards"));
+
+    /**
+     * Sums up a user's window from the rollups and the transactions of its edge minutes. Like the other window queries,
+     * it only counts transactions conducted with a Device; rollups written before they were counted separately count
+     * all of them.
+     */
+    static final String SUM_USER_ROLLUPS_QUERY = """
+        CALL {
+            UNWIND $buckets AS bucket
+            MATCH (r:UserRollup)
+            WHERE r.userId = $userId AND r.resolution = bucket.resolution AND r.bucketStart >= bucket.from AND r.bucketStart < bucket.to
+            RETURN coalesce(r.windowTransactionCount, r.transactionCount) AS transactionCount,
+                   coalesce(r.windowAmount, r.totalAmount) AS totalAmount, r.deviceIds AS deviceIds, r.creditCardNumbers AS creditCardNumbers,
+                   r.locationTimes AS locationTimes, r.latitudes AS latitudes, r.longitudes AS longitudes
+            UNION ALL
+            UNWIND $edges AS edge
+            MATCH (t:Transaction)-[:PERFORMED_BY]->(u:User), (t)-[:CONDUCTED_WITH]->(d:Device)
+            WHERE u.id = $userId AND t.transactionDate >= edge.from AND t.transactionDate < edge.to
+            OPTIONAL MATCH (t)-[:USED]->(c:CreditCard)
+            WITH t, d, c, d.latitude IS NOT NULL AND d.longitude IS NOT NULL AS located
+            RETURN 1 AS transactionCount, t.amount AS totalAmount, [d.deviceId] AS deviceIds,
+                   [value IN [c.number] WHERE value IS NOT NULL] AS creditCardNumbers,
+                   CASE WHEN located THEN [t.transactionDate] ELSE [] END AS locationTimes,
+                   CASE WHEN located THEN [d.latitude] ELSE [] END AS latitudes,
+                   CASE WHEN located THEN [d.longitude] ELSE [] END AS longitudes
+        }
+        RETURN transactionCount, totalAmount, deviceIds, creditCardNumbers, locationTimes, latitudes, longitudes
+        """;
+
+    static final String SUM_GLOBAL_ROLLUPS_QUERY = """
+        CALL {
+            UNWIND $buckets AS bucket
+            MATCH (r:GlobalRollup)
+            WHERE r.resolution = bucket.resolution AND r.bucketStart >= bucket.from AND r.bucketStart < bucket.to
+            RETURN r.transactionCount AS transactionCount, r.totalAmount AS totalAmount, r.devices AS devices, r.creditCards AS creditCards,
+                   null AS deviceId, null AS creditCardNumber
+            UNION ALL
+            UNWIND $edges AS edge
+            MATCH (t:Transaction)
+            WHERE t.transactionDate >= edge.from AND t.transactionDate < edge.to
+            OPTIONAL MATCH (t)-[:CONDUCTED_WITH]->(d:Device)
+            OPTIONAL MATCH (t)-[:USED]->(c:CreditCard)
+            RETURN 1 AS transactionCount, t.amount AS totalAmount, null AS devices, null AS creditCards,
+                   d.deviceId AS deviceId, c.number AS creditCardNumber
+        }
+        RETURN transactionCount, totalAmount, devices, creditCards, deviceId, creditCardNumber
+        """;
+
+    private static final String COUNT_USER_ROLLUPS_QUERY = """
+        UNWIND $userIds AS userId
+        CALL {
+            WITH userId
+            UNWIND $buckets AS bucket
+            MATCH (r:UserRollup)
+            WHERE r.userId = userId AND r.resolution = bucket.resolution AND r.bucketStart >= bucket.from AND r.bucketStart < bucket.to
+            RETURN r.transactionCount AS transactionCount
+            UNION ALL
+            WITH userId
+            UNWIND $edges AS edge
+            MATCH (t:Transaction)-[:PERFORMED_BY]->(u:User)
+            WHERE u.id = userId AND t.transactionDate >= edge.from AND t.transactionDate < edge.to
+            RETURN 1 AS transactionCount
+        }
+        WITH userId, sum(transactionCount) AS transactionCount WHERE transactionCount > 0
+        RETURN userId, transactionCount
+        """;
+
+    static final String COUNT_USER_ROLLUPS_AT_LEAST_QUERY = """
+        CALL {
+            UNWIND $buckets AS bucket
+            MATCH (r:UserRollup)
+            WHERE r.resolution = bucket.resolution AND r.bucketStart >= bucket.from AND r.bucketStart < bucket.to
+            RETURN r.userId AS userId, r.transactionCount AS transactionCount
+            UNION ALL
+            UNWIND $edges AS edge
+            MATCH (t:Transaction)-[:PERFORMED_BY]->(u:User)
+            WHERE t.transactionDate >= edge.from AND t.transactionDate < edge.to
+            RETURN u.id AS userId, 1 AS transactionCount
+        }
+        WITH userId, sum(transactionCount) AS transactionCount WHERE transactionCount >= $threshold
+        RETURN userId, transactionCount
+        """;
+
+    private static final String SUM_BY_USER_SINCE_QUERY = """
+        MATCH (t:Transaction)-[:PERFORMED_BY]->(u:User) WHERE t.transactionDate >= $dateTimeThreshold
+        RETURN u.id AS userId, count(t) AS transactionCount, sum(coalesce(t.amount, 0.0)) AS totalAmount
+        """;
+
+    static final String WINDOW_TRANSACTIONS_INGESTED_AFTER_QUERY = """
+        MATCH (t:Transaction)-[:PERFORMED_BY]->(u:User), (t)-[:CONDUCTED_WITH]->(d:Device)
+        WHERE t.firstIngestedAt > $ingestedAfter AND id(t) > $afterId
+        WITH t, u, d ORDER BY id(t) LIMIT $limit
+        OPTIONAL MATCH (t)-[:USED]->(c:CreditCard)
+        RETURN id(t) AS id, u.id AS userId, t.transactionId AS transactionId, t.amount AS amount, t.transactionDate AS transactionDate,
+               id(d) AS deviceId, d.latitude AS latitude, d.longitude AS longitude, id(c) AS creditCardId,
+               d.deviceId AS deviceIdentifier, c.number AS creditCardNumber
+        """;
+
+    private final Neo4jClient neo4jClient;
+
+    TransactionRepositoryCustomImpl(Neo4jClient neo4jClient) {
+        this.neo4jClient = neo4jClient;
+    }
+
+    @Override
+    public Map<Long, List<WindowTransaction>> findWindowTransactionsByUsers(Collection<Long> userIds, LocalDateTime dateTimeThreshold) {
+        Map<Long, List<WindowTransaction>> transactionsByUser = new HashMap<>();
+        neo4jClient.query(WINDOW_TRANSACTIONS_BY_USERS_QUERY)
+                   .bindAll(Map.of("userIds", userIds, "dateTimeThreshold", dateTimeThreshold))
+                   .fetch()
+                   .all()
+                   .forEach(row -> {
+                       Long userId = (Long) row.get("userId");
+                       List<WindowTransaction> transactions = transactionsByUser.computeIfAbsent(userId, id -> new ArrayList<>());
+                       // Users without windowed transactions come back as a single row without a transaction
+                       if (row.get("transactionDate") != null) {
+                           transactions.add(new WindowTransaction(
+                               userId,
+                               (String) row.get("transactionId"),
+                               asDouble(row.get("amount")),
+                               (LocalDateTime) row.get("transactionDate"),
+                               (Long) row.get("deviceId"),
+                               asDouble(row.get("latitude")),
+                               asDouble(row.get("longitude")),
+                               (Long) row.get("creditCardId"),
+                               (String) row.get("deviceIdentifier"),
+                               (String) row.get("creditCardNumber")
+                           ));
+                       }
+                   });
+        return transactionsByUser;
+    }
+
+    @Override
+    public WindowAggregate aggregateTransactionsByUserWithinTimeWindow(Long userId, LocalDateTime dateTimeThreshold) {
+        return neo4jClient.query(AGGREGATE_BY_USER_QUERY)
+                          .bindAll(Map.of("userId", userId, "dateTimeThreshold", dateTimeThreshold))
+                          .fetchAs(WindowAggregate.class)
+                          .mappedBy((typeSystem, record) -> {
+                              List<Object> locations = record.get("locations").asList();
+                              long[] timestamps = new long[locations.size()];
+                              double[] latitudes = new double[locations.size()];
+                              double[] longitudes = new double[locations.size()];
+                              for (int i = 0; i < locations.size(); i++) {
+                                  List<?> location = (List<?>) locations.get(i);
+                                  timestamps[i] = WindowAggregate.toEpochMillis((LocalDateTime) location.get(0));
+                                  latitudes[i] = ((Number) location.get(1)).doubleValue();
+                                  longitudes[i] = ((Number) location.get(2)).doubleValue();
+                              }
+                              return new WindowAggregate(
+                                  record.get("transactionCount").asLong(),
+                                  record.get("totalAmount").asDouble(0),
+                                  record.get("distinctDevices").asInt(),
+                                  record.get("distinctCreditCards").asInt(),
+                                  timestamps, latitudes, longitudes,
+                                  record.get("deviceIdentifiers").asList(Value::asString).toArray(String[]::new),
+                                  record.get("creditCardNumbers").asList(Value::asString).toArray(String[]::new)
+                              );
+                          })
+                          .one()
+                          .orElseGet(() -> WindowAggregate.withoutLocations(0, 0, 0, 0));
+    }
+
+    @Override
+    public List<MergedTransaction> mergeTransactions(List<TransactionEvent> transactions, long ingestedAt, boolean rollUp) {
+        // A transaction occurring twice in the batch is written as it first occurs, so it is created only once
+        Map<String, Map<String, Object>> rows = new LinkedHashMap<>();
+        for (TransactionEvent transaction : transactions) {
+            if (rows.containsKey(transaction.getTransactionId())) {
+                continue;
+            }
+            Map<String, Object> row = new HashMap<>();
+            row.put("transactionId", transaction.getTransactionId());
+            row.put("userId", transaction.getUserId());
+            row.put("amount", transaction.getAmount());
+            row.put("currency", transaction.getCurrency());
+            row.put("transactionDate", transaction.getTransactionDate());
+            row.put("transactionStatus", transaction.getTransactionStatus() != null ? transaction.getTransactionStatus().name() : null);
+            row.put("deviceId", transaction.getDeviceId());
+            row.put("latitude", transaction.getLatitude());
+            row.put("longitude", transaction.getLongitude());
+            row.put("creditCardNumber", transaction.getCreditCardNumber());
+            row.put("merchantId", transaction.getMerchantId());
+            if (rollUp) {
+                row.put("minute", Resolution.MINUTE.bucketStart(transaction.getTransactionDate()));
+                row.put("hour", Resolution.HOUR.bucketStart(transaction.getTransactionDate()));
+                row.put("deviceSketch", sketchUpdate(transaction.getDeviceId()));
+                row.put("creditCardSketch", sketchUpdate(transaction.getCreditCardNumber()));
+            }
+            rows.put(transaction.getTransactionId(), row);
+        }
+        if (!rollUp) {
+            return new ArrayList<>(neo4jClient.query(MERGE_TRANSACTIONS_QUERY)
+                                              .bind(new ArrayList<>(rows.values())).to("rows")
+                                              .bind(ingestedAt).to("ingestedAt")
+                                              .fetchAs(MergedTransaction.class)
+                                              .mappedBy(TransactionRepositoryCustomImpl::toMergedTransaction)
+                                              .all());
+        }
+        return new ArrayList<>(neo4jClient.query(MERGE_TRANSACTIONS_AND_ROLLUPS_QUERY)
+                                          .bind(new ArrayList<>(rows.values())).to("rows")
+                                          .bind(ingestedAt).to("ingestedAt")
+                                          .bind(EMPTY_ROLLUP_SKETCH).to("emptySketch")
+                                          .bind(Math.floorMod(ingestedAt, GLOBAL_ROLLUP_STRIPES)).to("stripe")
+                                          .fetchAs(MergedTransaction.class)
+                                          .mappedBy(TransactionRepositoryCustomImpl::toMergedTransaction)
+                                          .all());
+    }
+
+    private static MergedTransaction toMergedTransaction(TypeSystem typeSystem, Record record) {
+        return new MergedTransaction(
+            record.get("transactionId").asString(),
+            record.get("deviceId").isNull() ? null : record.get("deviceId").asLong(),
+            record.get("creditCardId").isNull() ? null : record.get("creditCardId").asLong(),
+            record.get("created").asBoolean()
+        );
+    }
+
+    /**
+     * The sketch register of a Device or Credit Card in the {@code GlobalRollup}, and the rank to raise it to.
+     */
+    private static List<Integer> sketchUpdate(String value) {
+        if (value == null) {
+            return null;
+        }
+        long hash = HyperLogLog.hash(value);
+        return List.of(HyperLogLog.register(hash, ROLLUP_SKETCH_PRECISION), HyperLogLog.rank(hash, ROLLUP_SKETCH_PRECISION));
+    }
+
+    @Override
+    public WindowTransactionPage findWindowTransactionsIngestedAfter(long ingestedAfter, Long afterId, int limit) {
+        List<WindowTransaction> transactions = new ArrayList<>(limit);
+        long cursor = afterId != null ? afterId : -1;
+        for (Map<String, Object> row : neo4jClient.query(WINDOW_TRANSACTIONS_INGESTED_AFTER_QUERY)
+                                                  .bindAll(Map.of("ingestedAfter", ingestedAfter, "afterId", cursor, "limit", limit))
+                                                  .fetch()
+                                                  .all()) {
+            cursor = Math.max(cursor, (Long) row.get("id"));
+            transactions.add(new WindowTransaction(
+                (Long) row.get("userId"),
+                (String) row.get("transactionId"),
+                asDouble(row.get("amount")),
+                (LocalDateTime) row.get("transactionDate"),
+                (Long) row.get("deviceId"),
+                asDouble(row.get("latitude")),
+                asDouble(row.get("longitude")),
+                (Long) row.get("creditCardId"),
+                (String) row.get("deviceIdentifier"),
+                (String) row.get("creditCardNumber")
+            ));
+        }
+        return new WindowTransactionPage(transactions, cursor, transactions.size() < limit);
+    }
+
+    private static Double asDouble(Object value) {
+        return value != null ? ((Number) value).doubleValue() : null;
+    }
+
+    @Override
+    public List<UserTransactionTotals> sumTransactionsByUserSince(LocalDateTime dateTimeThreshold) {
+        return new ArrayList<>(neo4jClient.query(SUM_BY_USER_SINCE_QUERY)
+                                          .bind(dateTimeThreshold).to("dateTimeThreshold")
+                                          .fetchAs(UserTransactionTotals.class)
+                                          .mappedBy((typeSystem, record) -> new UserTransactionTotals(
+                                              record.get("userId").asLong(),
+                                              record.get("transactionCount").asLong(),
+                                              record.get("totalAmount").asDouble()
+                                          ))
+                                          .all());
+    }
+
+    @Override
+    public WindowAggregate aggregateUserRollups(Long userId, RollupPlan plan) {
+        Map<String, Object> parameters = planParameters(plan);
+        parameters.put("userId", userId);
+        long transactionCount = 0;
+        double totalAmount = 0;
+        Set<String> devices = new HashSet<>();
+        Set<String> creditCards = new HashSet<>();
+        List<Object> locationTimes = new ArrayList<>();
+        List<Object> latitudes = new ArrayList<>();
+        List<Object> longitudes = new ArrayList<>();
+        for (Map<String, Object> row : neo4jClient.query(SUM_USER_ROLLUPS_QUERY).bindAll(parameters).fetch().all()) {
+            transactionCount += ((Number) row.get("transactionCount")).longValue();
+            Double amount = asDouble(row.get("totalAmount"));
+            totalAmount += amount != null ? amount : 0;
+            addAll(devices, row.get("deviceIds"));
+            addAll(creditCards, row.get("creditCardNumbers"));
+            addAll(locationTimes, row.get("locationTimes"));
+            addAll(latitudes, row.get("latitudes"));
+            addAll(longitudes, row.get("longitudes"));
+        }
+        long[] timestamps = new long[locationTimes.size()];
+        double[] latitudeValues = new double[timestamps.length];
+        double[] longitudeValues = new double[timestamps.length];
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = WindowAggregate.toEpochMillis((LocalDateTime) locationTimes.get(i));
+            latitudeValues[i] = ((Number) latitudes.get(i)).doubleValue();
+            longitudeValues[i] = ((Number) longitudes.get(i)).doubleValue();
+        }
+        return new WindowAggregate(transactionCount, totalAmount, devices.size(), creditCards.size(), timestamps, latitudeValues, longitudeValues,
+                                   devices.toArray(String[]::new), creditCards.toArray(String[]::new));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void addAll(Collection<T> target, Object values) {
+        if (values != null) {
+            target.addAll((Collection<T>) values);
+        }
+    }
+
+    @Override
+    public RollupTotals sumGlobalRollups(RollupPlan plan) {
+        return sumRollups(SUM_GLOBAL_ROLLUPS_QUERY, planParameters(plan));
+    }
+
+    /**
+     * Adds up the global rollup buckets and raw edge transactions, merging their sketches.
+     */
+    private RollupTotals sumRollups(String query, Map<String, Object> parameters) {
+        int sketchSize = 1 << ROLLUP_SKETCH_PRECISION;
+        // The union of the Device sketches at 0, and of the Credit Card sketches at sketchSize
+        byte[] registers = new byte[2 * sketchSize];
+        long transactionCount = 0;
+        double totalAmount = 0;
+        for (Map<String, Object> row : neo4jClient.query(query).bindAll(parameters).fetch().all()) {
+            transactionCount += ((Number) row.get("transactionCount")).longValue();
+            Double amount = asDouble(row.get("totalAmount"));
+            totalAmount += amount != null ? amount : 0;
+            mergeSketch(registers, 0, row.get("devices"));
+            mergeSketch(registers, sketchSize, row.get("creditCards"));
+            if (row.get("deviceId") != null) {
+                HyperLogLog.add(registers, 0, ROLLUP_SKETCH_PRECISION, HyperLogLog.hash((String) row.get("deviceId")));
+            }
+            if (row.get("creditCardNumber") != null) {
+                HyperLogLog.add(registers, sketchSize, ROLLUP_SKETCH_PRECISION, HyperLogLog.hash((String) row.get("creditCardNumber")));
+            }
+        }
+        return new RollupTotals(transactionCount, totalAmount,
+            HyperLogLog.estimateUnion(registers, new int[]{0}, 1, ROLLUP_SKETCH_PRECISION),
+            HyperLogLog.estimateUnion(registers, new int[]{sketchSize}, 1, ROLLUP_SKETCH_PRECISION));
+    }
+
+    private static void mergeSketch(byte[] registers, int offset, Object sketch) {
+        if (sketch == null) {
+            return;
+        }
+        List<?> values = (List<?>) sketch;
+        for (int register = 0; register < values.size(); register++) {
+            registers[offset + register] = (byte) Math.max(registers[offset + register], ((Number) values.get(register)).intValue());
+        }
+    }
+
+    @Override
+    public Map<Long, Long> countUserRollups(Collection<Long> userIds, RollupPlan plan) {
+        Map<String, Object> parameters = planParameters(plan);
+        parameters.put("userIds", userIds);
+        return countRollups(COUNT_USER_ROLLUPS_QUERY, parameters);
+    }
+
+    @Override
+    public Map<Long, Long> countUserRollupsAtLeast(RollupPlan plan, int threshold) {
+        Map<String, Object> parameters = planParameters(plan);
+        parameters.put("threshold", threshold);
+        return countRollups(COUNT_USER_ROLLUPS_AT_LEAST_QUERY, parameters);
+    }
+
+    private Map<Long, Long> countRollups(String query, Map<String, Object> parameters) {
+        Map<Long, Long> counts = new HashMap<>();
+        neo4jClient.query(query)
+                   .bindAll(parameters)
+                   .fetch()
+                   .all()
+                   .forEach(row -> counts.put((Long) row.get("userId"), ((Number) row.get("transactionCount")).longValue()));
+        return counts;
+    }
+
+    private static Map<String, Object> planParameters(RollupPlan plan) {
+        List<Map<String, Object>> buckets = new ArrayList<>(plan.getBuckets().size());
+        for (RollupPlan.BucketRange range : plan.getBuckets()) {
+            buckets.add(Map.of("resolution", range.getResolution().name(), "from", range.getFrom(), "to", range.getTo()));
+        }
+        List<Map<String, Object>> edges = new ArrayList<>(plan.getEdges().size());
+        for (RollupPlan.TimeRange range : plan.getEdges()) {
+            edges.add(Map.of("from", range.getFrom(), "to", range.getTo()));
+        }
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("buckets", buckets);
+        parameters.put("edges", edges);
+        return parameters;
+    }
+}
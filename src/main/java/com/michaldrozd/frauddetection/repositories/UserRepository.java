@@ -3,12 +3,13 @@ package com.michaldrozd.frauddetection.repositories;
 import com.michaldrozd.frauddetection.domain.Product;
 import com.michaldrozd.frauddetection.domain.User;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import org.springframework.data.neo4j.repository.Neo4jRepository;
 import org.springframework.data.neo4j.repository.query.Query;
 import org.springframework.data.repository.query.Param;
 
-public interface UserRepository extends Neo4jRepository<User, Long> {
+public interface UserRepository extends Neo4jRepository<User, Long>, UserRepositoryCustom {
 
     /**
      * Finds and returns a list of User objects who have liked a similar set of products as the user with the given userId.
@@ -49,7 +50,17 @@ public interface UserRepository extends Neo4jRepository<User, Long> {
      *
      * @return A list of User objects with an unusually high number of transactions within the specified time range.
      */
-    @Query("MATCH (u:User)-[:PERFORMED_BY]->(t:Transaction) WHERE t.transactionDate >= $startDateTime AND t.transactionDate <= $endDateTime WITH u, count(t) AS transactionCount WHERE transactionCount >= $threshold RETURN u")
+    @Query("MATCH (t:Transaction)-[:PERFORMED_BY]->(u:User) WHERE t.transactionDate >= $startDateTime AND t.transactionDate <= $endDateTime WITH u, count(t) AS transactionCount WHERE transactionCount >= $threshold RETURN u")
     List<User> findUsersWithAnomalies(@Param("startDateTime") LocalDateTime startDateTime, @Param("endDateTime") LocalDateTime endDateTime, @Param("threshold") int threshold);
 
+    /**
+     * Finds and returns the User objects with the given IDs.
+     *
+     * @param userIds The IDs of the Users to retrieve.
+     *
+     * @return A list of the User objects that exist, in no particular order.
+     */
+    @Query("MATCH (u:User) WHERE u.id IN $userIds RETURN u")
+    List<User> findUsersByIds(@Param("userIds") Collection<Long> userIds);
+
 }
\ No newline at end of file
@@ -0,0 +1,111 @@
+package com.michaldrozd.frauddetection.repositories;
+
+import com.michaldrozd.frauddetection.dto.UserIdentity;
+import com.michaldrozd.frauddetection.dto.UserLinks;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public interface UserRepositoryCustom {
+
+    /**
+     * Loads the liked products of a page of users, ordered by User ID, for building the in-memory similarity index.
+     * <p>
+     * Users without any liked product are included with an empty array, so that paging always advances.
+     *
+     * @param afterUserId The User ID to continue after, or {@code null} for the first page.
+     * @param limit       The maximum number of users in the page.
+     *
+     * @return The IDs of the liked Products by User ID, in User ID order.
+     */
+    Map<Long, long[]> findLikedProductIdsPage(Long afterUserId, int limit);
+
+    /**
+     * Creates a {@code LIKES} relationship between a User and a Product, if it does not exist yet.
+     *
+     * @return true if both the User and the Product exist.
+     */
+    boolean addLike(Long userId, Long productId);
+
+    /**
+     * Deletes the {@code LIKES} relationship between a User and a Product, if any.
+     */
+    void removeLike(Long userId, Long productId);
+
+    /**
+     * Loads the viewed products of a page of users, ordered by User ID, for building the in-memory popularity counters.
+     * <p>
+     * Users without any viewed product are included with an empty array, so that paging always advances.
+     *
+     * @param afterUserId The User ID to continue after, or {@code null} for the first page.
+     * @param limit       The maximum number of users in the page.
+     *
+     * @return The IDs of the viewed Products by User ID, in User ID order.
+     */
+    Map<Long, long[]> findViewedProductIdsPage(Long afterUserId, int limit);
+
+    /**
+     * Creates a {@code VIEWED} relationship between a User and a Product, if it does not exist yet.
+     *
+     * @return Whether the relationship was created, or an empty optional if the User or the Product does not exist.
+     */
+    Optional<Boolean> addView(Long userId, Long productId);
+
+    /**
+     * Loads a page of User IDs in ascending order, for scans that page through all users.
+     *
+     * @param afterUserId The User ID to continue after, or {@code null} for the first page.
+     * @param limit       The maximum number of User IDs in the page.
+     *
+     * @return The User IDs, in ascending order.
+     */
+    List<Long> findUserIdsPage(Long afterUserId, int limit);
+
+    /**
+     * Counts the transactions of the given users within a time range.
+     *
+     * @param userIds       The IDs of the Users.
+     * @param startDateTime The start of the range, inclusive.
+     * @param endDateTime   The end of the range.
+     * @param endInclusive  Whether transactions at exactly {@code endDateTime} are counted.
+     *
+     * @return The number of transactions by User ID; users without transactions in the range are absent.
+     */
+    Map<Long, Long> countTransactionsByUsers(Collection<Long> userIds, LocalDateTime startDateTime, LocalDateTime endDateTime, boolean endInclusive);
+
+    /**
+     * Loads the Devices ({@code USED_BY}) and Credit Cards ({@code BELONGS_TO}) linked to a page of users, ordered by
+     * User ID, for projecting the user-device-card graph.
+     * <p>
+     * Users without any Device or Credit Card are included with empty arrays, so that paging always advances.
+     *
+     * @param afterUserId The User ID to continue after, or {@code null} for the first page.
+     * @param limit       The maximum number of users in the page.
+     *
+     * @return The links of the page's users, in User ID order.
+     */
+    List<UserLinks> findUserLinksPage(Long afterUserId, int limit);
+
+    /**
+     * Finds the identity of a User by its ID, without loading any of its relationships.
+     * <p>
+     * Unlike {@code findById}, which hydrates the User with all of its Credit Cards and Devices (and their
+     * Transactions), the query returns just the ID, username and name, so its cost does not grow with the User's history.
+     *
+     * @param userId The ID of the User.
+     *
+     * @return The identity, or an empty optional if the User does not exist.
+     */
+    Optional<UserIdentity> findUserIdentity(Long userId);
+
+    /**
+     * Finds the identities of many Users by their IDs in one query, as {@link #findUserIdentity(Long)} does.
+     *
+     * @param userIds The IDs of the Users.
+     *
+     * @return The identities of the Users that exist.
+     */
+    List<UserIdentity> findUserIdentities(Collection<Long> userIds);
+}
@@ -0,0 +1,205 @@
+package com.michaldrozd.frauddetection.repositories;
+
+import com.michaldrozd.frauddetection.dto.UserIdentity;
+import com.michaldrozd.frauddetection.dto.UserLinks;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.neo4j.driver.Record;
+import org.springframework.data.neo4j.core.Neo4jClient;
+
+class UserRepositoryCustomImpl implements UserRepositoryCustom {
+
+    private static final String PRODUCT_IDS_PAGE_QUERY = """
+        MATCH (u:User) WHERE u.id > $afterUserId
+        WITH u ORDER BY u.id LIMIT $limit
+        OPTIONAL MATCH (u)-[:%s]->(p:Product) WHERE p.id IS NOT NULL
+        RETURN u.id AS userId, collect(DISTINCT p.id) AS productIds
+        ORDER BY userId
+        """;
+
+    private static final String ADD_LIKE_QUERY = """
+        MATCH (u:User) WHERE u.id = $userId
+        MATCH (p:Product) WHERE p.id = $productId
+        MERGE (u)-[:LIKES]->(p)
+        RETURN count(*) AS liked
+        """;
+
+    private static final String ADD_VIEW_QUERY = """
+        MATCH (u:User) WHERE u.id = $userId
+        MATCH (p:Product) WHERE p.id = $productId
+        OPTIONAL MATCH (u)-[viewed:VIEWED]->(p)
+        WITH u, p, count(viewed) = 0 AS created
+        MERGE (u)-[:VIEWED]->(p)
+        RETURN created
+        """;
+
+    private static final String USER_IDS_PAGE_QUERY = """
+        MATCH (u:User) WHERE u.id > $afterUserId
+        RETURN u.id AS userId
+        ORDER BY userId LIMIT $limit
+        """;
+
+    static final String COUNT_TRANSACTIONS_BY_USERS_QUERY = """
+        UNWIND $userIds AS userId
+        MATCH (t:Transaction)-[:PERFORMED_BY]->(u:User) WHERE u.id = userId
+          AND t.transactionDate >= $startDateTime
+          AND (t.transactionDate < $endDateTime OR ($endInclusive AND t.transactionDate = $endDateTime))
+        RETURN userId, count(t) AS transactionCount
+        """;
+
+    private static final String USER_LINKS_PAGE_QUERY = """
+        MATCH (u:User) WHERE u.id > $afterUserId
+        WITH u ORDER BY u.id LIMIT $limit
+        OPTIONAL MATCH (u)<-[:USED_BY]-(d:Device)
+        WITH u, collect(DISTINCT id(d)) AS deviceIds
+        OPTIONAL MATCH (u)<-[:BELONGS_TO]-(c:CreditCard)
+        RETURN u.id AS userId, deviceIds, collect(DISTINCT id(c)) AS creditCardIds
+        ORDER BY userId
+        """;
+
+    private static final String REMOVE_LIKE_QUERY = """
+        MATCH (u:User)-[l:LIKES]->(p:Product) WHERE u.id = $userId AND p.id = $productId
+        DELETE l
+        """;
+
+    static final String USER_IDENTITY_QUERY = """
+        MATCH (u:User) WHERE u.id = $userId
+        RETURN u.id AS userId, u.username AS username, u.name AS name
+        LIMIT 1
+        """;
+
+    static final String USER_IDENTITIES_QUERY = """
+        UNWIND $userIds AS userId
+        MATCH (u:User) WHERE u.id = userId
+        RETURN u.id AS userId, u.username AS username, u.name AS name
+        """;
+
+    private final Neo4jClient neo4jClient;
+
+    UserRepositoryCustomImpl(Neo4jClient neo4jClient) {
+        this.neo4jClient = neo4jClient;
+    }
+
+    @Override
+    public Map<Long, long[]> findLikedProductIdsPage(Long afterUserId, int limit) {
+        return findProductIdsPage("LIKES", afterUserId, limit);
+    }
+
+    @Override
+    public Map<Long, long[]> findViewedProductIdsPage(Long afterUserId, int limit) {
+        return findProductIdsPage("VIEWED", afterUserId, limit);
+    }
+
+    private Map<Long, long[]> findProductIdsPage(String relationshipType, Long afterUserId, int limit) {
+        Map<Long, long[]> page = new LinkedHashMap<>();
+        neo4jClient.query(PRODUCT_IDS_PAGE_QUERY.formatted(relationshipType))
+                   .bindAll(Map.of("afterUserId", afterUserId != null ? afterUserId : Long.MIN_VALUE, "limit", limit))
+                   .fetch()
+                   .all()
+                   .forEach(row -> {
+                       List<?> productIds = (List<?>) row.get("productIds");
+                       long[] liked = new long[productIds.size()];
+                       for (int i = 0; i < liked.length; i++) {
+                           liked[i] = ((Number) productIds.get(i)).longValue();
+                       }
+                       page.put((Long) row.get("userId"), liked);
+                   });
+        return page;
+    }
+
+    @Override
+    public boolean addLike(Long userId, Long productId) {
+        return neo4jClient.query(ADD_LIKE_QUERY)
+                          .bindAll(Map.of("userId", userId, "productId", productId))
+                          .fetchAs(Long.class)
+                          .one()
+                          .orElse(0L) > 0;
+    }
+
+    @Override
+    public Optional<Boolean> addView(Long userId, Long productId) {
+        return neo4jClient.query(ADD_VIEW_QUERY)
+                          .bindAll(Map.of("userId", userId, "productId", productId))
+                          .fetchAs(Boolean.class)
+                          .one();
+    }
+
+    @Override
+    public void removeLike(Long userId, Long productId) {
+        neo4jClient.query(REMOVE_LIKE_QUERY)
+                   .bindAll(Map.of("userId", userId, "productId", productId))
+                   .run();
+    }
+
+    @Override
+    public List<Long> findUserIdsPage(Long afterUserId, int limit) {
+        return new ArrayList<>(neo4jClient.query(USER_IDS_PAGE_QUERY)
+                                          .bindAll(Map.of("afterUserId", afterUserId != null ? afterUserId : Long.MIN_VALUE, "limit", limit))
+                                          .fetchAs(Long.class)
+                                          .all());
+    }
+
+    @Override
+    public Map<Long, Long> countTransactionsByUsers(Collection<Long> userIds, LocalDateTime startDateTime, LocalDateTime endDateTime, boolean endInclusive) {
+        Map<Long, Long> counts = new HashMap<>();
+        neo4jClient.query(COUNT_TRANSACTIONS_BY_USERS_QUERY)
+                   .bindAll(Map.of("userIds", userIds, "startDateTime", startDateTime, "endDateTime", endDateTime, "endInclusive", endInclusive))
+                   .fetch()
+                   .all()
+                   .forEach(row -> counts.put((Long) row.get("userId"), (Long) row.get("transactionCount")));
+        return counts;
+    }
+
+    @Override
+    public List<UserLinks> findUserLinksPage(Long afterUserId, int limit) {
+        return new ArrayList<>(neo4jClient.query(USER_LINKS_PAGE_QUERY)
+                                          .bindAll(Map.of("afterUserId", afterUserId != null ? afterUserId : Long.MIN_VALUE, "limit", limit))
+                                          .fetchAs(UserLinks.class)
+                                          .mappedBy((typeSystem, record) -> new UserLinks(
+                                              record.get("userId").asLong(),
+                                              toLongArray(record.get("deviceIds").asList()),
+                                              toLongArray(record.get("creditCardIds").asList())
+                                          ))
+                                          .all());
+    }
+
+    @Override
+    public Optional<UserIdentity> findUserIdentity(Long userId) {
+        return neo4jClient.query(USER_IDENTITY_QUERY)
+                          .bind(userId).to("userId")
+                          .fetchAs(UserIdentity.class)
+                          .mappedBy((typeSystem, record) -> toUserIdentity(record))
+                          .one();
+    }
+
+    @Override
+    public List<UserIdentity> findUserIdentities(Collection<Long> userIds) {
+        return new ArrayList<>(neo4jClient.query(USER_IDENTITIES_QUERY)
+                                          .bind(userIds).to("userIds")
+                                          .fetchAs(UserIdentity.class)
+                                          .mappedBy((typeSystem, record) -> toUserIdentity(record))
+                                          .all());
+    }
+
+    private static UserIdentity toUserIdentity(Record record) {
+        return new UserIdentity(
+            record.get("userId").asLong(),
+            record.get("username").isNull() ? null : record.get("username").asString(),
+            record.get("name").isNull() ? null : record.get("name").asString()
+        );
+    }
+
+    private static long[] toLongArray(List<Object> values) {
+        long[] array = new long[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = ((Number) values.get(i)).longValue();
+        }
+        return array;
+    }
+}
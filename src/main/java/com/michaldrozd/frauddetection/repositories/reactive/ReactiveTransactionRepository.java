@@ -0,0 +1,10 @@
+package com.michaldrozd.frauddetection.repositories.reactive;
+
+import com.michaldrozd.frauddetection.domain.Transaction;
+import org.springframework.data.neo4j.repository.ReactiveNeo4jRepository;
+
+/**
+ * Reactive counterpart of {@link com.michaldrozd.frauddetection.repositories.TransactionRepository}.
+ */
+public interface ReactiveTransactionRepository extends ReactiveNeo4jRepository<Transaction, Long>, ReactiveTransactionRepositoryCustom {
+}
@@ -0,0 +1,24 @@
+package com.michaldrozd.frauddetection.repositories.reactive;
+
+import com.michaldrozd.frauddetection.dto.WindowTransaction;
+import java.time.LocalDateTime;
+import reactor.core.publisher.Flux;
+
+/**
+ * Streaming queries of the reactive transaction repository.
+ */
+public interface ReactiveTransactionRepositoryCustom {
+
+    /**
+     * Streams the flat projections of a user's transactions since the given time.
+     * <p>
+     * Records are pulled from the database as the subscriber requests them, in no particular order; cancelling the
+     * subscription stops the query without fetching the rest of the window.
+     *
+     * @param userId            The ID of the User.
+     * @param dateTimeThreshold The minimum LocalDateTime threshold for filtering transactions.
+     *
+     * @return The user's transactions within the window.
+     */
+    Flux<WindowTransaction> streamWindowTransactions(Long userId, LocalDateTime dateTimeThreshold);
+}
@@ -0,0 +1,59 @@
+package com.michaldrozd.frauddetection.repositories.reactive;
+
+import com.michaldrozd.frauddetection.dto.WindowTransaction;
+import java.time.LocalDateTime;
+import java.util.Map;
+import org.neo4j.driver.Value;
+import org.springframework.data.neo4j.core.ReactiveNeo4jClient;
+import reactor.core.publisher.Flux;
+
+class ReactiveTransactionRepositoryCustomImpl implements ReactiveTransactionRepositoryCustom {
+
+    // Without ORDER BY, so that the database can produce the rows lazily as they are pulled
+    private static final String WINDOW_TRANSACTIONS_QUERY = """
+        MATCH (t:Transaction)-[:PERFORMED_BY]->(u:User), (t)-[:CONDUCTED_WITH]->(d:Device)
+        WHERE u.id = $userId AND t.transactionDate >= $dateTimeThreshold
+        OPTIONAL MATCH (t)-[:USED]->(c:CreditCard)
+        RETURN t.transactionId AS transactionId, t.amount AS amount, t.transactionDate AS transactionDate,
+               id(d) AS deviceId, d.latitude AS latitude, d.longitude AS longitude, id(c) AS creditCardId,
+               d.deviceId AS deviceIdentifier, c.number AS creditCardNumber
+        """;
+
+    private final ReactiveNeo4jClient reactiveNeo4jClient;
+
+    ReactiveTransactionRepositoryCustomImpl(ReactiveNeo4jClient reactiveNeo4jClient) {
+        this.reactiveNeo4jClient = reactiveNeo4jClient;
+    }
+
+    @Override
+    public Flux<WindowTransaction> streamWindowTransactions(Long userId, LocalDateTime dateTimeThreshold) {
+        return reactiveNeo4jClient.query(WINDOW_TRANSACTIONS_QUERY)
+                                  .bindAll(Map.of("userId", userId, "dateTimeThreshold", dateTimeThreshold))
+                                  .fetchAs(WindowTransaction.class)
+                                  .mappedBy((typeSystem, record) -> new WindowTransaction(
+                                      userId,
+                                      asString(record.get("transactionId")),
+                                      asDouble(record.get("amount")),
+                                      record.get("transactionDate").asLocalDateTime(),
+                                      asLong(record.get("deviceId")),
+                                      asDouble(record.get("latitude")),
+                                      asDouble(record.get("longitude")),
+                                      asLong(record.get("creditCardId")),
+                                      asString(record.get("deviceIdentifier")),
+                                      asString(record.get("creditCardNumber"))
+                                  ))
+                                  .all();
+    }
+
+    private static Double asDouble(Value value) {
+        return value.isNull() ? null : value.asDouble();
+    }
+
+    private static String asString(Value value) {
+        return value.isNull() ? null : value.asString();
+    }
+
+    private static Long asLong(Value value) {
+        return value.isNull() ? null : value.asLong();
+    }
+}
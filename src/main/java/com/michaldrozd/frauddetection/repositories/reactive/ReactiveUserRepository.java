@@ -0,0 +1,10 @@
+package com.michaldrozd.frauddetection.repositories.reactive;
+
+import com.michaldrozd.frauddetection.domain.User;
+import org.springframework.data.neo4j.repository.ReactiveNeo4jRepository;
+
+/**
+ * Reactive counterpart of {@link com.michaldrozd.frauddetection.repositories.UserRepository}.
+ */
+public interface ReactiveUserRepository extends ReactiveNeo4jRepository<User, Long>, ReactiveUserRepositoryCustom {
+}
@@ -0,0 +1,19 @@
+package com.michaldrozd.frauddetection.repositories.reactive;
+
+import com.michaldrozd.frauddetection.dto.UserIdentity;
+import reactor.core.publisher.Mono;
+
+/**
+ * Projection queries of the reactive user repository.
+ */
+public interface ReactiveUserRepositoryCustom {
+
+    /**
+     * Finds the identity of a User, without loading any of its relationships.
+     *
+     * @param userId The ID of the User.
+     *
+     * @return The identity, or an empty Mono if the User does not exist.
+     */
+    Mono<UserIdentity> findUserIdentity(Long userId);
+}
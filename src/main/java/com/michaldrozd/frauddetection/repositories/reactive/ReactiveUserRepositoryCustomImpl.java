@@ -0,0 +1,33 @@
+package com.michaldrozd.frauddetection.repositories.reactive;
+
+import com.michaldrozd.frauddetection.dto.UserIdentity;
+import org.springframework.data.neo4j.core.ReactiveNeo4jClient;
+import reactor.core.publisher.Mono;
+
+class ReactiveUserRepositoryCustomImpl implements ReactiveUserRepositoryCustom {
+
+    private static final String USER_IDENTITY_QUERY = """
+        MATCH (u:User) WHERE u.id = $userId
+        RETURN u.id AS userId, u.username AS username, u.name AS name
+        LIMIT 1
+        """;
+
+    private final ReactiveNeo4jClient reactiveNeo4jClient;
+
+    ReactiveUserRepositoryCustomImpl(ReactiveNeo4jClient reactiveNeo4jClient) {
+        this.reactiveNeo4jClient = reactiveNeo4jClient;
+    }
+
+    @Override
+    public Mono<UserIdentity> findUserIdentity(Long userId) {
+        return reactiveNeo4jClient.query(USER_IDENTITY_QUERY)
+                                  .bind(userId).to("userId")
+                                  .fetchAs(UserIdentity.class)
+                                  .mappedBy((typeSystem, record) -> new UserIdentity(
+                                      record.get("userId").asLong(),
+                                      record.get("username").isNull() ? null : record.get("username").asString(),
+                                      record.get("name").isNull() ? null : record.get("name").asString()
+                                  ))
+                                  .one();
+    }
+}
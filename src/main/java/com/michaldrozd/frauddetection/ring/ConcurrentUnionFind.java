@@ -0,0 +1,76 @@
+package com.michaldrozd.frauddetection.ring;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Lock-free disjoint-set forest over the slots {@code 0..capacity-1}.
+ * <p>
+ * {@link #find(int)} compresses paths by halving with compare-and-set, and {@link #union(int, int)} always links the
+ * root with the higher slot under the one with the lower slot, so any number of threads can union concurrently and
+ * the roots only ever move towards lower slots: the root of a set is its lowest slot.
+ */
+class ConcurrentUnionFind {
+
+    private final AtomicIntegerArray parent;
+
+    ConcurrentUnionFind(int capacity) {
+        this(capacity, null);
+    }
+
+    private ConcurrentUnionFind(int capacity, ConcurrentUnionFind source) {
+        parent = new AtomicIntegerArray(capacity);
+        int copied = source != null ? source.capacity() : 0;
+        for (int i = 0; i < copied; i++) {
+            parent.set(i, source.parent.get(i));
+        }
+        for (int i = copied; i < capacity; i++) {
+            parent.set(i, i);
+        }
+    }
+
+    int capacity() {
+        return parent.length();
+    }
+
+    /**
+     * Returns a copy with room for more slots, the new slots being singletons. Must not run concurrently with
+     * {@link #union(int, int)}.
+     */
+    ConcurrentUnionFind grow(int capacity) {
+        return new ConcurrentUnionFind(capacity, this);
+    }
+
+    int find(int slot) {
+        int current = slot;
+        int next = parent.get(current);
+        while (next != current) {
+            int grandparent = parent.get(next);
+            // Losing this race only means another thread compressed the path already
+            parent.compareAndSet(current, next, grandparent);
+            current = grandparent;
+            next = parent.get(current);
+        }
+        return current;
+    }
+
+    /**
+     * Merges the sets of the two slots.
+     *
+     * @return The root of the merged set, and {@code -1 - root} if the slots were in the same set already.
+     */
+    int union(int a, int b) {
+        while (true) {
+            int rootA = find(a);
+            int rootB = find(b);
+            if (rootA == rootB) {
+                return -1 - rootA;
+            }
+            int root = Math.min(rootA, rootB);
+            int child = Math.max(rootA, rootB);
+            // Fails if the child stopped being a root meanwhile, retry with the new roots
+            if (parent.compareAndSet(child, child, root)) {
+                return root;
+            }
+        }
+    }
+}
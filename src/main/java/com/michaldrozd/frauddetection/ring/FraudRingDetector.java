@@ -0,0 +1,195 @@
+package com.michaldrozd.frauddetection.ring;
+
+import com.michaldrozd.frauddetection.dto.FraudRingSummary;
+import com.michaldrozd.frauddetection.dto.UserLinks;
+import com.michaldrozd.frauddetection.dto.UserTransactionTotals;
+import com.michaldrozd.frauddetection.repositories.TransactionRepository;
+import com.michaldrozd.frauddetection.repositories.UserRepository;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Detects fraud rings: users connected through shared Devices or Credit Cards.
+ * <p>
+ * The {@link FraudRingGraph} is built from the graph in pages of users in the background after startup, and kept up
+ * to date by {@link #recordTransaction(Long, Long, Long, Double)} for every ingested transaction, which only merges
+ * rings. As the ring statistics only ever grow, the graph is rebuilt periodically to let old transactions fall out of
+ * the lookback window and to pick up links not created by the ingestion, in the background like the first
+ * build. Until the first build completes, there are no rings.
+ */
+@Slf4j
+@Component
+public class FraudRingDetector {
+
+    private final UserRepository userRepository;
+    private final TransactionRepository transactionRepository;
+    private final boolean enabled;
+    private final int pageSize;
+    private final long lookbackHours;
+    private final int maxListedUsers;
+    private volatile FraudRingGraph graph;
+    private volatile boolean building;
+    private final AtomicBoolean loading = new AtomicBoolean();
+
+    // Transactions arriving while a graph is being built, applied to it once it is complete
+    private final List<Consumer<FraudRingGraph>> pendingChanges = new ArrayList<>();
+
+    public FraudRingDetector(UserRepository userRepository,
+                             TransactionRepository transactionRepository,
+                             @Value("${fraud-detection.fraud-rings.enabled:false}") boolean enabled,
+                             @Value("${fraud-detection.fraud-rings.page-size:10000}") int pageSize,
+                             @Value("${fraud-detection.fraud-rings.lookback-hours:24}") long lookbackHours,
+                             @Value("${fraud-detection.fraud-rings.max-listed-users:100}") int maxListedUsers) {
+        this.userRepository = userRepository;
+        this.transactionRepository = transactionRepository;
+        this.enabled = enabled;
+        this.pageSize = pageSize;
+        this.lookbackHours = lookbackHours;
+        this.maxListedUsers = maxListedUsers;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        if (enabled) {
+            startBuilder();
+        }
+    }
+
+    @Scheduled(initialDelayString = "${fraud-detection.fraud-rings.rebuild-interval-ms:3600000}",
+               fixedDelayString = "${fraud-detection.fraud-rings.rebuild-interval-ms:3600000}")
+    public void rebuild() {
+        if (enabled) {
+            startBuilder();
+        }
+    }
+
+    /**
+     * Builds the graph on a thread of its own, so that the scheduler thread is not held up by the paged reload, unless
+     * a build is running already.
+     */
+    private void startBuilder() {
+        if (!loading.compareAndSet(false, true)) {
+            return;
+        }
+        Thread builder = new Thread(() -> {
+            try {
+                load();
+            } finally {
+                loading.set(false);
+            }
+        }, "fraud-ring-builder");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    private void load() {
+        long start = System.currentTimeMillis();
+        LocalDateTime windowStart = LocalDateTime.now().minusHours(lookbackHours);
+        synchronized (pendingChanges) {
+            // Transactions recorded from now on may also be in the totals loaded below and be counted twice, but only
+            // those written while the single aggregation query runs
+            building = true;
+        }
+        try {
+            FraudRingGraph loaded = new FraudRingGraph(windowStart.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), pageSize);
+            for (UserTransactionTotals totals : transactionRepository.sumTransactionsByUserSince(windowStart)) {
+                loaded.addTotals(totals.getUserId(), totals.getTransactionCount(), totals.getTotalAmount());
+            }
+            Long afterUserId = null;
+            List<UserLinks> page;
+            do {
+                page = userRepository.findUserLinksPage(afterUserId, pageSize);
+                for (UserLinks links : page) {
+                    loaded.addUser(links.getUserId(), links.getDeviceIds(), links.getCreditCardIds());
+                    afterUserId = links.getUserId();
+                }
+            } while (page.size() == pageSize);
+            loaded.connect();
+            synchronized (pendingChanges) {
+                pendingChanges.forEach(change -> change.accept(loaded));
+                pendingChanges.clear();
+                building = false;
+                graph = loaded;
+            }
+            log.info("Built fraud rings of {} users in {} ms", loaded.userCount(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            synchronized (pendingChanges) {
+                pendingChanges.clear();
+                building = false;
+            }
+            log.error("Failed to build the fraud rings{}", graph != null ? ", keeping the previous ones" : "", e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isReady() {
+        return graph != null;
+    }
+
+    /**
+     * Adds an ingested transaction to the rings.
+     *
+     * @param userId       The ID of the User who performed the transaction.
+     * @param deviceId     The graph ID of the transaction's Device, or {@code null}.
+     * @param creditCardId The graph ID of the transaction's Credit Card, or {@code null}.
+     * @param amount       The amount of the transaction, or {@code null}.
+     */
+    public void recordTransaction(Long userId, Long deviceId, Long creditCardId, Double amount) {
+        if (!enabled || userId == null) {
+            return;
+        }
+        double value = amount != null ? amount : 0;
+        Consumer<FraudRingGraph> change = target -> target.recordTransaction(userId, deviceId, creditCardId, value);
+        // Outside of a build, a transaction missed by the current graph is in the totals of the next one
+        FraudRingGraph current = graph;
+        if (building) {
+            synchronized (pendingChanges) {
+                if (building) {
+                    pendingChanges.add(change);
+                }
+                current = graph;
+            }
+        }
+        if (current != null) {
+            change.accept(current);
+        }
+    }
+
+    /**
+     * Finds the ring of a user.
+     *
+     * @return The ring, or an empty optional if the user is unknown or the rings are not built (yet).
+     */
+    public Optional<FraudRingSummary> findRing(Long userId) {
+        FraudRingGraph current = graph;
+        if (current == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(current.findRing(userId, maxListedUsers, System.currentTimeMillis()));
+    }
+
+    /**
+     * Finds the highest scored rings of at least {@code minUsers} users.
+     */
+    public List<FraudRingSummary> findTopRings(int minUsers, int limit) {
+        FraudRingGraph current = graph;
+        if (current == null) {
+            return List.of();
+        }
+        return current.topRings(minUsers, limit, maxListedUsers, System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,363 @@
+package com.michaldrozd.frauddetection.ring;
+
+import com.michaldrozd.frauddetection.dto.FraudRingSummary;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * Projection of the user-device-card graph into primitive arrays, clustered into fraud rings: the connected components
+ * of users sharing Devices or Credit Cards.
+ * <p>
+ * Users, Devices and Credit Cards are mapped to dense {@code int} slots of one {@link ConcurrentUnionFind}. A graph is
+ * loaded in two phases: {@link #addUser(long, long[], long[])} and {@link #addTotals(long, long, double)} only record
+ * slots and an edge list, and {@link #connect()} unions all edges in parallel and folds the per-slot statistics into
+ * their roots. From then on, {@link #recordTransaction(long, Long, Long, double)} updates it incrementally: a new edge
+ * merges at most two rings, in constant time, and nothing is recomputed.
+ * <p>
+ * Every root holds the statistics of its ring, and its users as a circular linked list, which two rings merge by
+ * swapping a single pointer. Looking up the ring of a user is a hash lookup and a {@code find}, and listing its
+ * members is bounded by the number of IDs asked for.
+ * <p>
+ * Loading is single-threaded and must complete before the graph is shared; once connected, the graph is thread-safe.
+ */
+public class FraudRingGraph {
+
+    private static final int NONE = -1;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final long windowStartMillis;
+
+    private final LongIntMap userSlots;
+    private final LongIntMap deviceSlots;
+    private final LongIntMap creditCardSlots;
+    private ConcurrentUnionFind sets;
+    private int slots;
+
+    // The edge list, only kept until connect()
+    private int[] edgeUsers = new int[1024];
+    private int[] edgeTargets = new int[1024];
+    private int edges;
+
+    // Per slot; the ring statistics are only meaningful at roots
+    private long[] userIds;
+    private long[] ringIds;
+    private int[] nextMember;
+    private int[] memberHead;
+    private int[] userCounts;
+    private int[] deviceCounts;
+    private int[] creditCardCounts;
+    private long[] transactionCounts;
+    private double[] totalAmounts;
+
+    /**
+     * @param windowStartMillis The start of the time range the transaction statistics cover, for their velocity.
+     * @param expectedUsers     The expected number of users, to size the arrays.
+     */
+    public FraudRingGraph(long windowStartMillis, int expectedUsers) {
+        this.windowStartMillis = windowStartMillis;
+        int capacity = Math.max(16, expectedUsers);
+        this.userSlots = new LongIntMap(capacity);
+        this.deviceSlots = new LongIntMap(capacity);
+        this.creditCardSlots = new LongIntMap(capacity);
+        this.sets = new ConcurrentUnionFind(capacity);
+        this.userIds = new long[capacity];
+        this.ringIds = new long[capacity];
+        this.nextMember = new int[capacity];
+        this.memberHead = new int[capacity];
+        this.userCounts = new int[capacity];
+        this.deviceCounts = new int[capacity];
+        this.creditCardCounts = new int[capacity];
+        this.transactionCounts = new long[capacity];
+        this.totalAmounts = new double[capacity];
+    }
+
+    /**
+     * Records a user and its Devices and Credit Cards, before {@link #connect()}.
+     *
+     * @param userId        The ID of the User.
+     * @param deviceIds     The graph IDs of the Devices used by the User.
+     * @param creditCardIds The graph IDs of the Credit Cards belonging to the User.
+     */
+    public void addUser(long userId, long[] deviceIds, long[] creditCardIds) {
+        int user = userSlot(userId);
+        for (long deviceId : deviceIds) {
+            addEdge(user, slot(deviceSlots, deviceId, true));
+        }
+        for (long creditCardId : creditCardIds) {
+            addEdge(user, slot(creditCardSlots, creditCardId, false));
+        }
+    }
+
+    /**
+     * Records the transactions of a user inside the window, before {@link #connect()}.
+     */
+    public void addTotals(long userId, long transactionCount, double totalAmount) {
+        int user = userSlot(userId);
+        transactionCounts[user] += transactionCount;
+        totalAmounts[user] += totalAmount;
+    }
+
+    /**
+     * Unions all recorded edges in parallel and folds the statistics of every slot into its ring.
+     */
+    public void connect() {
+        ConcurrentUnionFind forest = sets;
+        int[] fromSlots = edgeUsers;
+        int[] toSlots = edgeTargets;
+        IntStream.range(0, edges).parallel().forEach(edge -> forest.union(fromSlots[edge], toSlots[edge]));
+        for (int slot = 0; slot < slots; slot++) {
+            int root = forest.find(slot);
+            if (root != slot) {
+                fold(slot, root);
+            }
+        }
+        edgeUsers = null;
+        edgeTargets = null;
+        edges = 0;
+    }
+
+    /**
+     * Adds an ingested transaction, merging the rings of its user, Device and Credit Card.
+     *
+     * @param userId       The ID of the User who performed the transaction.
+     * @param deviceId     The graph ID of the transaction's Device, or {@code null}.
+     * @param creditCardId The graph ID of the transaction's Credit Card, or {@code null}.
+     * @param amount       The amount of the transaction.
+     */
+    public void recordTransaction(long userId, Long deviceId, Long creditCardId, double amount) {
+        lock.writeLock().lock();
+        try {
+            int user = userSlot(userId);
+            if (deviceId != null) {
+                merge(user, slot(deviceSlots, deviceId, true));
+            }
+            if (creditCardId != null) {
+                merge(user, slot(creditCardSlots, creditCardId, false));
+            }
+            int root = sets.find(user);
+            transactionCounts[root]++;
+            totalAmounts[root] += amount;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the ring of a user.
+     *
+     * @param userId         The ID of the User.
+     * @param maxListedUsers The maximum number of member IDs to list.
+     * @param nowMillis      The current time, for the transaction velocity.
+     *
+     * @return The ring, or {@code null} if the user is unknown.
+     */
+    public FraudRingSummary findRing(long userId, int maxListedUsers, long nowMillis) {
+        lock.readLock().lock();
+        try {
+            int user = userSlots.get(userId);
+            return user == LongIntMap.MISSING ? null : summarize(sets.find(user), maxListedUsers, nowMillis);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the highest scored rings.
+     *
+     * @param minUsers       The minimum number of users of a ring.
+     * @param limit          The maximum number of rings.
+     * @param maxListedUsers The maximum number of member IDs to list per ring.
+     * @param nowMillis      The current time, for the transaction velocity.
+     *
+     * @return The rings, by descending score.
+     */
+    public List<FraudRingSummary> topRings(int minUsers, int limit, int maxListedUsers, long nowMillis) {
+        lock.readLock().lock();
+        try {
+            double hours = windowHours(nowMillis);
+            // Min-heap of root slots by score, the lowest scored of the current top on top
+            PriorityQueue<Integer> top = new PriorityQueue<>(Math.max(1, limit), Comparator.comparingDouble(root -> score(root, hours)));
+            for (int slot = 0; slot < slots; slot++) {
+                if (sets.find(slot) != slot || userCounts[slot] < Math.max(1, minUsers)) {
+                    continue;
+                }
+                if (top.size() < limit) {
+                    top.add(slot);
+                } else if (limit > 0 && score(slot, hours) > score(top.peek(), hours)) {
+                    top.poll();
+                    top.add(slot);
+                }
+            }
+            List<FraudRingSummary> rings = new ArrayList<>(top.size());
+            while (!top.isEmpty()) {
+                rings.add(summarize(top.poll(), maxListedUsers, nowMillis));
+            }
+            Collections.reverse(rings);
+            return rings;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int userCount() {
+        lock.readLock().lock();
+        try {
+            return userSlots.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Scores a ring: zero for a single user, and growing with its size, its transaction velocity and, logarithmically,
+     * the amount it moved.
+     *
+     * @param users               The number of users of the ring.
+     * @param transactionsPerHour The number of transactions of the ring per hour.
+     * @param totalAmount         The total amount of the ring's transactions.
+     */
+    static double score(int users, double transactionsPerHour, double totalAmount) {
+        return (users - 1) * (1 + transactionsPerHour) * Math.log10(10 + Math.max(0, totalAmount));
+    }
+
+    private double score(int root, double hours) {
+        return score(userCounts[root], transactionCounts[root] / hours, totalAmounts[root]);
+    }
+
+    private double windowHours(long nowMillis) {
+        return Math.max(1.0, (nowMillis - windowStartMillis) / 3_600_000.0);
+    }
+
+    private FraudRingSummary summarize(int root, int maxListedUsers, long nowMillis) {
+        List<Long> members = new ArrayList<>(Math.min(userCounts[root], maxListedUsers));
+        int head = memberHead[root];
+        int member = head;
+        while (member != NONE && members.size() < maxListedUsers) {
+            members.add(userIds[member]);
+            member = nextMember[member];
+            if (member == head) {
+                break;
+            }
+        }
+        members.sort(null);
+
+        double transactionsPerHour = transactionCounts[root] / windowHours(nowMillis);
+        return new FraudRingSummary(
+            ringIds[root],
+            userCounts[root],
+            deviceCounts[root],
+            creditCardCounts[root],
+            transactionCounts[root],
+            totalAmounts[root],
+            transactionsPerHour,
+            score(userCounts[root], transactionsPerHour, totalAmounts[root]),
+            members
+        );
+    }
+
+    private void merge(int a, int b) {
+        int rootA = sets.find(a);
+        int rootB = sets.find(b);
+        if (rootA != rootB) {
+            int root = sets.union(rootA, rootB);
+            fold(root == rootA ? rootB : rootA, root);
+        }
+    }
+
+    /**
+     * Moves the statistics and the members of {@code from} to the root {@code into}.
+     */
+    private void fold(int from, int into) {
+        userCounts[into] += userCounts[from];
+        deviceCounts[into] += deviceCounts[from];
+        creditCardCounts[into] += creditCardCounts[from];
+        transactionCounts[into] += transactionCounts[from];
+        totalAmounts[into] += totalAmounts[from];
+        ringIds[into] = Math.min(ringIds[into], ringIds[from]);
+        int fromHead = memberHead[from];
+        if (fromHead != NONE) {
+            int intoHead = memberHead[into];
+            if (intoHead == NONE) {
+                memberHead[into] = fromHead;
+            } else {
+                // Splicing two circular lists is a single swap of successors
+                int next = nextMember[intoHead];
+                nextMember[intoHead] = nextMember[fromHead];
+                nextMember[fromHead] = next;
+            }
+        }
+        userCounts[from] = 0;
+        deviceCounts[from] = 0;
+        creditCardCounts[from] = 0;
+        transactionCounts[from] = 0;
+        totalAmounts[from] = 0;
+        memberHead[from] = NONE;
+    }
+
+    private int userSlot(long userId) {
+        int slot = userSlots.get(userId);
+        if (slot == LongIntMap.MISSING) {
+            slot = newSlot();
+            userSlots.put(userId, slot);
+            userIds[slot] = userId;
+            ringIds[slot] = userId;
+            nextMember[slot] = slot;
+            memberHead[slot] = slot;
+            userCounts[slot] = 1;
+        }
+        return slot;
+    }
+
+    private int slot(LongIntMap slotsById, long id, boolean device) {
+        int slot = slotsById.get(id);
+        if (slot == LongIntMap.MISSING) {
+            slot = newSlot();
+            slotsById.put(id, slot);
+            if (device) {
+                deviceCounts[slot] = 1;
+            } else {
+                creditCardCounts[slot] = 1;
+            }
+        }
+        return slot;
+    }
+
+    private int newSlot() {
+        if (slots == userIds.length) {
+            int capacity = userIds.length * 2;
+            sets = sets.grow(capacity);
+            userIds = Arrays.copyOf(userIds, capacity);
+            ringIds = Arrays.copyOf(ringIds, capacity);
+            nextMember = Arrays.copyOf(nextMember, capacity);
+            memberHead = Arrays.copyOf(memberHead, capacity);
+            userCounts = Arrays.copyOf(userCounts, capacity);
+            deviceCounts = Arrays.copyOf(deviceCounts, capacity);
+            creditCardCounts = Arrays.copyOf(creditCardCounts, capacity);
+            transactionCounts = Arrays.copyOf(transactionCounts, capacity);
+            totalAmounts = Arrays.copyOf(totalAmounts, capacity);
+        }
+        int slot = slots++;
+        // A ring is identified by its lowest User ID, which (unlike its root slot) survives rebuilds
+        ringIds[slot] = Long.MAX_VALUE;
+        memberHead[slot] = NONE;
+        nextMember[slot] = NONE;
+        return slot;
+    }
+
+    private void addEdge(int user, int target) {
+        if (edges == edgeUsers.length) {
+            edgeUsers = Arrays.copyOf(edgeUsers, edges * 2);
+            edgeTargets = Arrays.copyOf(edgeTargets, edges * 2);
+        }
+        edgeUsers[edges] = user;
+        edgeTargets[edges] = target;
+        edges++;
+    }
+}
@@ -0,0 +1,124 @@
+package com.michaldrozd.frauddetection.rollup;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Which rollup buckets and raw transactions make up a time range.
+ * <p>
+ * The whole hours within the range are read from hour buckets, the whole minutes before the first and after the last
+ * whole hour from minute buckets, and only the partial minutes at both ends of the range from the transactions. A
+ * range of a day thus reads at most 23 hour and 118 minute buckets, however many transactions it holds.
+ */
+@Getter
+public class RollupPlan {
+
+    public enum Resolution {
+        MINUTE(ChronoUnit.MINUTES),
+        HOUR(ChronoUnit.HOURS);
+
+        private final ChronoUnit unit;
+
+        Resolution(ChronoUnit unit) {
+            this.unit = unit;
+        }
+
+        /**
+         * @return The start of the bucket the time falls into.
+         */
+        public LocalDateTime bucketStart(LocalDateTime time) {
+            return time.truncatedTo(unit);
+        }
+
+        LocalDateTime nextBucketStart(LocalDateTime time) {
+            LocalDateTime bucketStart = bucketStart(time);
+            return bucketStart.equals(time) ? time : bucketStart.plus(1, unit);
+        }
+    }
+
+    /**
+     * The buckets of one resolution starting at or after {@code from} and before {@code to}.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class BucketRange {
+        private final Resolution resolution;
+        private final LocalDateTime from;
+        private final LocalDateTime to;
+    }
+
+    /**
+     * The transactions at or after {@code from} and before {@code to}.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class TimeRange {
+        private final LocalDateTime from;
+        private final LocalDateTime to;
+    }
+
+    private final List<BucketRange> buckets;
+    private final List<TimeRange> edges;
+
+    private RollupPlan(List<BucketRange> buckets, List<TimeRange> edges) {
+        this.buckets = buckets;
+        this.edges = edges;
+    }
+
+    /**
+     * Plans the time range from {@code start} to {@code end}, both inclusive.
+     */
+    public static RollupPlan of(LocalDateTime start, LocalDateTime end) {
+        if (end.isBefore(start)) {
+            throw new IllegalArgumentException("end must not be before start");
+        }
+        LocalDateTime endExclusive = end.plusNanos(1);
+        LocalDateTime minuteStart = Resolution.MINUTE.nextBucketStart(start);
+        LocalDateTime minuteEnd = Resolution.MINUTE.bucketStart(endExclusive);
+        if (!minuteStart.isBefore(minuteEnd)) {
+            // No whole minute within the range
+            return new RollupPlan(List.of(), List.of(new TimeRange(start, endExclusive)));
+        }
+
+        List<TimeRange> edges = new ArrayList<>(2);
+        addIfNotEmpty(edges, start, minuteStart);
+        addIfNotEmpty(edges, minuteEnd, endExclusive);
+
+        List<BucketRange> buckets = new ArrayList<>(3);
+        LocalDateTime hourStart = Resolution.HOUR.nextBucketStart(minuteStart);
+        LocalDateTime hourEnd = Resolution.HOUR.bucketStart(minuteEnd);
+        if (hourStart.isBefore(hourEnd)) {
+            addIfNotEmpty(buckets, Resolution.MINUTE, minuteStart, hourStart);
+            buckets.add(new BucketRange(Resolution.HOUR, hourStart, hourEnd));
+            addIfNotEmpty(buckets, Resolution.MINUTE, hourEnd, minuteEnd);
+        } else {
+            buckets.add(new BucketRange(Resolution.MINUTE, minuteStart, minuteEnd));
+        }
+        return new RollupPlan(buckets, edges);
+    }
+
+    /**
+     * @return The number of buckets the plan reads at most.
+     */
+    public long getMaxBucketCount() {
+        return buckets.stream()
+                      .mapToLong(range -> range.getResolution().unit.between(range.getFrom(), range.getTo()))
+                      .sum();
+    }
+
+    private static void addIfNotEmpty(List<TimeRange> edges, LocalDateTime from, LocalDateTime to) {
+        if (from.isBefore(to)) {
+            edges.add(new TimeRange(from, to));
+        }
+    }
+
+    private static void addIfNotEmpty(List<BucketRange> buckets, Resolution resolution, LocalDateTime from, LocalDateTime to) {
+        if (from.isBefore(to)) {
+            buckets.add(new BucketRange(resolution, from, to));
+        }
+    }
+}
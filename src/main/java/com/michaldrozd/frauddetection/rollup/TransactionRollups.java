@@ -0,0 +1,104 @@
+package com.michaldrozd.frauddetection.rollup;
+
+import com.michaldrozd.frauddetection.dto.RollupTotals;
+import com.michaldrozd.frauddetection.repositories.TransactionRepository;
+import com.michaldrozd.frauddetection.window.WindowAggregate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Minute and hour rollups of the transactions, per user and for all users, kept in Neo4j next to the transactions.
+ * <p>
+ * Every transaction created by the ingestion is added to the rollups of its minute and hour in the same write as the
+ * transaction itself: the transaction count and the amount sum, for a user also the exact Device IDs, Credit Card
+ * numbers and transaction locations, and for all users HyperLogLog sketches of the Devices and Credit Cards. A user's
+ * window only counts the transactions conducted with a Device, as when it is loaded from the transactions. A time range
+ * is read from the buckets it fully covers and only the transactions of its partial first and last minutes (see
+ * {@link RollupPlan}), so windows and anomaly scans read tens of records instead of every transaction in range.
+ * <p>
+ * Only transactions written through the ingestion are rolled up, so the rollups are disabled by default, and time
+ * ranges starting before {@code fraud-detection.rollups.covered-since}, the time they were enabled at, are left to the
+ * transaction queries. A user's window is aggregated exactly, as from the transactions; the distinct Devices and
+ * Credit Cards of the totals of all users are estimates.
+ */
+@Component
+public class TransactionRollups {
+
+    private final TransactionRepository transactionRepository;
+    private final boolean enabled;
+    private final LocalDateTime coveredSince;
+
+    public TransactionRollups(TransactionRepository transactionRepository,
+                              @Value("${fraud-detection.rollups.enabled:false}") boolean enabled,
+                              @Value("${fraud-detection.rollups.covered-since:}") String coveredSince) {
+        this.transactionRepository = transactionRepository;
+        this.enabled = enabled;
+        this.coveredSince = coveredSince.isBlank() ? null : LocalDateTime.parse(coveredSince);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return true if the rollups contain all transactions since the given time.
+     */
+    public boolean covers(LocalDateTime startDateTime) {
+        return enabled && (coveredSince == null || !startDateTime.isBefore(coveredSince));
+    }
+
+    /**
+     * Aggregates a user's window from the rollups, if they cover it.
+     *
+     * @param userId            The ID of the User.
+     * @param dateTimeThreshold The start of the window.
+     * @param now               The end of the window.
+     *
+     * @return The aggregate, or an empty optional if the rollups do not cover the window.
+     */
+    public Optional<WindowAggregate> aggregate(Long userId, LocalDateTime dateTimeThreshold, LocalDateTime now) {
+        if (!covers(dateTimeThreshold)) {
+            return Optional.empty();
+        }
+        return Optional.of(transactionRepository.aggregateUserRollups(userId, RollupPlan.of(dateTimeThreshold, now)));
+    }
+
+    /**
+     * Counts the transactions of the given users within a time range from the rollups, if they cover it.
+     *
+     * @return The number of transactions by User ID, without users that have none, or an empty optional if the
+     * rollups do not cover the time range.
+     */
+    public Optional<Map<Long, Long>> countByUsers(Collection<Long> userIds, LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        if (!covers(startDateTime)) {
+            return Optional.empty();
+        }
+        return Optional.of(transactionRepository.countUserRollups(userIds, RollupPlan.of(startDateTime, endDateTime)));
+    }
+
+    /**
+     * Finds the users with at least {@code threshold} transactions within a time range from the rollups, if they cover it.
+     *
+     * @return The number of transactions by User ID, or an empty optional if the rollups do not cover the time range.
+     */
+    public Optional<Map<Long, Long>> findUsersWithAtLeast(LocalDateTime startDateTime, LocalDateTime endDateTime, int threshold) {
+        if (!covers(startDateTime)) {
+            return Optional.empty();
+        }
+        return Optional.of(transactionRepository.countUserRollupsAtLeast(RollupPlan.of(startDateTime, endDateTime), threshold));
+    }
+
+    /**
+     * Sums up the transactions of all users within a time range from the rollups, if they cover it.
+     */
+    public Optional<RollupTotals> sumAll(LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        if (!covers(startDateTime)) {
+            return Optional.empty();
+        }
+        return Optional.of(transactionRepository.sumGlobalRollups(RollupPlan.of(startDateTime, endDateTime)));
+    }
+}
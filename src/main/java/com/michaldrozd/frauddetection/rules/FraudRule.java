@@ -0,0 +1,43 @@
+package com.michaldrozd.frauddetection.rules;
+
+import com.michaldrozd.frauddetection.dto.FraudReason;
+
+/**
+ * A fraud rule evaluated against the aggregated window of a user by the {@link RulePipeline}.
+ * <p>
+ * Rules are Spring beans and are picked up by the pipeline at startup; the rule set file decides which of them are
+ * evaluated. Rules must be stateless and thread-safe, and must not depend on each other, as the pipeline reorders them
+ * by their measured cost and hit rate.
+ */
+public interface FraudRule {
+
+    /**
+     * @return The name of the rule in the rule set file.
+     */
+    default String getName() {
+        return getReason().name();
+    }
+
+    /**
+     * @return The reason of the verdict when this rule trips.
+     */
+    FraudReason getReason();
+
+    /**
+     * @return A description of what the user did when this rule trips, for logging.
+     */
+    String getDescription();
+
+    /**
+     * Whether the rule can be evaluated against the window at all, e.g. whether it has enough locations. Rules that do
+     * not apply are skipped and do not count as evaluated.
+     */
+    default boolean appliesTo(RuleContext context) {
+        return true;
+    }
+
+    /**
+     * @return Whether the window is potentially fraudulent by this rule.
+     */
+    boolean trips(RuleContext context);
+}
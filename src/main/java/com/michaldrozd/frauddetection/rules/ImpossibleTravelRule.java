@@ -0,0 +1,39 @@
+package com.michaldrozd.frauddetection.rules;
+
+import com.michaldrozd.frauddetection.dto.FraudReason;
+import com.michaldrozd.frauddetection.location.LocationVelocityEngine;
+import org.springframework.stereotype.Component;
+
+/**
+ * Trips when two consecutive transactions are further apart than anyone could travel in between, if impossible travel
+ * detection is enabled.
+ */
+@Component
+public final class ImpossibleTravelRule implements FraudRule {
+
+    private final LocationVelocityEngine locationVelocityEngine;
+
+    public ImpossibleTravelRule(LocationVelocityEngine locationVelocityEngine) {
+        this.locationVelocityEngine = locationVelocityEngine;
+    }
+
+    @Override
+    public FraudReason getReason() {
+        return FraudReason.IMPOSSIBLE_TRAVEL;
+    }
+
+    @Override
+    public String getDescription() {
+        return "has travelled impossibly fast between transactions";
+    }
+
+    @Override
+    public boolean appliesTo(RuleContext context) {
+        return locationVelocityEngine.isImpossibleTravelEnabled() && context.getWindow().getLocationCount() >= 2;
+    }
+
+    @Override
+    public boolean trips(RuleContext context) {
+        return locationVelocityEngine.isImpossibleTravel(context.getTrack());
+    }
+}
@@ -0,0 +1,41 @@
+package com.michaldrozd.frauddetection.rules;
+
+import com.michaldrozd.frauddetection.dto.FraudReason;
+import com.michaldrozd.frauddetection.location.LocationVelocityEngine;
+import org.springframework.stereotype.Component;
+
+/**
+ * Trips when any two transactions within the time window of each other are at least the distance threshold apart.
+ * <p>
+ * Uses the time-ordered sweep of the {@link LocationVelocityEngine} instead of comparing every pair of transactions.
+ */
+@Component
+public final class LocationRule implements FraudRule {
+
+    private final LocationVelocityEngine locationVelocityEngine;
+
+    public LocationRule(LocationVelocityEngine locationVelocityEngine) {
+        this.locationVelocityEngine = locationVelocityEngine;
+    }
+
+    @Override
+    public FraudReason getReason() {
+        return FraudReason.LOCATION;
+    }
+
+    @Override
+    public String getDescription() {
+        return "has transactions too far apart within the time window";
+    }
+
+    @Override
+    public boolean appliesTo(RuleContext context) {
+        return context.getWindow().getLocationCount() >= 2;
+    }
+
+    @Override
+    public boolean trips(RuleContext context) {
+        return locationVelocityEngine.exceedsDistance(context.getTrack(), context.getThresholds().getTimeWindowInMinutes() * 60_000L,
+            context.getThresholds().getDistanceThresholdInKm());
+    }
+}
@@ -0,0 +1,39 @@
+package com.michaldrozd.frauddetection.rules;
+
+import com.michaldrozd.frauddetection.ai.FraudModelScorer;
+import com.michaldrozd.frauddetection.dto.FraudReason;
+import org.springframework.stereotype.Component;
+
+/**
+ * Trips when the fraud model scores the window at or above its threshold, if a model is available.
+ */
+@Component
+public final class ModelRule implements FraudRule {
+
+    private final FraudModelScorer fraudModelScorer;
+
+    public ModelRule(FraudModelScorer fraudModelScorer) {
+        this.fraudModelScorer = fraudModelScorer;
+    }
+
+    @Override
+    public FraudReason getReason() {
+        return FraudReason.MODEL;
+    }
+
+    @Override
+    public String getDescription() {
+        return "has been scored as fraudulent by the fraud model";
+    }
+
+    @Override
+    public boolean appliesTo(RuleContext context) {
+        return fraudModelScorer.isAvailable();
+    }
+
+    @Override
+    public boolean trips(RuleContext context) {
+        return fraudModelScorer.isFraudulent(context.getWindow(), context.getThresholds().getTimeWindowInMinutes(),
+                                             context.getModelFeatures(), context.getModelPosteriori());
+    }
+}
@@ -0,0 +1,26 @@
+package com.michaldrozd.frauddetection.rules;
+
+import com.michaldrozd.frauddetection.dto.FraudReason;
+import org.springframework.stereotype.Component;
+
+/**
+ * Trips when the transactions within the time window were made with more than one device or credit card.
+ */
+@Component
+public final class MultipleDevicesOrCreditCardsRule implements FraudRule {
+
+    @Override
+    public FraudReason getReason() {
+        return FraudReason.MULTIPLE_DEVICES_OR_CREDIT_CARDS;
+    }
+
+    @Override
+    public String getDescription() {
+        return "has used multiple devices or credit cards within the time window";
+    }
+
+    @Override
+    public boolean trips(RuleContext context) {
+        return context.getWindow().getDistinctDevices() > 1 || context.getWindow().getDistinctCreditCards() > 1;
+    }
+}
@@ -0,0 +1,51 @@
+package com.michaldrozd.frauddetection.rules;
+
+import com.michaldrozd.frauddetection.ai.FraudFeatures;
+import com.michaldrozd.frauddetection.dto.FraudCheckThresholds;
+import com.michaldrozd.frauddetection.location.LocationTrack;
+import com.michaldrozd.frauddetection.window.WindowAggregate;
+import lombok.Getter;
+
+/**
+ * What the rules of one evaluation see: the aggregated window of a user and the thresholds of the check.
+ * <p>
+ * The time-ordered location track of the window is built on first use and shared by the location rules, and the
+ * buffers the model rule scores the window in are allocated on first use.
+ */
+@Getter
+public class RuleContext {
+
+    private final Long userId;
+    private final WindowAggregate window;
+    private final FraudCheckThresholds thresholds;
+    private LocationTrack track;
+    private double[] modelFeatures;
+    private double[] modelPosteriori;
+
+    public RuleContext(Long userId, WindowAggregate window, FraudCheckThresholds thresholds) {
+        this.userId = userId;
+        this.window = window;
+        this.thresholds = thresholds;
+    }
+
+    public LocationTrack getTrack() {
+        if (track == null) {
+            track = LocationTrack.of(window.getTimestamps(), window.getLatitudes(), window.getLongitudes());
+        }
+        return track;
+    }
+
+    public double[] getModelFeatures() {
+        if (modelFeatures == null) {
+            modelFeatures = new double[FraudFeatures.SIZE];
+        }
+        return modelFeatures;
+    }
+
+    public double[] getModelPosteriori() {
+        if (modelPosteriori == null) {
+            modelPosteriori = new double[2];
+        }
+        return modelPosteriori;
+    }
+}
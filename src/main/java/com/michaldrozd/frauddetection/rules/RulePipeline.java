@@ -0,0 +1,312 @@
+package com.michaldrozd.frauddetection.rules;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.michaldrozd.frauddetection.dto.FraudCheckThresholds;
+import com.michaldrozd.frauddetection.dto.FraudReason;
+import com.michaldrozd.frauddetection.dto.FraudVerdict;
+import com.michaldrozd.frauddetection.dto.RuleSet;
+import com.michaldrozd.frauddetection.dto.RuleStatus;
+import com.michaldrozd.frauddetection.metrics.FraudCheckMetrics;
+import com.michaldrozd.frauddetection.window.WindowAggregate;
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Evaluates the {@link FraudRule}s against the aggregated window of a user, stopping at the first rule that trips.
+ * <p>
+ * The rules in effect and the thresholds of every tenant are read from the rule set file at startup and by
+ * {@link #reload()}, and compiled into a flat array. The built-in rules are final classes, and every one of them is
+ * called from its own call site after a cast, so the JIT sees monomorphic calls it can inline; only other rules
+ * share one interface call site.
+ * <p>
+ * Every evaluated rule's cost and whether it tripped are recorded, and every
+ * {@code fraud-detection.rules.reorder-interval-ms} the rules are reordered by their expected cost per trip, the
+ * smoothed mean cost divided by the smoothed hit rate, which minimizes the expected cost of an evaluation that stops
+ * at the first trip when the rules trip independently. Whether a window is fraudulent does not depend on the order,
+ * but the reason of a fraudulent verdict may be another rule that would have tripped as well.
+ */
+@Slf4j
+@Component
+public class RulePipeline {
+
+    // Built-in rules dispatched from their own call sites; everything else is CUSTOM
+    private static final byte CUSTOM = 0;
+    private static final byte TRANSACTION_COUNT = 1;
+    private static final byte TRANSACTION_AMOUNT = 2;
+    private static final byte MULTIPLE_DEVICES_OR_CREDIT_CARDS = 3;
+    private static final byte LOCATION = 4;
+    private static final byte IMPOSSIBLE_TRAVEL = 5;
+    private static final byte MODEL = 6;
+
+    // Weight of the latest interval in the smoothed cost and hit rate
+    private static final double SMOOTHING = 0.3;
+    private static final double MIN_HIT_RATE = 1e-6;
+
+    private final Map<String, CompiledRule> registeredRules = new LinkedHashMap<>();
+    private final FraudCheckMetrics fraudCheckMetrics;
+    private final ObjectMapper objectMapper;
+    private final Path path;
+    private final boolean adaptiveOrdering;
+    private volatile Chain chain;
+
+    public RulePipeline(List<FraudRule> rules,
+                        FraudCheckMetrics fraudCheckMetrics,
+                        ObjectMapper objectMapper,
+                        @Value("${fraud-detection.rules.path:rules.json}") String path,
+                        @Value("${fraud-detection.rules.adaptive-ordering:true}") boolean adaptiveOrdering) {
+        this.fraudCheckMetrics = fraudCheckMetrics;
+        this.objectMapper = objectMapper;
+        this.path = Paths.get(path);
+        this.adaptiveOrdering = adaptiveOrdering;
+        // Until a rule set is loaded, every rule is evaluated in the order of the reasons
+        rules.stream().sorted(Comparator.comparing(FraudRule::getReason)).forEach(rule -> {
+            if (registeredRules.putIfAbsent(rule.getName(), new CompiledRule(rule)) != null) {
+                throw new IllegalStateException("More than one fraud rule is named " + rule.getName());
+            }
+        });
+        this.chain = new Chain(registeredRules.values().toArray(CompiledRule[]::new), new RuleSet());
+    }
+
+    @PostConstruct
+    void load() {
+        try {
+            reload();
+        } catch (IOException | IllegalArgumentException e) {
+            log.error("Failed to load the rule set {}, evaluating every rule without tenant thresholds", path, e);
+        }
+    }
+
+    /**
+     * Reads the rule set file again and swaps in its rules and thresholds; evaluations in progress finish with the
+     * previous ones. Without a file, every registered rule is evaluated and no tenant has thresholds.
+     *
+     * @return The rule set in effect.
+     *
+     * @throws IOException              If the file cannot be read or parsed; the previous rule set stays in effect.
+     * @throws IllegalArgumentException If the file names an unknown rule; the previous rule set stays in effect.
+     */
+    public synchronized RuleSet reload() throws IOException {
+        RuleSet ruleSet = Files.exists(path) ? objectMapper.readValue(path.toFile(), RuleSet.class) : new RuleSet();
+        List<CompiledRule> rules = new ArrayList<>();
+        if (ruleSet.getRules() == null) {
+            rules.addAll(registeredRules.values());
+        } else {
+            for (String name : ruleSet.getRules()) {
+                CompiledRule rule = registeredRules.get(name);
+                if (rule == null) {
+                    throw new IllegalArgumentException("Unknown fraud rule " + name + ", known rules are " + registeredRules.keySet());
+                }
+                if (!rules.contains(rule)) {
+                    rules.add(rule);
+                }
+            }
+        }
+        chain = new Chain(order(rules), ruleSet);
+        log.info("Loaded {} fraud rules and the thresholds of {} tenants from {}", rules.size(),
+            ruleSet.getTenants() != null ? ruleSet.getTenants().size() : 0, path);
+        return ruleSet;
+    }
+
+    /**
+     * @return The reasons of the rules in effect, which incremental evaluations such as the reactive check must stick to.
+     */
+    public Set<FraudReason> getActiveReasons() {
+        return chain.reasons;
+    }
+
+    /**
+     * @return The thresholds of the tenant, else the default thresholds of the rule set, else {@code null}.
+     */
+    public FraudCheckThresholds thresholdsFor(String tenantId) {
+        RuleSet ruleSet = chain.ruleSet;
+        if (tenantId != null && ruleSet.getTenants() != null && ruleSet.getTenants().containsKey(tenantId)) {
+            return ruleSet.getTenants().get(tenantId);
+        }
+        return ruleSet.getDefaultThresholds();
+    }
+
+    /**
+     * Evaluates the rules in order, timing each of them from the end of the previous one.
+     *
+     * @param userId     The ID of the User the window belongs to.
+     * @param window     The aggregated window of the User's recent transactions.
+     * @param thresholds The thresholds of the check.
+     * @param start      When the evaluation started, by {@link System#nanoTime()}.
+     *
+     * @return The verdict, carrying the rule that tripped, if any.
+     */
+    public FraudVerdict evaluate(Long userId, WindowAggregate window, FraudCheckThresholds thresholds, long start) {
+        RuleContext context = new RuleContext(userId, window, thresholds);
+        long ruleStart = start;
+        for (CompiledRule compiled : chain.rules) {
+            if (!appliesTo(compiled, context)) {
+                continue;
+            }
+            boolean tripped = trips(compiled, context);
+            long ruleEnd = fraudCheckMetrics.recordRule(compiled.reason, tripped, ruleStart);
+            compiled.record(tripped, ruleEnd - ruleStart);
+            ruleStart = ruleEnd;
+            if (tripped) {
+                log.info("User {} {}.", userId, compiled.rule.getDescription());
+                return FraudVerdict.fraudulent(compiled.reason);
+            }
+        }
+        return FraudVerdict.notFraudulent();
+    }
+
+    private static boolean appliesTo(CompiledRule compiled, RuleContext context) {
+        return switch (compiled.kind) {
+            case TRANSACTION_COUNT, TRANSACTION_AMOUNT, MULTIPLE_DEVICES_OR_CREDIT_CARDS -> true;
+            case LOCATION -> ((LocationRule) compiled.rule).appliesTo(context);
+            case IMPOSSIBLE_TRAVEL -> ((ImpossibleTravelRule) compiled.rule).appliesTo(context);
+            case MODEL -> ((ModelRule) compiled.rule).appliesTo(context);
+            default -> compiled.rule.appliesTo(context);
+        };
+    }
+
+    private static boolean trips(CompiledRule compiled, RuleContext context) {
+        return switch (compiled.kind) {
+            case TRANSACTION_COUNT -> ((TransactionCountRule) compiled.rule).trips(context);
+            case TRANSACTION_AMOUNT -> ((TransactionAmountRule) compiled.rule).trips(context);
+            case MULTIPLE_DEVICES_OR_CREDIT_CARDS -> ((MultipleDevicesOrCreditCardsRule) compiled.rule).trips(context);
+            case LOCATION -> ((LocationRule) compiled.rule).trips(context);
+            case IMPOSSIBLE_TRAVEL -> ((ImpossibleTravelRule) compiled.rule).trips(context);
+            case MODEL -> ((ModelRule) compiled.rule).trips(context);
+            default -> compiled.rule.trips(context);
+        };
+    }
+
+    /**
+     * Folds the costs and trips recorded since the last call into the smoothed statistics of every rule, and reorders
+     * the rules in effect by them if adaptive ordering is enabled.
+     */
+    @Scheduled(initialDelayString = "${fraud-detection.rules.reorder-interval-ms:10000}",
+               fixedDelayString = "${fraud-detection.rules.reorder-interval-ms:10000}")
+    public synchronized void reorder() {
+        registeredRules.values().forEach(CompiledRule::fold);
+        if (adaptiveOrdering) {
+            Chain current = chain;
+            CompiledRule[] reordered = order(Arrays.asList(current.rules));
+            if (!Arrays.equals(reordered, current.rules)) {
+                chain = new Chain(reordered, current.ruleSet);
+                log.info("Reordered the fraud rules to {}", Arrays.stream(reordered).map(compiled -> compiled.rule.getName()).toList());
+            }
+        }
+    }
+
+    private CompiledRule[] order(List<CompiledRule> rules) {
+        if (!adaptiveOrdering) {
+            return rules.toArray(CompiledRule[]::new);
+        }
+        // Stable, so rules never measured yet come first, to be measured, in their relative order
+        return rules.stream().sorted(Comparator.comparingDouble(CompiledRule::expectedCostPerTrip)).toArray(CompiledRule[]::new);
+    }
+
+    /**
+     * @return The rules in effect, in the order they are evaluated.
+     */
+    public List<RuleStatus> getStatus() {
+        return Arrays.stream(chain.rules)
+                     .map(compiled -> new RuleStatus(compiled.rule.getName(), compiled.reason, compiled.totalEvaluations,
+                         compiled.hitRate, compiled.costNanos))
+                     .toList();
+    }
+
+    private static final class Chain {
+        private final CompiledRule[] rules;
+        private final RuleSet ruleSet;
+        private final Set<FraudReason> reasons;
+
+        Chain(CompiledRule[] rules, RuleSet ruleSet) {
+            this.rules = rules;
+            this.ruleSet = ruleSet;
+            Set<FraudReason> reasons = EnumSet.noneOf(FraudReason.class);
+            for (CompiledRule compiled : rules) {
+                reasons.add(compiled.reason);
+            }
+            this.reasons = Collections.unmodifiableSet(reasons);
+        }
+    }
+
+    private static final class CompiledRule {
+        private final FraudRule rule;
+        private final FraudReason reason;
+        private final byte kind;
+
+        private final LongAdder evaluations = new LongAdder();
+        private final LongAdder trips = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        // Smoothed statistics, only updated by reorder()
+        private volatile long totalEvaluations;
+        private volatile double hitRate;
+        private volatile double costNanos;
+
+        CompiledRule(FraudRule rule) {
+            this.rule = rule;
+            this.reason = rule.getReason();
+            this.kind = kindOf(rule);
+        }
+
+        private static byte kindOf(FraudRule rule) {
+            Class<?> type = rule.getClass();
+            if (type == TransactionCountRule.class) {
+                return TRANSACTION_COUNT;
+            } else if (type == TransactionAmountRule.class) {
+                return TRANSACTION_AMOUNT;
+            } else if (type == MultipleDevicesOrCreditCardsRule.class) {
+                return MULTIPLE_DEVICES_OR_CREDIT_CARDS;
+            } else if (type == LocationRule.class) {
+                return LOCATION;
+            } else if (type == ImpossibleTravelRule.class) {
+                return IMPOSSIBLE_TRAVEL;
+            } else if (type == ModelRule.class) {
+                return MODEL;
+            }
+            return CUSTOM;
+        }
+
+        void record(boolean tripped, long elapsedNanos) {
+            evaluations.increment();
+            nanos.add(elapsedNanos);
+            if (tripped) {
+                trips.increment();
+            }
+        }
+
+        void fold() {
+            long intervalEvaluations = evaluations.sumThenReset();
+            long intervalTrips = trips.sumThenReset();
+            long intervalNanos = nanos.sumThenReset();
+            if (intervalEvaluations == 0) {
+                return;
+            }
+            double intervalHitRate = (double) intervalTrips / intervalEvaluations;
+            double intervalCost = (double) intervalNanos / intervalEvaluations;
+            boolean first = totalEvaluations == 0;
+            hitRate = first ? intervalHitRate : SMOOTHING * intervalHitRate + (1 - SMOOTHING) * hitRate;
+            costNanos = first ? intervalCost : SMOOTHING * intervalCost + (1 - SMOOTHING) * costNanos;
+            totalEvaluations += intervalEvaluations;
+        }
+
+        double expectedCostPerTrip() {
+            return totalEvaluations == 0 ? 0 : costNanos / Math.max(hitRate, MIN_HIT_RATE);
+        }
+    }
+}
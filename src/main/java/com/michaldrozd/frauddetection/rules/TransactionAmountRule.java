@@ -0,0 +1,26 @@
+package com.michaldrozd.frauddetection.rules;
+
+import com.michaldrozd.frauddetection.dto.FraudReason;
+import org.springframework.stereotype.Component;
+
+/**
+ * Trips when the total amount of the transactions within the time window reaches the threshold.
+ */
+@Component
+public final class TransactionAmountRule implements FraudRule {
+
+    @Override
+    public FraudReason getReason() {
+        return FraudReason.TRANSACTION_AMOUNT;
+    }
+
+    @Override
+    public String getDescription() {
+        return "has exceeded the amount threshold within the time window";
+    }
+
+    @Override
+    public boolean trips(RuleContext context) {
+        return context.getWindow().getTotalAmount() >= context.getThresholds().getAmountThreshold();
+    }
+}
@@ -0,0 +1,26 @@
+package com.michaldrozd.frauddetection.rules;
+
+import com.michaldrozd.frauddetection.dto.FraudReason;
+import org.springframework.stereotype.Component;
+
+/**
+ * Trips when the number of transactions within the time window reaches the threshold.
+ */
+@Component
+public final class TransactionCountRule implements FraudRule {
+
+    @Override
+    public FraudReason getReason() {
+        return FraudReason.TRANSACTION_COUNT;
+    }
+
+    @Override
+    public String getDescription() {
+        return "has exceeded the number of transactions within the time window";
+    }
+
+    @Override
+    public boolean trips(RuleContext context) {
+        return context.getWindow().getTransactionCount() >= context.getThresholds().getTransactionsThreshold();
+    }
+}
@@ -0,0 +1,134 @@
+package com.michaldrozd.frauddetection.services;
+
+import com.michaldrozd.frauddetection.dto.AnomalyScanPage;
+import com.michaldrozd.frauddetection.dto.SuspiciousUser;
+import com.michaldrozd.frauddetection.repositories.UserRepository;
+import com.michaldrozd.frauddetection.rollup.TransactionRollups;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Streaming variant of {@link UserBehaviorAnalysisService#findSuspiciousActivities}.
+ * <p>
+ * Users are scanned in pages in User ID order. For every page, the date range is split into time slices that are
+ * counted in parallel on a shared, fixed-size executor (which bounds the concurrency of all running scans together),
+ * and the per-user counts of the slices are merged. Each page is handed over as soon as it is complete, so the memory
+ * of a scan depends on the page size, not on the date range or the number of users, and a scan can be resumed after
+ * any page from its cursor. When the {@link TransactionRollups} cover the date range, every page is counted from them
+ * in a single query instead.
+ */
+@Slf4j
+@Service
+public class AnomalyScanService {
+
+    private final UserRepository userRepository;
+    private final TransactionRollups transactionRollups;
+    private final int pageSize;
+    private final Duration sliceLength;
+    private final ExecutorService sliceExecutor;
+
+    public AnomalyScanService(UserRepository userRepository,
+                              TransactionRollups transactionRollups,
+                              @Value("${fraud-detection.anomaly-scan.page-size:1000}") int pageSize,
+                              @Value("${fraud-detection.anomaly-scan.slice-hours:24}") long sliceHours,
+                              @Value("${fraud-detection.anomaly-scan.parallelism:4}") int parallelism) {
+        this.userRepository = userRepository;
+        this.transactionRollups = transactionRollups;
+        this.pageSize = pageSize;
+        this.sliceLength = Duration.ofHours(sliceHours);
+        AtomicInteger threads = new AtomicInteger();
+        this.sliceExecutor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "anomaly-scan-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Scans for users with at least {@code threshold} transactions within the date range.
+     *
+     * @param startDateTime The start of the range, inclusive.
+     * @param endDateTime   The end of the range, inclusive.
+     * @param threshold     The minimum number of transactions for a user to be considered as having anomalies.
+     * @param cursor        The cursor of the last page received before, or {@code null} to scan from the start.
+     * @param pageConsumer  Receives every page, in User ID order; the last one is marked complete.
+     */
+    public void scan(LocalDateTime startDateTime, LocalDateTime endDateTime, int threshold, Long cursor, Consumer<AnomalyScanPage> pageConsumer) {
+        List<LocalDateTime> sliceStarts = new ArrayList<>();
+        for (LocalDateTime sliceStart = startDateTime; sliceStart.isBefore(endDateTime); sliceStart = sliceStart.plus(sliceLength)) {
+            sliceStarts.add(sliceStart);
+        }
+        if (sliceStarts.isEmpty()) {
+            sliceStarts.add(startDateTime);
+        }
+
+        Long after = cursor;
+        while (true) {
+            List<Long> userIds = userRepository.findUserIdsPage(after, pageSize);
+            boolean complete = userIds.size() < pageSize;
+            if (userIds.isEmpty()) {
+                pageConsumer.accept(new AnomalyScanPage(List.of(), after, true));
+                return;
+            }
+
+            Map<Long, Long> counts = transactionRollups.countByUsers(userIds, startDateTime, endDateTime)
+                                                       .orElseGet(() -> countPage(userIds, sliceStarts, endDateTime));
+            List<SuspiciousUser> suspicious = new ArrayList<>();
+            for (Long userId : userIds) {
+                long count = counts.getOrDefault(userId, 0L);
+                if (count >= threshold) {
+                    suspicious.add(new SuspiciousUser(userId, count));
+                }
+            }
+            after = userIds.get(userIds.size() - 1);
+            pageConsumer.accept(new AnomalyScanPage(suspicious, after, complete));
+            if (complete) {
+                return;
+            }
+        }
+    }
+
+    private Map<Long, Long> countPage(List<Long> userIds, List<LocalDateTime> sliceStarts, LocalDateTime endDateTime) {
+        List<Future<Map<Long, Long>>> slices = new ArrayList<>(sliceStarts.size());
+        for (int i = 0; i < sliceStarts.size(); i++) {
+            LocalDateTime sliceStart = sliceStarts.get(i);
+            boolean last = i == sliceStarts.size() - 1;
+            LocalDateTime sliceEnd = last ? endDateTime : sliceStarts.get(i + 1);
+            slices.add(sliceExecutor.submit(() -> userRepository.countTransactionsByUsers(userIds, sliceStart, sliceEnd, last)));
+        }
+
+        Map<Long, Long> counts = new HashMap<>();
+        try {
+            for (Future<Map<Long, Long>> slice : slices) {
+                slice.get().forEach((userId, count) -> counts.merge(userId, count, Long::sum));
+            }
+        } catch (InterruptedException e) {
+            slices.forEach(slice -> slice.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Anomaly scan interrupted", e);
+        } catch (ExecutionException e) {
+            slices.forEach(slice -> slice.cancel(true));
+            throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException : new IllegalStateException(e.getCause());
+        }
+        return counts;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        sliceExecutor.shutdownNow();
+    }
+}
@@ -1,35 +1,142 @@
 package com.michaldrozd.frauddetection.services;
 
-import com.michaldrozd.frauddetection.ai.FraudModelTrainer;
+import com.michaldrozd.frauddetection.blocklist.Blocklist;
+import com.michaldrozd.frauddetection.blocklist.BlocklistType;
+import com.michaldrozd.frauddetection.cache.UserIdentityCache;
+import com.michaldrozd.frauddetection.cache.VerdictCache;
+import com.michaldrozd.frauddetection.concurrency.LookupExecutor;
+import com.michaldrozd.frauddetection.concurrency.RepositoryBulkhead;
+import com.michaldrozd.frauddetection.domain.CreditCard;
 import com.michaldrozd.frauddetection.domain.Device;
 import com.michaldrozd.frauddetection.domain.Transaction;
 import com.michaldrozd.frauddetection.domain.User;
+import com.michaldrozd.frauddetection.dto.FraudCheckThresholds;
+import com.michaldrozd.frauddetection.dto.FraudReason;
+import com.michaldrozd.frauddetection.dto.FraudVerdict;
+import com.michaldrozd.frauddetection.dto.UserIdentity;
+import com.michaldrozd.frauddetection.dto.WindowTransaction;
+import com.michaldrozd.frauddetection.metrics.FraudCheckMetrics;
+import com.michaldrozd.frauddetection.metrics.FraudCheckMetrics.Stage;
 import com.michaldrozd.frauddetection.repositories.TransactionRepository;
-import java.io.IOException;
-import java.time.Duration;
+import com.michaldrozd.frauddetection.rollup.TransactionRollups;
+import com.michaldrozd.frauddetection.rules.RulePipeline;
+import com.michaldrozd.frauddetection.window.UserWindowStore;
+import com.michaldrozd.frauddetection.window.WindowAggregate;
+import com.michaldrozd.frauddetection.window.WindowQueryMode;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import smile.classification.LogisticRegression;
 
 @Slf4j
 @Service
 public class FraudDetectionService {
 
     private final TransactionRepository transactionRepository;
-    private LogisticRegression model;
+    private final UserIdentityCache userIdentityCache;
+    private final UserWindowStore userWindowStore;
+    private final WindowQueryMode windowQueryMode;
+    private final TransactionRollups transactionRollups;
+    private final RulePipeline rulePipeline;
+    private final RepositoryBulkhead repositoryBulkhead;
+    private final LookupExecutor lookupExecutor;
+    private final FraudCheckMetrics fraudCheckMetrics;
+    private final Blocklist blocklist;
+    private final VerdictCache verdictCache;
 
     @Autowired
-    public FraudDetectionService(TransactionRepository transactionRepository) {
+    public FraudDetectionService(TransactionRepository transactionRepository,
+                                 UserIdentityCache userIdentityCache,
+                                 UserWindowStore userWindowStore,
+                                 @Value("${fraud-detection.window-query-mode:ENTITIES}") WindowQueryMode windowQueryMode,
+                                 TransactionRollups transactionRollups,
+                                 RulePipeline rulePipeline,
+                                 RepositoryBulkhead repositoryBulkhead,
+                                 LookupExecutor lookupExecutor,
+                                 FraudCheckMetrics fraudCheckMetrics,
+                                 Blocklist blocklist,
+                                 VerdictCache verdictCache) {
         this.transactionRepository = transactionRepository;
-        // TODO: Implement the model training like this
-//        try {
-//            this.model = FraudModelTrainer.trainModel(modelDataPath);
-//        } catch (IOException e) {
-//            throw new RuntimeException("Failed to train fraud detection model", e);
-//        }
+        this.userIdentityCache = userIdentityCache;
+        this.userWindowStore = userWindowStore;
+        this.windowQueryMode = windowQueryMode;
+        this.transactionRollups = transactionRollups;
+        this.rulePipeline = rulePipeline;
+        this.repositoryBulkhead = repositoryBulkhead;
+        this.lookupExecutor = lookupExecutor;
+        this.fraudCheckMetrics = fraudCheckMetrics;
+        this.blocklist = blocklist;
+        this.verdictCache = verdictCache;
+    }
+
+    /**
+     * Checks a user by ID, as {@link #isFraudulent(User, int, int, double, int)} does.
+     * <p>
+     * Whether the user exists and the user's window do not depend on each other, so on a cold miss of the in-memory
+     * {@link UserWindowStore} both are queried concurrently, and the check takes one round trip to Neo4j instead of
+     * two. All repository calls go through the {@link RepositoryBulkhead}. Identical checks in flight at the same time
+     * are coalesced, and verdicts are reused briefly until a new transaction of the user is written, by the
+     * {@link VerdictCache}.
+     *
+     * @param userId     The ID of the User to check.
+     * @param thresholds The thresholds of the check.
+     *
+     * @return The verdict, or an empty optional if the user does not exist.
+     */
+    public Optional<FraudVerdict> checkUser(Long userId, FraudCheckThresholds thresholds) {
+        return checkUser(userId, thresholds, null, null, null);
+    }
+
+    /**
+     * Checks a user by ID for a transaction with the given Device, Credit Card and Merchant, each of them optional.
+     * <p>
+     * If any of them is on the {@link Blocklist}, the user is potentially fraudulent without any repository call, even
+     * if the user does not exist. Otherwise the user is checked as by {@link #checkUser(Long, FraudCheckThresholds)},
+     * which checks the Devices and Credit Cards of the window against the blocklist as well.
+     *
+     * @param userId           The ID of the User to check.
+     * @param thresholds       The thresholds of the check.
+     * @param deviceId         The {@code deviceId} of the Device, or {@code null}.
+     * @param creditCardNumber The number of the Credit Card, or {@code null}.
+     * @param merchantId       The {@code merchantId} of the Merchant, or {@code null}.
+     *
+     * @return The verdict, or an empty optional if the user does not exist.
+     */
+    public Optional<FraudVerdict> checkUser(Long userId, FraudCheckThresholds thresholds, String deviceId, String creditCardNumber, String merchantId) {
+        long start = System.nanoTime();
+        if (blocklist.isEnabled()) {
+            BlocklistType blocked = blocklist.findBlocked(deviceId, creditCardNumber, merchantId);
+            fraudCheckMetrics.recordRule(FraudReason.BLOCKLISTED, blocked != null, start);
+            if (blocked != null) {
+                log.info("User {} has used a blocked {}.", userId, blocked);
+                FraudVerdict verdict = FraudVerdict.fraudulent(FraudReason.BLOCKLISTED);
+                fraudCheckMetrics.recordCheck(verdict, start);
+                return Optional.of(verdict);
+            }
+        }
+        Optional<FraudVerdict> verdict = verdictCache.check(userId, thresholds, () -> {
+            LocalDateTime dateTimeThreshold = LocalDateTime.now().minusMinutes(thresholds.getTimeWindowInMinutes());
+            CompletableFuture<Boolean> userExists = lookupExecutor.supply(() -> userExists(userId));
+            WindowAggregate window = findWindow(userId, dateTimeThreshold);
+            if (!LookupExecutor.join(userExists)) {
+                return Optional.empty();
+            }
+            return Optional.of(evaluate(userId, window, thresholds));
+        });
+        verdict.ifPresent(checked -> fraudCheckMetrics.recordCheck(checked, start));
+        return verdict;
     }
 
     /**
@@ -41,9 +148,14 @@ public class FraudDetectionService {
      * 1. Number of transactions exceeding the threshold.
      * 2. Total transaction amount exceeding the amount threshold.
      * 3. Usage of multiple devices or credit cards for transactions within the time window.
-     * 4. Location of the transactions exceeding the distance threshold.
-     * 5. AI-based analysis of the transactions???
+     * 4. Location of the transactions exceeding the distance threshold, or implying impossible travel (if enabled).
+     * 5. The fraud model scoring the aggregated window at or above its threshold (if a model is available).
+     * The rules in effect and the order they are evaluated in are decided by the {@link RulePipeline}.
      * <p>
+     * The window is answered from the in-memory {@link UserWindowStore} when it is enabled and covers the window,
+     * and loaded from the repository otherwise. Before that, a User whose loaded Devices or Credit Cards are on the
+     * {@link Blocklist} is potentially fraudulent right away; the Devices and Credit Cards of the window are checked
+     * by {@link #evaluate(Long, WindowAggregate, FraudCheckThresholds)}.
      *
      * @param user                  The User for which to analyze the transactions.
      * @param transactionsThreshold The maximum number of transactions allowed within the time window.
@@ -54,107 +166,205 @@ public class FraudDetectionService {
      * @return A boolean value indicating whether the User's transactions within the time window are potentially fraudulent.
      */
     public boolean isFraudulent(User user, int transactionsThreshold, int timeWindowInMinutes, double amountThreshold, int distanceThresholdInKm) {
-        List<Transaction> recentTransactions = transactionRepository.findTransactionsByUserWithinTimeWindow(
-            user.getId(),
-            LocalDateTime.now().minusMinutes(timeWindowInMinutes)
-        );
-
-        // Check if the number of transactions within the time window exceeds the threshold
-        if (recentTransactions.size() >= transactionsThreshold) {
-            log.info("User {} has exceeded the number of transactions within the time window.", user.getId());
-            return true;
+        long start = System.nanoTime();
+        if (blocklist.isEnabled()) {
+            boolean blocked = hasBlockedDeviceOrCreditCard(user);
+            fraudCheckMetrics.recordRule(FraudReason.BLOCKLISTED, blocked, start);
+            if (blocked) {
+                log.info("User {} has a blocked device or credit card.", user.getId());
+                fraudCheckMetrics.recordCheck(FraudVerdict.fraudulent(FraudReason.BLOCKLISTED), start);
+                return true;
+            }
         }
+        FraudCheckThresholds thresholds = new FraudCheckThresholds(transactionsThreshold, timeWindowInMinutes, amountThreshold, distanceThresholdInKm);
+        FraudVerdict verdict = verdictCache.check(user.getId(), thresholds, () -> {
+            LocalDateTime dateTimeThreshold = LocalDateTime.now().minusMinutes(timeWindowInMinutes);
+            return Optional.of(evaluate(user.getId(), findWindow(user.getId(), dateTimeThreshold), thresholds));
+        }).orElseThrow();
+        fraudCheckMetrics.recordCheck(verdict, start);
+        return verdict.isFraudulent();
+    }
 
-        // Check for unusually high transaction amounts
-        double totalAmount = recentTransactions.stream()
-                                               .mapToDouble(Transaction::getAmount)
-                                               .sum();
-
-        if (totalAmount >= amountThreshold) {
-            log.info("User {} has exceeded the amount threshold within the time window.", user.getId());
-            return true;
+    /**
+     * Checks many users at once, each as {@link #checkUser(Long, FraudCheckThresholds)} does.
+     * <p>
+     * Verdicts still cached by the {@link VerdictCache} are reused. Of the remaining users, windows covered by the
+     * in-memory {@link UserWindowStore} are answered from memory, and whether those users exist is looked up through
+     * the {@link UserIdentityCache} concurrently with a single batched query, spanning the widest requested window,
+     * that loads the windows of all other users and is then cut down to each user's own window. The rules, including
+     * the {@link Blocklist} check of the windows, are evaluated in parallel.
+     *
+     * @param userIds           The IDs of the Users to check.
+     * @param sharedThresholds  The thresholds used for every User without an own entry in {@code userThresholds}.
+     * @param userThresholds    Optional per-User thresholds, may be {@code null}.
+     *
+     * @return The verdicts by User ID. Users that do not exist are absent.
+     */
+    public Map<Long, FraudVerdict> checkBatch(Collection<Long> userIds, FraudCheckThresholds sharedThresholds, Map<Long, FraudCheckThresholds> userThresholds) {
+        Map<Long, FraudCheckThresholds> thresholdsByUser = new LinkedHashMap<>();
+        for (Long userId : userIds) {
+            thresholdsByUser.put(userId, userThresholds != null ? userThresholds.getOrDefault(userId, sharedThresholds) : sharedThresholds);
         }
+        return verdictCache.checkAll(thresholdsByUser, this::evaluateBatch);
+    }
+
+    private Map<Long, FraudVerdict> evaluateBatch(Map<Long, FraudCheckThresholds> thresholdsByUser) {
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, WindowAggregate> windowsByUser = new HashMap<>();
+        List<Long> misses = new ArrayList<>();
+        int widestWindowInMinutes = 0;
 
-        // Check for transactions with multiple devices or credit cards in a short time window
-        long distinctDevices = recentTransactions.stream()
-                                                 .map(transaction -> transaction.getDevice().getId())
-                                                 .distinct()
-                                                 .count();
+        for (Map.Entry<Long, FraudCheckThresholds> entry : thresholdsByUser.entrySet()) {
+            Long userId = entry.getKey();
+            int timeWindowInMinutes = entry.getValue().getTimeWindowInMinutes();
+            Optional<WindowAggregate> window = userWindowStore.aggregate(userId, now.minusMinutes(timeWindowInMinutes));
+            if (window.isPresent()) {
+                windowsByUser.put(userId, window.get());
+            } else {
+                misses.add(userId);
+                widestWindowInMinutes = Math.max(widestWindowInMinutes, timeWindowInMinutes);
+            }
+        }
 
-        long distinctCreditCards = recentTransactions.stream()
-                                                     .map(transaction -> transaction.getCreditCard().getId())
-                                                     .distinct()
-                                                     .count();
+        // The windows in memory say nothing about whether their users still exist, the batched query only returns
+        // users that do
+        Set<Long> hits = new HashSet<>(windowsByUser.keySet());
+        CompletableFuture<Map<Long, UserIdentity>> existingHits = hits.isEmpty()
+            ? CompletableFuture.completedFuture(Map.of())
+            : lookupExecutor.supply(() -> userIdentityCache.findAll(hits));
 
-        if (distinctDevices > 1 || distinctCreditCards > 1) {
-            log.info("User {} has used multiple devices or credit cards within the time window.", user.getId());
-            return true;
+        if (!misses.isEmpty()) {
+            LocalDateTime widestDateTimeThreshold = now.minusMinutes(widestWindowInMinutes);
+            misses.forEach(userWindowStore::beginSeed);
+            Map<Long, List<WindowTransaction>> transactionsByUser;
+            try {
+                transactionsByUser = repositoryBulkhead.call(() -> transactionRepository.findWindowTransactionsByUsers(misses, widestDateTimeThreshold));
+            } catch (RuntimeException e) {
+                misses.forEach(userWindowStore::cancelSeed);
+                throw e;
+            }
+            for (Long userId : misses) {
+                List<WindowTransaction> transactions = transactionsByUser.get(userId);
+                if (transactions == null) {
+                    userWindowStore.cancelSeed(userId);
+                    continue;
+                }
+                userWindowStore.seedFromProjection(userId, widestDateTimeThreshold, transactions);
+                LocalDateTime dateTimeThreshold = now.minusMinutes(thresholdsByUser.get(userId).getTimeWindowInMinutes());
+                windowsByUser.put(userId, WindowAggregate.fromWindowTransactions(transactions, dateTimeThreshold));
+            }
         }
 
-        // Check for location-based fraud
-        return isLocationBasedFraud(recentTransactions, distanceThresholdInKm, timeWindowInMinutes);
-    }
+        Map<Long, UserIdentity> existing = LookupExecutor.join(existingHits);
+        windowsByUser.keySet().removeIf(userId -> hits.contains(userId) && !existing.containsKey(userId));
 
+        return windowsByUser.entrySet()
+                            .parallelStream()
+                            .collect(Collectors.toMap(Map.Entry::getKey, entry -> evaluate(entry.getKey(), entry.getValue(), thresholdsByUser.get(entry.getKey()))));
+    }
 
     /**
-     * Checks for location-based fraud by calculating the distance between transaction locations within the specified time window.
+     * Evaluates the fraud rules of the {@link RulePipeline} against the aggregated window of a user, stopping at the
+     * first rule that fires.
      * <p>
-     * This method takes a list of recent transactions, a distance threshold (in kilometers), and a time window (in minutes) as input parameters.
-     * It calculates the distance between each pair of consecutive transactions and checks if any of these distances exceed the specified threshold.
-     * If any distance exceeds the threshold, the method returns true, indicating potential location-based fraud.
+     * Before the rules, a window with a Device or Credit Card on the {@link Blocklist} is potentially fraudulent right
+     * away, so every check, whether single, batched, reactive or streaming, consults the blocklist. Works on the
+     * aggregate alone and never reads from the repository, so it can also score windows maintained in memory as
+     * transactions are ingested.
      *
-     * @param recentTransactions   The list of recent transactions for a specific user.
-     * @param distanceThresholdInKm The maximum allowed distance between two consecutive transactions within the time window.
-     * @param timeWindowInMinutes  The time window in minutes within which transactions are considered.
+     * @param userId     The ID of the User the window belongs to.
+     * @param window     The aggregated window of the User's recent transactions.
+     * @param thresholds The thresholds of the check.
      *
-     * @return true if any distance between consecutive transactions exceeds the threshold, indicating potential location-based fraud; false otherwise.
+     * @return The verdict, carrying the rule that fired, if any.
      */
-    private boolean isLocationBasedFraud(List<Transaction> recentTransactions, int distanceThresholdInKm, int timeWindowInMinutes) {
-        for (int i = 0; i < recentTransactions.size(); i++) {
-            Transaction transaction1 = recentTransactions.get(i);
-            Device device1 = transaction1.getDevice();
-            // Compare each transaction with all subsequent transactions within the time window
-            for (int j = i + 1; j < recentTransactions.size(); j++) {
-                Transaction transaction2 = recentTransactions.get(j);
-                Device device2 = transaction2.getDevice();
-                // Check if the time difference between the two transactions is within the time window
-                if (Math.abs(Duration.between(transaction1.getTransactionDate(), transaction2.getTransactionDate()).toMinutes()) <= timeWindowInMinutes) {
-                    // Calculate the distance between the two transactions
-                    double distance = calculateDistance(device1.getLatitude(), device1.getLongitude(), device2.getLatitude(), device2.getLongitude());
-                    if (distance >= distanceThresholdInKm) {
-                        return true;
-                    }
-                }
+    public FraudVerdict evaluate(Long userId, WindowAggregate window, FraudCheckThresholds thresholds) {
+        long start = System.nanoTime();
+        long ruleStart = start;
+        if (blocklist.isEnabled()) {
+            BlocklistType blocked = blocklist.findBlocked(window.getDeviceIdentifiers(), window.getCreditCardNumbers());
+            ruleStart = fraudCheckMetrics.recordRule(FraudReason.BLOCKLISTED, blocked != null, start);
+            if (blocked != null) {
+                log.info("User {} has used a blocked {} within the window.", userId, blocked);
+                FraudVerdict verdict = FraudVerdict.fraudulent(FraudReason.BLOCKLISTED);
+                fraudCheckMetrics.recordVerdict(verdict, start);
+                return verdict;
             }
         }
-        return false;
+        FraudVerdict verdict = rulePipeline.evaluate(userId, window, thresholds, ruleStart);
+        fraudCheckMetrics.recordVerdict(verdict, start);
+        return verdict;
     }
 
     /**
-     * Calculates the distance between two geographical coordinates (latitude and longitude) using the Haversine formula.
+     * Loads the user's window from the repository after a cold miss of the in-memory store.
      * <p>
-     * This method takes two sets of coordinates (latitude1, longitude1) and (latitude2, longitude2) as input parameters.
-     * It calculates the distance between these coordinates on the Earth's surface in kilometers, using the Haversine formula.
-     * The method returns the calculated distance as a double value.
-     *
-     * @param latitude1  The latitude of the first coordinate in decimal degrees.
-     * @param longitude1 The longitude of the first coordinate in decimal degrees.
-     * @param latitude2  The latitude of the second coordinate in decimal degrees.
-     * @param longitude2 The longitude of the second coordinate in decimal degrees.
-     *
-     * @return The distance between the two coordinates in kilometers.
+     * In {@link WindowQueryMode#AGGREGATE} mode the window is aggregated by the database, in
+     * {@link WindowQueryMode#ROLLUP} mode it is combined from the {@link TransactionRollups} if they cover it, otherwise
+     * the transactions are loaded, aggregated here and used to seed the in-memory store.
      */
-    private double calculateDistance(double latitude1, double longitude1, double latitude2, double longitude2) {
-        final int R = 6371; // Radius of the earth in km
-        double latDistance = Math.toRadians(latitude2 - latitude1);
-        double lonDistance = Math.toRadians(longitude2 - longitude1);
+    private WindowAggregate loadWindow(Long userId, LocalDateTime dateTimeThreshold) {
+        long start = System.nanoTime();
+        if (windowQueryMode == WindowQueryMode.ROLLUP) {
+            Optional<WindowAggregate> window = transactionRollups.aggregate(userId, dateTimeThreshold, LocalDateTime.now());
+            if (window.isPresent()) {
+                fraudCheckMetrics.recordStage(Stage.WINDOW_QUERY, start);
+                return window.get();
+            }
+        }
+        if (windowQueryMode == WindowQueryMode.AGGREGATE) {
+            WindowAggregate window = transactionRepository.aggregateTransactionsByUserWithinTimeWindow(userId, dateTimeThreshold);
+            fraudCheckMetrics.recordStage(Stage.WINDOW_QUERY, start);
+            return window;
+        }
+        userWindowStore.beginSeed(userId);
+        List<Transaction> recentTransactions;
+        try {
+            recentTransactions = transactionRepository.findTransactionsByUserWithinTimeWindow(userId, dateTimeThreshold);
+        } catch (RuntimeException e) {
+            userWindowStore.cancelSeed(userId);
+            throw e;
+        }
+        fraudCheckMetrics.recordStage(Stage.WINDOW_QUERY, start);
+        userWindowStore.seed(userId, dateTimeThreshold, recentTransactions);
+        return WindowAggregate.fromTransactions(recentTransactions);
+    }
 
-        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
-            + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2))
-            * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
+    /**
+     * Answers the user's window from the in-memory store if it covers it, and from the repository otherwise.
+     */
+    private WindowAggregate findWindow(Long userId, LocalDateTime dateTimeThreshold) {
+        long start = System.nanoTime();
+        Optional<WindowAggregate> window = userWindowStore.aggregate(userId, dateTimeThreshold);
+        fraudCheckMetrics.recordStage(Stage.WINDOW_STORE, start);
+        return window.orElseGet(() -> repositoryBulkhead.call(() -> loadWindow(userId, dateTimeThreshold)));
+    }
 
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    private boolean hasBlockedDeviceOrCreditCard(User user) {
+        if (user.getDevices() != null) {
+            for (Device device : user.getDevices()) {
+                if (blocklist.isBlocked(BlocklistType.DEVICE, device.getDeviceId())) {
+                    return true;
+                }
+            }
+        }
+        if (user.getCreditCards() != null) {
+            for (CreditCard creditCard : user.getCreditCards()) {
+                if (blocklist.isBlocked(BlocklistType.CREDIT_CARD, creditCard.getNumber())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
 
-        return R * c;
+    /**
+     * Checks whether a user exists through the {@link UserIdentityCache}, which never loads the User entity.
+     */
+    private boolean userExists(Long userId) {
+        long start = System.nanoTime();
+        boolean exists = userIdentityCache.find(userId).isPresent();
+        fraudCheckMetrics.recordStage(Stage.USER_LOOKUP, start);
+        return exists;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,216 @@
+package com.michaldrozd.frauddetection.services;
+
+import com.michaldrozd.frauddetection.cache.UserIdentityCache;
+import com.michaldrozd.frauddetection.dto.FraudCheckThresholds;
+import com.michaldrozd.frauddetection.dto.FraudReason;
+import com.michaldrozd.frauddetection.dto.FraudVerdict;
+import com.michaldrozd.frauddetection.dto.WindowTransaction;
+import com.michaldrozd.frauddetection.location.LocationVelocityEngine;
+import com.michaldrozd.frauddetection.repositories.reactive.ReactiveTransactionRepository;
+import com.michaldrozd.frauddetection.repositories.reactive.ReactiveUserRepository;
+import com.michaldrozd.frauddetection.rules.RulePipeline;
+import com.michaldrozd.frauddetection.window.WindowAggregate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+/**
+ * Reactive variant of the single-user fraud check of {@link FraudDetectionService}.
+ * <p>
+ * The user's window is consumed as a {@link Flux}, and those rules in effect in the {@link RulePipeline} that can only
+ * flip from not fraudulent to fraudulent as transactions are added (count, amount, multiple devices or credit cards,
+ * and distance) are evaluated on every transaction, with the thresholds of the check. As soon as one of them trips,
+ * the subscription is cancelled and the rest of the window is never fetched. Only a window that completes without
+ * tripping is aggregated and evaluated by {@link FraudDetectionService#evaluate(Long, WindowAggregate, FraudCheckThresholds)},
+ * for the blocklist and the rules that need all of it (impossible travel, the fraud model and custom rules).
+ * <p>
+ * A streamed window is fraudulent exactly when evaluating its aggregate would be, but as the transactions arrive in no
+ * particular order, the reason of a fraudulent verdict may be another rule that tripped as well. The verdict may still
+ * differ from the one of the imperative check, which may answer from its verdict cache, also checks the identifiers of
+ * the transaction being made against the blocklist, and may read the window from the in-memory store or the rollups
+ * as of a slightly different time instead of streaming it from the graph.
+ */
+@Slf4j
+@Service
+public class ReactiveFraudDetectionService {
+
+    private final ReactiveTransactionRepository reactiveTransactionRepository;
+    private final ReactiveUserRepository reactiveUserRepository;
+    private final UserIdentityCache userIdentityCache;
+    private final FraudDetectionService fraudDetectionService;
+    private final RulePipeline rulePipeline;
+
+    public ReactiveFraudDetectionService(ReactiveTransactionRepository reactiveTransactionRepository,
+                                         ReactiveUserRepository reactiveUserRepository,
+                                         UserIdentityCache userIdentityCache,
+                                         FraudDetectionService fraudDetectionService,
+                                         RulePipeline rulePipeline) {
+        this.reactiveTransactionRepository = reactiveTransactionRepository;
+        this.reactiveUserRepository = reactiveUserRepository;
+        this.userIdentityCache = userIdentityCache;
+        this.fraudDetectionService = fraudDetectionService;
+        this.rulePipeline = rulePipeline;
+    }
+
+    /**
+     * Checks a user by ID, querying whether the user exists and streaming the user's window at the same time.
+     *
+     * @param userId     The ID of the User to check.
+     * @param thresholds The thresholds of the check.
+     *
+     * @return The verdict, or an empty Mono if the user does not exist.
+     */
+    public Mono<FraudVerdict> checkUser(Long userId, FraudCheckThresholds thresholds) {
+        return Mono.defer(() -> {
+            LocalDateTime dateTimeThreshold = LocalDateTime.now().minusMinutes(thresholds.getTimeWindowInMinutes());
+            Flux<WindowTransaction> window = reactiveTransactionRepository.streamWindowTransactions(userId, dateTimeThreshold);
+            return Mono.zip(userExists(userId), checkWindow(userId, window, dateTimeThreshold, thresholds))
+                       .filter(Tuple2::getT1)
+                       .map(Tuple2::getT2);
+        });
+    }
+
+    /**
+     * Checks whether a user exists, from the {@link UserIdentityCache} or else by the identity projection of the
+     * reactive repository, caching the identity it finds.
+     */
+    private Mono<Boolean> userExists(Long userId) {
+        if (userIdentityCache.getIfPresent(userId).isPresent()) {
+            return Mono.just(true);
+        }
+        return reactiveUserRepository.findUserIdentity(userId)
+                                     .doOnNext(userIdentityCache::put)
+                                     .hasElement();
+    }
+
+    /**
+     * Evaluates the fraud rules in effect against a streamed window, stopping the stream at the first rule that trips.
+     *
+     * @param userId            The ID of the User the window belongs to.
+     * @param window            The User's transactions since {@code dateTimeThreshold}, in any order.
+     * @param dateTimeThreshold The start of the window.
+     * @param thresholds        The thresholds of the check.
+     *
+     * @return The verdict.
+     */
+    public Mono<FraudVerdict> checkWindow(Long userId, Flux<WindowTransaction> window, LocalDateTime dateTimeThreshold, FraudCheckThresholds thresholds) {
+        return Mono.defer(() -> {
+            WindowScan scan = new WindowScan(thresholds, rulePipeline.getActiveReasons());
+            return window.takeUntil(scan::trips)
+                         .then(Mono.fromSupplier(() -> {
+                             if (scan.reason != null) {
+                                 log.info("User {} has tripped the {} rule after {} streamed transactions.", userId, scan.reason, scan.transactions.size());
+                                 return FraudVerdict.fraudulent(scan.reason);
+                             }
+                             return fraudDetectionService.evaluate(userId, WindowAggregate.fromWindowTransactions(scan.transactions, dateTimeThreshold), thresholds);
+                         }));
+        });
+    }
+
+    /**
+     * Incremental state of the rules in effect over the transactions streamed so far.
+     */
+    private static class WindowScan {
+        private final FraudCheckThresholds thresholds;
+        private final boolean countRule;
+        private final boolean amountRule;
+        private final boolean multipleDevicesOrCreditCardsRule;
+        private final boolean locationRule;
+        private final List<WindowTransaction> transactions = new ArrayList<>();
+        private final Set<Long> devices = new HashSet<>();
+        private final Set<Long> creditCards = new HashSet<>();
+        private double totalAmount;
+        private FraudReason reason;
+
+        // Locations seen so far, the first one being the anchor, and the indices of those at least half the distance
+        // threshold away from the anchor
+        private double[] latitudes = new double[16];
+        private double[] longitudes = new double[16];
+        private int locations;
+        private int[] farLocations = new int[16];
+        private int farCount;
+
+        WindowScan(FraudCheckThresholds thresholds, Set<FraudReason> activeReasons) {
+            this.thresholds = thresholds;
+            this.countRule = activeReasons.contains(FraudReason.TRANSACTION_COUNT);
+            this.amountRule = activeReasons.contains(FraudReason.TRANSACTION_AMOUNT);
+            this.multipleDevicesOrCreditCardsRule = activeReasons.contains(FraudReason.MULTIPLE_DEVICES_OR_CREDIT_CARDS);
+            this.locationRule = activeReasons.contains(FraudReason.LOCATION);
+        }
+
+        /**
+         * Adds a transaction and evaluates the incremental rules.
+         *
+         * @return true if a rule tripped, which is then kept in {@link #reason}.
+         */
+        boolean trips(WindowTransaction transaction) {
+            transactions.add(transaction);
+            if (countRule && transactions.size() >= thresholds.getTransactionsThreshold()) {
+                reason = FraudReason.TRANSACTION_COUNT;
+            } else if (amountRule && transaction.getAmount() != null && (totalAmount += transaction.getAmount()) >= thresholds.getAmountThreshold()) {
+                reason = FraudReason.TRANSACTION_AMOUNT;
+            } else if (multipleDevicesOrCreditCardsRule
+                       && ((transaction.getDeviceId() != null && devices.add(transaction.getDeviceId()) && devices.size() > 1)
+                           || (transaction.getCreditCardId() != null && creditCards.add(transaction.getCreditCardId()) && creditCards.size() > 1))) {
+                reason = FraudReason.MULTIPLE_DEVICES_OR_CREDIT_CARDS;
+            } else if (locationRule && transaction.getLatitude() != null && transaction.getLongitude() != null
+                       && exceedsDistance(transaction.getLatitude(), transaction.getLongitude())) {
+                reason = FraudReason.LOCATION;
+            }
+            return reason != null;
+        }
+
+        /**
+         * Adds a location and checks whether it is at least the distance threshold away from any earlier one. All
+         * transactions of the window are within the time window of each other, so every pair counts.
+         * <p>
+         * Two locations closer than half the threshold to the anchor are closer than the threshold to each other, so a
+         * location near the anchor is only compared with the far ones, and only a far location with all of them.
+         */
+        private boolean exceedsDistance(double latitude, double longitude) {
+            double threshold = thresholds.getDistanceThresholdInKm();
+            double fromAnchor = locations == 0 ? 0 : LocationVelocityEngine.calculateDistance(latitudes[0], longitudes[0], latitude, longitude);
+            if (locations > 0 && fromAnchor >= threshold) {
+                return true;
+            }
+            boolean far = fromAnchor >= threshold / 2;
+            if (far) {
+                for (int i = 1; i < locations; i++) {
+                    if (LocationVelocityEngine.calculateDistance(latitudes[i], longitudes[i], latitude, longitude) >= threshold) {
+                        return true;
+                    }
+                }
+            } else {
+                for (int i = 0; i < farCount; i++) {
+                    int index = farLocations[i];
+                    if (LocationVelocityEngine.calculateDistance(latitudes[index], longitudes[index], latitude, longitude) >= threshold) {
+                        return true;
+                    }
+                }
+            }
+
+            if (locations == latitudes.length) {
+                latitudes = Arrays.copyOf(latitudes, locations * 2);
+                longitudes = Arrays.copyOf(longitudes, locations * 2);
+            }
+            latitudes[locations] = latitude;
+            longitudes[locations] = longitude;
+            if (far) {
+                if (farCount == farLocations.length) {
+                    farLocations = Arrays.copyOf(farLocations, farCount * 2);
+                }
+                farLocations[farCount++] = locations;
+            }
+            locations++;
+            return false;
+        }
+    }
+}
@@ -1,32 +1,181 @@
 package com.michaldrozd.frauddetection.services;
 
+import com.michaldrozd.frauddetection.cache.TtlCache;
 import com.michaldrozd.frauddetection.domain.Product;
 import com.michaldrozd.frauddetection.domain.User;
+import com.michaldrozd.frauddetection.popularity.ProductPopularityIndex;
 import com.michaldrozd.frauddetection.repositories.ProductRepository;
 import com.michaldrozd.frauddetection.repositories.UserRepository;
+import com.michaldrozd.frauddetection.rollup.TransactionRollups;
+import com.michaldrozd.frauddetection.similarity.UserSimilarityIndex;
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 @Service
 public class UserBehaviorAnalysisService {
     private final UserRepository userRepository;
     private final ProductRepository productRepository;
+    private final UserSimilarityIndex userSimilarityIndex;
+    private final ProductPopularityIndex productPopularityIndex;
+    private final TransactionRollups transactionRollups;
 
-    public UserBehaviorAnalysisService(UserRepository userRepository, ProductRepository productRepository) {
+    // Popular products by [popularity threshold, limit]
+    private final TtlCache<List<Integer>, List<Product>> popularProductsCache;
+
+    public UserBehaviorAnalysisService(UserRepository userRepository,
+                                       ProductRepository productRepository,
+                                       UserSimilarityIndex userSimilarityIndex,
+                                       ProductPopularityIndex productPopularityIndex,
+                                       TransactionRollups transactionRollups,
+                                       @Value("${fraud-detection.popularity.cache-ttl-ms:5000}") long cacheTtlMillis,
+                                       @Value("${fraud-detection.popularity.cache-size:100}") int cacheSize) {
         this.userRepository = userRepository;
         this.productRepository = productRepository;
+        this.userSimilarityIndex = userSimilarityIndex;
+        this.productPopularityIndex = productPopularityIndex;
+        this.transactionRollups = transactionRollups;
+        this.popularProductsCache = new TtlCache<>(cacheTtlMillis, cacheSize);
     }
 
+    /**
+     * Finds users sharing at least {@code threshold} liked products with the given user.
+     * <p>
+     * Answered from the {@link UserSimilarityIndex} once it is built: only its LSH candidates are checked against the
+     * threshold, exactly. Until then, or with the index disabled, the graph is traversed.
+     */
     public List<User> findSimilarUsers(Long userId, int threshold) {
-        return userRepository.findUsersWithSimilarPreferences(userId, threshold);
+        Optional<long[]> similarUserIds = userSimilarityIndex.findSimilarUserIds(userId, threshold);
+        if (similarUserIds.isEmpty()) {
+            return userRepository.findUsersWithSimilarPreferences(userId, threshold);
+        }
+        if (similarUserIds.get().length == 0) {
+            return List.of();
+        }
+        return userRepository.findUsersByIds(Arrays.stream(similarUserIds.get()).boxed().toList());
+    }
+
+    /**
+     * Records that a user likes a product, in the graph and in the similarity index.
+     *
+     * @return true if both the User and the Product exist.
+     */
+    public boolean likeProduct(Long userId, Long productId) {
+        if (!userRepository.addLike(userId, productId)) {
+            return false;
+        }
+        userSimilarityIndex.addLike(userId, productId);
+        return true;
+    }
+
+    /**
+     * Removes a user's like of a product, from the graph and from the similarity index.
+     */
+    public void unlikeProduct(Long userId, Long productId) {
+        userRepository.removeLike(userId, productId);
+        userSimilarityIndex.removeLike(userId, productId);
     }
 
+    /**
+     * Finds the {@code top-k} most viewed products with at least {@code popularityThreshold} views.
+     */
     public List<Product> findPopularProducts(int popularityThreshold) {
-        return productRepository.findPopularProducts(popularityThreshold);
+        return findPopularProducts(popularityThreshold, productPopularityIndex.getTopK());
+    }
+
+    /**
+     * Finds the {@code limit} (at most {@code top-k}) most viewed products with at least {@code popularityThreshold}
+     * views, most viewed first.
+     * <p>
+     * Results are cached for a short time. Once the {@link ProductPopularityIndex} is built, they are selected from
+     * its in-memory counters, otherwise the graph is aggregated.
+     */
+    public List<Product> findPopularProducts(int popularityThreshold, int limit) {
+        int topK = Math.min(limit, productPopularityIndex.getTopK());
+        return popularProductsCache.get(List.of(popularityThreshold, topK),
+            key -> productPopularityIndex.findPopularProductIds(popularityThreshold, topK)
+                                         .map(this::findProductsInOrder)
+                                         .orElseGet(() -> productRepository.findTopPopularProducts(popularityThreshold, topK)));
     }
 
+    /**
+     * Finds the {@code top-k} products most frequently viewed together with the given product.
+     */
+    public List<Product> findFrequentlyViewedTogetherProducts(Long productId, int threshold) {
+        return findFrequentlyViewedTogetherProducts(productId, threshold, productPopularityIndex.getTopK());
+    }
+
+    /**
+     * Finds the {@code limit} (at most {@code top-k}) products viewed by most of the users that viewed the given
+     * product, by at least {@code threshold} of them, most shared views first, answered from the
+     * {@link ProductPopularityIndex} once it is built.
+     */
+    public List<Product> findFrequentlyViewedTogetherProducts(Long productId, int threshold, int limit) {
+        int topK = Math.min(limit, productPopularityIndex.getTopK());
+        return productPopularityIndex.findViewedTogetherProductIds(productId, threshold, topK)
+                                     .map(this::findProductsInOrder)
+                                     .orElseGet(() -> productRepository.findTopFrequentlyViewedTogetherProducts(productId, threshold, topK));
+    }
+
+    /**
+     * Records that a user viewed a product, in the graph and in the popularity counters.
+     * <p>
+     * Cached popular products are invalidated for every threshold the product's new view count reaches, as only those
+     * results can change. A repeated view changes nothing.
+     *
+     * @return true if both the User and the Product exist.
+     */
+    public boolean viewProduct(Long userId, Long productId) {
+        Optional<Boolean> created = userRepository.addView(userId, productId);
+        if (created.isEmpty()) {
+            return false;
+        }
+        if (!created.get()) {
+            return true;
+        }
+        long views = productPopularityIndex.recordView(userId, productId);
+        if (views > 0) {
+            popularProductsCache.invalidateIf(key -> key.get(0) <= views);
+        } else if (!productPopularityIndex.isReady()) {
+            popularProductsCache.invalidateAll();
+        }
+        return true;
+    }
+
+    /**
+     * Finds users with at least {@code threshold} transactions within the date range.
+     * <p>
+     * Counted from the {@link TransactionRollups} when they cover the date range, and by traversing the transactions
+     * in range otherwise.
+     */
     public List<User> findSuspiciousActivities(LocalDateTime startDateTime, LocalDateTime endDateTime, int threshold) {
-        return userRepository.findUsersWithAnomalies(startDateTime, endDateTime, threshold);
+        Optional<Map<Long, Long>> counts = transactionRollups.findUsersWithAtLeast(startDateTime, endDateTime, threshold);
+        if (counts.isEmpty()) {
+            return userRepository.findUsersWithAnomalies(startDateTime, endDateTime, threshold);
+        }
+        if (counts.get().isEmpty()) {
+            return List.of();
+        }
+        return userRepository.findUsersByIds(counts.get().keySet());
+    }
+
+    private List<Product> findProductsInOrder(long[] productIds) {
+        if (productIds.length == 0) {
+            return List.of();
+        }
+        Map<Long, Integer> rank = new HashMap<>();
+        for (int i = 0; i < productIds.length; i++) {
+            rank.put(productIds[i], i);
+        }
+        return productRepository.findProductsByIds(rank.keySet())
+                                .stream()
+                                .sorted(Comparator.comparing(product -> rank.getOrDefault(product.getId(), Integer.MAX_VALUE)))
+                                .toList();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,334 @@
+package com.michaldrozd.frauddetection.similarity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory similarity index of users by the sets of products they like.
+ * <p>
+ * Every user has a MinHash signature of its liked-product set, stored in one flat {@code int[]}, and the signature is
+ * split into bands that are hashed into LSH buckets: users sharing any band bucket become candidates, with a
+ * probability that grows steeply with the Jaccard similarity of their sets. Candidates are then re-checked exactly by
+ * intersecting the sorted liked-product arrays, so results never contain false positives, while users sharing only
+ * a tiny fraction of their likes may be missed.
+ * <p>
+ * Updates are incremental: adding a like lowers the signature in place, removing one recomputes the user's signature
+ * from its set, and only the bands whose hash changed are moved between buckets.
+ */
+public class MinHashLshIndex {
+
+    private static final long[] EMPTY = new long[0];
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int bands;
+    private final int rows;
+    private final int hashes;
+    private final long[] seeds;
+
+    private final Map<Long, Integer> slotByUser = new HashMap<>();
+    private long[] userBySlot = new long[INITIAL_CAPACITY];
+    private long[][] likedBySlot = new long[INITIAL_CAPACITY][];
+    private int[] signatures;
+    private int size;
+
+    // Per band: band hash -> slots of the users in that bucket
+    private final List<Map<Long, IntBag>> buckets;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public MinHashLshIndex(int bands, int rows, long seed) {
+        this.bands = bands;
+        this.rows = rows;
+        this.hashes = bands * rows;
+        this.seeds = new SplittableRandom(seed).longs(hashes).toArray();
+        this.signatures = new int[INITIAL_CAPACITY * hashes];
+        this.buckets = new ArrayList<>(bands);
+        for (int band = 0; band < bands; band++) {
+            buckets.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Replaces the liked-product set of a user.
+     */
+    public void put(long userId, long[] productIds) {
+        long[] liked = Arrays.stream(productIds).sorted().distinct().toArray();
+        lock.writeLock().lock();
+        try {
+            int slot = slotOf(userId);
+            unbucket(slot);
+            likedBySlot[slot] = liked;
+            computeSignature(slot);
+            bucket(slot);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a liked product to the set of a user.
+     */
+    public void addLike(long userId, long productId) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotOf(userId);
+            long[] liked = likedBySlot[slot];
+            int position = Arrays.binarySearch(liked, productId);
+            if (position >= 0) {
+                return;
+            }
+            position = -position - 1;
+            long[] updated = new long[liked.length + 1];
+            System.arraycopy(liked, 0, updated, 0, position);
+            updated[position] = productId;
+            System.arraycopy(liked, position, updated, position + 1, liked.length - position);
+
+            long[] oldBandKeys = bandKeys(slot);
+            likedBySlot[slot] = updated;
+            // A new element can only lower the minimum of every hash
+            int offset = slot * hashes;
+            for (int i = 0; i < hashes; i++) {
+                signatures[offset + i] = Math.min(signatures[offset + i], hash(productId, i));
+            }
+            rebucket(slot, oldBandKeys, liked.length == 0);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a liked product from the set of a user.
+     */
+    public void removeLike(long userId, long productId) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slotByUser.get(userId);
+            if (slot == null) {
+                return;
+            }
+            long[] liked = likedBySlot[slot];
+            int position = Arrays.binarySearch(liked, productId);
+            if (position < 0) {
+                return;
+            }
+            long[] updated = new long[liked.length - 1];
+            System.arraycopy(liked, 0, updated, 0, position);
+            System.arraycopy(liked, position + 1, updated, position, updated.length - position);
+
+            long[] oldBandKeys = bandKeys(slot);
+            likedBySlot[slot] = updated;
+            computeSignature(slot);
+            if (updated.length == 0) {
+                unbucket(slot, oldBandKeys);
+            } else {
+                rebucket(slot, oldBandKeys, false);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds users sharing at least {@code minShared} liked products with the given user.
+     * <p>
+     * Only users sharing an LSH bucket with the given user are considered, and every candidate is checked exactly.
+     *
+     * @return The IDs of the similar users, excluding the user itself.
+     */
+    public long[] findSimilar(long userId, int minShared) {
+        lock.readLock().lock();
+        try {
+            Integer slot = slotByUser.get(userId);
+            if (slot == null || likedBySlot[slot].length == 0) {
+                return EMPTY;
+            }
+            long[] liked = likedBySlot[slot];
+            int required = Math.max(minShared, 1);
+            Set<Integer> candidates = new HashSet<>();
+            for (int band = 0; band < bands; band++) {
+                IntBag bucket = buckets.get(band).get(bandKey(slot, band));
+                if (bucket == null) {
+                    continue;
+                }
+                for (int i = 0; i < bucket.size; i++) {
+                    candidates.add(bucket.values[i]);
+                }
+            }
+            candidates.remove(slot);
+
+            long[] similar = new long[candidates.size()];
+            int found = 0;
+            for (int candidate : candidates) {
+                if (countShared(liked, likedBySlot[candidate], required) >= required) {
+                    similar[found++] = userBySlot[candidate];
+                }
+            }
+            return Arrays.copyOf(similar, found);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int slotOf(long userId) {
+        Integer slot = slotByUser.get(userId);
+        if (slot != null) {
+            return slot;
+        }
+        if (size == userBySlot.length) {
+            int capacity = size * 2;
+            userBySlot = Arrays.copyOf(userBySlot, capacity);
+            likedBySlot = Arrays.copyOf(likedBySlot, capacity);
+            signatures = Arrays.copyOf(signatures, capacity * hashes);
+        }
+        int newSlot = size++;
+        userBySlot[newSlot] = userId;
+        likedBySlot[newSlot] = EMPTY;
+        Arrays.fill(signatures, newSlot * hashes, (newSlot + 1) * hashes, Integer.MAX_VALUE);
+        slotByUser.put(userId, newSlot);
+        return newSlot;
+    }
+
+    private void computeSignature(int slot) {
+        int offset = slot * hashes;
+        Arrays.fill(signatures, offset, offset + hashes, Integer.MAX_VALUE);
+        for (long productId : likedBySlot[slot]) {
+            for (int i = 0; i < hashes; i++) {
+                signatures[offset + i] = Math.min(signatures[offset + i], hash(productId, i));
+            }
+        }
+    }
+
+    private void bucket(int slot) {
+        if (likedBySlot[slot].length == 0) {
+            return;
+        }
+        for (int band = 0; band < bands; band++) {
+            buckets.get(band).computeIfAbsent(bandKey(slot, band), key -> new IntBag()).add(slot);
+        }
+    }
+
+    private void unbucket(int slot) {
+        if (likedBySlot[slot].length > 0) {
+            unbucket(slot, bandKeys(slot));
+        }
+    }
+
+    private void unbucket(int slot, long[] bandKeys) {
+        for (int band = 0; band < bands; band++) {
+            removeFromBucket(band, bandKeys[band], slot);
+        }
+    }
+
+    /**
+     * Moves the user to the buckets of its updated signature, touching only the bands whose hash changed.
+     */
+    private void rebucket(int slot, long[] oldBandKeys, boolean wasEmpty) {
+        for (int band = 0; band < bands; band++) {
+            long key = bandKey(slot, band);
+            if (wasEmpty || key != oldBandKeys[band]) {
+                if (!wasEmpty) {
+                    removeFromBucket(band, oldBandKeys[band], slot);
+                }
+                buckets.get(band).computeIfAbsent(key, k -> new IntBag()).add(slot);
+            }
+        }
+    }
+
+    private void removeFromBucket(int band, long key, int slot) {
+        IntBag bucket = buckets.get(band).get(key);
+        if (bucket != null && bucket.remove(slot) && bucket.size == 0) {
+            buckets.get(band).remove(key);
+        }
+    }
+
+    private long[] bandKeys(int slot) {
+        long[] keys = new long[bands];
+        for (int band = 0; band < bands; band++) {
+            keys[band] = bandKey(slot, band);
+        }
+        return keys;
+    }
+
+    private long bandKey(int slot, int band) {
+        int offset = slot * hashes + band * rows;
+        long key = band;
+        for (int i = 0; i < rows; i++) {
+            key = mix(key * 31 + signatures[offset + i]);
+        }
+        return key;
+    }
+
+    private int hash(long productId, int i) {
+        return (int) (mix(productId ^ seeds[i]) >>> 32);
+    }
+
+    /**
+     * Counts the common elements of two sorted arrays, stopping as soon as {@code enough} are found.
+     */
+    static int countShared(long[] a, long[] b, int enough) {
+        int shared = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length && shared < enough) {
+            if (a[i] == b[j]) {
+                shared++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return shared;
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Unordered growable set of ints, small enough to keep one per LSH bucket.
+     */
+    private static class IntBag {
+        private int[] values = new int[2];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        boolean remove(int value) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value) {
+                    values[i] = values[--size];
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
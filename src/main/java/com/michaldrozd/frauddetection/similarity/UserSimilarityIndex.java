@@ -0,0 +1,124 @@
+package com.michaldrozd.frauddetection.similarity;
+
+import com.michaldrozd.frauddetection.repositories.UserRepository;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Precomputed user-similarity index by liked products, answering {@code findSimilarUsers} without the two-hop
+ * {@code LIKES} expansion in the graph.
+ * <p>
+ * The index is built from the graph in pages of users in the background after startup, and kept up to date by
+ * {@link #addLike(Long, Long)} and {@link #removeLike(Long, Long)} as likes change. Until it is built, callers fall
+ * back to the repository query.
+ */
+@Slf4j
+@Component
+public class UserSimilarityIndex {
+
+    private final UserRepository userRepository;
+    private final boolean enabled;
+    private final int pageSize;
+    private final MinHashLshIndex index;
+    private volatile boolean ready;
+    private volatile boolean failed;
+
+    // Like changes arriving while the index is being built, applied once it is complete
+    private final List<Runnable> pendingChanges = new ArrayList<>();
+
+    public UserSimilarityIndex(UserRepository userRepository,
+                               @Value("${fraud-detection.similarity.enabled:false}") boolean enabled,
+                               @Value("${fraud-detection.similarity.bands:32}") int bands,
+                               @Value("${fraud-detection.similarity.rows:4}") int rows,
+                               @Value("${fraud-detection.similarity.page-size:10000}") int pageSize) {
+        this.userRepository = userRepository;
+        this.enabled = enabled;
+        this.pageSize = pageSize;
+        this.index = new MinHashLshIndex(bands, rows, 42);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        if (!enabled) {
+            return;
+        }
+        Thread builder = new Thread(this::load, "user-similarity-index-builder");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    private void load() {
+        long start = System.currentTimeMillis();
+        try {
+            Long afterUserId = null;
+            Map<Long, long[]> page;
+            do {
+                page = userRepository.findLikedProductIdsPage(afterUserId, pageSize);
+                for (Map.Entry<Long, long[]> user : page.entrySet()) {
+                    index.put(user.getKey(), user.getValue());
+                    afterUserId = user.getKey();
+                }
+            } while (page.size() == pageSize);
+            synchronized (pendingChanges) {
+                pendingChanges.forEach(Runnable::run);
+                pendingChanges.clear();
+                ready = true;
+            }
+            log.info("Built user similarity index of {} users in {} ms", index.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            synchronized (pendingChanges) {
+                pendingChanges.clear();
+                failed = true;
+            }
+            log.error("Failed to build the user similarity index, similar users are queried from the graph", e);
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Finds the users sharing at least {@code threshold} liked products with the given user.
+     *
+     * @return The IDs of the similar users, or an empty optional if the index is not built (yet).
+     */
+    public Optional<long[]> findSimilarUserIds(Long userId, int threshold) {
+        if (!ready) {
+            return Optional.empty();
+        }
+        return Optional.of(index.findSimilar(userId, threshold));
+    }
+
+    public void addLike(Long userId, Long productId) {
+        apply(() -> index.addLike(userId, productId));
+    }
+
+    public void removeLike(Long userId, Long productId) {
+        apply(() -> index.removeLike(userId, productId));
+    }
+
+    private void apply(Runnable change) {
+        if (!enabled || failed) {
+            return;
+        }
+        if (ready) {
+            change.run();
+            return;
+        }
+        synchronized (pendingChanges) {
+            if (ready) {
+                change.run();
+            } else if (!failed) {
+                pendingChanges.add(change);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.michaldrozd.frauddetection.sketch;
+
+/**
+ * HyperLogLog distinct counting over registers kept in a shared byte array, one byte per register.
+ * <p>
+ * A sketch of precision {@code p} takes {@code 2^p} bytes and estimates cardinalities with a relative standard error
+ * of about {@code 1.04 / sqrt(2^p)}. Sketches are merged by taking the maximum of every register, so the estimate of
+ * a union of sketches is computed register by register without materializing the merged sketch.
+ */
+public final class HyperLogLog {
+
+    private HyperLogLog() {
+    }
+
+    /**
+     * Adds a hashed element to the sketch starting at {@code offset}.
+     *
+     * @param hash A well-mixed 64-bit hash of the element.
+     */
+    public static void add(byte[] registers, int offset, int precision, long hash) {
+        int index = register(hash, precision);
+        int rank = rank(hash, precision);
+        if (rank > registers[offset + index]) {
+            registers[offset + index] = (byte) rank;
+        }
+    }
+
+    /**
+     * @return The register a hashed element goes to, for sketches kept outside of a byte array.
+     */
+    public static int register(long hash, int precision) {
+        return (int) (hash >>> (Long.SIZE - precision));
+    }
+
+    /**
+     * @return The value a hashed element sets its register to, at least.
+     */
+    public static int rank(long hash, int precision) {
+        return Math.min(Long.numberOfLeadingZeros(hash << precision), Long.SIZE - precision) + 1;
+    }
+
+    /**
+     * Estimates the cardinality of the union of the sketches starting at the given offsets.
+     */
+    public static long estimateUnion(byte[] registers, int[] offsets, int sketches, int precision) {
+        int m = 1 << precision;
+        double sum = 0;
+        int zeros = 0;
+        for (int register = 0; register < m; register++) {
+            int max = 0;
+            for (int sketch = 0; sketch < sketches; sketch++) {
+                max = Math.max(max, registers[offsets[sketch] + register]);
+            }
+            sum += Math.scalb(1.0, -max);
+            if (max == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        // Linear counting is more accurate for small cardinalities
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    private static double alpha(int m) {
+        return switch (m) {
+            case 16 -> 0.673;
+            case 32 -> 0.697;
+            case 64 -> 0.709;
+            default -> 0.7213 / (1 + 1.079 / m);
+        };
+    }
+
+    /**
+     * Hashes a string identifier with FNV-1a and a SplitMix64 finalizer, so that every bit is usable by the sketch.
+     */
+    public static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,160 @@
+package com.michaldrozd.frauddetection.snapshot;
+
+import com.michaldrozd.frauddetection.dto.WindowTransactionPage;
+import com.michaldrozd.frauddetection.repositories.TransactionRepository;
+import com.michaldrozd.frauddetection.window.UserWindowStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Periodic snapshots of the in-memory {@link UserWindowStore}, restored at startup.
+ * <p>
+ * Every ingested batch is stamped by {@link #beginBatch()} with a strictly increasing {@code ingestedAt}, which is
+ * written to the Transactions it creates as their {@code firstIngestedAt}; a Transaction written again, e.g. by a
+ * retry, keeps its stamp. A snapshot starts while no batch is between {@link #beginBatch()} and {@link #endBatch()},
+ * so its watermark, the last stamp handed out, separates the batches recorded in it from those that are not: the store
+ * writes every user's state as it was when the snapshot started. At startup, the latest snapshot is mapped and only
+ * the transactions created after its watermark are replayed from the repository, instead of loading every user's
+ * window from the repository on its first check.
+ * <p>
+ * Ingestion only pauses while the watermark is taken, not while the snapshot is written. A replayed transaction that a
+ * state already contains, e.g. one loaded from the repository by a concurrent check, is not counted again, as every
+ * state counts a {@code transactionId} once. The other in-memory state does not need snapshots: the fraud model and
+ * the blocklist are loaded from their files already, and the similarity index and fraud rings are rebuilt in the
+ * background without holding up the fraud checks.
+ */
+@Slf4j
+@Component
+public class StateSnapshotter {
+
+    private final UserWindowStore userWindowStore;
+    private final TransactionRepository transactionRepository;
+    private final boolean enabled;
+    private final Path path;
+    private final int replayPageSize;
+
+    // Batches hold the read lock from their stamp until they are recorded, snapshots hold the write lock to start
+    private final ReadWriteLock batchLock = new ReentrantReadWriteLock(true);
+    private final AtomicLong lastStamp = new AtomicLong();
+
+    public StateSnapshotter(UserWindowStore userWindowStore,
+                            TransactionRepository transactionRepository,
+                            @Value("${fraud-detection.snapshot.enabled:false}") boolean enabled,
+                            @Value("${fraud-detection.snapshot.path:window-store.snapshot}") String path,
+                            @Value("${fraud-detection.snapshot.replay-page-size:10000}") int replayPageSize) {
+        this.userWindowStore = userWindowStore;
+        this.transactionRepository = transactionRepository;
+        this.enabled = enabled && userWindowStore.isEnabled();
+        this.path = Paths.get(path);
+        this.replayPageSize = replayPageSize;
+    }
+
+    /**
+     * Restores the latest snapshot. Runs before the ingestion starts, so nothing is recorded into the store yet.
+     */
+    @PostConstruct
+    void restore() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        OptionalLong watermark;
+        try {
+            watermark = userWindowStore.restoreSnapshot(path);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to restore the snapshot {}, starting without it", path, e);
+            userWindowStore.clear();
+            return;
+        }
+        if (watermark.isEmpty()) {
+            log.info("No snapshot to restore at {}", path);
+            return;
+        }
+        // Stamps of the batches ingested from now on must be after the watermark, even if the clock went back
+        lastStamp.accumulateAndGet(watermark.getAsLong(), Math::max);
+        try {
+            long replayed = replay(watermark.getAsLong());
+            log.info("Restored {} user windows from {} and replayed {} transactions ingested after it in {} ms",
+                userWindowStore.size(), path, replayed, System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            log.error("Failed to replay the transactions ingested after the snapshot {}, starting without it", path, e);
+            userWindowStore.clear();
+        }
+    }
+
+    private long replay(long watermark) {
+        long replayed = 0;
+        Long cursor = null;
+        WindowTransactionPage page;
+        do {
+            page = transactionRepository.findWindowTransactionsIngestedAfter(watermark, cursor, replayPageSize);
+            page.getTransactions().forEach(userWindowStore::replay);
+            replayed += page.getTransactions().size();
+            cursor = page.getCursor();
+        } while (!page.isComplete());
+        return replayed;
+    }
+
+    @Scheduled(initialDelayString = "${fraud-detection.snapshot.interval-ms:300000}",
+               fixedDelayString = "${fraud-detection.snapshot.interval-ms:300000}")
+    public synchronized void snapshot() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        long watermark;
+        batchLock.writeLock().lock();
+        try {
+            watermark = lastStamp.get();
+            userWindowStore.beginSnapshot();
+        } finally {
+            batchLock.writeLock().unlock();
+        }
+        try {
+            int users = userWindowStore.saveSnapshot(path, watermark);
+            log.info("Wrote a snapshot of {} user windows up to {} to {} in {} ms", users, watermark, path, System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            log.error("Failed to write the snapshot {}", path, e);
+        }
+    }
+
+    /**
+     * Writes a last snapshot after the ingestion has drained its buffer.
+     */
+    @PreDestroy
+    void snapshotOnShutdown() {
+        snapshot();
+    }
+
+    /**
+     * Starts writing and recording a batch of ingested transactions; waits while a snapshot is written.
+     *
+     * @return The {@code ingestedAt} stamp of the batch, to be written to its Transactions.
+     */
+    public long beginBatch() {
+        if (enabled) {
+            batchLock.readLock().lock();
+        }
+        return lastStamp.accumulateAndGet(System.currentTimeMillis(), (last, now) -> Math.max(last + 1, now));
+    }
+
+    /**
+     * Ends a batch started by {@link #beginBatch()}, whether or not it was written.
+     */
+    public void endBatch() {
+        if (enabled) {
+            batchLock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.michaldrozd.frauddetection.streaming;
+
+import com.michaldrozd.frauddetection.dto.VerdictEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Publishes verdicts to the clients subscribed to the Server-Sent Events stream.
+ * <p>
+ * Verdicts are queued and sent by a dedicated dispatcher thread, so a slow client never holds up ingestion. When the
+ * queue is full, verdicts are dropped and counted instead.
+ */
+@Slf4j
+@Component
+public class SseVerdictBroadcaster implements VerdictSink {
+
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+    private final BlockingQueue<VerdictEvent> queue;
+    private final long emitterTimeoutMillis;
+    private final Counter droppedCounter;
+    private Thread dispatcher;
+    private volatile boolean running;
+
+    public SseVerdictBroadcaster(@Value("${fraud-detection.streaming.sse-buffer-size:10000}") int bufferSize,
+                                 @Value("${fraud-detection.streaming.sse-timeout-ms:0}") long emitterTimeoutMillis,
+                                 MeterRegistry meterRegistry) {
+        this.queue = new ArrayBlockingQueue<>(bufferSize);
+        this.emitterTimeoutMillis = emitterTimeoutMillis;
+        this.droppedCounter = Counter.builder("fraud.streaming.sse.dropped")
+                                     .description("Verdicts dropped because the SSE queue was full")
+                                     .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        running = true;
+        dispatcher = new Thread(this::dispatchLoop, "fraud-verdict-sse");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Subscribes a new client to the verdict stream.
+     */
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMillis);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        emitter.onError(e -> emitters.remove(emitter));
+        emitters.add(emitter);
+        return emitter;
+    }
+
+    @Override
+    public void accept(VerdictEvent verdict) {
+        if (emitters.isEmpty()) {
+            return;
+        }
+        if (!queue.offer(verdict)) {
+            droppedCounter.increment();
+        }
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            VerdictEvent verdict;
+            try {
+                verdict = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (verdict == null) {
+                continue;
+            }
+            for (SseEmitter emitter : emitters) {
+                try {
+                    emitter.send(SseEmitter.event().name("verdict").data(verdict));
+                } catch (IOException | IllegalStateException e) {
+                    log.debug("Dropping disconnected verdict stream client", e);
+                    emitters.remove(emitter);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        emitters.forEach(SseEmitter::complete);
+    }
+}
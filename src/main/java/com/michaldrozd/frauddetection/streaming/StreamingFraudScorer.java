@@ -0,0 +1,120 @@
+package com.michaldrozd.frauddetection.streaming;
+
+import com.michaldrozd.frauddetection.blocklist.Blocklist;
+import com.michaldrozd.frauddetection.blocklist.BlocklistType;
+import com.michaldrozd.frauddetection.domain.Transaction;
+import com.michaldrozd.frauddetection.dto.FraudCheckThresholds;
+import com.michaldrozd.frauddetection.dto.FraudReason;
+import com.michaldrozd.frauddetection.dto.FraudVerdict;
+import com.michaldrozd.frauddetection.dto.TransactionEvent;
+import com.michaldrozd.frauddetection.dto.VerdictEvent;
+import com.michaldrozd.frauddetection.services.FraudDetectionService;
+import com.michaldrozd.frauddetection.window.UserWindowStore;
+import com.michaldrozd.frauddetection.window.WindowAggregate;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Scores every ingested transaction right away (score-on-ingest).
+ * <p>
+ * The transaction is recorded into its user's in-memory window and the fraud rules are evaluated against the window
+ * ending with it, without any read from the repository. Transactions with a Device, Credit Card or Merchant on the
+ * {@link Blocklist} are potentially fraudulent regardless of the window. Users seen for the first time start with an
+ * empty state, so their first verdicts are based on the part of the window ingested so far
+ * ({@link VerdictEvent#isCompleteWindow()}).
+ * <p>
+ * Verdicts are handed to every {@link VerdictSink}; the time from accepting the transaction to publishing its verdict
+ * is recorded by the {@code fraud.streaming.latency} timer.
+ */
+@Slf4j
+@Service
+public class StreamingFraudScorer {
+
+    private final boolean enabled;
+    private final FraudCheckThresholds thresholds;
+    private final long windowMillis;
+    private final UserWindowStore userWindowStore;
+    private final FraudDetectionService fraudDetectionService;
+    private final Blocklist blocklist;
+    private final List<VerdictSink> sinks;
+    private final Timer latencyTimer;
+    private final Counter notFraudulentCounter;
+    private final Map<FraudReason, Counter> fraudulentCounters = new EnumMap<>(FraudReason.class);
+
+    public StreamingFraudScorer(@Value("${fraud-detection.streaming.enabled:false}") boolean enabled,
+                                @Value("${fraud-detection.streaming.transactions-threshold:10}") int transactionsThreshold,
+                                @Value("${fraud-detection.streaming.time-window-minutes:60}") int timeWindowInMinutes,
+                                @Value("${fraud-detection.streaming.amount-threshold:5000}") double amountThreshold,
+                                @Value("${fraud-detection.streaming.distance-threshold-km:500}") int distanceThresholdInKm,
+                                UserWindowStore userWindowStore,
+                                FraudDetectionService fraudDetectionService,
+                                Blocklist blocklist,
+                                List<VerdictSink> sinks,
+                                MeterRegistry meterRegistry) {
+        if (enabled && !userWindowStore.isEnabled()) {
+            log.warn("Score-on-ingest needs fraud-detection.window-store.enabled=true, it stays disabled");
+        }
+        this.enabled = enabled && userWindowStore.isEnabled();
+        this.thresholds = new FraudCheckThresholds(transactionsThreshold, timeWindowInMinutes, amountThreshold,
+            distanceThresholdInKm);
+        this.windowMillis = timeWindowInMinutes * 60_000L;
+        this.userWindowStore = userWindowStore;
+        this.fraudDetectionService = fraudDetectionService;
+        this.blocklist = blocklist;
+        this.sinks = sinks;
+        this.latencyTimer = Timer.builder("fraud.streaming.latency")
+                                 .description("Time from accepting a transaction to publishing its verdict")
+                                 .publishPercentiles(0.5, 0.99, 0.999)
+                                 .register(meterRegistry);
+        this.notFraudulentCounter = Counter.builder("fraud.streaming.verdicts")
+                                           .tag("fraudulent", "false").tag("reason", "none")
+                                           .register(meterRegistry);
+        for (FraudReason reason : FraudReason.values()) {
+            fraudulentCounters.put(reason, Counter.builder("fraud.streaming.verdicts")
+                                                  .tag("fraudulent", "true").tag("reason", reason.name())
+                                                  .register(meterRegistry));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records the written transaction in its user's window and publishes its verdict.
+     *
+     * @param event       The transaction as it was ingested.
+     * @param transaction The transaction with the graph identities of its Device and Credit Card.
+     */
+    public void score(TransactionEvent event, Transaction transaction) {
+        WindowAggregate window = userWindowStore.recordAndAggregate(event.getUserId(), transaction, windowMillis);
+        boolean completeWindow = userWindowStore.covers(event.getUserId(),
+            WindowAggregate.toEpochMillis(event.getTransactionDate()) - windowMillis);
+        BlocklistType blocked = blocklist.findBlocked(event.getDeviceId(), event.getCreditCardNumber(),
+            event.getMerchantId());
+        FraudVerdict verdict = blocked != null
+                               ? FraudVerdict.fraudulent(FraudReason.BLOCKLISTED)
+                               : fraudDetectionService.evaluate(event.getUserId(), window, thresholds);
+
+        long latencyNanos = System.nanoTime() - event.getReceivedNanos();
+        VerdictEvent verdictEvent = new VerdictEvent(event.getTransactionId(), event.getUserId(), verdict.isFraudulent(),
+            verdict.getReason(), completeWindow, TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        for (VerdictSink sink : sinks) {
+            try {
+                sink.accept(verdictEvent);
+            } catch (RuntimeException e) {
+                log.error("Verdict sink {} failed", sink.getClass().getSimpleName(), e);
+            }
+        }
+        latencyTimer.record(latencyNanos, TimeUnit.NANOSECONDS);
+        (verdict.isFraudulent() ? fraudulentCounters.get(verdict.getReason()) : notFraudulentCounter).increment();
+    }
+}
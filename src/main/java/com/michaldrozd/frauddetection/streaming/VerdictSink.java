@@ -0,0 +1,14 @@
+package com.michaldrozd.frauddetection.streaming;
+
+import com.michaldrozd.frauddetection.dto.VerdictEvent;
+
+/**
+ * Receives the verdicts of transactions scored on ingest.
+ * <p>
+ * Every bean implementing this interface is called by the ingestion writer threads, so implementations must return
+ * quickly and hand slow work off to their own threads.
+ */
+public interface VerdictSink {
+
+    void accept(VerdictEvent verdict);
+}
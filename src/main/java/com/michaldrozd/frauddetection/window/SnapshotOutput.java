@@ -0,0 +1,77 @@
+package com.michaldrozd.frauddetection.window;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Buffered, checksummed binary output to a {@link FileChannel}, for writing snapshots.
+ * <p>
+ * Values are written in little-endian order into a direct buffer, which is written to the channel whenever a value
+ * does not fit anymore. Not thread-safe.
+ */
+class SnapshotOutput {
+
+    private final FileChannel channel;
+    private final CRC32 checksum = new CRC32();
+    private ByteBuffer buffer;
+
+    SnapshotOutput(FileChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Makes room for at least {@code bytes} more bytes in the buffer, growing it if they would not fit at all.
+     */
+    SnapshotOutput ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+            if (buffer.capacity() < bytes) {
+                buffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        return this;
+    }
+
+    SnapshotOutput putInt(int value) {
+        buffer.putInt(value);
+        return this;
+    }
+
+    SnapshotOutput putLong(long value) {
+        buffer.putLong(value);
+        return this;
+    }
+
+    SnapshotOutput putDouble(double value) {
+        buffer.putDouble(value);
+        return this;
+    }
+
+    SnapshotOutput putBytes(byte[] value) {
+        buffer.put(value);
+        return this;
+    }
+
+    /**
+     * Writes the buffered bytes to the channel.
+     */
+    void flush() throws IOException {
+        buffer.flip();
+        checksum.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * The CRC32 of all bytes written to the channel so far.
+     */
+    long checksum() {
+        return checksum.getValue();
+    }
+}
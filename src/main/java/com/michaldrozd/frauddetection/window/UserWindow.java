@@ -0,0 +1,542 @@
+package com.michaldrozd.frauddetection.window;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Incrementally maintained sliding-window state of a single user.
+ * <p>
+ * Counts and amounts are kept in time buckets stored in sorted primitive arrays (only non-empty buckets are kept),
+ * next to the time and amount of every transaction, which clip the bucket a window starts in. Distinct devices and
+ * credit cards, and their {@code deviceId}s and numbers for the blocklist, are tracked by their last-seen time, and the
+ * most recent transaction locations are kept in a bounded buffer; once it overflows, the state no longer covers windows
+ * reaching back to the dropped locations.
+ * <p>
+ * The {@code transactionId} of every transaction is kept too, so a transaction recorded again (e.g. after it was
+ * already loaded into the state by a seed) is counted only once.
+ * <p>
+ * All methods are synchronized on the instance; a user's state is tiny, so contention is limited to concurrent updates
+ * and checks of the same user.
+ * <p>
+ * A snapshot is written one state at a time while the states keep changing, so a state about to change while a
+ * snapshot is being written keeps a copy of itself for it first (see {@link #retainFor(long)}), and the snapshot gets
+ * every state as it was when the snapshot started.
+ */
+class UserWindow {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final long bucketMillis;
+    private final int maxLocations;
+
+    // Non-empty buckets between [bucketStart, bucketEnd), sorted by bucket id
+    private long[] bucketIds = new long[INITIAL_CAPACITY];
+    private int[] bucketCounts = new int[INITIAL_CAPACITY];
+    private double[] bucketAmounts = new double[INITIAL_CAPACITY];
+    private int bucketStart;
+    private int bucketEnd;
+
+    // Every transaction between [transactionStart, transactionEnd), sorted by time
+    private long[] transactionTimes = new long[INITIAL_CAPACITY];
+    private double[] transactionAmounts = new double[INITIAL_CAPACITY];
+    private String[] transactionIds = new String[INITIAL_CAPACITY];
+    private int transactionStart;
+    private int transactionEnd;
+    // The non-null IDs of the transactions between [transactionStart, transactionEnd)
+    private final Set<String> recordedIds = new HashSet<>();
+
+    private final Map<Long, Long> deviceLastSeen = new HashMap<>();
+    private final Map<Long, Long> creditCardLastSeen = new HashMap<>();
+    private final Map<String, Long> deviceIdentifierLastSeen = new HashMap<>();
+    private final Map<String, Long> creditCardNumberLastSeen = new HashMap<>();
+
+    // Most recent locations between [locationStart, locationEnd), in arrival order
+    private long[] locationTimes = new long[INITIAL_CAPACITY];
+    private double[] locationLatitudes = new double[INITIAL_CAPACITY];
+    private double[] locationLongitudes = new double[INITIAL_CAPACITY];
+    private int locationStart;
+    private int locationEnd;
+
+    private double lastLatitude = Double.NaN;
+    private double lastLongitude = Double.NaN;
+    private long lastSeenMillis = Long.MIN_VALUE;
+
+    /**
+     * The state is complete for all transactions at or after this time.
+     */
+    private long coveredSinceMillis;
+
+    /**
+     * The locations are complete for all transactions at or after this time, as older ones may have been dropped from
+     * the bounded buffer.
+     */
+    private long locationsCoveredSinceMillis = Long.MIN_VALUE;
+
+    // The snapshot being written when the state was created, 0 if none was
+    private final long createdDuringSnapshot;
+    // The last snapshot the state was written to or copied for, and the copy while that snapshot has not written it
+    private long snapshot;
+    private UserWindow snapshotCopy;
+
+    UserWindow(long bucketMillis, int maxLocations, long coveredSinceMillis, long createdDuringSnapshot) {
+        this.bucketMillis = bucketMillis;
+        this.maxLocations = maxLocations;
+        this.coveredSinceMillis = coveredSinceMillis;
+        this.createdDuringSnapshot = createdDuringSnapshot;
+    }
+
+    /**
+     * Adds a transaction to the state, unless a transaction with the same {@code transactionId} is in it already.
+     *
+     * @return false if the transaction was already in the state and has been skipped.
+     */
+    synchronized boolean record(String transactionId, long timeMillis, double amount, Long deviceId, Long creditCardId,
+                                String deviceIdentifier, String creditCardNumber, Double latitude, Double longitude) {
+        if (transactionId != null && !recordedIds.add(transactionId)) {
+            return false;
+        }
+        addToBucket(Math.floorDiv(timeMillis, bucketMillis), amount);
+        addTransaction(timeMillis, amount, transactionId);
+        if (deviceId != null) {
+            deviceLastSeen.merge(deviceId, timeMillis, Math::max);
+        }
+        if (creditCardId != null) {
+            creditCardLastSeen.merge(creditCardId, timeMillis, Math::max);
+        }
+        if (deviceIdentifier != null) {
+            deviceIdentifierLastSeen.merge(deviceIdentifier, timeMillis, Math::max);
+        }
+        if (creditCardNumber != null) {
+            creditCardNumberLastSeen.merge(creditCardNumber, timeMillis, Math::max);
+        }
+        if (latitude != null && longitude != null) {
+            addLocation(timeMillis, latitude, longitude);
+            if (timeMillis >= lastSeenMillis) {
+                lastLatitude = latitude;
+                lastLongitude = longitude;
+            }
+        }
+        lastSeenMillis = Math.max(lastSeenMillis, timeMillis);
+        return true;
+    }
+
+    /**
+     * Aggregates the window starting at {@code sinceMillis}.
+     * <p>
+     * Counts and amounts are summed up from the buckets after the one containing {@code sinceMillis}, and from the
+     * transactions of that bucket at or after {@code sinceMillis}, so they are exact.
+     *
+     * @return The aggregate, or {@code null} if the state does not cover the whole window.
+     */
+    synchronized WindowAggregate aggregate(long sinceMillis) {
+        if (!covers(sinceMillis)) {
+            return null;
+        }
+
+        long firstBucket = Math.floorDiv(sinceMillis, bucketMillis);
+        long count = 0;
+        double amount = 0;
+        for (int i = bucketEnd - 1; i >= bucketStart && bucketIds[i] > firstBucket; i--) {
+            count += bucketCounts[i];
+            amount += bucketAmounts[i];
+        }
+        long firstBucketEnd = (firstBucket + 1) * bucketMillis;
+        for (int i = firstTransactionAt(sinceMillis); i < transactionEnd && transactionTimes[i] < firstBucketEnd; i++) {
+            count++;
+            amount += transactionAmounts[i];
+        }
+
+        int locations = 0;
+        long[] times = new long[locationEnd - locationStart];
+        double[] latitudes = new double[times.length];
+        double[] longitudes = new double[times.length];
+        for (int i = locationStart; i < locationEnd; i++) {
+            if (locationTimes[i] >= sinceMillis) {
+                times[locations] = locationTimes[i];
+                latitudes[locations] = locationLatitudes[i];
+                longitudes[locations] = locationLongitudes[i];
+                locations++;
+            }
+        }
+        if (locations < times.length) {
+            times = Arrays.copyOf(times, locations);
+            latitudes = Arrays.copyOf(latitudes, locations);
+            longitudes = Arrays.copyOf(longitudes, locations);
+        }
+
+        return new WindowAggregate(count, amount, countSince(deviceLastSeen, sinceMillis), countSince(creditCardLastSeen, sinceMillis),
+            times, latitudes, longitudes, seenSince(deviceIdentifierLastSeen, sinceMillis), seenSince(creditCardNumberLastSeen, sinceMillis));
+    }
+
+    /**
+     * Aggregates the window starting at {@code sinceMillis}, or at the start of the covered state if that is later.
+     */
+    synchronized WindowAggregate aggregateCovered(long sinceMillis) {
+        return aggregate(Math.max(sinceMillis, Math.max(coveredSinceMillis, locationsCoveredSinceMillis)));
+    }
+
+    synchronized boolean covers(long sinceMillis) {
+        return sinceMillis >= coveredSinceMillis && sinceMillis >= locationsCoveredSinceMillis;
+    }
+
+    /**
+     * Drops everything older than {@code horizonMillis}. From then on the state only covers the horizon.
+     */
+    synchronized void expire(long horizonMillis) {
+        long firstBucket = Math.floorDiv(horizonMillis, bucketMillis);
+        while (bucketStart < bucketEnd && bucketIds[bucketStart] < firstBucket) {
+            bucketStart++;
+        }
+        while (transactionStart < transactionEnd && transactionTimes[transactionStart] < horizonMillis) {
+            if (transactionIds[transactionStart] != null) {
+                recordedIds.remove(transactionIds[transactionStart]);
+            }
+            transactionIds[transactionStart] = null;
+            transactionStart++;
+        }
+        while (locationStart < locationEnd && locationTimes[locationStart] < horizonMillis) {
+            locationStart++;
+        }
+        removeOlderThan(deviceLastSeen, horizonMillis);
+        removeOlderThan(creditCardLastSeen, horizonMillis);
+        removeOlderThan(deviceIdentifierLastSeen, horizonMillis);
+        removeOlderThan(creditCardNumberLastSeen, horizonMillis);
+        coveredSinceMillis = Math.max(coveredSinceMillis, horizonMillis);
+    }
+
+    synchronized boolean isIdleSince(long horizonMillis) {
+        return lastSeenMillis < horizonMillis;
+    }
+
+    synchronized long getLastSeenMillis() {
+        return lastSeenMillis;
+    }
+
+    synchronized double getLastLatitude() {
+        return lastLatitude;
+    }
+
+    synchronized double getLastLongitude() {
+        return lastLongitude;
+    }
+
+    /**
+     * Copies the state for the given snapshot before it changes, unless the snapshot has written or copied it already.
+     *
+     * @param activeSnapshot The snapshot being written, 0 if none is.
+     */
+    synchronized void retainFor(long activeSnapshot) {
+        if (activeSnapshot != 0 && snapshot != activeSnapshot && createdDuringSnapshot != activeSnapshot) {
+            snapshotCopy = copy();
+            snapshot = activeSnapshot;
+        }
+    }
+
+    /**
+     * @return true if the state was created while the given snapshot was being written, and so has no state for it.
+     */
+    boolean isCreatedDuring(long activeSnapshot) {
+        return createdDuringSnapshot == activeSnapshot;
+    }
+
+    /**
+     * Writes the state as it was when the given snapshot started to it.
+     */
+    synchronized void writeTo(SnapshotOutput out, long activeSnapshot) throws IOException {
+        UserWindow state = snapshot == activeSnapshot && snapshotCopy != null ? snapshotCopy : this;
+        snapshot = activeSnapshot;
+        snapshotCopy = null;
+        state.writeTo(out);
+    }
+
+    /**
+     * Copies everything {@link #writeTo(SnapshotOutput)} writes; the copy is only ever written.
+     */
+    private UserWindow copy() {
+        UserWindow copy = new UserWindow(bucketMillis, maxLocations, coveredSinceMillis, createdDuringSnapshot);
+        copy.locationsCoveredSinceMillis = locationsCoveredSinceMillis;
+        copy.lastSeenMillis = lastSeenMillis;
+        copy.lastLatitude = lastLatitude;
+        copy.lastLongitude = lastLongitude;
+        copy.transactionTimes = Arrays.copyOfRange(transactionTimes, transactionStart, transactionEnd);
+        copy.transactionAmounts = Arrays.copyOfRange(transactionAmounts, transactionStart, transactionEnd);
+        copy.transactionIds = Arrays.copyOfRange(transactionIds, transactionStart, transactionEnd);
+        copy.transactionEnd = transactionEnd - transactionStart;
+        copy.deviceLastSeen.putAll(deviceLastSeen);
+        copy.creditCardLastSeen.putAll(creditCardLastSeen);
+        copy.deviceIdentifierLastSeen.putAll(deviceIdentifierLastSeen);
+        copy.creditCardNumberLastSeen.putAll(creditCardNumberLastSeen);
+        copy.locationTimes = Arrays.copyOfRange(locationTimes, locationStart, locationEnd);
+        copy.locationLatitudes = Arrays.copyOfRange(locationLatitudes, locationStart, locationEnd);
+        copy.locationLongitudes = Arrays.copyOfRange(locationLongitudes, locationStart, locationEnd);
+        copy.locationEnd = locationEnd - locationStart;
+        return copy;
+    }
+
+    /**
+     * Writes the state to a snapshot, from which {@link #readFrom(ByteBuffer, long, int)} reads it back.
+     */
+    private synchronized void writeTo(SnapshotOutput out) throws IOException {
+        int transactions = transactionEnd - transactionStart;
+        int locations = locationEnd - locationStart;
+        out.ensure(5 * Long.BYTES + Integer.BYTES);
+        out.putLong(coveredSinceMillis).putLong(locationsCoveredSinceMillis).putLong(lastSeenMillis)
+           .putDouble(lastLatitude).putDouble(lastLongitude);
+        out.putInt(transactions);
+        for (int i = transactionStart; i < transactionEnd; i++) {
+            // The ID is written as its length in bytes (-1 for none) followed by the bytes
+            byte[] id = transactionIds[i] != null ? transactionIds[i].getBytes(StandardCharsets.UTF_8) : null;
+            out.ensure(2 * Long.BYTES + Integer.BYTES + (id != null ? id.length : 0))
+               .putLong(transactionTimes[i]).putDouble(transactionAmounts[i]).putInt(id != null ? id.length : -1);
+            if (id != null) {
+                out.putBytes(id);
+            }
+        }
+        out.ensure(2 * Integer.BYTES + (deviceLastSeen.size() + creditCardLastSeen.size()) * 2 * Long.BYTES);
+        writeLastSeen(out, deviceLastSeen);
+        writeLastSeen(out, creditCardLastSeen);
+        writeIdentifiersLastSeen(out, deviceIdentifierLastSeen);
+        writeIdentifiersLastSeen(out, creditCardNumberLastSeen);
+        out.ensure(Integer.BYTES + locations * 3 * Long.BYTES);
+        out.putInt(locations);
+        for (int i = locationStart; i < locationEnd; i++) {
+            out.putLong(locationTimes[i]).putDouble(locationLatitudes[i]).putDouble(locationLongitudes[i]);
+        }
+    }
+
+    /**
+     * Reads a state written by {@link #writeTo(SnapshotOutput)}.
+     */
+    static UserWindow readFrom(ByteBuffer in, long bucketMillis, int maxLocations) {
+        UserWindow window = new UserWindow(bucketMillis, maxLocations, in.getLong(), 0);
+        window.locationsCoveredSinceMillis = in.getLong();
+        window.lastSeenMillis = in.getLong();
+        window.lastLatitude = in.getDouble();
+        window.lastLongitude = in.getDouble();
+        int transactions = in.getInt();
+        for (int i = 0; i < transactions; i++) {
+            long timeMillis = in.getLong();
+            double amount = in.getDouble();
+            int idLength = in.getInt();
+            String transactionId = null;
+            if (idLength >= 0) {
+                byte[] id = new byte[idLength];
+                in.get(id);
+                transactionId = new String(id, StandardCharsets.UTF_8);
+                window.recordedIds.add(transactionId);
+            }
+            window.addToBucket(Math.floorDiv(timeMillis, bucketMillis), amount);
+            window.addTransaction(timeMillis, amount, transactionId);
+        }
+        readLastSeen(in, window.deviceLastSeen);
+        readLastSeen(in, window.creditCardLastSeen);
+        readIdentifiersLastSeen(in, window.deviceIdentifierLastSeen);
+        readIdentifiersLastSeen(in, window.creditCardNumberLastSeen);
+        int locations = in.getInt();
+        for (int i = 0; i < locations; i++) {
+            window.addLocation(in.getLong(), in.getDouble(), in.getDouble());
+        }
+        return window;
+    }
+
+    private static void writeLastSeen(SnapshotOutput out, Map<Long, Long> lastSeen) {
+        out.putInt(lastSeen.size());
+        for (Map.Entry<Long, Long> entry : lastSeen.entrySet()) {
+            out.putLong(entry.getKey()).putLong(entry.getValue());
+        }
+    }
+
+    private static void readLastSeen(ByteBuffer in, Map<Long, Long> lastSeen) {
+        int size = in.getInt();
+        for (int i = 0; i < size; i++) {
+            lastSeen.put(in.getLong(), in.getLong());
+        }
+    }
+
+    private static void writeIdentifiersLastSeen(SnapshotOutput out, Map<String, Long> lastSeen) throws IOException {
+        out.ensure(Integer.BYTES).putInt(lastSeen.size());
+        for (Map.Entry<String, Long> entry : lastSeen.entrySet()) {
+            byte[] identifier = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            out.ensure(Integer.BYTES + identifier.length + Long.BYTES).putInt(identifier.length).putBytes(identifier).putLong(entry.getValue());
+        }
+    }
+
+    private static void readIdentifiersLastSeen(ByteBuffer in, Map<String, Long> lastSeen) {
+        int size = in.getInt();
+        for (int i = 0; i < size; i++) {
+            byte[] identifier = new byte[in.getInt()];
+            in.get(identifier);
+            lastSeen.put(new String(identifier, StandardCharsets.UTF_8), in.getLong());
+        }
+    }
+
+    private void addToBucket(long bucketId, double amount) {
+        int i = bucketEnd - 1;
+        while (i >= bucketStart && bucketIds[i] > bucketId) {
+            i--;
+        }
+        if (i >= bucketStart && bucketIds[i] == bucketId) {
+            bucketCounts[i]++;
+            bucketAmounts[i] += amount;
+            return;
+        }
+
+        // Insert a new bucket after position i, shifting later (out-of-order) buckets to the right
+        if (bucketEnd == bucketIds.length) {
+            int shift = bucketStart;
+            compactOrGrowBuckets();
+            i -= shift;
+        }
+        int position = i + 1;
+        int tail = bucketEnd - position;
+        if (tail > 0) {
+            System.arraycopy(bucketIds, position, bucketIds, position + 1, tail);
+            System.arraycopy(bucketCounts, position, bucketCounts, position + 1, tail);
+            System.arraycopy(bucketAmounts, position, bucketAmounts, position + 1, tail);
+        }
+        bucketIds[position] = bucketId;
+        bucketCounts[position] = 1;
+        bucketAmounts[position] = amount;
+        bucketEnd++;
+    }
+
+    private void compactOrGrowBuckets() {
+        int size = bucketEnd - bucketStart;
+        int capacity = size < bucketIds.length / 2 ? bucketIds.length : bucketIds.length * 2;
+        bucketIds = moveTo(bucketIds, bucketStart, size, capacity);
+        bucketCounts = moveTo(bucketCounts, bucketStart, size, capacity);
+        bucketAmounts = moveTo(bucketAmounts, bucketStart, size, capacity);
+        bucketStart = 0;
+        bucketEnd = size;
+    }
+
+    private void addTransaction(long timeMillis, double amount, String transactionId) {
+        int position = transactionEnd;
+        while (position > transactionStart && transactionTimes[position - 1] > timeMillis) {
+            position--;
+        }
+
+        // Insert at the position, shifting later (out-of-order) transactions to the right
+        if (transactionEnd == transactionTimes.length) {
+            int shift = transactionStart;
+            int size = transactionEnd - transactionStart;
+            int capacity = size < transactionTimes.length / 2 ? transactionTimes.length : transactionTimes.length * 2;
+            transactionTimes = moveTo(transactionTimes, transactionStart, size, capacity);
+            transactionAmounts = moveTo(transactionAmounts, transactionStart, size, capacity);
+            transactionIds = moveTo(transactionIds, transactionStart, size, capacity);
+            transactionStart = 0;
+            transactionEnd = size;
+            position -= shift;
+        }
+        int tail = transactionEnd - position;
+        if (tail > 0) {
+            System.arraycopy(transactionTimes, position, transactionTimes, position + 1, tail);
+            System.arraycopy(transactionAmounts, position, transactionAmounts, position + 1, tail);
+            System.arraycopy(transactionIds, position, transactionIds, position + 1, tail);
+        }
+        transactionTimes[position] = timeMillis;
+        transactionAmounts[position] = amount;
+        transactionIds[position] = transactionId;
+        transactionEnd++;
+    }
+
+    /**
+     * @return The position of the first transaction at or after {@code timeMillis}.
+     */
+    private int firstTransactionAt(long timeMillis) {
+        int low = transactionStart;
+        int high = transactionEnd;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (transactionTimes[middle] < timeMillis) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void addLocation(long timeMillis, double latitude, double longitude) {
+        if (locationEnd - locationStart == maxLocations) {
+            // Windows reaching back to the dropped location are no longer covered
+            locationsCoveredSinceMillis = Math.max(locationsCoveredSinceMillis, locationTimes[locationStart] + 1);
+            locationStart++;
+        }
+        if (locationEnd == locationTimes.length) {
+            int size = locationEnd - locationStart;
+            int capacity = Math.min(maxLocations, size < locationTimes.length / 2 ? locationTimes.length : locationTimes.length * 2);
+            capacity = Math.max(capacity, size + 1);
+            locationTimes = moveTo(locationTimes, locationStart, size, capacity);
+            locationLatitudes = moveTo(locationLatitudes, locationStart, size, capacity);
+            locationLongitudes = moveTo(locationLongitudes, locationStart, size, capacity);
+            locationStart = 0;
+            locationEnd = size;
+        }
+        locationTimes[locationEnd] = timeMillis;
+        locationLatitudes[locationEnd] = latitude;
+        locationLongitudes[locationEnd] = longitude;
+        locationEnd++;
+    }
+
+    private static int countSince(Map<Long, Long> lastSeen, long sinceMillis) {
+        int count = 0;
+        for (long seen : lastSeen.values()) {
+            if (seen >= sinceMillis) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static String[] seenSince(Map<String, Long> lastSeen, long sinceMillis) {
+        return lastSeen.entrySet().stream()
+                       .filter(entry -> entry.getValue() >= sinceMillis)
+                       .map(Map.Entry::getKey)
+                       .toArray(String[]::new);
+    }
+
+    private static void removeOlderThan(Map<?, Long> lastSeen, long horizonMillis) {
+        Iterator<Long> iterator = lastSeen.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() < horizonMillis) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static long[] moveTo(long[] source, int from, int size, int capacity) {
+        long[] target = capacity == source.length ? source : new long[capacity];
+        System.arraycopy(source, from, target, 0, size);
+        return target;
+    }
+
+    private static int[] moveTo(int[] source, int from, int size, int capacity) {
+        int[] target = capacity == source.length ? source : new int[capacity];
+        System.arraycopy(source, from, target, 0, size);
+        return target;
+    }
+
+    private static double[] moveTo(double[] source, int from, int size, int capacity) {
+        double[] target = capacity == source.length ? source : new double[capacity];
+        System.arraycopy(source, from, target, 0, size);
+        return target;
+    }
+
+    private static String[] moveTo(String[] source, int from, int size, int capacity) {
+        String[] target = capacity == source.length ? source : new String[capacity];
+        System.arraycopy(source, from, target, 0, size);
+        if (target == source) {
+            // Release the IDs left behind the moved ones
+            Arrays.fill(target, size, Math.min(from + size, target.length), null);
+        }
+        return target;
+    }
+}
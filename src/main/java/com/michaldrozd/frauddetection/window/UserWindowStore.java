@@ -0,0 +1,443 @@
+package com.michaldrozd.frauddetection.window;
+
+import com.michaldrozd.frauddetection.domain.Transaction;
+import com.michaldrozd.frauddetection.dto.WindowTransaction;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-process store of per-user sliding-window aggregates.
+ * <p>
+ * The store is fed with every ingested transaction via {@link #record(Long, Transaction)} and answers window
+ * aggregates from memory. A user's state only answers windows it fully covers: a user seen for the first time, or a
+ * window reaching further back than the state (or the configured horizon) goes, is a cold miss, which the caller
+ * resolves by loading the window from the repository and handing it over via {@link #seed(Long, LocalDateTime, List)}.
+ * Transactions recorded between {@link #beginSeed(Long)} and the seed are buffered and added to the seeded state, so
+ * that no transaction is lost when it is written concurrently with the load. A state counts every {@code transactionId}
+ * only once, so a transaction the repository already returned to a seed, including a seed that started after the
+ * transaction was committed but before it was recorded, is not counted twice.
+ * <p>
+ * The store is only accurate if every transaction written to the graph is also recorded here, so it is disabled by
+ * default and must be enabled together with an ingestion path.
+ * <p>
+ * The whole state can be written to a snapshot file by {@link #saveSnapshot(Path, long)} and restored from it by
+ * {@link #restoreSnapshot(Path)}, which maps the file instead of reading it through the heap.
+ */
+@Slf4j
+@Component
+public class UserWindowStore {
+
+    private static final long SNAPSHOT_MAGIC = 0x4644574e444f5753L;
+    private static final int SNAPSHOT_VERSION = 4;
+    private static final int SNAPSHOT_BUFFER_SIZE = 1 << 20;
+
+    private final Map<Long, UserWindow> windows = new ConcurrentHashMap<>();
+    // Users whose state is being loaded from the repository, with the transactions recorded in the meantime
+    private final Map<Long, PendingSeed> pendingSeeds = new ConcurrentHashMap<>();
+    // The snapshot being written, 0 while none is; states about to change keep a copy of themselves for it
+    private volatile long activeSnapshot;
+    private final AtomicLong snapshots = new AtomicLong();
+
+    private final boolean enabled;
+    private final long horizonMillis;
+    private final long bucketMillis;
+    private final int maxLocations;
+
+    public UserWindowStore(@Value("${fraud-detection.window-store.enabled:false}") boolean enabled,
+                           @Value("${fraud-detection.window-store.horizon-minutes:1440}") long horizonMinutes,
+                           @Value("${fraud-detection.window-store.bucket-seconds:60}") long bucketSeconds,
+                           @Value("${fraud-detection.window-store.max-locations:512}") int maxLocations) {
+        this.enabled = enabled;
+        this.horizonMillis = horizonMinutes * 60_000;
+        this.bucketMillis = bucketSeconds * 1000;
+        this.maxLocations = maxLocations;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records an ingested transaction in its user's window.
+     * <p>
+     * Transactions of users without state are ignored: their window is loaded from the repository on the first check,
+     * which already contains this transaction. While the state of the user is being loaded, the transaction is also
+     * buffered for the seed. A transaction already in the user's state is skipped.
+     *
+     * @param userId      The ID of the User who performed the transaction.
+     * @param transaction The ingested transaction.
+     */
+    public void record(Long userId, Transaction transaction) {
+        if (!enabled || userId == null || transaction.getTransactionDate() == null) {
+            return;
+        }
+        pendingSeeds.compute(userId, (id, pending) -> {
+            if (pending != null) {
+                pending.recorded.add(transaction);
+            }
+            UserWindow window = windows.get(id);
+            if (window != null) {
+                recordInto(window, transaction);
+            }
+            return pending;
+        });
+    }
+
+    /**
+     * Records an ingested transaction and aggregates the window ending with it, for scoring on ingest.
+     * <p>
+     * Unlike {@link #record(Long, Transaction)}, a user without state gets a new one, covering transactions from this
+     * one on. Until the state covers the whole window, the aggregate only contains the covered part of it, which
+     * {@link #covers(Long, long)} tells apart.
+     *
+     * @param userId       The ID of the User who performed the transaction.
+     * @param transaction  The ingested transaction.
+     * @param windowMillis The length of the window, ending at the time of the transaction.
+     *
+     * @return The aggregate of the covered part of the window.
+     */
+    public WindowAggregate recordAndAggregate(Long userId, Transaction transaction, long windowMillis) {
+        long timeMillis = WindowAggregate.toEpochMillis(transaction.getTransactionDate());
+        long horizon = System.currentTimeMillis() - horizonMillis;
+        UserWindow[] window = new UserWindow[1];
+        pendingSeeds.compute(userId, (id, pending) -> {
+            if (pending != null) {
+                pending.recorded.add(transaction);
+            }
+            window[0] = windows.computeIfAbsent(id, key -> new UserWindow(bucketMillis, maxLocations, Math.max(timeMillis, horizon), activeSnapshot));
+            recordInto(window[0], transaction);
+            return pending;
+        });
+        return window[0].aggregateCovered(timeMillis - windowMillis);
+    }
+
+    /**
+     * @return true if the in-memory state of the user covers all transactions since the given time.
+     */
+    public boolean covers(Long userId, long sinceMillis) {
+        UserWindow window = windows.get(userId);
+        return window != null && window.covers(sinceMillis);
+    }
+
+    /**
+     * Returns the aggregate of the user's transactions since the given time, if the in-memory state covers it.
+     *
+     * @param userId            The ID of the User.
+     * @param dateTimeThreshold The start of the window.
+     *
+     * @return The aggregate, or an empty optional on a cold miss.
+     */
+    public Optional<WindowAggregate> aggregate(Long userId, LocalDateTime dateTimeThreshold) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        UserWindow window = windows.get(userId);
+        if (window == null) {
+            return Optional.empty();
+        }
+        window.retainFor(activeSnapshot);
+        window.expire(System.currentTimeMillis() - horizonMillis);
+        return Optional.ofNullable(window.aggregate(WindowAggregate.toEpochMillis(dateTimeThreshold)));
+    }
+
+    /**
+     * Starts buffering the transactions recorded for the user, before loading the user's window from the repository
+     * after a cold miss. Must be followed by {@link #seed(Long, LocalDateTime, List)}, or by {@link #cancelSeed(Long)}
+     * if the load fails.
+     *
+     * @param userId The ID of the User.
+     */
+    public void beginSeed(Long userId) {
+        if (!enabled) {
+            return;
+        }
+        pendingSeeds.compute(userId, (id, pending) -> {
+            PendingSeed seed = pending != null ? pending : new PendingSeed();
+            seed.seeds++;
+            return seed;
+        });
+    }
+
+    /**
+     * Stops buffering the transactions recorded for the user after a failed load.
+     *
+     * @param userId The ID of the User.
+     */
+    public void cancelSeed(Long userId) {
+        pendingSeeds.computeIfPresent(userId, (id, pending) -> --pending.seeds == 0 ? null : pending);
+    }
+
+    /**
+     * Replaces the user's state with the transactions loaded from the repository after a cold miss, together with the
+     * transactions recorded since {@link #beginSeed(Long)} that the repository did not return.
+     *
+     * @param userId            The ID of the User.
+     * @param dateTimeThreshold The start of the window the transactions were loaded for.
+     * @param transactions      All of the user's transactions since {@code dateTimeThreshold}.
+     */
+    public void seed(Long userId, LocalDateTime dateTimeThreshold, List<Transaction> transactions) {
+        if (!enabled) {
+            return;
+        }
+        long horizon = System.currentTimeMillis() - horizonMillis;
+        UserWindow window = new UserWindow(bucketMillis, maxLocations, Math.max(WindowAggregate.toEpochMillis(dateTimeThreshold), horizon), activeSnapshot);
+        for (Transaction transaction : transactions) {
+            if (transaction.getTransactionDate() != null) {
+                recordInto(window, transaction);
+            }
+        }
+        install(userId, window);
+    }
+
+    /**
+     * Same as {@link #seed(Long, LocalDateTime, List)}, for transactions loaded as flat projections.
+     */
+    public void seedFromProjection(Long userId, LocalDateTime dateTimeThreshold, List<WindowTransaction> transactions) {
+        if (!enabled) {
+            return;
+        }
+        long horizon = System.currentTimeMillis() - horizonMillis;
+        UserWindow window = new UserWindow(bucketMillis, maxLocations, Math.max(WindowAggregate.toEpochMillis(dateTimeThreshold), horizon), activeSnapshot);
+        for (WindowTransaction transaction : transactions) {
+            recordInto(window, transaction);
+        }
+        install(userId, window);
+    }
+
+    /**
+     * Adds the transactions recorded while the seed was pending to the seeded state and makes it the user's state. The
+     * state skips those the repository already returned.
+     */
+    private void install(Long userId, UserWindow window) {
+        pendingSeeds.compute(userId, (id, pending) -> {
+            if (pending == null) {
+                windows.put(id, window);
+                return null;
+            }
+            for (Transaction transaction : pending.recorded) {
+                recordInto(window, transaction);
+            }
+            windows.put(id, window);
+            return --pending.seeds == 0 ? null : pending;
+        });
+    }
+
+    /**
+     * Returns the last known location of the user as {@code [latitude, longitude]}, if any.
+     */
+    public Optional<double[]> lastSeenLocation(Long userId) {
+        UserWindow window = windows.get(userId);
+        if (window == null || Double.isNaN(window.getLastLatitude())) {
+            return Optional.empty();
+        }
+        return Optional.of(new double[]{window.getLastLatitude(), window.getLastLongitude()});
+    }
+
+    /**
+     * Records a transaction replayed from the repository after restoring a snapshot. Like
+     * {@link #record(Long, Transaction)}, transactions of users without state, or already in it, are ignored.
+     */
+    public void replay(WindowTransaction transaction) {
+        UserWindow window = windows.get(transaction.getUserId());
+        if (window != null && transaction.getTransactionDate() != null) {
+            recordInto(window, transaction);
+        }
+    }
+
+    public int size() {
+        return windows.size();
+    }
+
+    /**
+     * Drops the state of all users.
+     */
+    public void clear() {
+        windows.clear();
+    }
+
+    /**
+     * Starts a snapshot: from now on, the state of every user is written by {@link #saveSnapshot(Path, long)} as it is
+     * now, however it changes meanwhile. Must be called while no transactions are recorded, right when the watermark
+     * of the snapshot is taken.
+     */
+    public void beginSnapshot() {
+        activeSnapshot = snapshots.incrementAndGet();
+    }
+
+    /**
+     * Writes the state of all users to a snapshot file, replacing it atomically.
+     * <p>
+     * The states are written as they were at {@link #beginSnapshot()}, or when this method is called if no snapshot
+     * was begun, and each of them is only locked while it is copied, so transactions keep being recorded. Users whose
+     * state was created after the snapshot started are left out, and loaded from the repository after a restore. One
+     * snapshot is written at a time.
+     * <pre>
+     * header:  magic, version, bucket length, max locations, watermark
+     * users:   1, user ID, state (see UserWindow) - for every user
+     * trailer: 0, number of users, CRC32 of everything before it
+     * </pre>
+     *
+     * @param path      The snapshot file.
+     * @param watermark The position in the ingested transactions up to which all of them are in the state.
+     *
+     * @return The number of users written.
+     */
+    public int saveSnapshot(Path path, long watermark) throws IOException {
+        if (activeSnapshot == 0) {
+            beginSnapshot();
+        }
+        long snapshot = activeSnapshot;
+        Path temporary = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        int users = 0;
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                SnapshotOutput out = new SnapshotOutput(channel, SNAPSHOT_BUFFER_SIZE);
+                out.ensure(3 * Long.BYTES + 2 * Integer.BYTES)
+                   .putLong(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putLong(bucketMillis).putInt(maxLocations).putLong(watermark);
+                for (Map.Entry<Long, UserWindow> entry : windows.entrySet()) {
+                    if (entry.getValue().isCreatedDuring(snapshot)) {
+                        continue;
+                    }
+                    out.ensure(Integer.BYTES + Long.BYTES).putInt(1).putLong(entry.getKey());
+                    entry.getValue().writeTo(out, snapshot);
+                    users++;
+                }
+                out.ensure(2 * Integer.BYTES).putInt(0).putInt(users);
+                out.flush();
+                out.ensure(Long.BYTES).putLong(out.checksum());
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            activeSnapshot = 0;
+            Files.deleteIfExists(temporary);
+        }
+        return users;
+    }
+
+    /**
+     * Replaces the state of all users with a snapshot written by {@link #saveSnapshot(Path, long)}.
+     * <p>
+     * Snapshots written with a different bucket length or number of locations are ignored, as are corrupt ones, and
+     * users idle for longer than the horizon are left out.
+     *
+     * @return The watermark of the snapshot, or an empty optional if there is no usable snapshot.
+     */
+    public OptionalLong restoreSnapshot(Path path) throws IOException {
+        if (!enabled || !Files.exists(path)) {
+            return OptionalLong.empty();
+        }
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (in.capacity() < Long.BYTES || !hasValidChecksum(in)) {
+            log.warn("Ignoring the corrupt snapshot {}", path);
+            return OptionalLong.empty();
+        }
+        if (in.getLong() != SNAPSHOT_MAGIC || in.getInt() != SNAPSHOT_VERSION) {
+            log.warn("Ignoring the snapshot {} of an unknown format", path);
+            return OptionalLong.empty();
+        }
+        if (in.getLong() != bucketMillis || in.getInt() != maxLocations) {
+            log.warn("Ignoring the snapshot {} taken with different window-store settings", path);
+            return OptionalLong.empty();
+        }
+        long watermark = in.getLong();
+        long horizon = System.currentTimeMillis() - horizonMillis;
+        Map<Long, UserWindow> restored = new HashMap<>();
+        while (in.getInt() == 1) {
+            long userId = in.getLong();
+            UserWindow window = UserWindow.readFrom(in, bucketMillis, maxLocations);
+            if (!window.isIdleSince(horizon)) {
+                window.expire(horizon);
+                restored.put(userId, window);
+            }
+        }
+        windows.clear();
+        windows.putAll(restored);
+        return OptionalLong.of(watermark);
+    }
+
+    private static boolean hasValidChecksum(ByteBuffer in) {
+        int checksumOffset = in.capacity() - Long.BYTES;
+        CRC32 checksum = new CRC32();
+        checksum.update(in.slice(0, checksumOffset));
+        return checksum.getValue() == in.getLong(checksumOffset);
+    }
+
+    /**
+     * Expires old buckets and drops users without any transaction inside the horizon.
+     */
+    @Scheduled(fixedDelayString = "${fraud-detection.window-store.eviction-interval-ms:60000}")
+    public void evictExpired() {
+        if (!enabled) {
+            return;
+        }
+        long horizon = System.currentTimeMillis() - horizonMillis;
+        int before = windows.size();
+        windows.values().removeIf(window -> window.isIdleSince(horizon));
+        long snapshot = activeSnapshot;
+        windows.values().forEach(window -> {
+            window.retainFor(snapshot);
+            window.expire(horizon);
+        });
+        log.debug("Evicted {} idle user windows, {} remaining", before - windows.size(), windows.size());
+    }
+
+    private void recordInto(UserWindow window, Transaction transaction) {
+        window.retainFor(activeSnapshot);
+        window.record(
+            transaction.getTransactionId(),
+            WindowAggregate.toEpochMillis(transaction.getTransactionDate()),
+            transaction.getAmount() != null ? transaction.getAmount() : 0,
+            transaction.getDevice() != null ? transaction.getDevice().getId() : null,
+            transaction.getCreditCard() != null ? transaction.getCreditCard().getId() : null,
+            transaction.getDevice() != null ? transaction.getDevice().getDeviceId() : null,
+            transaction.getCreditCard() != null ? transaction.getCreditCard().getNumber() : null,
+            transaction.getDevice() != null ? transaction.getDevice().getLatitude() : null,
+            transaction.getDevice() != null ? transaction.getDevice().getLongitude() : null
+        );
+    }
+
+    private void recordInto(UserWindow window, WindowTransaction transaction) {
+        window.retainFor(activeSnapshot);
+        window.record(
+            transaction.getTransactionId(),
+            WindowAggregate.toEpochMillis(transaction.getTransactionDate()),
+            transaction.getAmount() != null ? transaction.getAmount() : 0,
+            transaction.getDeviceId(),
+            transaction.getCreditCardId(),
+            transaction.getDeviceIdentifier(),
+            transaction.getCreditCardNumber(),
+            transaction.getLatitude(),
+            transaction.getLongitude()
+        );
+    }
+
+    private static class PendingSeed {
+        private final List<Transaction> recorded = new ArrayList<>();
+        private int seeds;
+    }
+}
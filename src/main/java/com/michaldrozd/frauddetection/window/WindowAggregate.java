@@ -0,0 +1,195 @@
+package com.michaldrozd.frauddetection.window;
+
+import com.michaldrozd.frauddetection.domain.Device;
+import com.michaldrozd.frauddetection.domain.Transaction;
+import com.michaldrozd.frauddetection.dto.WindowTransaction;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import lombok.Getter;
+
+/**
+ * Aggregated view of a user's transactions within a time window.
+ * <p>
+ * Holds everything the fraud rules need (count, amount sum, distinct devices and credit cards) plus the
+ * transaction locations as primitive arrays, so the rules never have to touch the entity graph. The {@code deviceId}s
+ * of the Devices and the numbers of the Credit Cards are kept for the blocklist.
+ */
+@Getter
+public class WindowAggregate {
+
+    private static final long[] NO_TIMESTAMPS = new long[0];
+    private static final double[] NO_COORDINATES = new double[0];
+    private static final String[] NO_IDENTIFIERS = new String[0];
+
+    private final long transactionCount;
+    private final double totalAmount;
+    private final int distinctDevices;
+    private final int distinctCreditCards;
+
+    /**
+     * Transaction times in epoch milliseconds, aligned with {@link #latitudes} and {@link #longitudes}.
+     */
+    private final long[] timestamps;
+    private final double[] latitudes;
+    private final double[] longitudes;
+
+    private final String[] deviceIdentifiers;
+    private final String[] creditCardNumbers;
+
+    public WindowAggregate(long transactionCount, double totalAmount, int distinctDevices, int distinctCreditCards,
+                           long[] timestamps, double[] latitudes, double[] longitudes) {
+        this(transactionCount, totalAmount, distinctDevices, distinctCreditCards, timestamps, latitudes, longitudes, NO_IDENTIFIERS, NO_IDENTIFIERS);
+    }
+
+    public WindowAggregate(long transactionCount, double totalAmount, int distinctDevices, int distinctCreditCards,
+                           long[] timestamps, double[] latitudes, double[] longitudes, String[] deviceIdentifiers,
+                           String[] creditCardNumbers) {
+        this.transactionCount = transactionCount;
+        this.totalAmount = totalAmount;
+        this.distinctDevices = distinctDevices;
+        this.distinctCreditCards = distinctCreditCards;
+        this.timestamps = timestamps;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.deviceIdentifiers = deviceIdentifiers;
+        this.creditCardNumbers = creditCardNumbers;
+    }
+
+    /**
+     * Creates an aggregate without location data, e.g. when only the counters are known.
+     */
+    public static WindowAggregate withoutLocations(long transactionCount, double totalAmount, int distinctDevices, int distinctCreditCards) {
+        return new WindowAggregate(transactionCount, totalAmount, distinctDevices, distinctCreditCards, NO_TIMESTAMPS, NO_COORDINATES, NO_COORDINATES);
+    }
+
+    /**
+     * Aggregates a list of transactions loaded from the repository in a single pass.
+     * <p>
+     * Transactions without a device or credit card simply do not contribute to the respective distinct count, and
+     * only transactions whose device has both coordinates contribute a location.
+     *
+     * @param transactions The transactions to aggregate.
+     *
+     * @return The aggregate of the given transactions.
+     */
+    public static WindowAggregate fromTransactions(List<Transaction> transactions) {
+        int size = transactions.size();
+        double totalAmount = 0;
+        Set<Long> devices = new HashSet<>();
+        Set<Long> creditCards = new HashSet<>();
+        Set<String> deviceIdentifiers = new HashSet<>();
+        Set<String> creditCardNumbers = new HashSet<>();
+        long[] timestamps = new long[size];
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        int locations = 0;
+
+        for (Transaction transaction : transactions) {
+            if (transaction.getAmount() != null) {
+                totalAmount += transaction.getAmount();
+            }
+            if (transaction.getCreditCard() != null) {
+                creditCards.add(transaction.getCreditCard().getId());
+                addIdentifier(creditCardNumbers, transaction.getCreditCard().getNumber());
+            }
+            Device device = transaction.getDevice();
+            if (device == null) {
+                continue;
+            }
+            devices.add(device.getId());
+            addIdentifier(deviceIdentifiers, device.getDeviceId());
+            if (device.getLatitude() != null && device.getLongitude() != null && transaction.getTransactionDate() != null) {
+                timestamps[locations] = toEpochMillis(transaction.getTransactionDate());
+                latitudes[locations] = device.getLatitude();
+                longitudes[locations] = device.getLongitude();
+                locations++;
+            }
+        }
+
+        if (locations < size) {
+            timestamps = Arrays.copyOf(timestamps, locations);
+            latitudes = Arrays.copyOf(latitudes, locations);
+            longitudes = Arrays.copyOf(longitudes, locations);
+        }
+        return new WindowAggregate(size, totalAmount, devices.size(), creditCards.size(), timestamps, latitudes, longitudes,
+                                   deviceIdentifiers.toArray(String[]::new), creditCardNumbers.toArray(String[]::new));
+    }
+
+    /**
+     * Aggregates the flat projections of a user's transactions, keeping only those at or after the given time.
+     *
+     * @param transactions      The projected transactions, possibly loaded for a wider window.
+     * @param dateTimeThreshold The start of the window to aggregate.
+     *
+     * @return The aggregate of the transactions within the window.
+     */
+    public static WindowAggregate fromWindowTransactions(List<WindowTransaction> transactions, LocalDateTime dateTimeThreshold) {
+        int size = transactions.size();
+        long count = 0;
+        double totalAmount = 0;
+        Set<Long> devices = new HashSet<>();
+        Set<Long> creditCards = new HashSet<>();
+        Set<String> deviceIdentifiers = new HashSet<>();
+        Set<String> creditCardNumbers = new HashSet<>();
+        long[] timestamps = new long[size];
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        int locations = 0;
+
+        for (WindowTransaction transaction : transactions) {
+            if (transaction.getTransactionDate().isBefore(dateTimeThreshold)) {
+                continue;
+            }
+            count++;
+            if (transaction.getAmount() != null) {
+                totalAmount += transaction.getAmount();
+            }
+            if (transaction.getDeviceId() != null) {
+                devices.add(transaction.getDeviceId());
+            }
+            if (transaction.getCreditCardId() != null) {
+                creditCards.add(transaction.getCreditCardId());
+            }
+            addIdentifier(deviceIdentifiers, transaction.getDeviceIdentifier());
+            addIdentifier(creditCardNumbers, transaction.getCreditCardNumber());
+            if (transaction.getLatitude() != null && transaction.getLongitude() != null) {
+                timestamps[locations] = toEpochMillis(transaction.getTransactionDate());
+                latitudes[locations] = transaction.getLatitude();
+                longitudes[locations] = transaction.getLongitude();
+                locations++;
+            }
+        }
+
+        if (locations < size) {
+            timestamps = Arrays.copyOf(timestamps, locations);
+            latitudes = Arrays.copyOf(latitudes, locations);
+            longitudes = Arrays.copyOf(longitudes, locations);
+        }
+        return new WindowAggregate(count, totalAmount, devices.size(), creditCards.size(), timestamps, latitudes, longitudes,
+                                   deviceIdentifiers.toArray(String[]::new), creditCardNumbers.toArray(String[]::new));
+    }
+
+    /**
+     * @return The number of transactions that carry a location.
+     */
+    public int getLocationCount() {
+        return timestamps.length;
+    }
+
+    private static void addIdentifier(Set<String> identifiers, String identifier) {
+        if (identifier != null) {
+            identifiers.add(identifier);
+        }
+    }
+
+    /**
+     * Converts a transaction date (stored as a zone-less {@link LocalDateTime}) to epoch milliseconds in the system zone.
+     */
+    public static long toEpochMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,22 @@
+package com.michaldrozd.frauddetection.window;
+
+/**
+ * How a user's window is loaded from the repository after a cold miss of the {@link UserWindowStore}.
+ */
+public enum WindowQueryMode {
+    /**
+     * Loads the windowed transactions as entities and aggregates them in memory. Seeds the {@link UserWindowStore}.
+     */
+    ENTITIES,
+    /**
+     * Aggregates the window on the server and only transfers the aggregate. Cannot seed the {@link UserWindowStore}.
+     */
+    AGGREGATE,
+    /**
+     * Combines the minute and hour rollups of the window with the transactions of its partial edge minutes, so the
+     * number of records read does not grow with the user's transactions. Like the other modes, it only counts the
+     * transactions conducted with a Device, so it gives the same aggregate as {@link #ENTITIES}, but cannot seed the
+     * {@link UserWindowStore}. Windows not covered by the rollups are loaded as in {@link #ENTITIES}.
+     */
+    ROLLUP
+}
@@ -3,7 +3,8 @@ package com.michaldrozd.frauddetection;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+// Runs without a database
+@SpringBootTest(properties = "fraud-detection.schema.enabled=false")
 class TaskApplicationTests {
 
 	@Test
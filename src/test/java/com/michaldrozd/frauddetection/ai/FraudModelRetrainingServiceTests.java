@@ -0,0 +1,149 @@
+package com.michaldrozd.frauddetection.ai;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.spy;
+
+import com.michaldrozd.frauddetection.ai.FraudModelTrainer.TrainingResult;
+import com.michaldrozd.frauddetection.ai.TrainingDataLoader.TrainingData;
+import com.michaldrozd.frauddetection.ai.TrainingDataLoader.TrainingOptions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.IntPredicate;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+import smile.classification.LogisticRegression;
+
+class FraudModelRetrainingServiceTests {
+
+    private static final int ROWS = 1_000;
+    private static final TrainingOptions OPTIONS = new TrainingOptions(ROWS, ROWS, 0.3, false);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void keepsTheCurrentModelWhenTheRetrainedOneIsBelowTheMinimumAccuracy() throws IOException {
+        LogisticRegression current = train(write("current.csv", rows(i -> label(i) == 1)));
+        Random random = new Random(7);
+        FraudModelScorer scorer = scorer(write("training.csv", rows(i -> random.nextBoolean())), current);
+
+        new FraudModelRetrainingService(scorer, true, 0.8).retrain();
+
+        assertThat(scorer.getModel()).isSameAs(current);
+        assertThat(scorer.getModelPath()).doesNotExist();
+    }
+
+    @Test
+    void keepsTheCurrentModelWhenTheRetrainedOneIsLessAccurate() throws IOException {
+        LogisticRegression current = train(write("current.csv", rows(i -> label(i) == 1)));
+        // Mislabelled in the train split only, so the retrained model gets the held-out rows wrong and the current one right
+        FraudModelScorer scorer = scorer(splitLabelled("training.csv"), current);
+
+        new FraudModelRetrainingService(scorer, true, 0).retrain();
+
+        assertThat(scorer.getModel()).isSameAs(current);
+        assertThat(scorer.getModelPath()).doesNotExist();
+    }
+
+    @Test
+    void swapsInTheRetrainedModelOnlyOnceItIsTrainedAndEvaluated() throws IOException {
+        LogisticRegression current = train(write("current.csv", rows(i -> label(i) == 0)));
+        Path data = write("training.csv", rows(i -> label(i) == 1));
+        FraudModelScorer scorer = spy(scorer(data, current));
+
+        new FraudModelRetrainingService(scorer, true, 0.8).retrain();
+
+        InOrder order = inOrder(scorer);
+        order.verify(scorer).getTrainingOptions();
+        order.verify(scorer).getModel();
+        order.verify(scorer).swapModel(any());
+        LogisticRegression retrained = scorer.getModel();
+        assertThat(retrained).isNotSameAs(current);
+        TrainingResult evaluation = FraudModelTrainer.train(data.toString(), TrainingColumnSpec.fraudFeatures(), OPTIONS);
+        assertThat(FraudModelTrainer.accuracy(retrained, evaluation.getTestFeatures(), evaluation.getTestLabels(), evaluation.getTestRows()))
+            .isGreaterThan(0.9);
+        assertThat(scorer.getModelPath()).exists();
+    }
+
+    private FraudModelScorer scorer(Path trainingData, LogisticRegression current) {
+        FraudModelScorer scorer = new FraudModelScorer(true, directory.resolve("fraud-model.ser").toString(), trainingData.toString(), 0.5,
+            OPTIONS.getMaxTrainRows(), OPTIONS.getMaxTestRows(), OPTIONS.getTestFraction(), OPTIONS.isOffHeap(), new SimpleMeterRegistry());
+        scorer.swapModel(current);
+        return scorer;
+    }
+
+    private static LogisticRegression train(Path data) throws IOException {
+        return FraudModelTrainer.train(data.toString(), TrainingColumnSpec.fraudFeatures(), OPTIONS).getModel();
+    }
+
+    /**
+     * Writes training data whose held-out rows are labelled by the transaction count and whose train rows are labelled
+     * the opposite way, by keeping every row only in the variant the loader assigns to the wanted split.
+     */
+    private Path splitLabelled(String name) throws IOException {
+        Set<Integer> heldOutIfCorrect = heldOut(write("correct.csv", rows(i -> label(i) == 1)));
+        Set<Integer> heldOutIfInverted = heldOut(write("inverted.csv", rows(i -> label(i) == 0)));
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            if (heldOutIfCorrect.contains(i)) {
+                lines.add(row(i, label(i) == 1));
+            }
+            if (!heldOutIfInverted.contains(i)) {
+                lines.add(row(i, label(i) == 0));
+            }
+        }
+        return write(name, lines);
+    }
+
+    /**
+     * @return The rows the loader holds out for testing, identified by their amount.
+     */
+    private static Set<Integer> heldOut(Path data) throws IOException {
+        TrainingData loaded = new TrainingDataLoader(TrainingColumnSpec.fraudFeatures(), OPTIONS).load(data, 1);
+        Set<Integer> rows = new HashSet<>();
+        double[] row = new double[FraudFeatures.SIZE];
+        for (int i = 0; i < loaded.getTestRows(); i++) {
+            loaded.getTest().get(i, row);
+            rows.add((int) row[1] % 1_000);
+        }
+        return rows;
+    }
+
+    private static List<String> rows(IntPredicate fraudulent) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            lines.add(row(i, fraudulent.test(i)));
+        }
+        return lines;
+    }
+
+    // Transaction count of a row, the amount identifies it
+    private static int count(int row) {
+        return row % 20;
+    }
+
+    private static int label(int row) {
+        return count(row) >= 10 ? 1 : 0;
+    }
+
+    private static String row(int row, boolean fraudulent) {
+        return count(row) + "," + (count(row) * 1_000 + row) + ",1,1," + count(row) + ",60," + (fraudulent ? 1 : 0);
+    }
+
+    private Path write(String name, List<String> rows) throws IOException {
+        List<String> lines = new ArrayList<>(rows.size() + 1);
+        lines.add("transaction_count,total_amount,distinct_devices,distinct_credit_cards,location_count,time_window_minutes,is_fraud");
+        lines.addAll(rows);
+        return Files.write(directory.resolve(name), lines);
+    }
+}
@@ -0,0 +1,109 @@
+package com.michaldrozd.frauddetection.ai;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.michaldrozd.frauddetection.ai.FraudModelTrainer.TrainingResult;
+import com.michaldrozd.frauddetection.ai.TrainingDataLoader.TrainingData;
+import com.michaldrozd.frauddetection.ai.TrainingDataLoader.TrainingOptions;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TrainingDataLoaderTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void streamsDeclaredColumnsIntoBoundedSplits() throws IOException {
+        Path data = writeTrainingData(10_000);
+        TrainingDataLoader loader = new TrainingDataLoader(TrainingColumnSpec.fraudFeatures(), new TrainingOptions(1_000, 5_000, 0.3, true));
+
+        TrainingData loaded = loader.load(data, 42);
+
+        assertThat(loaded.getTotalRows()).isEqualTo(10_000);
+        assertThat(loaded.getTrainRows()).isEqualTo(1_000);
+        assertThat(loaded.getTestRows()).isBetween(2_700, 3_300);
+
+        double[] row = new double[FraudFeatures.SIZE];
+        for (int i = 0; i < loaded.getTestRows(); i++) {
+            loaded.getTest().get(i, row);
+            // The label is derived from the transaction count, the ignored note column must not shift anything
+            assertThat(loaded.getTestLabels()[i]).isEqualTo(row[0] >= 10 ? 1 : 0);
+            assertThat(row[5]).isEqualTo(60);
+        }
+    }
+
+    @Test
+    void splitsEveryRowTheSameWayWhateverTheSeedAndOrder() throws IOException {
+        Path data = writeTrainingData(2_000);
+        List<String> lines = Files.readAllLines(data);
+        List<String> reversed = new ArrayList<>(lines.subList(1, lines.size()));
+        Collections.reverse(reversed);
+        reversed.add(0, lines.get(0));
+        Path reordered = Files.write(directory.resolve("reordered.csv"), reversed);
+        TrainingDataLoader loader = new TrainingDataLoader(TrainingColumnSpec.fraudFeatures(), new TrainingOptions(2_000, 2_000, 0.3, false));
+
+        assertThat(testRows(loader.load(reordered, 2))).isEqualTo(testRows(loader.load(data, 1)));
+    }
+
+    @Test
+    void skipsRowsWithBlankValues() throws IOException {
+        Path data = Files.writeString(directory.resolve("blank.csv"), """
+            time_window_minutes,total_amount,transaction_count,distinct_devices,distinct_credit_cards,location_count,is_fraud
+            60,125.0,10,1,1,10,1
+            60,,3,1,1,3,0
+            60,37.5,3,1,  ,3,0
+            60,37.5,3,1,1,3,0
+            60,37.5,-,1,1,3,0
+            """);
+        TrainingDataLoader loader = new TrainingDataLoader(TrainingColumnSpec.fraudFeatures(), new TrainingOptions(10, 10, 0.0, false));
+
+        TrainingData loaded = loader.load(data, 42);
+
+        assertThat(loaded.getTotalRows()).isEqualTo(2);
+        assertThat(loaded.getSkippedRows()).isEqualTo(3);
+        assertThat(loaded.sampledTrainLabels()).containsExactlyInAnyOrder(1, 0);
+    }
+
+    @Test
+    void trainsAccurateModelFromStreamedData() throws IOException {
+        Path data = writeTrainingData(5_000);
+
+        TrainingResult result = FraudModelTrainer.train(data.toString(), TrainingColumnSpec.fraudFeatures(), FraudModelTrainer.DEFAULT_OPTIONS);
+
+        assertThat(result.getAccuracy()).isGreaterThan(0.9);
+    }
+
+    private static List<String> testRows(TrainingData loaded) {
+        List<String> rows = new ArrayList<>();
+        double[] row = new double[FraudFeatures.SIZE];
+        for (int i = 0; i < loaded.getTestRows(); i++) {
+            loaded.getTest().get(i, row);
+            rows.add(Arrays.toString(row) + loaded.getTestLabels()[i]);
+        }
+        Collections.sort(rows);
+        return rows;
+    }
+
+    private Path writeTrainingData(int rows) throws IOException {
+        Path data = directory.resolve("training.csv");
+        Random random = new Random(7);
+        try (Writer writer = Files.newBufferedWriter(data)) {
+            writer.write("note,time_window_minutes,total_amount,transaction_count,distinct_devices,distinct_credit_cards,location_count,is_fraud\r\n");
+            for (int i = 0; i < rows; i++) {
+                int count = random.nextInt(20);
+                writer.write("n" + i + ",60," + (count * 12.5) + "," + count + ",1,1," + count + "," + (count >= 10 ? 1 : 0) + "\r\n");
+            }
+        }
+        return data;
+    }
+}
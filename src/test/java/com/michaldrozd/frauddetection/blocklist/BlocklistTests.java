@@ -0,0 +1,116 @@
+package com.michaldrozd.frauddetection.blocklist;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BlocklistTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void blocksIdentifiersByKind() {
+        Blocklist blocklist = blocklist(directory.resolve("blocklist.bin"), 16);
+
+        assertThat(blocklist.add(BlocklistType.DEVICE, List.of("d-1", "d-2", "d-1"))).isEqualTo(2);
+        assertThat(blocklist.add(BlocklistType.CREDIT_CARD, Set.of("4111111111111111"))).isEqualTo(1);
+
+        assertThat(blocklist.isBlocked(BlocklistType.DEVICE, "d-1")).isTrue();
+        assertThat(blocklist.isBlocked(BlocklistType.MERCHANT, "d-1")).isFalse();
+        assertThat(blocklist.isBlocked(BlocklistType.DEVICE, null)).isFalse();
+        assertThat(blocklist.findBlocked("d-9", "4111111111111111", "m-1")).isEqualTo(BlocklistType.CREDIT_CARD);
+        assertThat(blocklist.findBlocked("d-9", null, null)).isNull();
+
+        assertThat(blocklist.remove(BlocklistType.DEVICE, List.of("d-1", "d-3"))).isEqualTo(1);
+        assertThat(blocklist.isBlocked(BlocklistType.DEVICE, "d-1")).isFalse();
+        assertThat(blocklist.isBlocked(BlocklistType.DEVICE, "d-2")).isTrue();
+        // A removed slot is reused
+        assertThat(blocklist.add(BlocklistType.DEVICE, List.of("d-1"))).isEqualTo(1);
+        assertThat(blocklist.size()).isEqualTo(3);
+    }
+
+    @Test
+    void growsPastTheExpectedEntriesWithoutLosingAny() {
+        Blocklist blocklist = blocklist(directory.resolve("blocklist.bin"), 16);
+        List<String> cards = cards(0, 50_000);
+
+        assertThat(blocklist.add(BlocklistType.CREDIT_CARD, cards)).isEqualTo(cards.size());
+
+        assertThat(blocklist.size()).isEqualTo(cards.size());
+        assertThat(cards).allMatch(card -> blocklist.isBlocked(BlocklistType.CREDIT_CARD, card));
+        long falsePositives = cards(50_000, 100_000).stream()
+                                                    .filter(card -> blocklist.isBlocked(BlocklistType.CREDIT_CARD, card))
+                                                    .count();
+        assertThat(falsePositives).isZero();
+    }
+
+    @Test
+    void mapsTheSavedBlocklistAtStartup() throws Exception {
+        Path path = directory.resolve("blocklist.bin");
+        Blocklist saved = blocklist(path, 1_000);
+        saved.add(BlocklistType.MERCHANT, List.of("m-1", "m-2"));
+        saved.add(BlocklistType.DEVICE, cards(0, 5_000));
+        saved.remove(BlocklistType.MERCHANT, List.of("m-2"));
+        saved.save();
+
+        Blocklist loaded = blocklist(path, 1_000);
+
+        assertThat(loaded.size()).isEqualTo(5_001);
+        assertThat(loaded.isBlocked(BlocklistType.MERCHANT, "m-1")).isTrue();
+        assertThat(loaded.isBlocked(BlocklistType.MERCHANT, "m-2")).isFalse();
+        assertThat(loaded.isBlocked(BlocklistType.DEVICE, "4000000000004999")).isTrue();
+        // Updates after loading stay in memory and do not change the file
+        loaded.add(BlocklistType.MERCHANT, List.of("m-3"));
+        assertThat(blocklist(path, 1_000).isBlocked(BlocklistType.MERCHANT, "m-3")).isFalse();
+    }
+
+    @Test
+    void checksTheIdentifiersOfAWindow() {
+        Blocklist blocklist = blocklist(directory.resolve("blocklist.bin"), 16);
+        blocklist.add(BlocklistType.CREDIT_CARD, List.of("4111111111111111"));
+
+        assertThat(blocklist.findBlocked(new String[]{"d-1"}, new String[]{"4000000000000002", "4111111111111111"})).isEqualTo(BlocklistType.CREDIT_CARD);
+        assertThat(blocklist.findBlocked(new String[]{"d-1"}, new String[]{"4000000000000002"})).isNull();
+    }
+
+    @Test
+    void hashesIdentifiersWithTheSecret() {
+        Blocklist blocklist = blocklist(directory.resolve("blocklist.bin"), 16);
+        Blocklist other = new Blocklist(true, directory.resolve("other.bin").toString(), 16, "another secret", new SimpleMeterRegistry());
+        other.load();
+
+        assertThat(blocklist.hash(BlocklistType.CREDIT_CARD, "4111111111111111")).isNotEqualTo(other.hash(BlocklistType.CREDIT_CARD, "4111111111111111"));
+        // Reference output of SipHash-2-4 for the key 00..0f and an empty message
+        assertThat(Blocklist.sipHash24(0x0706050403020100L, 0x0f0e0d0c0b0a0908L, new byte[0])).isEqualTo(0x726fdb47dd0e0e31L);
+        assertThat(Blocklist.sipHash24(0x0706050403020100L, 0x0f0e0d0c0b0a0908L, new byte[]{0, 1, 2, 3, 4, 5, 6, 7})).isEqualTo(0x93f5f5799a932462L);
+    }
+
+    @Test
+    void refusesToLoadWithoutASecret() {
+        Blocklist blocklist = new Blocklist(true, directory.resolve("blocklist.bin").toString(), 16, "", new SimpleMeterRegistry());
+
+        assertThatThrownBy(blocklist::load).isInstanceOf(IllegalStateException.class);
+    }
+
+    private static Blocklist blocklist(Path path, int expectedEntries) {
+        Blocklist blocklist = new Blocklist(true, path.toString(), expectedEntries, "secret", new SimpleMeterRegistry());
+        blocklist.load();
+        return blocklist;
+    }
+
+    private static List<String> cards(int from, int to) {
+        List<String> cards = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            cards.add(String.format("4%015d", i));
+        }
+        return cards;
+    }
+}
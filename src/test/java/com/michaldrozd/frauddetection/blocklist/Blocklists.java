@@ -0,0 +1,24 @@
+package com.michaldrozd.frauddetection.blocklist;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Loaded blocklists for tests outside this package.
+ */
+public final class Blocklists {
+
+    private Blocklists() {
+    }
+
+    /**
+     * An enabled blocklist stored at the given path, blocking the given Devices.
+     */
+    public static Blocklist blockingDevices(Path path, String... deviceIds) {
+        Blocklist blocklist = new Blocklist(true, path.toString(), 16, "secret", new SimpleMeterRegistry());
+        blocklist.load();
+        blocklist.add(BlocklistType.DEVICE, List.of(deviceIds));
+        return blocklist;
+    }
+}
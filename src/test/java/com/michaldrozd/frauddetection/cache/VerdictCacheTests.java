@@ -0,0 +1,141 @@
+package com.michaldrozd.frauddetection.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.michaldrozd.frauddetection.dto.FraudCheckThresholds;
+import com.michaldrozd.frauddetection.dto.FraudReason;
+import com.michaldrozd.frauddetection.dto.FraudVerdict;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class VerdictCacheTests {
+
+    private static final FraudCheckThresholds THRESHOLDS = new FraudCheckThresholds(5, 60, 2000, 500);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void coalescesIdenticalChecksInFlight() throws Exception {
+        VerdictCache cache = new VerdictCache(true, 0, 100, meterRegistry);
+        AtomicInteger evaluations = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<Optional<FraudVerdict>> leader = executor.submit(() -> cache.check(1L, THRESHOLDS, () -> {
+                evaluations.incrementAndGet();
+                started.countDown();
+                await(release);
+                return Optional.of(FraudVerdict.fraudulent(FraudReason.TRANSACTION_AMOUNT));
+            }));
+            started.await();
+            List<Future<Optional<FraudVerdict>>> followers = new ArrayList<>();
+            for (int i = 0; i < 7; i++) {
+                followers.add(executor.submit(() -> cache.check(1L, copy(THRESHOLDS), () -> {
+                    evaluations.incrementAndGet();
+                    return Optional.of(FraudVerdict.notFraudulent());
+                })));
+            }
+            while (requests("coalesced") < followers.size()) {
+                Thread.onSpinWait();
+            }
+            release.countDown();
+
+            assertThat(leader.get(5, TimeUnit.SECONDS)).contains(FraudVerdict.fraudulent(FraudReason.TRANSACTION_AMOUNT));
+            for (Future<Optional<FraudVerdict>> follower : followers) {
+                assertThat(follower.get(5, TimeUnit.SECONDS)).contains(FraudVerdict.fraudulent(FraudReason.TRANSACTION_AMOUNT));
+            }
+            assertThat(evaluations).hasValue(1);
+            // Without a TTL, nothing is cached once the flight has landed
+            cache.check(1L, THRESHOLDS, () -> Optional.of(FraudVerdict.notFraudulent()));
+            assertThat(requests("miss")).isEqualTo(2);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void reusesVerdictsUntilTheUserHasANewTransaction() {
+        VerdictCache cache = new VerdictCache(true, 60_000, 100, meterRegistry);
+        AtomicInteger evaluations = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            cache.check(1L, THRESHOLDS, () -> evaluate(evaluations));
+        }
+        assertThat(evaluations).hasValue(1);
+        assertThat(requests("hit")).isEqualTo(2);
+
+        // Other thresholds are another check
+        cache.check(1L, new FraudCheckThresholds(5, 30, 2000, 500), () -> evaluate(evaluations));
+        assertThat(evaluations).hasValue(2);
+
+        cache.invalidate(1L);
+        Optional<FraudVerdict> verdict = cache.check(1L, THRESHOLDS, () -> {
+            evaluations.incrementAndGet();
+            return Optional.of(FraudVerdict.fraudulent(FraudReason.TRANSACTION_COUNT));
+        });
+        assertThat(verdict).contains(FraudVerdict.fraudulent(FraudReason.TRANSACTION_COUNT));
+        assertThat(evaluations).hasValue(3);
+    }
+
+    @Test
+    void doesNotCacheAVerdictComputedBeforeANewTransaction() {
+        VerdictCache cache = new VerdictCache(true, 60_000, 100, meterRegistry);
+
+        cache.check(1L, THRESHOLDS, () -> {
+            // A transaction of the user is written while its window is evaluated
+            cache.invalidate(1L);
+            return Optional.empty();
+        });
+        Optional<FraudVerdict> verdict = cache.check(1L, THRESHOLDS, () -> Optional.of(FraudVerdict.notFraudulent()));
+
+        assertThat(verdict).contains(FraudVerdict.notFraudulent());
+        assertThat(requests("hit")).isZero();
+    }
+
+    @Test
+    void invalidatesTheVerdictsOfAllUsersAfterTheBlocklistChanged() {
+        VerdictCache cache = new VerdictCache(true, 60_000, 100, meterRegistry);
+        AtomicInteger evaluations = new AtomicInteger();
+        cache.check(1L, THRESHOLDS, () -> evaluate(evaluations));
+        cache.check(2L, THRESHOLDS, () -> evaluate(evaluations));
+
+        cache.invalidateAll();
+        cache.check(1L, THRESHOLDS, () -> evaluate(evaluations));
+        cache.check(2L, THRESHOLDS, () -> evaluate(evaluations));
+
+        assertThat(evaluations).hasValue(4);
+        assertThat(requests("hit")).isZero();
+    }
+
+    private static Optional<FraudVerdict> evaluate(AtomicInteger evaluations) {
+        evaluations.incrementAndGet();
+        return Optional.of(FraudVerdict.notFraudulent());
+    }
+
+    private double requests(String result) {
+        return meterRegistry.get("fraud.verdict-cache.requests").tag("result", result).counter().count();
+    }
+
+    private static FraudCheckThresholds copy(FraudCheckThresholds thresholds) {
+        return new FraudCheckThresholds(thresholds.getTransactionsThreshold(), thresholds.getTimeWindowInMinutes(),
+            thresholds.getAmountThreshold(), thresholds.getDistanceThresholdInKm());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.michaldrozd.frauddetection.controllers;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.michaldrozd.frauddetection.blocklist.Blocklist;
+import com.michaldrozd.frauddetection.blocklist.Blocklists;
+import com.michaldrozd.frauddetection.cache.VerdictCache;
+import com.michaldrozd.frauddetection.dto.UserIdentity;
+import com.michaldrozd.frauddetection.dto.WindowTransaction;
+import com.michaldrozd.frauddetection.repositories.TransactionRepository;
+import com.michaldrozd.frauddetection.repositories.UserRepository;
+import com.michaldrozd.frauddetection.services.FraudDetectionServices;
+import com.michaldrozd.frauddetection.window.UserWindowStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+@ExtendWith(MockitoExtension.class)
+class BatchFraudDetectionControllerTests {
+
+    private static final LocalDateTime NOW = LocalDateTime.now();
+    private static final String THRESHOLDS = "{\"transactionsThreshold\": 3, \"timeWindowInMinutes\": 60, \"amountThreshold\": 1000, \"distanceThresholdInKm\": 500}";
+
+    @TempDir
+    Path directory;
+
+    // Window transactions of the users in the graph, by user
+    private final Map<Long, List<WindowTransaction>> graph = new HashMap<>();
+    private final UserWindowStore userWindowStore = new UserWindowStore(true, 1440, 60, 512);
+
+    @Mock
+    private TransactionRepository transactionRepository;
+    @Mock
+    private UserRepository userRepository;
+
+    @BeforeEach
+    void setUp() {
+        // Lenient, as requests rejected up front do not reach the repositories
+        lenient().when(transactionRepository.findWindowTransactionsByUsers(anyCollection(), any())).thenAnswer(invocation -> {
+            Map<Long, List<WindowTransaction>> found = new HashMap<>();
+            for (Long userId : invocation.<Collection<Long>>getArgument(0)) {
+                if (graph.containsKey(userId)) {
+                    found.put(userId, new ArrayList<>(graph.get(userId)));
+                }
+            }
+            return found;
+        });
+        lenient().when(userRepository.findUserIdentities(anyCollection())).thenAnswer(invocation -> {
+            Set<Long> userIds = new HashSet<>(invocation.<Collection<Long>>getArgument(0));
+            userIds.retainAll(graph.keySet());
+            return userIds.stream().map(userId -> new UserIdentity(userId, "user-" + userId, "User " + userId)).toList();
+        });
+    }
+
+    @Test
+    void answersEveryRequestedUserInRequestOrder() throws Exception {
+        graph.put(1L, transactions(1L, 4, "d-1"));
+        graph.put(2L, transactions(2L, 1, "d-2"));
+        MockMvc mockMvc = mockMvc(FraudDetectionServices.disabledBlocklist(), false);
+
+        check(mockMvc, "{\"userIds\": [2, 3, 1, 2], \"thresholds\": " + THRESHOLDS + ", \"userThresholds\": {\"2\": "
+            + THRESHOLDS.replace("\"transactionsThreshold\": 3", "\"transactionsThreshold\": 1") + "}}")
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(3))
+            .andExpect(jsonPath("$[0].userId").value(2))
+            .andExpect(jsonPath("$[0].isFraudulent").value(true))
+            .andExpect(jsonPath("$[0].reason").value("TRANSACTION_COUNT"))
+            .andExpect(jsonPath("$[1].userId").value(3))
+            .andExpect(jsonPath("$[1].found").value(false))
+            .andExpect(jsonPath("$[2].userId").value(1))
+            .andExpect(jsonPath("$[2].found").value(true))
+            .andExpect(jsonPath("$[2].isFraudulent").value(true));
+        verify(transactionRepository, times(1)).findWindowTransactionsByUsers(anyCollection(), any());
+    }
+
+    @Test
+    void answersOnlyExistingUsersFromTheWindowStore() throws Exception {
+        graph.put(1L, transactions(1L, 1, "d-1"));
+        // Windows kept in memory for a user that exists and for one deleted since
+        seed(1L, transactions(1L, 1, "d-1"));
+        seed(9L, transactions(9L, 1, "d-9"));
+        MockMvc mockMvc = mockMvc(FraudDetectionServices.disabledBlocklist(), false);
+
+        check(mockMvc, "{\"userIds\": [1, 9], \"thresholds\": " + THRESHOLDS + "}")
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].found").value(true))
+            .andExpect(jsonPath("$[0].isFraudulent").value(false))
+            .andExpect(jsonPath("$[1].found").value(false));
+        verify(transactionRepository, never()).findWindowTransactionsByUsers(anyCollection(), any());
+        verify(userRepository, times(1)).findUserIdentities(anyCollection());
+    }
+
+    @Test
+    void checksWindowsFromTheWindowStoreAgainstTheBlocklist() throws Exception {
+        graph.put(1L, List.of());
+        seed(1L, transactions(1L, 1, "d-blocked"));
+        MockMvc mockMvc = mockMvc(Blocklists.blockingDevices(directory.resolve("blocklist.bin"), "d-blocked"), false);
+
+        check(mockMvc, "{\"userIds\": [1], \"thresholds\": " + THRESHOLDS + "}")
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].isFraudulent").value(true))
+            .andExpect(jsonPath("$[0].reason").value("BLOCKLISTED"));
+    }
+
+    @Test
+    void reusesCachedVerdicts() throws Exception {
+        graph.put(1L, transactions(1L, 4, "d-1"));
+        MockMvc mockMvc = mockMvc(FraudDetectionServices.disabledBlocklist(), true);
+        String request = "{\"userIds\": [1, 3], \"thresholds\": " + THRESHOLDS + "}";
+
+        check(mockMvc, request).andExpect(status().isOk());
+        check(mockMvc, request)
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].isFraudulent").value(true))
+            .andExpect(jsonPath("$[1].found").value(false));
+
+        verify(transactionRepository, times(1)).findWindowTransactionsByUsers(anyCollection(), any());
+    }
+
+    @Test
+    void rejectsUsersWithoutThresholds() throws Exception {
+        MockMvc mockMvc = mockMvc(FraudDetectionServices.disabledBlocklist(), false);
+
+        check(mockMvc, "{\"userIds\": []}").andExpect(status().isBadRequest());
+        check(mockMvc, "{\"userIds\": [1, 2], \"userThresholds\": {\"1\": " + THRESHOLDS + "}}").andExpect(status().isBadRequest());
+        verify(transactionRepository, never()).findWindowTransactionsByUsers(anyCollection(), any());
+    }
+
+    private MockMvc mockMvc(Blocklist blocklist, boolean verdictCache) {
+        BatchFraudDetectionController controller = new BatchFraudDetectionController(FraudDetectionServices.fraudDetectionService(
+            transactionRepository,
+            userRepository,
+            userWindowStore,
+            FraudDetectionServices.rulePipeline(directory.resolve("rules.json").toString()),
+            blocklist,
+            new VerdictCache(verdictCache, 60_000, 1_000, new SimpleMeterRegistry())), 100);
+        return MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    private static ResultActions check(MockMvc mockMvc, String request) throws Exception {
+        return mockMvc.perform(post("/users/fraud-check").contentType(MediaType.APPLICATION_JSON).content(request));
+    }
+
+    private void seed(Long userId, List<WindowTransaction> transactions) {
+        userWindowStore.beginSeed(userId);
+        userWindowStore.seedFromProjection(userId, NOW.minusMinutes(120), transactions);
+    }
+
+    private static List<WindowTransaction> transactions(Long userId, int count, String deviceIdentifier) {
+        return IntStream.range(0, count)
+                        .mapToObj(i -> new WindowTransaction(userId, "t-" + userId + "-" + i, 10.0, NOW.minusMinutes(1 + i), 1L, 48.14, 17.10, 1L,
+                            deviceIdentifier, "4111111111111111"))
+                        .toList();
+    }
+}
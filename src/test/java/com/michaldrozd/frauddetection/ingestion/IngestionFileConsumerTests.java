@@ -0,0 +1,92 @@
+package com.michaldrozd.frauddetection.ingestion;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.michaldrozd.frauddetection.dto.TransactionEvent;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class IngestionFileConsumerTests {
+
+    @TempDir
+    Path inbox;
+
+    @Mock
+    private TransactionIngestionService transactionIngestionService;
+    // Transactions submitted and not acknowledged yet
+    private final List<TransactionEvent> submitted = new CopyOnWriteArrayList<>();
+    private IngestionFileConsumer consumer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(transactionIngestionService.submit(any(), anyLong())).thenAnswer(invocation -> submitted.add(invocation.getArgument(0)));
+        consumer = new IngestionFileConsumer(transactionIngestionService, new ObjectMapper().registerModule(new JavaTimeModule()), inbox.toString(), 1000);
+        Files.writeString(inbox.resolve("batch.ndjson"), """
+            {"transactionId":"t-1","userId":1,"amount":10.0,"transactionDate":"2024-01-01T10:00:00"}
+            {"transactionId":"t-2","userId":2,"amount":20.0,"transactionDate":"2024-01-01T10:01:00"}
+            """);
+    }
+
+    @Test
+    void movesAFileToProcessedOnlyOnceAllItsTransactionsAreWritten() throws Exception {
+        Thread polling = new Thread(this::pollInbox);
+        polling.start();
+
+        awaitSubmitted(2);
+        submitted.remove(0).getReceipt().acknowledge(true);
+        polling.join(100);
+        assertThat(polling.isAlive()).isTrue();
+        assertThat(inbox.resolve("batch.ndjson")).exists();
+
+        submitted.remove(0).getReceipt().acknowledge(true);
+        polling.join(5_000);
+        assertThat(polling.isAlive()).isFalse();
+        assertThat(inbox.resolve("batch.ndjson")).doesNotExist();
+        assertThat(inbox.resolve("processed").resolve("batch.ndjson")).exists();
+    }
+
+    @Test
+    void movesAFileWithDroppedTransactionsToFailed() throws Exception {
+        Thread polling = new Thread(this::pollInbox);
+        polling.start();
+
+        awaitSubmitted(2);
+        submitted.remove(0).getReceipt().acknowledge(true);
+        submitted.remove(0).getReceipt().acknowledge(false);
+        polling.join(5_000);
+
+        assertThat(polling.isAlive()).isFalse();
+        assertThat(inbox.resolve("failed").resolve("batch.ndjson")).exists();
+        assertThat(inbox.resolve("processed")).doesNotExist();
+    }
+
+    private void pollInbox() {
+        try {
+            consumer.pollInbox();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitSubmitted(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (submitted.size() < count) {
+            assertThat(System.currentTimeMillis()).as("submitted within 5 s").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
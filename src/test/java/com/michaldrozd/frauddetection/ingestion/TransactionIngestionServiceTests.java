@@ -0,0 +1,227 @@
+package com.michaldrozd.frauddetection.ingestion;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.lenient;
+
+import com.michaldrozd.frauddetection.cache.VerdictCache;
+import com.michaldrozd.frauddetection.dto.MergedTransaction;
+import com.michaldrozd.frauddetection.dto.TransactionEvent;
+import com.michaldrozd.frauddetection.merchant.MerchantVelocityEngine;
+import com.michaldrozd.frauddetection.repositories.TransactionRepository;
+import com.michaldrozd.frauddetection.ring.FraudRingDetector;
+import com.michaldrozd.frauddetection.rollup.TransactionRollups;
+import com.michaldrozd.frauddetection.snapshot.StateSnapshotter;
+import com.michaldrozd.frauddetection.streaming.StreamingFraudScorer;
+import com.michaldrozd.frauddetection.window.UserWindowStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.TransientDataAccessResourceException;
+
+@ExtendWith(MockitoExtension.class)
+class TransactionIngestionServiceTests {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    // Sizes of the batches written, in order
+    private final List<Integer> batches = new CopyOnWriteArrayList<>();
+    // Transactions the graph contains already
+    private final Set<String> existing = new HashSet<>();
+    private final AtomicInteger transientFailures = new AtomicInteger();
+    private final MerchantVelocityEngine merchantVelocityEngine = new MerchantVelocityEngine(true, 600, 4, 7, 100, 0, 0, 0, 10, meterRegistry);
+    @Mock
+    private TransactionRepository transactionRepository;
+    private TransactionIngestionService service;
+
+    @BeforeEach
+    void setUp() {
+        // Lenient, as transactions rejected by a full buffer are never written
+        lenient().when(transactionRepository.mergeTransactions(anyList(), anyLong(), anyBoolean())).thenAnswer(invocation -> {
+            if (transientFailures.getAndDecrement() > 0) {
+                throw new TransientDataAccessResourceException("deadlock");
+            }
+            List<TransactionEvent> batch = invocation.getArgument(0);
+            batches.add(batch.size());
+            List<MergedTransaction> merged = new ArrayList<>();
+            for (TransactionEvent event : batch) {
+                Long deviceId = event.getDeviceId() != null ? 100L : null;
+                merged.add(new MergedTransaction(event.getTransactionId(), deviceId, null, !existing.contains(event.getTransactionId())));
+            }
+            return merged;
+        });
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (service != null) {
+            service.stop();
+        }
+    }
+
+    @Test
+    void writesTheBufferInBatchesOfAtMostTheBatchSize() throws InterruptedException {
+        service = service(16, 2, 10);
+        for (int i = 0; i < 5; i++) {
+            assertThat(service.submit(transaction("t-" + i))).isTrue();
+        }
+
+        service.start();
+
+        awaitUntil(() -> counter("fraud.ingestion.written") == 5);
+        assertThat(batches).containsExactly(2, 2, 1);
+    }
+
+    @Test
+    void lingersForAPartialBatchToFillUp() throws InterruptedException {
+        service = service(16, 100, 300);
+        service.start();
+
+        service.submit(transaction("t-1"));
+        service.submit(transaction("t-2"));
+
+        awaitUntil(() -> counter("fraud.ingestion.written") == 2);
+        assertThat(batches).containsExactly(2);
+    }
+
+    @Test
+    void retriesTransientFailures() throws InterruptedException {
+        transientFailures.set(2);
+        service = service(16, 10, 0);
+        service.submit(transaction("t-1"));
+
+        service.start();
+
+        awaitUntil(() -> counter("fraud.ingestion.written") == 1);
+        assertThat(counter("fraud.ingestion.failed")).isZero();
+    }
+
+    @Test
+    void dropsBatchesAfterTooManyTransientFailures() throws InterruptedException {
+        transientFailures.set(3);
+        service = service(16, 10, 0);
+        service.submit(transaction("t-1"));
+
+        service.start();
+
+        awaitUntil(() -> counter("fraud.ingestion.failed") == 1);
+        assertThat(counter("fraud.ingestion.written")).isZero();
+    }
+
+    @Test
+    void acknowledgesEveryTransactionOnceItsBatchIsWrittenOrDropped() throws InterruptedException {
+        List<Boolean> acknowledgements = new CopyOnWriteArrayList<>();
+        transientFailures.set(3);
+        service = service(16, 1, 0);
+        TransactionEvent dropped = transaction("t-1");
+        dropped.setReceipt(acknowledgements::add);
+        TransactionEvent written = transaction("t-2");
+        written.setReceipt(acknowledgements::add);
+        service.submit(dropped);
+        service.submit(written);
+
+        service.start();
+
+        awaitUntil(() -> acknowledgements.size() == 2);
+        assertThat(acknowledgements).containsExactly(false, true);
+    }
+
+    @Test
+    void rejectsTransactionsWhileTheBufferIsFull() throws InterruptedException {
+        service = service(2, 10, 0);
+
+        assertThat(service.submit(transaction("t-1"))).isTrue();
+        assertThat(service.submit(transaction("t-2"))).isTrue();
+        assertThat(service.submit(transaction("t-3"))).isFalse();
+        assertThat(service.submit(transaction("t-4"), 20)).isFalse();
+
+        assertThat(counter("fraud.ingestion.rejected")).isEqualTo(2);
+        assertThat(service.getRemainingCapacity()).isZero();
+    }
+
+    @Test
+    void recordsOnlyTransactionsCreatedByTheBatch() throws InterruptedException {
+        existing.add("t-1");
+        service = service(16, 10, 0);
+        service.submit(transaction("t-1"));
+        service.submit(transaction("t-2"));
+        // Repeated within the batch
+        service.submit(transaction("t-2"));
+
+        service.start();
+
+        awaitUntil(() -> counter("fraud.ingestion.written") == 3);
+        assertThat(merchantVelocityEngine.find("m-1")).hasValueSatisfying(velocity -> assertThat(velocity.getTransactionCount()).isEqualTo(1));
+    }
+
+    @Test
+    void leavesTransactionsWithoutADeviceOutOfTheUserWindows() throws InterruptedException {
+        UserWindowStore userWindowStore = new UserWindowStore(true, 1440, 60, 512);
+        userWindowStore.seedFromProjection(1L, LocalDateTime.now().minusMinutes(60), List.of());
+        service = service(16, 10, 0, userWindowStore);
+        TransactionEvent withDevice = transaction("t-1");
+        withDevice.setDeviceId("d-1");
+        service.submit(withDevice);
+        service.submit(transaction("t-2"));
+
+        service.start();
+
+        awaitUntil(() -> counter("fraud.ingestion.written") == 2);
+        assertThat(userWindowStore.aggregate(1L, LocalDateTime.now().minusMinutes(60)))
+            .hasValueSatisfying(window -> assertThat(window.getTransactionCount()).isEqualTo(1));
+    }
+
+    private TransactionIngestionService service(int bufferSize, int batchSize, long lingerMillis) {
+        return service(bufferSize, batchSize, lingerMillis, new UserWindowStore(false, 1440, 60, 512));
+    }
+
+    private TransactionIngestionService service(int bufferSize, int batchSize, long lingerMillis, UserWindowStore userWindowStore) {
+        return new TransactionIngestionService(
+            transactionRepository,
+            userWindowStore,
+            new StreamingFraudScorer(false, 10, 60, 5000, 500, userWindowStore, null, null, List.of(), meterRegistry),
+            new FraudRingDetector(null, null, false, 1, 24, 1),
+            new StateSnapshotter(userWindowStore, null, false, "unused.snapshot", 1),
+            new VerdictCache(false, 0, 0, meterRegistry),
+            merchantVelocityEngine,
+            new TransactionRollups(null, false, ""),
+            meterRegistry,
+            bufferSize, batchSize, lingerMillis, 1);
+    }
+
+    private double counter(String name) {
+        return meterRegistry.get(name).counter().count();
+    }
+
+    private static TransactionEvent transaction(String transactionId) {
+        TransactionEvent event = new TransactionEvent();
+        event.setTransactionId(transactionId);
+        event.setUserId(1L);
+        event.setMerchantId("m-1");
+        event.setAmount(10.0);
+        event.setTransactionDate(LocalDateTime.now());
+        return event;
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition met within 5 s").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.michaldrozd.frauddetection.location;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class LocationVelocityEngineTests {
+
+    private final LocationVelocityEngine engine = new LocationVelocityEngine(true, 900, 100);
+
+    @Test
+    void sweepMatchesPairwiseComparison() {
+        Random random = new Random(42);
+        for (int run = 0; run < 500; run++) {
+            int size = 2 + random.nextInt(60);
+            long[] times = new long[size];
+            double[] latitudes = new double[size];
+            double[] longitudes = new double[size];
+            double centerLatitude = random.nextDouble() * 160 - 80;
+            double centerLongitude = random.nextDouble() * 360 - 180;
+            double spread = random.nextBoolean() ? 0.5 : 20;
+            for (int i = 0; i < size; i++) {
+                times[i] = random.nextInt(24 * 60) * 60_000L;
+                latitudes[i] = Math.max(-90, Math.min(90, centerLatitude + random.nextGaussian() * spread));
+                longitudes[i] = centerLongitude + random.nextGaussian() * spread;
+            }
+            long timeWindowInMillis = (1 + random.nextInt(600)) * 60_000L;
+            double distanceThresholdInKm = random.nextInt(3000);
+
+            boolean expected = false;
+            for (int i = 0; i < size && !expected; i++) {
+                for (int j = i + 1; j < size && !expected; j++) {
+                    expected = Math.abs(times[j] - times[i]) <= timeWindowInMillis
+                        && LocationVelocityEngine.calculateDistance(latitudes[i], longitudes[i], latitudes[j], longitudes[j]) >= distanceThresholdInKm;
+                }
+            }
+
+            LocationTrack track = LocationTrack.of(times, latitudes, longitudes);
+            assertThat(engine.exceedsDistance(track, timeWindowInMillis, distanceThresholdInKm)).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void detectsImpossibleTravel() {
+        // Bratislava to New York in one hour, out of order
+        LocationTrack impossible = LocationTrack.of(new long[]{3_600_000, 0}, new double[]{40.71, 48.14}, new double[]{-74.00, 17.10});
+        // Bratislava to Vienna in one hour
+        LocationTrack possible = LocationTrack.of(new long[]{0, 3_600_000}, new double[]{48.14, 48.20}, new double[]{17.10, 16.37});
+
+        assertThat(engine.isImpossibleTravel(impossible)).isTrue();
+        assertThat(engine.isImpossibleTravel(possible)).isFalse();
+    }
+
+    @Test
+    void calculatesHaversineDistance() {
+        assertThat(LocationVelocityEngine.calculateDistance(48.14, 17.10, 40.71, -74.00)).isBetween(6800.0, 6900.0);
+    }
+}
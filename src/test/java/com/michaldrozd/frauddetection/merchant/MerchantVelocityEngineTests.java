@@ -0,0 +1,93 @@
+package com.michaldrozd.frauddetection.merchant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import com.michaldrozd.frauddetection.dto.MerchantAlert;
+import com.michaldrozd.frauddetection.dto.MerchantAlertReason;
+import com.michaldrozd.frauddetection.dto.MerchantVelocity;
+import com.michaldrozd.frauddetection.dto.TransactionEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class MerchantVelocityEngineTests {
+
+    @Test
+    void estimatesDistinctCardsAndUsersWithinTheWindow() {
+        MerchantVelocityEngine engine = engine(10, 0);
+        LocalDateTime now = LocalDateTime.now();
+        // Outside of the window
+        engine.record(transaction("m-1", now.minusMinutes(30), 1L, "4000000000000000", 5000));
+        for (int i = 0; i < 20_000; i++) {
+            engine.record(transaction("m-1", now.minusSeconds(i % 60), (long) (i % 500), String.format("4%015d", i), 1 + i % 100));
+        }
+
+        MerchantVelocity velocity = engine.find("m-1").orElseThrow();
+        assertThat(velocity.getTransactionCount()).isEqualTo(20_000);
+        assertThat(velocity.getDistinctCreditCards()).isCloseTo(20_000, within(1_000L));
+        assertThat(velocity.getDistinctUsers()).isCloseTo(500, within(25L));
+        // Amounts are spread evenly from 1 to 100
+        assertThat(velocity.getAmountP50()).isBetween(40.0, 60.0);
+        assertThat(velocity.getAmountP99()).isBetween(80.0, 120.0);
+        assertThat(velocity.getAmountP99()).isLessThan(5000);
+        assertThat(engine.find("m-2")).isEmpty();
+    }
+
+    @Test
+    void alertsOnceOnABurstOfDistinctCards() {
+        MerchantVelocityEngine engine = engine(10, 50);
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < 200; i++) {
+            // A handful of users testing many cards with small amounts
+            engine.record(transaction("m-1", now, (long) (i % 3), String.format("4%015d", i), 0.5));
+            engine.record(transaction("m-2", now, (long) i, "4111111111111111", 20));
+        }
+
+        List<MerchantAlert> alerts = engine.findRecentAlerts(10);
+        assertThat(alerts).singleElement().satisfies(alert -> {
+            assertThat(alert.getMerchantId()).isEqualTo("m-1");
+            assertThat(alert.getReason()).isEqualTo(MerchantAlertReason.DISTINCT_CREDIT_CARDS);
+            assertThat(alert.getValue()).isGreaterThanOrEqualTo(50);
+        });
+    }
+
+    @Test
+    void evictsMerchantsWithoutTransactionsWithinTheWindow() {
+        MerchantVelocityEngine engine = engine(10, 0);
+        engine.record(transaction("m-1", LocalDateTime.now().minusMinutes(30), 1L, "4111111111111111", 10));
+        engine.record(transaction("m-2", LocalDateTime.now(), 1L, "4111111111111111", 10));
+
+        engine.evictIdleMerchants();
+
+        assertThat(engine.size()).isEqualTo(1);
+        assertThat(engine.find("m-1")).isEmpty();
+        // A merchant comes back with its next transaction
+        engine.record(transaction("m-1", LocalDateTime.now(), 1L, "4111111111111111", 10));
+        assertThat(engine.find("m-1")).hasValueSatisfying(velocity -> assertThat(velocity.getTransactionCount()).isEqualTo(1));
+    }
+
+    @Test
+    void binsAmountsTwicePerDoubling() {
+        assertThat(MerchantWindow.amountBin(0.05)).isZero();
+        assertThat(MerchantWindow.amountBin(0.1)).isEqualTo(1);
+        assertThat(MerchantWindow.amountBin(0.15)).isEqualTo(2);
+        assertThat(MerchantWindow.amountBin(0.2)).isEqualTo(3);
+        assertThat(MerchantWindow.amountBin(1e12)).isEqualTo(MerchantWindow.AMOUNT_BINS - 1);
+    }
+
+    private static MerchantVelocityEngine engine(long windowMinutes, long maxDistinctCreditCards) {
+        return new MerchantVelocityEngine(true, windowMinutes * 60, 4, 10, 1_000, 0, 0, maxDistinctCreditCards, 100, new SimpleMeterRegistry());
+    }
+
+    private static TransactionEvent transaction(String merchantId, LocalDateTime date, Long userId, String creditCardNumber, double amount) {
+        TransactionEvent event = new TransactionEvent();
+        event.setMerchantId(merchantId);
+        event.setTransactionDate(date);
+        event.setUserId(userId);
+        event.setCreditCardNumber(creditCardNumber);
+        event.setAmount(amount);
+        return event;
+    }
+}
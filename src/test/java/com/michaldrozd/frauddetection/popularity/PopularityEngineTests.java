@@ -0,0 +1,114 @@
+package com.michaldrozd.frauddetection.popularity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class PopularityEngineTests {
+
+    private final PopularityEngine engine = new PopularityEngine(100);
+
+    @Test
+    void countsEveryUserOncePerProduct() {
+        engine.recordView(1, 10);
+        engine.recordView(1, 10);
+        engine.recordView(2, 10);
+        engine.recordView(2, 20);
+        engine.recordView(3, 10);
+        engine.recordView(3, 20);
+        engine.recordView(3, 30);
+
+        assertThat(engine.getViews(10)).isEqualTo(3);
+        assertThat(engine.topProducts(2, 10)).containsExactly(10, 20);
+        assertThat(engine.topProducts(1, 2)).containsExactly(10, 20);
+        assertThat(engine.topProducts(4, 10)).isEmpty();
+    }
+
+    @Test
+    void countsProductsViewedTogether() {
+        engine.recordView(1, 10);
+        engine.recordView(1, 20);
+        engine.recordView(2, 20);
+        engine.recordView(2, 10);
+        engine.recordView(2, 30);
+        engine.recordView(2, 10);
+
+        assertThat(engine.viewedTogether(10, 2, 10)).containsExactly(20);
+        assertThat(engine.viewedTogether(10, 1, 10)).containsExactly(20, 30);
+        assertThat(engine.viewedTogether(40, 1, 10)).isEmpty();
+    }
+
+    @Test
+    void pairsEveryViewWithTheMostRecentProductsOnly() {
+        PopularityEngine engine = new PopularityEngine(2);
+        engine.recordView(1, 10);
+        engine.recordView(1, 20);
+        engine.recordView(1, 30);
+        engine.recordView(1, 40);
+        engine.recordView(2, 10);
+
+        assertThat(engine.getViews(10)).isEqualTo(2);
+        assertThat(engine.viewedTogether(10, 1, 10)).containsExactlyInAnyOrder(20, 30);
+        assertThat(engine.viewedTogether(40, 1, 10)).containsExactlyInAnyOrder(20, 30);
+    }
+
+    @Test
+    void matchesTheGraphQueriesWhileHistoriesFitTheFanout() {
+        // VIEWED relationships by user, a few users with close to 100 products each
+        Map<Long, Set<Long>> viewed = new HashMap<>();
+        Random random = new Random(7);
+        for (long userId = 0; userId < 50; userId++) {
+            Set<Long> products = viewed.computeIfAbsent(userId, id -> new HashSet<>());
+            int views = userId < 5 ? 100 : random.nextInt(20);
+            for (int i = 0; i < views; i++) {
+                long productId = random.nextInt(500);
+                // Only the first view creates the relationship
+                if (products.add(productId)) {
+                    engine.recordView(userId, productId);
+                }
+            }
+        }
+
+        // MATCH (p:Product)<-[:VIEWED]-(u:User) WITH p, count(u) AS views WHERE views >= $popularityThreshold
+        Map<Long, Long> views = new HashMap<>();
+        viewed.values().forEach(products -> products.forEach(productId -> views.merge(productId, 1L, Long::sum)));
+        assertThat(engine.topProducts(3, Integer.MAX_VALUE)).containsExactlyInAnyOrder(atLeast(views, 3));
+        assertThat(counts(engine.topProducts(3, Integer.MAX_VALUE), views)).isSortedAccordingTo(Comparator.reverseOrder());
+
+        // MATCH (p:Product)<-[:VIEWED]-(u:User)-[:VIEWED]->(otherProduct:Product) WHERE p.id = $productId
+        //   AND id(otherProduct) <> id(p) WITH otherProduct, count(u) AS sharedViews WHERE sharedViews >= $threshold
+        for (long productId = 0; productId < 500; productId += 50) {
+            Map<Long, Long> sharedViews = new HashMap<>();
+            for (Set<Long> products : viewed.values()) {
+                if (products.contains(productId)) {
+                    for (long other : products) {
+                        if (other != productId) {
+                            sharedViews.merge(other, 1L, Long::sum);
+                        }
+                    }
+                }
+            }
+            assertThat(engine.viewedTogether(productId, 2, Integer.MAX_VALUE)).containsExactlyInAnyOrder(atLeast(sharedViews, 2));
+        }
+    }
+
+    private static long[] atLeast(Map<Long, Long> counts, long minCount) {
+        return counts.entrySet().stream().filter(entry -> entry.getValue() >= minCount).mapToLong(Map.Entry::getKey).toArray();
+    }
+
+    private static List<Long> counts(long[] productIds, Map<Long, Long> counts) {
+        List<Long> ordered = new ArrayList<>();
+        for (long productId : productIds) {
+            ordered.add(counts.get(productId));
+        }
+        return ordered;
+    }
+}
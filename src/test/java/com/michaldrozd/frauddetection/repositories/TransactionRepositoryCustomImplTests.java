@@ -0,0 +1,273 @@
+package com.michaldrozd.frauddetection.repositories;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.michaldrozd.frauddetection.domain.CreditCard;
+import com.michaldrozd.frauddetection.domain.Device;
+import com.michaldrozd.frauddetection.domain.Transaction;
+import com.michaldrozd.frauddetection.dto.MergedTransaction;
+import com.michaldrozd.frauddetection.dto.TransactionEvent;
+import com.michaldrozd.frauddetection.dto.WindowTransaction;
+import com.michaldrozd.frauddetection.rollup.RollupPlan;
+import com.michaldrozd.frauddetection.window.WindowAggregate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Values;
+import org.neo4j.driver.types.TypeSystem;
+import org.springframework.data.neo4j.core.Neo4jClient;
+import org.springframework.data.neo4j.core.Neo4jClient.MappingSpec;
+import org.springframework.data.neo4j.core.Neo4jClient.OngoingBindSpec;
+import org.springframework.data.neo4j.core.Neo4jClient.RecordFetchSpec;
+import org.springframework.data.neo4j.core.Neo4jClient.RunnableSpec;
+import org.springframework.data.neo4j.core.Neo4jClient.UnboundRunnableSpec;
+
+@ExtendWith(MockitoExtension.class)
+class TransactionRepositoryCustomImplTests {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2023, 5, 1, 12, 0);
+
+    @Mock
+    private Neo4jClient neo4jClient;
+    @Mock
+    private UnboundRunnableSpec runnableSpec;
+    @Mock
+    private RecordFetchSpec<Map<String, Object>> fetchSpec;
+    @Mock
+    private OngoingBindSpec<Object, RunnableSpec> bindSpec;
+    @Mock
+    private MappingSpec<MergedTransaction> mappingSpec;
+    @Mock
+    private RecordFetchSpec<MergedTransaction> mergedFetchSpec;
+    @Mock
+    private MappingSpec<WindowAggregate> aggregateMappingSpec;
+    @Mock
+    private RecordFetchSpec<WindowAggregate> aggregateFetchSpec;
+    @Mock
+    private Record aggregateRecord;
+    @Captor
+    private ArgumentCaptor<Map<String, Object>> parameters;
+    @Captor
+    private ArgumentCaptor<Object> boundValues;
+
+    @Test
+    void loadsTheWindowsOfManyUsersWithOneQuery() {
+        List<Map<String, Object>> rows = List.of(
+            row(1L, "t-1", 10L, NOW.minusMinutes(5), 11L, 48.14, 17.10, 21L, "d-1", "4111111111111111"),
+            row(1L, "t-2", 20.5, NOW.minusMinutes(3), 12L, null, null, null, "d-2", null),
+            // A user without transactions within the window comes back as a single row without one
+            row(2L, null, null, null, null, null, null, null, null, null));
+        when(neo4jClient.query(anyString())).thenReturn(runnableSpec);
+        when(runnableSpec.bindAll(anyMap())).thenReturn(runnableSpec);
+        when(runnableSpec.fetch()).thenReturn(fetchSpec);
+        when(fetchSpec.all()).thenReturn(rows);
+        TransactionRepositoryCustomImpl repository = new TransactionRepositoryCustomImpl(neo4jClient);
+
+        Map<Long, List<WindowTransaction>> transactionsByUser = repository.findWindowTransactionsByUsers(List.of(1L, 2L, 3L), NOW.minusMinutes(60));
+
+        verify(neo4jClient).query(TransactionRepositoryCustomImpl.WINDOW_TRANSACTIONS_BY_USERS_QUERY);
+        verify(runnableSpec).bindAll(parameters.capture());
+        assertThat(parameters.getValue()).containsEntry("userIds", List.of(1L, 2L, 3L)).containsEntry("dateTimeThreshold", NOW.minusMinutes(60));
+        // Users that do not exist are absent
+        assertThat(transactionsByUser).containsOnlyKeys(1L, 2L);
+        assertThat(transactionsByUser.get(2L)).isEmpty();
+        assertThat(transactionsByUser.get(1L))
+            .extracting(WindowTransaction::getTransactionId, WindowTransaction::getAmount, WindowTransaction::getDeviceId,
+                WindowTransaction::getLatitude, WindowTransaction::getCreditCardId, WindowTransaction::getDeviceIdentifier,
+                WindowTransaction::getCreditCardNumber)
+            .containsExactly(
+                tuple("t-1", 10.0, 11L, 48.14, 21L, "d-1", "4111111111111111"),
+                tuple("t-2", 20.5, 12L, null, null, "d-2", null));
+    }
+
+    @Test
+    void returnsEveryColumnTheWindowTransactionsAreMappedFrom() {
+        for (String column : List.of("userId", "transactionId", "amount", "transactionDate", "deviceId", "latitude", "longitude",
+            "creditCardId", "deviceIdentifier", "creditCardNumber")) {
+            assertThat(TransactionRepositoryCustomImpl.WINDOW_TRANSACTIONS_BY_USERS_QUERY).containsPattern("(RETURN|AS|,)\\s+" + column + "\\b");
+        }
+        // Users without windowed transactions must still be returned, or they would be reported as not existing
+        assertThat(TransactionRepositoryCustomImpl.WINDOW_TRANSACTIONS_BY_USERS_QUERY).contains("OPTIONAL MATCH (t:Transaction)");
+    }
+
+    @Test
+    void writesAndRollsUpATransactionRepeatedInTheBatchOnce() {
+        when(neo4jClient.query(anyString())).thenReturn(runnableSpec);
+        doReturn(bindSpec).when(runnableSpec).bind(any());
+        when(bindSpec.to(anyString())).thenReturn(runnableSpec);
+        when(runnableSpec.fetchAs(MergedTransaction.class)).thenReturn(mappingSpec);
+        when(mappingSpec.mappedBy(any())).thenReturn(mergedFetchSpec);
+        when(mergedFetchSpec.all()).thenReturn(List.of());
+        TransactionRepositoryCustomImpl repository = new TransactionRepositoryCustomImpl(neo4jClient);
+
+        // A producer retry landing in the same batch
+        repository.mergeTransactions(List.of(event("t-1", 10.0), event("t-2", 20.0), event("t-1", 10.0)), 1L, true);
+
+        verify(neo4jClient).query(TransactionRepositoryCustomImpl.MERGE_TRANSACTIONS_AND_ROLLUPS_QUERY);
+        verify(runnableSpec, atLeastOnce()).bind(boundValues.capture());
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> rows = (List<Map<String, Object>>) boundValues.getAllValues().get(0);
+        assertThat(rows).extracting(row -> row.get("transactionId")).containsExactly("t-1", "t-2");
+        // Rows repeating a transactionId are also grouped before the rollups, whichever rows the query is given
+        assertThat(TransactionRepositoryCustomImpl.MERGE_TRANSACTIONS_AND_ROLLUPS_QUERY)
+            .contains("WITH row.transactionId AS transactionId, head(collect(row)) AS row");
+    }
+
+    @Test
+    void aggregatesTheSameWindowInEveryQueryMode() {
+        // The user's transactions in the graph: two conducted with a Device, two without one
+        List<Transaction> graph = List.of(
+            transaction("t-1", 10.0, NOW.minusMinutes(50), device(11L, "d-1", 48.14, 17.10), creditCard(21L, "4111111111111111")),
+            transaction("t-2", 20.5, NOW.minusMinutes(10), device(12L, "d-2", null, null), null),
+            transaction("t-3", 500.0, NOW.minusMinutes(40), null, creditCard(22L, "5500000000000004")),
+            transaction("t-4", 700.0, NOW.minusMinutes(5), null, null));
+        // Every window query matches (t)-[:CONDUCTED_WITH]->(d:Device), as the entity query does
+        String devicePattern = "(t:Transaction)-[:PERFORMED_BY]->(u:User), (t)-[:CONDUCTED_WITH]->(d:Device)";
+        assertThat(TransactionRepositoryCustomImpl.AGGREGATE_BY_USER_QUERY).contains(devicePattern);
+        assertThat(TransactionRepositoryCustomImpl.SUM_USER_ROLLUPS_QUERY).contains(devicePattern);
+        assertThat(TransactionRepositoryCustomImpl.MERGE_TRANSACTIONS_AND_ROLLUPS_QUERY).contains("count(row.deviceId) AS windowTransactionCount");
+        List<Transaction> window = graph.stream().filter(transaction -> transaction.getDevice() != null).toList();
+        TransactionRepositoryCustomImpl repository = new TransactionRepositoryCustomImpl(neo4jClient);
+        when(neo4jClient.query(anyString())).thenReturn(runnableSpec);
+        when(runnableSpec.bindAll(anyMap())).thenReturn(runnableSpec);
+
+        // ENTITIES
+        WindowAggregate entities = WindowAggregate.fromTransactions(window);
+
+        // AGGREGATE, the columns returned for the matched transactions
+        when(runnableSpec.fetchAs(WindowAggregate.class)).thenReturn(aggregateMappingSpec);
+        AtomicReference<BiFunction<TypeSystem, Record, WindowAggregate>> mapper = new AtomicReference<>();
+        when(aggregateMappingSpec.mappedBy(any())).thenAnswer(invocation -> {
+            mapper.set(invocation.getArgument(0));
+            return aggregateFetchSpec;
+        });
+        when(aggregateFetchSpec.one()).thenAnswer(invocation -> Optional.of(mapper.get().apply(null, aggregateRecord)));
+        when(aggregateRecord.get(anyString())).thenAnswer(invocation -> Values.value(aggregateColumns(window).get(invocation.<String>getArgument(0))));
+        WindowAggregate aggregate = repository.aggregateTransactionsByUserWithinTimeWindow(1L, NOW.minusMinutes(60));
+
+        // ROLLUP, the hour rolled up by the ingestion as one row and the edge minute of t-2 as another
+        when(runnableSpec.fetch()).thenReturn(fetchSpec);
+        when(fetchSpec.all()).thenReturn(List.of(rollupRow(window.subList(0, 1)), rollupRow(window.subList(1, 2))));
+        WindowAggregate rollup = repository.aggregateUserRollups(1L, RollupPlan.of(NOW.minusMinutes(60), NOW));
+
+        for (WindowAggregate result : List.of(aggregate, rollup)) {
+            assertThat(summary(result)).isEqualTo(summary(entities));
+        }
+        assertThat(entities.getTransactionCount()).isEqualTo(2);
+        assertThat(entities.getTotalAmount()).isEqualTo(30.5);
+    }
+
+    private static Map<String, Object> aggregateColumns(List<Transaction> window) {
+        Map<String, Object> columns = new HashMap<>();
+        columns.put("transactionCount", (long) window.size());
+        columns.put("totalAmount", window.stream().mapToDouble(Transaction::getAmount).sum());
+        columns.put("distinctDevices", window.stream().map(Transaction::getDevice).distinct().count());
+        columns.put("distinctCreditCards", window.stream().map(Transaction::getCreditCard).filter(card -> card != null).distinct().count());
+        columns.put("deviceIdentifiers", window.stream().map(transaction -> transaction.getDevice().getDeviceId()).distinct().toList());
+        columns.put("creditCardNumbers", window.stream().filter(transaction -> transaction.getCreditCard() != null)
+                                              .map(transaction -> transaction.getCreditCard().getNumber()).distinct().toList());
+        columns.put("locations", window.stream().filter(transaction -> transaction.getDevice().getLatitude() != null)
+                                      .map(transaction -> List.of(transaction.getTransactionDate(), transaction.getDevice().getLatitude(),
+                                          transaction.getDevice().getLongitude()))
+                                      .toList());
+        return columns;
+    }
+
+    private static Map<String, Object> rollupRow(List<Transaction> transactions) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("transactionCount", (long) transactions.size());
+        row.put("totalAmount", transactions.stream().mapToDouble(Transaction::getAmount).sum());
+        row.put("deviceIds", transactions.stream().map(transaction -> transaction.getDevice().getDeviceId()).toList());
+        row.put("creditCardNumbers", transactions.stream().filter(transaction -> transaction.getCreditCard() != null)
+                                                 .map(transaction -> transaction.getCreditCard().getNumber()).toList());
+        List<Transaction> located = transactions.stream().filter(transaction -> transaction.getDevice().getLatitude() != null).toList();
+        row.put("locationTimes", located.stream().map(Transaction::getTransactionDate).toList());
+        row.put("latitudes", located.stream().map(transaction -> transaction.getDevice().getLatitude()).toList());
+        row.put("longitudes", located.stream().map(transaction -> transaction.getDevice().getLongitude()).toList());
+        return row;
+    }
+
+    // What the fraud rules see of a window, independent of the order of its identifiers
+    private static List<Object> summary(WindowAggregate window) {
+        List<Object> summary = new ArrayList<>(List.of(window.getTransactionCount(), window.getTotalAmount(), window.getDistinctDevices(),
+            window.getDistinctCreditCards()));
+        summary.add(Arrays.stream(window.getDeviceIdentifiers()).sorted().toList());
+        summary.add(Arrays.stream(window.getCreditCardNumbers()).sorted().toList());
+        for (int i = 0; i < window.getLocationCount(); i++) {
+            summary.add(List.of(window.getTimestamps()[i], window.getLatitudes()[i], window.getLongitudes()[i]));
+        }
+        return summary;
+    }
+
+    private static Transaction transaction(String transactionId, double amount, LocalDateTime date, Device device, CreditCard creditCard) {
+        Transaction transaction = new Transaction();
+        transaction.setTransactionId(transactionId);
+        transaction.setAmount(amount);
+        transaction.setTransactionDate(date);
+        transaction.setDevice(device);
+        transaction.setCreditCard(creditCard);
+        return transaction;
+    }
+
+    private static Device device(Long id, String deviceId, Double latitude, Double longitude) {
+        Device device = new Device();
+        device.setId(id);
+        device.setDeviceId(deviceId);
+        device.setLatitude(latitude);
+        device.setLongitude(longitude);
+        return device;
+    }
+
+    private static CreditCard creditCard(Long id, String number) {
+        CreditCard creditCard = new CreditCard();
+        creditCard.setId(id);
+        creditCard.setNumber(number);
+        return creditCard;
+    }
+
+    private static TransactionEvent event(String transactionId, double amount) {
+        TransactionEvent event = new TransactionEvent();
+        event.setTransactionId(transactionId);
+        event.setUserId(1L);
+        event.setAmount(amount);
+        event.setTransactionDate(NOW);
+        return event;
+    }
+
+    private static Map<String, Object> row(Long userId, String transactionId, Number amount, LocalDateTime transactionDate, Long deviceId,
+                                           Double latitude, Double longitude, Long creditCardId, String deviceIdentifier, String creditCardNumber) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("userId", userId);
+        row.put("transactionId", transactionId);
+        row.put("amount", amount);
+        row.put("transactionDate", transactionDate);
+        row.put("deviceId", deviceId);
+        row.put("latitude", latitude);
+        row.put("longitude", longitude);
+        row.put("creditCardId", creditCardId);
+        row.put("deviceIdentifier", deviceIdentifier);
+        row.put("creditCardNumber", creditCardNumber);
+        return row;
+    }
+}
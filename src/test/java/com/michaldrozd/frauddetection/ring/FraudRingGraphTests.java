@@ -0,0 +1,129 @@
+package com.michaldrozd.frauddetection.ring;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.michaldrozd.frauddetection.dto.FraudRingSummary;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class FraudRingGraphTests {
+
+    private static final long HOUR = 3_600_000;
+
+    @Test
+    void clustersUsersSharingDevicesOrCards() {
+        FraudRingGraph graph = new FraudRingGraph(0, 4);
+        // 1 and 2 share device 100, 2 and 3 share card 200, 4 is alone
+        graph.addUser(1, new long[]{100}, new long[]{});
+        graph.addUser(2, new long[]{100}, new long[]{200});
+        graph.addUser(3, new long[]{101}, new long[]{200});
+        graph.addUser(4, new long[]{102}, new long[]{201});
+        graph.addTotals(1, 10, 1_000);
+        graph.addTotals(3, 14, 500);
+        graph.connect();
+
+        FraudRingSummary ring = graph.findRing(3, 100, 2 * HOUR);
+        assertThat(ring.getRingId()).isEqualTo(1);
+        assertThat(ring.getUserIds()).containsExactly(1L, 2L, 3L);
+        assertThat(ring.getDeviceCount()).isEqualTo(2);
+        assertThat(ring.getCreditCardCount()).isEqualTo(1);
+        assertThat(ring.getTransactionCount()).isEqualTo(24);
+        assertThat(ring.getTotalAmount()).isEqualTo(1_500);
+        assertThat(ring.getTransactionsPerHour()).isEqualTo(12);
+
+        FraudRingSummary single = graph.findRing(4, 100, 2 * HOUR);
+        assertThat(single.getUserIds()).containsExactly(4L);
+        assertThat(single.getScore()).isZero();
+        assertThat(graph.findRing(5, 100, 2 * HOUR)).isNull();
+    }
+
+    @Test
+    void newEdgesMergeRingsIncrementally() {
+        FraudRingGraph graph = new FraudRingGraph(0, 4);
+        graph.addUser(1, new long[]{100}, new long[]{});
+        graph.addUser(2, new long[]{100}, new long[]{});
+        graph.addUser(3, new long[]{101}, new long[]{});
+        graph.connect();
+        assertThat(graph.findRing(3, 100, HOUR).getUserCount()).isEqualTo(1);
+
+        // User 3 pays with a card that user 2 pays with later: both rings merge
+        graph.recordTransaction(3, 101L, 200L, 50);
+        graph.recordTransaction(2, null, 200L, 25);
+        // A new user on a known device joins its ring
+        graph.recordTransaction(9, 101L, null, 5);
+
+        FraudRingSummary ring = graph.findRing(1, 100, HOUR);
+        assertThat(ring.getUserIds()).containsExactly(1L, 2L, 3L, 9L);
+        assertThat(ring.getDeviceCount()).isEqualTo(2);
+        assertThat(ring.getCreditCardCount()).isEqualTo(1);
+        assertThat(ring.getTransactionCount()).isEqualTo(3);
+        assertThat(ring.getTotalAmount()).isEqualTo(80);
+        assertThat(graph.findRing(9, 2, HOUR).getUserIds()).hasSize(2);
+    }
+
+    @Test
+    void ranksRingsByScore() {
+        FraudRingGraph graph = new FraudRingGraph(0, 16);
+        graph.addUser(1, new long[]{100}, new long[]{});
+        graph.addUser(2, new long[]{100}, new long[]{});
+        graph.addUser(3, new long[]{101}, new long[]{});
+        graph.addUser(4, new long[]{101}, new long[]{});
+        graph.addUser(5, new long[]{101}, new long[]{});
+        graph.addUser(6, new long[]{102}, new long[]{});
+        graph.addTotals(1, 100, 10_000);
+        graph.connect();
+
+        List<FraudRingSummary> rings = graph.topRings(2, 10, 100, HOUR);
+
+        assertThat(rings).extracting(FraudRingSummary::getRingId).containsExactly(1L, 3L);
+        assertThat(graph.topRings(3, 10, 100, HOUR)).extracting(FraudRingSummary::getRingId).containsExactly(3L);
+        assertThat(graph.topRings(2, 1, 100, HOUR)).extracting(FraudRingSummary::getRingId).containsExactly(1L);
+    }
+
+    @Test
+    void parallelConnectMatchesSequentialUnionFind() {
+        int users = 20_000;
+        Random random = new Random(11);
+        long[][] devices = new long[users][];
+        FraudRingGraph graph = new FraudRingGraph(0, 1_000);
+        for (int user = 0; user < users; user++) {
+            devices[user] = new long[]{random.nextInt(25_000), random.nextInt(25_000)};
+            graph.addUser(user, devices[user], new long[]{});
+        }
+        graph.connect();
+
+        // Reference: a plain sequential union-find over users, linking users through the first user of each device
+        int[] parent = new int[users];
+        int[] firstUserOfDevice = new int[25_000];
+        Arrays.fill(firstUserOfDevice, -1);
+        for (int user = 0; user < users; user++) {
+            parent[user] = user;
+        }
+        for (int user = 0; user < users; user++) {
+            for (long device : devices[user]) {
+                int first = firstUserOfDevice[(int) device];
+                if (first < 0) {
+                    firstUserOfDevice[(int) device] = user;
+                } else {
+                    parent[find(parent, user)] = find(parent, first);
+                }
+            }
+        }
+        int[] sizes = new int[users];
+        for (int user = 0; user < users; user++) {
+            sizes[find(parent, user)]++;
+        }
+        for (int user = 0; user < users; user += 97) {
+            assertThat(graph.findRing(user, 0, HOUR).getUserCount()).isEqualTo(sizes[find(parent, user)]);
+        }
+    }
+
+    private static int find(int[] parent, int x) {
+        while (parent[x] != x) {
+            x = parent[x] = parent[parent[x]];
+        }
+        return x;
+    }
+}
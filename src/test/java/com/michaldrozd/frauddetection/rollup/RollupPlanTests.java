@@ -0,0 +1,57 @@
+package com.michaldrozd.frauddetection.rollup;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import com.michaldrozd.frauddetection.rollup.RollupPlan.BucketRange;
+import com.michaldrozd.frauddetection.rollup.RollupPlan.Resolution;
+import com.michaldrozd.frauddetection.rollup.RollupPlan.TimeRange;
+import java.time.LocalDateTime;
+import org.junit.jupiter.api.Test;
+
+class RollupPlanTests {
+
+    private static final LocalDateTime DAY = LocalDateTime.of(2023, 5, 1, 0, 0);
+
+    @Test
+    void readsWholeHoursFromHourBucketsAndOnlyTheEdgeMinutesFromTransactions() {
+        LocalDateTime start = DAY.plusHours(9).plusMinutes(58).plusSeconds(30);
+        LocalDateTime end = DAY.plusDays(1).plusHours(9).plusMinutes(58).plusSeconds(30);
+
+        RollupPlan plan = RollupPlan.of(start, end);
+
+        assertThat(plan.getBuckets()).extracting(BucketRange::getResolution, BucketRange::getFrom, BucketRange::getTo).containsExactly(
+            tuple(Resolution.MINUTE, DAY.plusHours(9).plusMinutes(59), DAY.plusHours(10)),
+            tuple(Resolution.HOUR, DAY.plusHours(10), DAY.plusDays(1).plusHours(9)),
+            tuple(Resolution.MINUTE, DAY.plusDays(1).plusHours(9), DAY.plusDays(1).plusHours(9).plusMinutes(58)));
+        assertThat(plan.getEdges()).extracting(TimeRange::getFrom, TimeRange::getTo).containsExactly(
+            tuple(start, DAY.plusHours(9).plusMinutes(59)),
+            tuple(DAY.plusDays(1).plusHours(9).plusMinutes(58), end.plusNanos(1)));
+        assertThat(plan.getMaxBucketCount()).isEqualTo(1 + 23 + 58);
+    }
+
+    @Test
+    void skipsEmptyRangesAtAlignedEdges() {
+        RollupPlan plan = RollupPlan.of(DAY, DAY.plusHours(2).plusMinutes(30));
+
+        assertThat(plan.getBuckets()).extracting(BucketRange::getResolution, BucketRange::getFrom, BucketRange::getTo).containsExactly(
+            tuple(Resolution.HOUR, DAY, DAY.plusHours(2)),
+            tuple(Resolution.MINUTE, DAY.plusHours(2), DAY.plusHours(2).plusMinutes(30)));
+        // The end is inclusive, so transactions at exactly the end are read from the graph
+        assertThat(plan.getEdges()).extracting(TimeRange::getFrom, TimeRange::getTo).containsExactly(
+            tuple(DAY.plusHours(2).plusMinutes(30), DAY.plusHours(2).plusMinutes(30).plusNanos(1)));
+    }
+
+    @Test
+    void readsShortRangesFromMinuteBucketsOrTransactions() {
+        RollupPlan minutes = RollupPlan.of(DAY.plusMinutes(10).plusSeconds(5), DAY.plusMinutes(40));
+        assertThat(minutes.getBuckets()).extracting(BucketRange::getResolution, BucketRange::getFrom, BucketRange::getTo).containsExactly(
+            tuple(Resolution.MINUTE, DAY.plusMinutes(11), DAY.plusMinutes(40)));
+
+        LocalDateTime start = DAY.plusMinutes(10).plusSeconds(5);
+        RollupPlan withinMinute = RollupPlan.of(start, start.plusSeconds(30));
+        assertThat(withinMinute.getBuckets()).isEmpty();
+        assertThat(withinMinute.getEdges()).extracting(TimeRange::getFrom, TimeRange::getTo).containsExactly(
+            tuple(start, start.plusSeconds(30).plusNanos(1)));
+    }
+}
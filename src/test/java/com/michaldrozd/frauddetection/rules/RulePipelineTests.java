@@ -0,0 +1,135 @@
+package com.michaldrozd.frauddetection.rules;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.michaldrozd.frauddetection.dto.FraudCheckThresholds;
+import com.michaldrozd.frauddetection.dto.FraudReason;
+import com.michaldrozd.frauddetection.dto.FraudVerdict;
+import com.michaldrozd.frauddetection.dto.RuleStatus;
+import com.michaldrozd.frauddetection.location.LocationVelocityEngine;
+import com.michaldrozd.frauddetection.metrics.FraudCheckMetrics;
+import com.michaldrozd.frauddetection.window.WindowAggregate;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RulePipelineTests {
+
+    private static final FraudCheckThresholds THRESHOLDS = new FraudCheckThresholds(5, 60, 1000, 500);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void evaluatesBuiltInRulesInTheOrderOfTheReasons() {
+        LocationVelocityEngine engine = new LocationVelocityEngine(false, 900, 100);
+        RulePipeline pipeline = pipeline(List.of(new LocationRule(engine), new TransactionAmountRule(), new TransactionCountRule(),
+            new MultipleDevicesOrCreditCardsRule()), false);
+
+        assertThat(pipeline.getStatus()).extracting(RuleStatus::getName)
+                                         .containsExactly("TRANSACTION_COUNT", "TRANSACTION_AMOUNT", "MULTIPLE_DEVICES_OR_CREDIT_CARDS", "LOCATION");
+        assertThat(evaluate(pipeline, WindowAggregate.withoutLocations(10, 5000, 2, 1))).isEqualTo(FraudVerdict.fraudulent(FraudReason.TRANSACTION_COUNT));
+        assertThat(evaluate(pipeline, WindowAggregate.withoutLocations(1, 5000, 2, 1))).isEqualTo(FraudVerdict.fraudulent(FraudReason.TRANSACTION_AMOUNT));
+        assertThat(evaluate(pipeline, WindowAggregate.withoutLocations(1, 10, 1, 1))).isEqualTo(FraudVerdict.notFraudulent());
+    }
+
+    @Test
+    void movesCheapRulesThatTripOftenToTheFront() throws Exception {
+        Files.writeString(directory.resolve("rules.json"), "{\"rules\": [\"SLOW\", \"CHEAP\"]}");
+        RulePipeline pipeline = pipeline(List.of(new TestRule("SLOW", FraudReason.MODEL, false, 50), new TestRule("CHEAP", FraudReason.TRANSACTION_COUNT, true, 0)), true);
+        pipeline.reload();
+        assertThat(pipeline.getStatus()).extracting(RuleStatus::getName).containsExactly("SLOW", "CHEAP");
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(evaluate(pipeline, WindowAggregate.withoutLocations(1, 10, 1, 1))).isEqualTo(FraudVerdict.fraudulent(FraudReason.TRANSACTION_COUNT));
+        }
+        pipeline.reorder();
+
+        List<RuleStatus> status = pipeline.getStatus();
+        assertThat(status).extracting(RuleStatus::getName).containsExactly("CHEAP", "SLOW");
+        assertThat(status.get(0).getHitRate()).isEqualTo(1.0);
+        assertThat(status.get(1).getEvaluations()).isEqualTo(100);
+        assertThat(status.get(1).getCostNanos()).isGreaterThan(status.get(0).getCostNanos());
+    }
+
+    @Test
+    void reloadsRulesAndTenantThresholds() throws Exception {
+        Path ruleSet = directory.resolve("rules.json");
+        RulePipeline pipeline = pipeline(List.of(new TransactionCountRule(), new TransactionAmountRule()), false);
+        pipeline.reload();
+        assertThat(pipeline.thresholdsFor("acme")).isNull();
+
+        Files.writeString(ruleSet, """
+            {
+              "rules": ["TRANSACTION_AMOUNT"],
+              "defaultThresholds": {"transactionsThreshold": 5, "timeWindowInMinutes": 60, "amountThreshold": 1000, "distanceThresholdInKm": 500},
+              "tenants": {"acme": {"transactionsThreshold": 50, "timeWindowInMinutes": 30, "amountThreshold": 20000, "distanceThresholdInKm": 900}}
+            }
+            """);
+        pipeline.reload();
+
+        assertThat(pipeline.getStatus()).extracting(RuleStatus::getName).containsExactly("TRANSACTION_AMOUNT");
+        assertThat(pipeline.thresholdsFor("acme").getAmountThreshold()).isEqualTo(20000);
+        assertThat(pipeline.thresholdsFor("other").getAmountThreshold()).isEqualTo(1000);
+        assertThat(evaluate(pipeline, WindowAggregate.withoutLocations(10, 10, 1, 1))).isEqualTo(FraudVerdict.notFraudulent());
+
+        Files.writeString(ruleSet, "{\"rules\": [\"TRANSACTION_COUNT\", \"UNKNOWN\"]}");
+        assertThatThrownBy(pipeline::reload).isInstanceOf(IllegalArgumentException.class).hasMessageContaining("UNKNOWN");
+        // The previous rule set stays in effect
+        assertThat(pipeline.getStatus()).extracting(RuleStatus::getName).containsExactly("TRANSACTION_AMOUNT");
+        assertThat(pipeline.thresholdsFor("acme").getAmountThreshold()).isEqualTo(20000);
+    }
+
+    private RulePipeline pipeline(List<FraudRule> rules, boolean adaptiveOrdering) {
+        return new RulePipeline(rules, new FraudCheckMetrics(new SimpleMeterRegistry()), new ObjectMapper(),
+            directory.resolve("rules.json").toString(), adaptiveOrdering);
+    }
+
+    private static FraudVerdict evaluate(RulePipeline pipeline, WindowAggregate window) {
+        return pipeline.evaluate(1L, window, THRESHOLDS, System.nanoTime());
+    }
+
+    private static final class TestRule implements FraudRule {
+        private final String name;
+        private final FraudReason reason;
+        private final boolean trips;
+        private final long costMicros;
+
+        TestRule(String name, FraudReason reason, boolean trips, long costMicros) {
+            this.name = name;
+            this.reason = reason;
+            this.trips = trips;
+            this.costMicros = costMicros;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public FraudReason getReason() {
+            return reason;
+        }
+
+        @Override
+        public String getDescription() {
+            return "has tripped the " + name + " rule";
+        }
+
+        @Override
+        public boolean trips(RuleContext context) {
+            long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(costMicros);
+            while (System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+            return trips;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.michaldrozd.frauddetection.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.when;
+
+import com.michaldrozd.frauddetection.dto.AnomalyScanPage;
+import com.michaldrozd.frauddetection.dto.SuspiciousUser;
+import com.michaldrozd.frauddetection.repositories.UserRepository;
+import com.michaldrozd.frauddetection.rollup.TransactionRollups;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class AnomalyScanServiceTests {
+
+    private static final LocalDateTime START = LocalDateTime.of(2023, 5, 1, 0, 0);
+
+    // Transaction times by user
+    private final TreeMap<Long, List<LocalDateTime>> transactions = new TreeMap<>();
+
+    @Mock
+    private UserRepository userRepository;
+    private AnomalyScanService service;
+
+    @BeforeEach
+    void setUp() {
+        when(userRepository.findUserIdsPage(nullable(Long.class), anyInt())).thenAnswer(invocation -> {
+            Long after = invocation.getArgument(0);
+            int limit = invocation.getArgument(1);
+            return (after == null ? transactions : transactions.tailMap(after, false)).keySet().stream().limit(limit).toList();
+        });
+        when(userRepository.countTransactionsByUsers(anyCollection(), any(), any(), anyBoolean())).thenAnswer(invocation -> {
+            LocalDateTime start = invocation.getArgument(1);
+            LocalDateTime end = invocation.getArgument(2);
+            boolean endInclusive = invocation.getArgument(3);
+            Map<Long, Long> counts = new HashMap<>();
+            for (Long userId : invocation.<Collection<Long>>getArgument(0)) {
+                long count = transactions.get(userId).stream()
+                                         .filter(time -> !time.isBefore(start) && (time.isBefore(end) || (endInclusive && time.equals(end))))
+                                         .count();
+                if (count > 0) {
+                    counts.put(userId, count);
+                }
+            }
+            return counts;
+        });
+        service = new AnomalyScanService(userRepository, new TransactionRollups(null, false, ""), 2, 24, 3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void mergesSlicesAndResumesFromCursor() {
+        transactions.put(1L, List.of(START, START.plusDays(1), START.plusDays(2)));
+        transactions.put(2L, List.of(START.plusDays(3)));
+        transactions.put(3L, List.of(START.plusHours(1), START.plusDays(10), START.plusDays(30)));
+        transactions.put(4L, List.of());
+        // The end of the range is inclusive, anything after it is not counted
+        transactions.put(5L, List.of(START.plusDays(30), START.plusDays(30), START.plusDays(30).plusSeconds(1)));
+
+        List<AnomalyScanPage> pages = new ArrayList<>();
+        service.scan(START, START.plusDays(30), 2, null, pages::add);
+
+        assertThat(pages).extracting(AnomalyScanPage::getCursor).containsExactly(2L, 4L, 5L);
+        assertThat(pages).extracting(AnomalyScanPage::isComplete).containsExactly(false, false, true);
+        assertThat(pages.stream().flatMap(page -> page.getUsers().stream()).map(SuspiciousUser::getUserId)).containsExactly(1L, 3L, 5L);
+        assertThat(pages.get(0).getUsers().get(0).getTransactionCount()).isEqualTo(3);
+
+        List<AnomalyScanPage> resumed = new ArrayList<>();
+        service.scan(START, START.plusDays(30), 2, 2L, resumed::add);
+        assertThat(resumed.stream().flatMap(page -> page.getUsers().stream()).map(SuspiciousUser::getUserId)).containsExactly(3L, 5L);
+    }
+}
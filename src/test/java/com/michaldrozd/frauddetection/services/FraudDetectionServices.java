@@ -0,0 +1,81 @@
+package com.michaldrozd.frauddetection.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.michaldrozd.frauddetection.ai.FraudModelScorer;
+import com.michaldrozd.frauddetection.blocklist.Blocklist;
+import com.michaldrozd.frauddetection.cache.UserIdentityCache;
+import com.michaldrozd.frauddetection.cache.VerdictCache;
+import com.michaldrozd.frauddetection.concurrency.LookupExecutor;
+import com.michaldrozd.frauddetection.concurrency.RepositoryBulkhead;
+import com.michaldrozd.frauddetection.location.LocationVelocityEngine;
+import com.michaldrozd.frauddetection.metrics.FraudCheckMetrics;
+import com.michaldrozd.frauddetection.repositories.TransactionRepository;
+import com.michaldrozd.frauddetection.repositories.UserRepository;
+import com.michaldrozd.frauddetection.rollup.TransactionRollups;
+import com.michaldrozd.frauddetection.rules.FraudRule;
+import com.michaldrozd.frauddetection.rules.ImpossibleTravelRule;
+import com.michaldrozd.frauddetection.rules.LocationRule;
+import com.michaldrozd.frauddetection.rules.ModelRule;
+import com.michaldrozd.frauddetection.rules.MultipleDevicesOrCreditCardsRule;
+import com.michaldrozd.frauddetection.rules.RulePipeline;
+import com.michaldrozd.frauddetection.rules.TransactionAmountRule;
+import com.michaldrozd.frauddetection.rules.TransactionCountRule;
+import com.michaldrozd.frauddetection.window.UserWindowStore;
+import com.michaldrozd.frauddetection.window.WindowQueryMode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+
+/**
+ * Fraud detection services for tests, over stubbed repositories and without any Spring context.
+ */
+public final class FraudDetectionServices {
+
+    private FraudDetectionServices() {
+    }
+
+    /**
+     * A service over the given collaborators, with rollups disabled and lookups run on the calling thread.
+     */
+    public static FraudDetectionService fraudDetectionService(TransactionRepository transactionRepository, UserRepository userRepository,
+                                                              UserWindowStore userWindowStore, RulePipeline rulePipeline,
+                                                              Blocklist blocklist, VerdictCache verdictCache) {
+        RepositoryBulkhead repositoryBulkhead = new RepositoryBulkhead(16, 1_000, new SimpleMeterRegistry());
+        return new FraudDetectionService(
+            transactionRepository,
+            new UserIdentityCache(userRepository, repositoryBulkhead, new SimpleMeterRegistry(), 60_000, 1_000),
+            userWindowStore,
+            WindowQueryMode.ENTITIES,
+            new TransactionRollups(transactionRepository, false, ""),
+            rulePipeline,
+            repositoryBulkhead,
+            new LookupExecutor(false, false, 1),
+            new FraudCheckMetrics(new SimpleMeterRegistry()),
+            blocklist,
+            verdictCache
+        );
+    }
+
+    /**
+     * A service evaluating windows only, without repositories, window store, blocklist or verdict cache.
+     */
+    public static FraudDetectionService fraudDetectionService(RulePipeline rulePipeline) {
+        return fraudDetectionService(null, null, new UserWindowStore(false, 1440, 60, 512), rulePipeline, disabledBlocklist(),
+            new VerdictCache(false, 0, 0, new SimpleMeterRegistry()));
+    }
+
+    /**
+     * A pipeline of the built-in rules in their default order, with the location velocity and the model disabled and
+     * the rule set read from the given file if it exists.
+     */
+    public static RulePipeline rulePipeline(String rulesPath) {
+        LocationVelocityEngine locationVelocityEngine = new LocationVelocityEngine(false, 900, 100);
+        FraudModelScorer scorer = new FraudModelScorer(false, "unused.ser", "", 0.5, 0, 0, 0.3, false, new SimpleMeterRegistry());
+        List<FraudRule> rules = List.of(new TransactionCountRule(), new TransactionAmountRule(), new MultipleDevicesOrCreditCardsRule(),
+            new LocationRule(locationVelocityEngine), new ImpossibleTravelRule(locationVelocityEngine), new ModelRule(scorer));
+        return new RulePipeline(rules, new FraudCheckMetrics(new SimpleMeterRegistry()), new ObjectMapper(), rulesPath, false);
+    }
+
+    public static Blocklist disabledBlocklist() {
+        return new Blocklist(false, "unused.bin", 1, "", new SimpleMeterRegistry());
+    }
+}
@@ -0,0 +1,97 @@
+package com.michaldrozd.frauddetection.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.michaldrozd.frauddetection.dto.FraudCheckThresholds;
+import com.michaldrozd.frauddetection.dto.FraudReason;
+import com.michaldrozd.frauddetection.dto.FraudVerdict;
+import com.michaldrozd.frauddetection.dto.WindowTransaction;
+import com.michaldrozd.frauddetection.rules.RulePipeline;
+import com.michaldrozd.frauddetection.window.WindowAggregate;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+
+class ReactiveFraudDetectionServiceTests {
+
+    private static final LocalDateTime NOW = LocalDateTime.now();
+    private static final LocalDateTime WINDOW_START = NOW.minusMinutes(60);
+
+    @TempDir
+    static Path directory;
+
+    private final RulePipeline rulePipeline = FraudDetectionServices.rulePipeline(directory.resolve("rules.json").toString());
+    private final FraudDetectionService fraudDetectionService = FraudDetectionServices.fraudDetectionService(rulePipeline);
+    // checkWindow reads neither the repositories nor the user cache
+    private final ReactiveFraudDetectionService service = new ReactiveFraudDetectionService(null, null, null, fraudDetectionService, rulePipeline);
+
+    @Test
+    void stopsStreamingAsSoonAsARuleTrips() {
+        AtomicInteger emitted = new AtomicInteger();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Flux<WindowTransaction> window = Flux.range(0, 1_000_000)
+                                             .map(i -> transaction(10.0, 1L, 48.14, 17.10))
+                                             .doOnNext(transaction -> emitted.incrementAndGet())
+                                             .doOnCancel(() -> cancelled.set(true));
+
+        FraudVerdict byCount = service.checkWindow(1L, window, WINDOW_START, new FraudCheckThresholds(25, 60, 1_000_000, 500)).block();
+        assertThat(byCount.getReason()).isEqualTo(FraudReason.TRANSACTION_COUNT);
+        assertThat(emitted).hasValue(25);
+        assertThat(cancelled).isTrue();
+
+        emitted.set(0);
+        FraudVerdict byAmount = service.checkWindow(1L, window, WINDOW_START, new FraudCheckThresholds(1_000, 60, 100, 500)).block();
+        assertThat(byAmount.getReason()).isEqualTo(FraudReason.TRANSACTION_AMOUNT);
+        assertThat(emitted).hasValue(10);
+    }
+
+    @Test
+    void tripsOnlyTheRulesInEffect() throws Exception {
+        Files.writeString(directory.resolve("rules.json"), "{\"rules\": [\"TRANSACTION_AMOUNT\"]}");
+        rulePipeline.reload();
+        Flux<WindowTransaction> window = Flux.range(0, 30).map(i -> transaction(10.0, (long) i, 48.14, 17.10));
+
+        FraudVerdict verdict = service.checkWindow(1L, window, WINDOW_START, new FraudCheckThresholds(25, 60, 1_000_000, 500)).block();
+
+        assertThat(verdict.isFraudulent()).isFalse();
+    }
+
+    @Test
+    void evaluatesCompleteWindowWhenNothingTrips() {
+        Flux<WindowTransaction> window = Flux.just(transaction(10.0, 1L, 48.14, 17.10), transaction(20.0, 1L, 48.15, 17.11));
+
+        FraudVerdict verdict = service.checkWindow(1L, window, WINDOW_START, new FraudCheckThresholds(10, 60, 1_000, 500)).block();
+
+        assertThat(verdict.isFraudulent()).isFalse();
+    }
+
+    @Test
+    void streamedDistanceRuleAgreesWithAggregatedWindow() {
+        Random random = new Random(5);
+        for (int run = 0; run < 500; run++) {
+            List<WindowTransaction> transactions = new ArrayList<>();
+            int size = 2 + random.nextInt(30);
+            for (int i = 0; i < size; i++) {
+                transactions.add(transaction(1.0, 1L, 48 + random.nextGaussian() * 2, 17 + random.nextGaussian() * 3));
+            }
+            FraudCheckThresholds thresholds = new FraudCheckThresholds(1_000, 60, 1_000_000, 50 + random.nextInt(800));
+
+            FraudVerdict streamed = service.checkWindow(1L, Flux.fromIterable(transactions), WINDOW_START, thresholds).block();
+            FraudVerdict aggregated = fraudDetectionService.evaluate(1L, WindowAggregate.fromWindowTransactions(transactions, WINDOW_START), thresholds);
+
+            assertThat(streamed.isFraudulent()).as("run %d", run).isEqualTo(aggregated.isFraudulent());
+        }
+    }
+
+    private static WindowTransaction transaction(Double amount, Long deviceId, double latitude, double longitude) {
+        return new WindowTransaction(1L, null, amount, NOW.minusMinutes(1), deviceId, latitude, longitude, 1L, null, null);
+    }
+}
@@ -0,0 +1,58 @@
+package com.michaldrozd.frauddetection.similarity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Random;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.Test;
+
+class MinHashLshIndexTests {
+
+    private final MinHashLshIndex index = new MinHashLshIndex(32, 4, 42);
+
+    @Test
+    void findsSimilarUsersWithExactSharedCount() {
+        index.put(1, LongStream.range(0, 20).toArray());
+        // Shares 18 of 20 products
+        index.put(2, LongStream.range(2, 22).toArray());
+        // Shares 3 of 20 products
+        index.put(3, LongStream.range(17, 37).toArray());
+        index.put(4, LongStream.range(100, 120).toArray());
+
+        assertThat(index.findSimilar(1, 10)).containsExactly(2);
+        assertThat(index.findSimilar(1, 19)).isEmpty();
+        assertThat(index.findSimilar(4, 1)).isEmpty();
+    }
+
+    @Test
+    void updatesIncrementally() {
+        index.put(1, LongStream.range(0, 10).toArray());
+        index.put(2, new long[0]);
+        assertThat(index.findSimilar(1, 1)).isEmpty();
+
+        for (long product = 0; product < 10; product++) {
+            index.addLike(2, product);
+        }
+        assertThat(index.findSimilar(1, 10)).containsExactly(2);
+
+        index.removeLike(2, 0);
+        assertThat(index.findSimilar(1, 10)).isEmpty();
+        assertThat(index.findSimilar(1, 9)).containsExactly(2);
+    }
+
+    @Test
+    void neverReturnsFalsePositives() {
+        Random random = new Random(7);
+        long[][] liked = new long[300][];
+        for (int user = 0; user < liked.length; user++) {
+            liked[user] = random.longs(5 + random.nextInt(30), 0, 200).toArray();
+            index.put(user, liked[user]);
+        }
+        for (int user = 0; user < liked.length; user++) {
+            for (long other : index.findSimilar(user, 3)) {
+                long shared = LongStream.of(liked[user]).distinct().filter(product -> LongStream.of(liked[(int) other]).anyMatch(p -> p == product)).count();
+                assertThat(shared).isGreaterThanOrEqualTo(3);
+            }
+        }
+    }
+}
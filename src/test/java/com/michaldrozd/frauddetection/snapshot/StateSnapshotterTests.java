@@ -0,0 +1,88 @@
+package com.michaldrozd.frauddetection.snapshot;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.michaldrozd.frauddetection.dto.WindowTransaction;
+import com.michaldrozd.frauddetection.dto.WindowTransactionPage;
+import com.michaldrozd.frauddetection.repositories.TransactionRepository;
+import com.michaldrozd.frauddetection.window.UserWindowStore;
+import com.michaldrozd.frauddetection.window.WindowAggregate;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class StateSnapshotterTests {
+
+    private static final LocalDateTime NOW = LocalDateTime.now();
+
+    @TempDir
+    Path directory;
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Test
+    void restoresTheSnapshotAndReplaysTheTransactionsCreatedAfterItsWatermark() {
+        UserWindowStore store = new UserWindowStore(true, 1440, 60, 16);
+        StateSnapshotter snapshotter = snapshotter(store);
+        store.seedFromProjection(1L, NOW.minusMinutes(60), List.of(transaction(1L, "t-1", 10, NOW.minusMinutes(30))));
+        long stamp = snapshotter.beginBatch();
+        try {
+            store.replay(transaction(1L, "t-2", 20, NOW.minusMinutes(20)));
+        } finally {
+            snapshotter.endBatch();
+        }
+        snapshotter.snapshot();
+
+        // Created after the watermark, over two pages; t-2 comes back as if it was loaded by a check meanwhile
+        when(transactionRepository.findWindowTransactionsIngestedAfter(eq(stamp), isNull(), anyInt()))
+            .thenReturn(new WindowTransactionPage(List.of(transaction(1L, "t-3", 40, NOW.minusMinutes(10)),
+                transaction(1L, "t-2", 20, NOW.minusMinutes(20))), 7L, false));
+        when(transactionRepository.findWindowTransactionsIngestedAfter(eq(stamp), eq(7L), anyInt()))
+            .thenReturn(new WindowTransactionPage(List.of(transaction(1L, "t-4", 80, NOW.minusMinutes(5))), 9L, true));
+        UserWindowStore restoredStore = new UserWindowStore(true, 1440, 60, 16);
+        StateSnapshotter restored = snapshotter(restoredStore);
+        restored.restore();
+
+        WindowAggregate window = restoredStore.aggregate(1L, NOW.minusMinutes(60)).orElseThrow();
+        assertThat(window.getTransactionCount()).isEqualTo(4);
+        assertThat(window.getTotalAmount()).isEqualTo(150);
+        verify(transactionRepository).findWindowTransactionsIngestedAfter(eq(stamp), eq(7L), anyInt());
+        // Batches ingested after the restore are stamped after the watermark
+        assertThat(restored.beginBatch()).isGreaterThan(stamp);
+        restored.endBatch();
+    }
+
+    @Test
+    void startsEmptyWhenTheReplayFails() {
+        UserWindowStore store = new UserWindowStore(true, 1440, 60, 16);
+        store.seedFromProjection(1L, NOW.minusMinutes(60), List.of(transaction(1L, "t-1", 10, NOW.minusMinutes(30))));
+        snapshotter(store).snapshot();
+
+        when(transactionRepository.findWindowTransactionsIngestedAfter(anyLong(), isNull(), anyInt())).thenThrow(new IllegalStateException("unavailable"));
+        UserWindowStore restoredStore = new UserWindowStore(true, 1440, 60, 16);
+        snapshotter(restoredStore).restore();
+
+        assertThat(restoredStore.size()).isZero();
+    }
+
+    private StateSnapshotter snapshotter(UserWindowStore store) {
+        return new StateSnapshotter(store, transactionRepository, true, directory.resolve("window-store.snapshot").toString(), 2);
+    }
+
+    private static WindowTransaction transaction(Long userId, String transactionId, double amount, LocalDateTime date) {
+        return new WindowTransaction(userId, transactionId, amount, date, 1L, 48.14, 17.10, 1L, "d-1", "4111111111111111");
+    }
+}
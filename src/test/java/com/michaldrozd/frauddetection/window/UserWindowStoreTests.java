@@ -0,0 +1,257 @@
+package com.michaldrozd.frauddetection.window;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.michaldrozd.frauddetection.domain.CreditCard;
+import com.michaldrozd.frauddetection.domain.Device;
+import com.michaldrozd.frauddetection.domain.Transaction;
+import com.michaldrozd.frauddetection.dto.WindowTransaction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class UserWindowStoreTests {
+
+    private final UserWindowStore store = new UserWindowStore(true, 1440, 60, 16);
+
+    @Test
+    void coldMissUntilSeeded() {
+        LocalDateTime now = LocalDateTime.now();
+        assertThat(store.aggregate(1L, now.minusMinutes(30))).isEmpty();
+
+        store.seed(1L, now.minusMinutes(60), List.of(transaction(now.minusMinutes(10), 100, 1L, 1L)));
+
+        assertThat(store.aggregate(1L, now.minusMinutes(30))).hasValueSatisfying(window -> {
+            assertThat(window.getTransactionCount()).isEqualTo(1);
+            assertThat(window.getTotalAmount()).isEqualTo(100);
+        });
+        // Reaches further back than the seeded window
+        assertThat(store.aggregate(1L, now.minusMinutes(120))).isEmpty();
+    }
+
+    @Test
+    void recordsIncrementallyAfterSeed() {
+        LocalDateTime now = LocalDateTime.now();
+        store.seed(1L, now.minusMinutes(60), List.of(transaction(now.minusMinutes(40), 10, 1L, 1L)));
+        store.record(1L, transaction(now.minusMinutes(5), 20, 2L, 1L));
+        store.record(1L, transaction(now.minusMinutes(2), 30, 2L, 3L));
+
+        WindowAggregate lastHour = store.aggregate(1L, now.minusMinutes(60)).orElseThrow();
+        assertThat(lastHour.getTransactionCount()).isEqualTo(3);
+        assertThat(lastHour.getTotalAmount()).isEqualTo(60);
+        assertThat(lastHour.getDistinctDevices()).isEqualTo(2);
+        assertThat(lastHour.getDistinctCreditCards()).isEqualTo(2);
+        assertThat(lastHour.getLocationCount()).isEqualTo(3);
+
+        WindowAggregate lastTenMinutes = store.aggregate(1L, now.minusMinutes(10)).orElseThrow();
+        assertThat(lastTenMinutes.getTransactionCount()).isEqualTo(2);
+        assertThat(lastTenMinutes.getDistinctDevices()).isEqualTo(1);
+        assertThat(lastTenMinutes.getDistinctCreditCards()).isEqualTo(2);
+        assertThat(lastTenMinutes.getDeviceIdentifiers()).containsExactly("d-2");
+        assertThat(lastTenMinutes.getCreditCardNumbers()).containsExactlyInAnyOrder("c-1", "c-3");
+    }
+
+    @Test
+    void ignoresUsersWithoutState() {
+        store.record(1L, transaction(LocalDateTime.now(), 10, 1L, 1L));
+
+        assertThat(store.size()).isZero();
+    }
+
+    @Test
+    void addsTransactionsRecordedWhileTheSeedIsPending() {
+        LocalDateTime now = LocalDateTime.now();
+        store.beginSeed(1L);
+        // Both committed after the user's window was read, but only the first one is returned by the read
+        store.record(1L, transaction("t-1", now.minusMinutes(3), 10, 1L, 1L));
+        store.record(1L, transaction("t-2", now.minusMinutes(2), 20, 1L, 1L));
+
+        store.seed(1L, now.minusMinutes(60), List.of(transaction("t-0", now.minusMinutes(30), 5, 1L, 1L),
+            transaction("t-1", now.minusMinutes(3), 10, 1L, 1L)));
+        store.record(1L, transaction("t-3", now.minusMinutes(1), 40, 1L, 1L));
+
+        WindowAggregate window = store.aggregate(1L, now.minusMinutes(60)).orElseThrow();
+        assertThat(window.getTransactionCount()).isEqualTo(4);
+        assertThat(window.getTotalAmount()).isEqualTo(75);
+    }
+
+    @Test
+    void countsTransactionsRecordedAfterTheSeedReadThemOnce() {
+        LocalDateTime now = LocalDateTime.now();
+        // t-1 was committed before the seed read the window, but is only recorded once the seed is installed
+        store.beginSeed(1L);
+        store.seed(1L, now.minusMinutes(60), List.of(transaction("t-0", now.minusMinutes(30), 5, 1L, 1L),
+            transaction("t-1", now.minusMinutes(3), 10, 2L, 2L)));
+        store.record(1L, transaction("t-1", now.minusMinutes(3), 10, 2L, 2L));
+        store.record(1L, transaction("t-2", now.minusMinutes(2), 20, 1L, 1L));
+        WindowAggregate scored = store.recordAndAggregate(1L, transaction("t-2", now.minusMinutes(2), 20, 1L, 1L), 3_600_000);
+
+        WindowAggregate window = store.aggregate(1L, now.minusMinutes(60)).orElseThrow();
+        assertThat(window.getTransactionCount()).isEqualTo(3);
+        assertThat(window.getTotalAmount()).isEqualTo(35);
+        assertThat(window.getDistinctDevices()).isEqualTo(2);
+        assertThat(window.getLocationCount()).isEqualTo(3);
+        assertThat(scored.getTransactionCount()).isEqualTo(3);
+    }
+
+    @Test
+    void stopsBufferingWhenTheSeedIsCancelled() {
+        LocalDateTime now = LocalDateTime.now();
+        store.beginSeed(1L);
+        store.record(1L, transaction("t-1", now.minusMinutes(3), 10, 1L, 1L));
+        store.cancelSeed(1L);
+
+        store.seed(1L, now.minusMinutes(60), List.of());
+
+        assertThat(store.aggregate(1L, now.minusMinutes(60))).hasValueSatisfying(window -> assertThat(window.getTransactionCount()).isZero());
+    }
+
+    @Test
+    void clipsTheBucketTheWindowStartsIn() {
+        LocalDateTime since = LocalDateTime.now().withSecond(30).withNano(0).minusMinutes(30);
+        store.seed(1L, since.minusMinutes(10), List.of(
+            transaction(since.minusSeconds(20), 10, 1L, 1L),
+            transaction(since, 20, 2L, 1L),
+            transaction(since.plusSeconds(20), 40, 2L, 1L),
+            transaction(since.plusMinutes(1), 80, 2L, 1L)));
+
+        WindowAggregate window = store.aggregate(1L, since).orElseThrow();
+        assertThat(window.getTransactionCount()).isEqualTo(3);
+        assertThat(window.getTotalAmount()).isEqualTo(140);
+        assertThat(window.getDistinctDevices()).isEqualTo(1);
+    }
+
+    @Test
+    void doesNotCoverWindowsReachingBackToDroppedLocations() {
+        LocalDateTime now = LocalDateTime.now();
+        store.seed(1L, now.minusMinutes(60), List.of());
+        for (int i = 0; i < 17; i++) {
+            store.record(1L, transaction(now.minusMinutes(40 - i), 1, 1L, 1L));
+        }
+
+        // The location of the first transaction was dropped to keep at most 16
+        assertThat(store.covers(1L, WindowAggregate.toEpochMillis(now.minusMinutes(40)))).isFalse();
+        assertThat(store.aggregate(1L, now.minusMinutes(60))).isEmpty();
+        assertThat(store.aggregate(1L, now.minusMinutes(39).minusSeconds(30))).hasValueSatisfying(window -> {
+            assertThat(window.getTransactionCount()).isEqualTo(16);
+            assertThat(window.getLocationCount()).isEqualTo(16);
+        });
+    }
+
+    @Test
+    void scoresOnIngestFromFirstSeenTransaction() {
+        LocalDateTime now = LocalDateTime.now();
+        long hour = 3_600_000;
+
+        WindowAggregate first = store.recordAndAggregate(1L, transaction(now.minusMinutes(10), 100, 1L, 1L), hour);
+        WindowAggregate second = store.recordAndAggregate(1L, transaction(now.minusMinutes(5), 50, 2L, 1L), hour);
+
+        assertThat(first.getTransactionCount()).isEqualTo(1);
+        assertThat(second.getTransactionCount()).isEqualTo(2);
+        assertThat(second.getTotalAmount()).isEqualTo(150);
+        assertThat(second.getDistinctDevices()).isEqualTo(2);
+        // Only transactions from the first one on are known, so the hour before it is not covered
+        assertThat(store.covers(1L, WindowAggregate.toEpochMillis(now.minusMinutes(5)) - hour)).isFalse();
+        assertThat(store.covers(1L, WindowAggregate.toEpochMillis(now.minusMinutes(10)))).isTrue();
+    }
+
+    @Test
+    void restoresSnapshotAndReplaysNewerTransactions(@TempDir Path directory) throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+        Path snapshot = directory.resolve("window-store.snapshot");
+        store.seed(1L, now.minusMinutes(60), List.of(transaction(now.minusMinutes(40), 10, 1L, 1L)));
+        for (int i = 0; i < 10; i++) {
+            store.record(1L, transaction(now.minusMinutes(30 - i), 1, 2L + i % 3, 1L));
+        }
+        store.recordAndAggregate(2L, transaction(now.minusMinutes(5), 50, 7L, 7L), 3_600_000);
+
+        assertThat(store.saveSnapshot(snapshot, 42)).isEqualTo(2);
+        UserWindowStore restored = new UserWindowStore(true, 1440, 60, 16);
+        assertThat(restored.restoreSnapshot(snapshot)).hasValue(42);
+
+        for (long userId : new long[]{1, 2}) {
+            WindowAggregate expected = store.aggregate(userId, now.minusMinutes(60)).orElse(null);
+            WindowAggregate actual = restored.aggregate(userId, now.minusMinutes(60)).orElse(null);
+            assertThat(actual).usingRecursiveComparison().ignoringCollectionOrder().isEqualTo(expected);
+        }
+        assertThat(restored.covers(2L, WindowAggregate.toEpochMillis(now.minusMinutes(10)))).isFalse();
+        assertThat(restored.lastSeenLocation(1L)).hasValueSatisfying(location -> assertThat(location).containsExactly(48.14, 17.10));
+
+        restored.replay(new WindowTransaction(1L, "t-21", 5.0, now.minusMinutes(1), 9L, 50.0, 14.0, 1L, "d-9", "c-1"));
+        restored.replay(new WindowTransaction(3L, "t-22", 5.0, now.minusMinutes(1), 9L, 50.0, 14.0, 1L, "d-9", "c-1"));
+        WindowAggregate replayed = restored.aggregate(1L, now.minusMinutes(60)).orElseThrow();
+        assertThat(replayed.getTransactionCount()).isEqualTo(12);
+        assertThat(replayed.getTotalAmount()).isEqualTo(25);
+        assertThat(replayed.getDistinctDevices()).isEqualTo(5);
+        assertThat(replayed.getDeviceIdentifiers()).containsExactlyInAnyOrder("d-1", "d-2", "d-3", "d-4", "d-9");
+        assertThat(restored.size()).isEqualTo(2);
+    }
+
+    @Test
+    void writesTheStatesAsTheyWereWhenTheSnapshotStarted(@TempDir Path directory) throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+        Path snapshot = directory.resolve("window-store.snapshot");
+        store.seed(1L, now.minusMinutes(60), List.of(transaction(now.minusMinutes(40), 10, 1L, 1L)));
+        store.seed(2L, now.minusMinutes(60), List.of(transaction(now.minusMinutes(40), 10, 1L, 1L)));
+        WindowAggregate expected = store.aggregate(1L, now.minusMinutes(60)).orElseThrow();
+
+        store.beginSnapshot();
+        // Recorded after the watermark, so replayed after a restore
+        store.record(1L, transaction(now.minusMinutes(2), 20, 2L, 2L));
+        store.recordAndAggregate(3L, transaction(now.minusMinutes(1), 40, 3L, 3L), 3_600_000);
+
+        assertThat(store.saveSnapshot(snapshot, 7)).isEqualTo(2);
+        UserWindowStore restored = new UserWindowStore(true, 1440, 60, 16);
+        assertThat(restored.restoreSnapshot(snapshot)).hasValue(7);
+        assertThat(restored.aggregate(1L, now.minusMinutes(60)).orElseThrow()).usingRecursiveComparison().ignoringCollectionOrder().isEqualTo(expected);
+        assertThat(restored.aggregate(3L, now.minusMinutes(60))).isEmpty();
+        // The live state keeps what was recorded meanwhile
+        assertThat(store.aggregate(1L, now.minusMinutes(60)).orElseThrow().getTransactionCount()).isEqualTo(2);
+
+        // A state copied for a snapshot is not reused by the next one
+        assertThat(store.saveSnapshot(snapshot, 8)).isEqualTo(3);
+        UserWindowStore next = new UserWindowStore(true, 1440, 60, 16);
+        assertThat(next.restoreSnapshot(snapshot)).hasValue(8);
+        assertThat(next.aggregate(1L, now.minusMinutes(60)).orElseThrow().getTransactionCount()).isEqualTo(2);
+    }
+
+    @Test
+    void ignoresCorruptOrIncompatibleSnapshots(@TempDir Path directory) throws Exception {
+        Path snapshot = directory.resolve("window-store.snapshot");
+        store.seed(1L, LocalDateTime.now().minusMinutes(60), List.of(transaction(LocalDateTime.now(), 10, 1L, 1L)));
+        store.saveSnapshot(snapshot, 1);
+
+        assertThat(new UserWindowStore(true, 1440, 30, 16).restoreSnapshot(snapshot)).isEmpty();
+
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(snapshot, bytes);
+        assertThat(new UserWindowStore(true, 1440, 60, 16).restoreSnapshot(snapshot)).isEmpty();
+    }
+
+    private static Transaction transaction(LocalDateTime date, double amount, Long deviceId, Long creditCardId) {
+        return transaction(null, date, amount, deviceId, creditCardId);
+    }
+
+    private static Transaction transaction(String transactionId, LocalDateTime date, double amount, Long deviceId, Long creditCardId) {
+        Device device = new Device();
+        device.setId(deviceId);
+        device.setDeviceId("d-" + deviceId);
+        device.setLatitude(48.14);
+        device.setLongitude(17.10);
+        CreditCard creditCard = new CreditCard();
+        creditCard.setId(creditCardId);
+        creditCard.setNumber("c-" + creditCardId);
+
+        Transaction transaction = new Transaction();
+        transaction.setTransactionId(transactionId);
+        transaction.setTransactionDate(date);
+        transaction.setAmount(amount);
+        transaction.setDevice(device);
+        transaction.setCreditCard(creditCard);
+        return transaction;
+    }
+}